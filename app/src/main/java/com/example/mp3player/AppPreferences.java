@@ -2,11 +2,23 @@ package com.example.mp3player;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.UnaryOperator;
 
 /**
  * Singleton Class: Manages User Preferences
  * This class provides methods to get and set user preferences for the MP3 player application,
  * including background color and playback speed.
+ * All preferences live in one file, loaded once on a background thread into an immutable
+ * snapshot. Getters read the snapshot and never wait for the load, returning the defaults
+ * until it finishes, so callers that need the stored values use whenLoaded(). Setters
+ * replace the snapshot and write to disk shortly after, so a burst of changes results in
+ * a single write.
  */
 public class AppPreferences {
 
@@ -20,16 +32,56 @@ public class AppPreferences {
      */
     public static final String PLAYBACK_SPEED_KEY = "playback_speed";
 
-    private final Context context;
+    /**
+     * Key for storing and retrieving the MediaCodec engine buffer, 0 for MediaPlayer.
+     */
+    public static final String CODEC_BUFFER_KEY = "codec_buffer_ms";
+
+    /**
+     * Listener for preference changes, called on the main thread.
+     */
+    public interface OnPreferencesChangedListener {
+        /**
+         * Called after a preference has changed.
+         *
+         * @param preferences The new preferences.
+         */
+        void onPreferencesChanged(PreferencesSnapshot preferences);
+    }
+
+    // File holding every preference
+    private static final String PREFERENCES_FILE = "app_preferences";
+
+    // Set once the per-key files used by earlier versions have been migrated
+    private static final String MIGRATED_KEY = "migrated";
+
+    // How long to wait for further changes before writing to disk
+    private static final long WRITE_DELAY_MS = 500;
+
     private static AppPreferences instance;
 
+    private final Context context;
+    private final Handler diskHandler;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final CopyOnWriteArrayList<OnPreferencesChangedListener> listeners = new CopyOnWriteArrayList<>();
+    private final Runnable write = this::write;
+
+    // Null until the first load finishes
+    private volatile PreferencesSnapshot snapshot;
+
     /**
      * Private constructor for Singleton pattern.
+     * Starts loading the preferences on a background thread.
      *
      * @param context The application context used for accessing SharedPreferences.
      */
     private AppPreferences(Context context) {
         this.context = context.getApplicationContext();
+
+        HandlerThread diskThread = new HandlerThread("AppPreferences");
+        diskThread.start();
+        diskHandler = new Handler(diskThread.getLooper());
+        diskHandler.post(this::load);
     }
 
     /**
@@ -38,21 +90,69 @@ public class AppPreferences {
      * @param context The application context used for accessing SharedPreferences.
      * @return The AppPreferences instance.
      */
-    public static AppPreferences getInstance(Context context) {
+    public static synchronized AppPreferences getInstance(Context context) {
         if (instance == null) {
             instance = new AppPreferences(context);
         }
         return instance;
     }
 
+    /**
+     * Gets the current preferences without waiting for the first load.
+     *
+     * @return The preferences snapshot, or the defaults if they have not loaded yet.
+     */
+    public PreferencesSnapshot getSnapshot() {
+        PreferencesSnapshot current = snapshot;
+        return current != null ? current : PreferencesSnapshot.DEFAULTS;
+    }
+
+    /**
+     * Passes the current preferences to a listener without waiting for the first
+     * load: straight away if they have loaded, otherwise on the main thread once
+     * they have.
+     *
+     * @param listener The listener to pass the preferences to.
+     */
+    public void whenLoaded(OnPreferencesChangedListener listener) {
+        PreferencesSnapshot current = snapshot;
+        if (current != null) {
+            listener.onPreferencesChanged(current);
+            return;
+        }
+
+        // Runs after load(), which was posted first
+        diskHandler.post(() -> {
+            PreferencesSnapshot loadedSnapshot = snapshot;
+            mainHandler.post(() -> listener.onPreferencesChanged(loadedSnapshot));
+        });
+    }
+
+    /**
+     * Adds a listener for preference changes.
+     *
+     * @param listener The listener to add.
+     */
+    public void addListener(OnPreferencesChangedListener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    /**
+     * Removes a listener for preference changes.
+     *
+     * @param listener The listener to remove.
+     */
+    public void removeListener(OnPreferencesChangedListener listener) {
+        listeners.remove(listener);
+    }
+
     /**
      * Gets the stored background color preference.
      *
      * @return The background color preference.
      */
     public int getBackgroundColour() {
-        SharedPreferences preferences = context.getSharedPreferences(AppPreferences.BACKGROUND_COLOR_KEY, Context.MODE_PRIVATE);
-        return preferences.getInt(BACKGROUND_COLOR_KEY, 0);
+        return getSnapshot().getBackgroundColour();
     }
 
     /**
@@ -61,10 +161,7 @@ public class AppPreferences {
      * @param colour The background color to set.
      */
     public void setBackgroundColor(int colour) {
-        SharedPreferences preferences = context.getSharedPreferences(AppPreferences.BACKGROUND_COLOR_KEY, Context.MODE_PRIVATE);
-        SharedPreferences.Editor editor = preferences.edit();
-        editor.putInt(BACKGROUND_COLOR_KEY, colour);
-        editor.apply();
+        update(current -> current.withBackgroundColour(colour));
     }
 
     /**
@@ -73,8 +170,7 @@ public class AppPreferences {
      * @return The playback speed preference.
      */
     public float getPlaybackSpeed() {
-        SharedPreferences preferences = context.getSharedPreferences(AppPreferences.PLAYBACK_SPEED_KEY, Context.MODE_PRIVATE);
-        return preferences.getFloat(PLAYBACK_SPEED_KEY, 1);
+        return getSnapshot().getPlaybackSpeed();
     }
 
     /**
@@ -83,10 +179,108 @@ public class AppPreferences {
      * @param speed The playback speed to set.
      */
     public void setPlaybackSpeed(float speed) {
-        SharedPreferences preferences = context.getSharedPreferences(AppPreferences.PLAYBACK_SPEED_KEY, Context.MODE_PRIVATE);
+        update(current -> current.withPlaybackSpeed(speed));
+    }
+
+    /**
+     * Gets the stored audio engine preference.
+     *
+     * @return The MediaCodec engine buffer in milliseconds, or 0 for MediaPlayer.
+     */
+    public int getCodecBufferMs() {
+        return getSnapshot().getCodecBufferMs();
+    }
+
+    /**
+     * Sets the audio engine preference.
+     *
+     * @param bufferMs The MediaCodec engine buffer in milliseconds, or 0 for MediaPlayer.
+     */
+    public void setCodecBufferMs(int bufferMs) {
+        update(current -> current.withCodecBufferMs(bufferMs));
+    }
+
+    /**
+     * Replaces the snapshot, schedules a write and notifies listeners if anything changed.
+     * A change made before the first load finishes is applied to the loaded values, so
+     * the load does not overwrite it.
+     */
+    private synchronized void update(UnaryOperator<PreferencesSnapshot> change) {
+        PreferencesSnapshot current = snapshot;
+        if (current == null) {
+            // Runs after load(), which was posted first
+            diskHandler.post(() -> update(change));
+            return;
+        }
+        PreferencesSnapshot updated = change.apply(current);
+        if (updated == current) {
+            return;
+        }
+        snapshot = updated;
+
+        // Restart the delay so a burst of changes is written once
+        diskHandler.removeCallbacks(write);
+        diskHandler.postDelayed(write, WRITE_DELAY_MS);
+
+        mainHandler.post(() -> {
+            for (OnPreferencesChangedListener listener : listeners) {
+                listener.onPreferencesChanged(updated);
+            }
+        });
+    }
+
+    /**
+     * Loads the preferences file, migrating the old per-key files on first run.
+     */
+    private void load() {
+        try {
+            SharedPreferences preferences = context.getSharedPreferences(PREFERENCES_FILE, Context.MODE_PRIVATE);
+            if (!preferences.getBoolean(MIGRATED_KEY, false)) {
+                migrate(preferences);
+            }
+
+            snapshot = new PreferencesSnapshot(
+                    preferences.getInt(BACKGROUND_COLOR_KEY, PreferencesSnapshot.DEFAULTS.getBackgroundColour()),
+                    preferences.getFloat(PLAYBACK_SPEED_KEY, PreferencesSnapshot.DEFAULTS.getPlaybackSpeed()),
+                    preferences.getInt(CODEC_BUFFER_KEY, PreferencesSnapshot.DEFAULTS.getCodecBufferMs()));
+        } catch (RuntimeException e) {
+            Log.e("AppPreferences", e.toString());
+            snapshot = PreferencesSnapshot.DEFAULTS;
+        }
+    }
+
+    /**
+     * Copies the values from the files used by earlier versions, which stored each key
+     * in a file of the same name, then deletes those files.
+     */
+    private void migrate(SharedPreferences preferences) {
         SharedPreferences.Editor editor = preferences.edit();
-        editor.putFloat(PLAYBACK_SPEED_KEY, speed);
-        editor.apply();
+
+        SharedPreferences colourFile = context.getSharedPreferences(BACKGROUND_COLOR_KEY, Context.MODE_PRIVATE);
+        if (colourFile.contains(BACKGROUND_COLOR_KEY)) {
+            editor.putInt(BACKGROUND_COLOR_KEY, colourFile.getInt(BACKGROUND_COLOR_KEY, 0));
+        }
+        SharedPreferences speedFile = context.getSharedPreferences(PLAYBACK_SPEED_KEY, Context.MODE_PRIVATE);
+        if (speedFile.contains(PLAYBACK_SPEED_KEY)) {
+            editor.putFloat(PLAYBACK_SPEED_KEY, speedFile.getFloat(PLAYBACK_SPEED_KEY, 1));
+        }
+
+        editor.putBoolean(MIGRATED_KEY, true);
+        if (editor.commit()) {
+            context.deleteSharedPreferences(BACKGROUND_COLOR_KEY);
+            context.deleteSharedPreferences(PLAYBACK_SPEED_KEY);
+        }
     }
 
-}
\ No newline at end of file
+    /**
+     * Writes the current snapshot to disk. Runs on the background thread.
+     */
+    private void write() {
+        PreferencesSnapshot current = snapshot;
+        context.getSharedPreferences(PREFERENCES_FILE, Context.MODE_PRIVATE).edit()
+                .putInt(BACKGROUND_COLOR_KEY, current.getBackgroundColour())
+                .putFloat(PLAYBACK_SPEED_KEY, current.getPlaybackSpeed())
+                .putInt(CODEC_BUFFER_KEY, current.getCodecBufferMs())
+                .commit();
+    }
+}
@@ -0,0 +1,309 @@
+package com.example.mp3player;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Singleton Class: Loads album artwork off the UI thread.
+ * Artwork comes from the file's embedded APIC frame, or else an image such as
+ * folder.jpg beside it, and is decoded with inSampleSize close to the size it
+ * is shown at. Decoded bitmaps are kept in a memory LRU sized to a fraction of
+ * the heap, backed by a bounded disk cache of thumbnails.
+ */
+public class ArtworkLoader {
+
+    /**
+     * Receives loaded artwork on the main thread.
+     */
+    public interface Callback {
+        /**
+         * Called when artwork has been loaded.
+         *
+         * @param path    The file path of the song.
+         * @param artwork The artwork, or null if the song has none.
+         */
+        void onArtworkLoaded(String path, Bitmap artwork);
+    }
+
+    // Fraction of the maximum heap used by the memory cache
+    private static final int MEMORY_CACHE_DIVISOR = 8;
+
+    // Total size of the thumbnails kept on disk
+    private static final long DISK_CACHE_BYTES = 20 * 1024 * 1024;
+
+    // JPEG quality of thumbnails written to disk
+    private static final int THUMBNAIL_QUALITY = 85;
+
+    // Images looked for beside a song when it has no embedded picture
+    private static final String[] FOLDER_IMAGES = {"folder.jpg", "Folder.jpg", "cover.jpg", "Cover.jpg", "AlbumArt.jpg"};
+
+    private static ArtworkLoader instance;
+
+    private final File directory;
+    private final LruCache<String, Bitmap> memoryCache;
+
+    // Keys known to have no artwork, so misses are not rescanned
+    private final LruCache<String, Boolean> missing = new LruCache<>(256);
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Id3TagReader reader = new Id3TagReader();
+
+    // Memory hits are counted on the calling thread, so the count is atomic
+    private final AtomicInteger memoryHits = new AtomicInteger();
+
+    // Statistics, updated on the loading thread and read for logging
+    private int diskHits;
+    private int decodes;
+    private long decodeTimeMs;
+
+    /**
+     * Private constructor for Singleton pattern.
+     *
+     * @param context The application context.
+     */
+    private ArtworkLoader(Context context) {
+        directory = new File(context.getCacheDir(), "artwork");
+
+        int cacheBytes = (int) Math.min(Runtime.getRuntime().maxMemory() / MEMORY_CACHE_DIVISOR, Integer.MAX_VALUE);
+        memoryCache = new LruCache<String, Bitmap>(cacheBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+    }
+
+    /**
+     * Creates an instance of ArtworkLoader if null, else returns the existing instance.
+     *
+     * @param context The context used to find the cache directory.
+     * @return The instance of ArtworkLoader.
+     */
+    public static synchronized ArtworkLoader getInstance(Context context) {
+        if (instance == null) {
+            instance = new ArtworkLoader(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Loads the artwork of a song. Artwork already in memory is delivered
+     * immediately; everything else is delivered later on the main thread.
+     *
+     * @param path     The file path of the song.
+     * @param size     The size in pixels the artwork is shown at.
+     * @param callback The callback that receives the artwork.
+     */
+    public void load(String path, int size, Callback callback) {
+        File file = new File(path);
+        String key = Long.toHexString(file.lastModified()) + "_" + size + "_" + path;
+
+        Bitmap cached = memoryCache.get(key);
+        if (cached != null) {
+            memoryHits.incrementAndGet();
+            callback.onArtworkLoaded(path, cached);
+            return;
+        }
+
+        executor.execute(() -> {
+            Bitmap artwork = missing.get(key) != null ? null : loadArtwork(file, key, size);
+            if (artwork != null) {
+                memoryCache.put(key, artwork);
+            } else {
+                missing.put(key, Boolean.TRUE);
+            }
+            handler.post(() -> callback.onArtworkLoaded(path, artwork));
+        });
+    }
+
+    /**
+     * Loads artwork from the disk cache, or decodes it from the song.
+     */
+    private Bitmap loadArtwork(File file, String key, int size) {
+        File thumbnail = new File(directory, thumbnailName(key));
+        if (thumbnail.exists()) {
+            Bitmap bitmap = BitmapFactory.decodeFile(thumbnail.getPath());
+            if (bitmap != null) {
+                diskHits++;
+                // Keep recently used thumbnails from being evicted
+                thumbnail.setLastModified(System.currentTimeMillis());
+                logStats();
+                return bitmap;
+            }
+        }
+
+        long start = SystemClock.elapsedRealtime();
+        Bitmap bitmap = decode(readImage(file), size);
+        decodes++;
+        decodeTimeMs += SystemClock.elapsedRealtime() - start;
+        logStats();
+
+        if (bitmap != null) {
+            writeThumbnail(thumbnail, bitmap);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Reads the encoded artwork of a song.
+     *
+     * @return The image data, or null if the song has no artwork.
+     */
+    private byte[] readImage(File file) {
+        try {
+            byte[] picture = reader.readPicture(file);
+            if (picture != null) {
+                return picture;
+            }
+
+            File folder = file.getParentFile();
+            for (String name : FOLDER_IMAGES) {
+                File image = new File(folder, name);
+                if (image.isFile()) {
+                    return readFile(image);
+                }
+            }
+        } catch (IOException e) {
+            Log.e("ArtworkLoader", e.toString());
+        }
+        return null;
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            byte[] data = new byte[(int) raf.length()];
+            raf.readFully(data);
+            return data;
+        }
+    }
+
+    /**
+     * Decodes an image at the smallest power-of-two downsampling that keeps it
+     * at least as large as the target size.
+     */
+    static Bitmap decode(byte[] data, int size) {
+        if (data == null) {
+            return null;
+        }
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        options.inSampleSize = sampleSize(options.outWidth, options.outHeight, size);
+        options.inJustDecodeBounds = false;
+        return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+    }
+
+    /**
+     * Calculates the inSampleSize for an image shown at a target size.
+     *
+     * @param width  The width of the image.
+     * @param height The height of the image.
+     * @param size   The target size.
+     * @return The largest power of two that keeps both dimensions at least the target size.
+     */
+    static int sampleSize(int width, int height, int size) {
+        int sampleSize = 1;
+        while (width / (sampleSize * 2) >= size && height / (sampleSize * 2) >= size) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * Writes a thumbnail to the disk cache, then evicts the least recently
+     * used thumbnails if the cache is over its size.
+     */
+    private void writeThumbnail(File thumbnail, Bitmap bitmap) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            return;
+        }
+
+        File temp = new File(directory, thumbnail.getName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            bitmap.compress(Bitmap.CompressFormat.JPEG, THUMBNAIL_QUALITY, out);
+        } catch (IOException e) {
+            Log.e("ArtworkLoader", e.toString());
+            temp.delete();
+            return;
+        }
+        if (!temp.renameTo(thumbnail)) {
+            temp.delete();
+            return;
+        }
+
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= DISK_CACHE_BYTES) {
+            return;
+        }
+
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File file : files) {
+            if (total <= DISK_CACHE_BYTES) {
+                break;
+            }
+            total -= file.length();
+            file.delete();
+        }
+    }
+
+    /**
+     * Names the thumbnail of a cache key by the SHA-1 digest of the key, so two
+     * keys cannot share a file the way they could share a 32-bit hash code.
+     *
+     * @param key The cache key.
+     * @return The file name of the thumbnail.
+     */
+    static String thumbnailName(String key) {
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            // Every Android release provides SHA-1
+            throw new IllegalStateException(e);
+        }
+        StringBuilder name = new StringBuilder(digest.length * 2 + 4);
+        for (byte b : digest) {
+            name.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return name.append(".jpg").toString();
+    }
+
+    private void logStats() {
+        int memoryHits = this.memoryHits.get();
+        int requests = memoryHits + diskHits + decodes;
+        Log.d("Artwork cache", "hit rate " + (memoryHits + diskHits) * 100 / requests + "% ("
+                + memoryHits + " memory, " + diskHits + " disk, " + decodes + " decoded), average decode "
+                + (decodes == 0 ? 0 : decodeTimeMs / decodes) + "ms");
+    }
+}
@@ -0,0 +1,489 @@
+package com.example.mp3player;
+
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioTrack;
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.media.MediaPlayer;
+import android.media.PlaybackParams;
+import android.os.Handler;
+import android.os.Process;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * PlayerEngine that decodes with MediaExtractor and MediaCodec on a dedicated
+ * thread and plays through an AudioTrack.
+ * Decoded PCM passes through a preallocated PcmRingBuffer holding a configurable
+ * number of milliseconds of audio. A deeper buffer survives longer decode stalls,
+ * a shallower one makes seeks and track changes heard sooner. Underruns reported
+ * by the AudioTrack are counted in Metrics so the two can be compared.
+ *
+ * The decode thread is the only writer of the ring buffer and the output thread
+ * the only reader. A seek is handed over by the decode thread raising
+ * flushRequested and waiting until the output thread has emptied the ring buffer
+ * and the AudioTrack and cleared it again. Speed and volume changes are handed
+ * over the same way through paramsChanged, so only the output thread touches
+ * the AudioTrack while it runs.
+ * <p>
+ * Tracks are not chained gaplessly: the next engine is started once this one
+ * completes, with the gap that brings, which the engine names in Settings say.
+ */
+public class CodecPlayerEngine implements PlayerEngine {
+
+    // Timeout for dequeuing codec buffers, so the decode thread notices seeks and release
+    private static final long DEQUEUE_TIMEOUT_US = 10000;
+
+    // How long either thread sleeps when it has nothing to do
+    private static final long IDLE_NANOS = 2000000;
+
+    private final int bufferMs;
+    private final Handler handler = new Handler(PlaybackThread.getInstance().getLooper());
+
+    // Accessed on the playback thread only
+    private Listener listener;
+    private String path;
+    private boolean seeking;
+    private int seekPosition;
+    private boolean completed;
+
+    // Created by the decode thread before onPrepared, and cleared before it is released
+    private volatile AudioTrack track;
+    private PcmRingBuffer ring;
+    private int sampleRate;
+    private int frameSize;
+    private volatile int durationMs;
+
+    private volatile boolean released;
+
+    // Set once the decode thread has stopped, so the output thread stops too
+    private volatile boolean finished;
+    private volatile boolean playing;
+    private volatile float speed = 1;
+    private volatile float volume = 1;
+
+    // Raised when speed or volume changes and cleared by the output thread once applied,
+    // raised at first so the output thread applies them before playing
+    private volatile boolean paramsChanged = true;
+
+    // Seek target in microseconds waiting for the decode thread, -1 if none
+    private final AtomicLong seekRequestUs = new AtomicLong(-1);
+    private volatile boolean seekExact;
+
+    // Raised by the decode thread and cleared by the output thread once flushed
+    private volatile boolean flushRequested;
+
+    // Set by the decode thread once everything up to the end of the file is in the ring buffer
+    private volatile boolean decodeDone;
+
+    // Position of the first frame written after the last seek, and the playback
+    // head position at that point
+    private volatile long basePositionUs;
+    private volatile long headBase;
+
+    /**
+     * Creates an engine.
+     *
+     * @param bufferMs How many milliseconds of decoded audio to buffer ahead of the output.
+     */
+    public CodecPlayerEngine(int bufferMs) {
+        this.bufferMs = bufferMs;
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void setDataSource(String path) throws IOException {
+        File file = new File(path);
+        if (!file.canRead())
+            throw new IOException("Cannot read " + path);
+        this.path = path;
+    }
+
+    @Override
+    public void prepareAsync() {
+        Thread decodeThread = new Thread(this::runDecoder, "CodecPlayerEngine.decode");
+        decodeThread.start();
+    }
+
+    @Override
+    public void start() {
+        if (completed) {
+            // Play again from the beginning, like MediaPlayer
+            completed = false;
+            seekTo(0, true);
+        }
+        playing = true;
+    }
+
+    @Override
+    public void pause() {
+        playing = false;
+    }
+
+    @Override
+    public void seekTo(int position, boolean exact) {
+        completed = false;
+        seeking = true;
+        seekPosition = position;
+        seekExact = exact;
+        seekRequestUs.set(position * 1000L);
+    }
+
+    @Override
+    public void setSpeed(float speed) {
+        this.speed = speed;
+        paramsChanged = true;
+    }
+
+    @Override
+    public void setVolume(float volume) {
+        this.volume = volume;
+        paramsChanged = true;
+    }
+
+    /**
+     * Applies the speed and volume to the AudioTrack. Runs on the output thread.
+     */
+    private void applyParams(AudioTrack track) {
+        // Cleared before reading, so a change made meanwhile is applied next time
+        paramsChanged = false;
+        try {
+            track.setPlaybackParams(new PlaybackParams().setSpeed(speed).setPitch(1f));
+            track.setVolume(volume);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            Log.e("CodecPlayerEngine", e.toString());
+        }
+    }
+
+    /**
+     * Gapless chaining is not supported, so the caller starts the next engine itself.
+     */
+    @Override
+    public boolean setNextEngine(PlayerEngine next) {
+        return next == null;
+    }
+
+    @Override
+    public boolean isPlaying() {
+        return playing;
+    }
+
+    @Override
+    public int getCurrentPosition() {
+        AudioTrack track = this.track;
+        if (seeking || track == null)
+            return seekPosition;
+        if (completed)
+            return durationMs;
+        long frames = (track.getPlaybackHeadPosition() & 0xFFFFFFFFL) - headBase;
+        return (int) ((basePositionUs + Math.max(0, frames) * 1000000L / sampleRate) / 1000);
+    }
+
+    @Override
+    public int getDuration() {
+        return durationMs;
+    }
+
+    @Override
+    public void release() {
+        released = true;
+        playing = false;
+        listener = null;
+        handler.removeCallbacksAndMessages(null);
+    }
+
+    /**
+     * Opens the file, reports preparation, then decodes until released.
+     * Owns the extractor, codec and AudioTrack, and frees them on the way out.
+     */
+    private void runDecoder() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_AUDIO);
+        MediaExtractor extractor = new MediaExtractor();
+        MediaCodec codec = null;
+        Thread outputThread = null;
+        try {
+            extractor.setDataSource(path);
+            MediaFormat format = selectAudioTrack(extractor);
+            if (format == null) {
+                postError(MediaPlayer.MEDIA_ERROR_UNSUPPORTED);
+                return;
+            }
+
+            sampleRate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+            int channels = format.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+            frameSize = 2 * channels;
+            durationMs = format.containsKey(MediaFormat.KEY_DURATION)
+                    ? (int) (format.getLong(MediaFormat.KEY_DURATION) / 1000) : 0;
+
+            codec = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+            codec.configure(format, null, null, 0);
+            codec.start();
+
+            ring = new PcmRingBuffer(Math.max(1, bufferMs) * sampleRate / 1000 * frameSize);
+            track = createTrack(channels);
+            if (released)
+                return;
+
+            outputThread = new Thread(this::runOutput, "CodecPlayerEngine.output");
+            outputThread.start();
+            post(() -> {
+                if (listener != null)
+                    listener.onPrepared(this);
+            });
+
+            decode(extractor, codec);
+        } catch (IOException | RuntimeException e) {
+            Log.e("CodecPlayerEngine", e.toString());
+            postError(e instanceof IOException ? MediaPlayer.MEDIA_ERROR_IO : MediaPlayer.MEDIA_ERROR_MALFORMED);
+        } finally {
+            finished = true;
+            if (outputThread != null) {
+                try {
+                    outputThread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (codec != null)
+                codec.release();
+            extractor.release();
+            // Cleared first, so the playback thread stops reading the position from it
+            AudioTrack finishedTrack = track;
+            track = null;
+            if (finishedTrack != null)
+                finishedTrack.release();
+        }
+    }
+
+    private static MediaFormat selectAudioTrack(MediaExtractor extractor) {
+        for (int i = 0; i < extractor.getTrackCount(); i++) {
+            MediaFormat format = extractor.getTrackFormat(i);
+            String mime = format.getString(MediaFormat.KEY_MIME);
+            if (mime != null && mime.startsWith("audio/")) {
+                extractor.selectTrack(i);
+                return format;
+            }
+        }
+        return null;
+    }
+
+    private AudioTrack createTrack(int channels) {
+        int channelMask = channels == 1 ? AudioFormat.CHANNEL_OUT_MONO : AudioFormat.CHANNEL_OUT_STEREO;
+        int minBuffer = AudioTrack.getMinBufferSize(sampleRate, channelMask, AudioFormat.ENCODING_PCM_16BIT);
+        return new AudioTrack.Builder()
+                .setAudioAttributes(new AudioAttributes.Builder()
+                        .setUsage(AudioAttributes.USAGE_MEDIA)
+                        .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
+                        .build())
+                .setAudioFormat(new AudioFormat.Builder()
+                        .setSampleRate(sampleRate)
+                        .setChannelMask(channelMask)
+                        .setEncoding(AudioFormat.ENCODING_PCM_16BIT)
+                        .build())
+                .setBufferSizeInBytes(minBuffer)
+                .setTransferMode(AudioTrack.MODE_STREAM)
+                .build();
+    }
+
+    /**
+     * Feeds the codec from the extractor and copies its output into the ring buffer.
+     */
+    private void decode(MediaExtractor extractor, MediaCodec codec) {
+        MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+        boolean inputDone = false;
+        // Output buffer only partly copied because the ring buffer was full, -1 if none
+        int pendingIndex = -1;
+        ByteBuffer pending = null;
+        // Whether the pending output buffer is the last one
+        boolean pendingEnd = false;
+        // Decoded audio before this time is dropped after an exact seek, -1 if none
+        long skipUntilUs = -1;
+
+        while (!released) {
+            long seekUs = seekRequestUs.getAndSet(-1);
+            if (seekUs >= 0) {
+                // Wait for the output thread to drop everything buffered
+                flushRequested = true;
+                while (flushRequested && !released)
+                    LockSupport.parkNanos(IDLE_NANOS);
+
+                boolean exact = seekExact;
+                extractor.seekTo(seekUs, exact ? MediaExtractor.SEEK_TO_PREVIOUS_SYNC
+                        : MediaExtractor.SEEK_TO_CLOSEST_SYNC);
+                codec.flush();
+                pendingIndex = -1;
+                pending = null;
+                inputDone = false;
+                skipUntilUs = exact ? seekUs : -1;
+                basePositionUs = exact ? seekUs : Math.max(0, extractor.getSampleTime());
+                int position = (int) (basePositionUs / 1000);
+                post(() -> onSeekComplete(position));
+                continue;
+            }
+
+            if (!inputDone) {
+                int inputIndex = codec.dequeueInputBuffer(pending != null ? 0 : DEQUEUE_TIMEOUT_US);
+                if (inputIndex >= 0) {
+                    int size = extractor.readSampleData(codec.getInputBuffer(inputIndex), 0);
+                    if (size < 0) {
+                        codec.queueInputBuffer(inputIndex, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                        inputDone = true;
+                    } else {
+                        codec.queueInputBuffer(inputIndex, 0, size, extractor.getSampleTime(), 0);
+                        extractor.advance();
+                    }
+                }
+            }
+
+            if (pending == null) {
+                int outputIndex = codec.dequeueOutputBuffer(info, inputDone ? DEQUEUE_TIMEOUT_US : 0);
+                if (outputIndex < 0)
+                    continue;
+                pendingIndex = outputIndex;
+                pending = codec.getOutputBuffer(outputIndex);
+                pending.position(info.offset);
+                pending.limit(info.offset + info.size);
+                if (skipUntilUs >= 0) {
+                    long skipFrames = (skipUntilUs - info.presentationTimeUs) * sampleRate / 1000000;
+                    int skipBytes = (int) Math.min(pending.remaining(), Math.max(0, skipFrames) * frameSize);
+                    pending.position(pending.position() + skipBytes);
+                    if (pending.hasRemaining())
+                        skipUntilUs = -1;
+                }
+                pendingEnd = (info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0;
+            }
+
+            ring.write(pending);
+            if (pending.hasRemaining()) {
+                LockSupport.parkNanos(IDLE_NANOS);
+            } else {
+                codec.releaseOutputBuffer(pendingIndex, false);
+                pendingIndex = -1;
+                pending = null;
+                if (pendingEnd)
+                    decodeDone = true;
+            }
+        }
+    }
+
+    /**
+     * Moves audio from the ring buffer to the AudioTrack without blocking, and
+     * handles flushes, pauses and the end of the file.
+     */
+    private void runOutput() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+        AudioTrack track = this.track;
+        boolean trackPlaying = false;
+        boolean stopped = false;
+        boolean completionPosted = false;
+        long writtenFrames = 0;
+        int underruns = track.getUnderrunCount();
+
+        while (!released && !finished) {
+            if (paramsChanged)
+                applyParams(track);
+
+            if (flushRequested) {
+                track.pause();
+                track.flush();
+                trackPlaying = false;
+                stopped = false;
+                completionPosted = false;
+                ring.clear();
+                writtenFrames = 0;
+                decodeDone = false;
+                headBase = track.getPlaybackHeadPosition() & 0xFFFFFFFFL;
+                flushRequested = false;
+                continue;
+            }
+
+            if (playing != trackPlaying && !completionPosted) {
+                trackPlaying = playing;
+                if (trackPlaying) {
+                    track.play();
+                } else {
+                    track.pause();
+                }
+            }
+            if (!trackPlaying || completionPosted) {
+                LockSupport.parkNanos(IDLE_NANOS);
+                continue;
+            }
+
+            int chunk = ring.readableChunk();
+            if (chunk > 0) {
+                int written = track.write(ring.array(), ring.readOffset(), chunk, AudioTrack.WRITE_NON_BLOCKING);
+                if (written > 0) {
+                    ring.advanceRead(written);
+                    writtenFrames += written / frameSize;
+                }
+                if (written == chunk)
+                    continue;
+            } else if (decodeDone && seekRequestUs.get() < 0) {
+                // Let the AudioTrack play out what it holds, then report completion
+                if (!stopped) {
+                    track.stop();
+                    stopped = true;
+                }
+                if ((track.getPlaybackHeadPosition() & 0xFFFFFFFFL) - headBase >= writtenFrames) {
+                    completionPosted = true;
+                    trackPlaying = false;
+                    post(this::onCompletion);
+                }
+            }
+
+            int count = track.getUnderrunCount();
+            if (count > underruns) {
+                Metrics.getInstance().counter(Metrics.UNDERRUN).add(count - underruns);
+                underruns = count;
+            }
+            LockSupport.parkNanos(IDLE_NANOS);
+        }
+        track.pause();
+    }
+
+    private void onSeekComplete(int position) {
+        // Later seeks are still on their way
+        if (seekRequestUs.get() >= 0)
+            return;
+        seeking = false;
+        seekPosition = position;
+        if (listener != null)
+            listener.onSeekComplete(this);
+    }
+
+    private void onCompletion() {
+        // The file ended just as a seek was requested, which wins
+        if (seeking)
+            return;
+        playing = false;
+        completed = true;
+        if (listener != null)
+            listener.onCompletion(this);
+    }
+
+    private void postError(int extra) {
+        post(() -> {
+            if (listener != null)
+                listener.onError(this, MediaPlayer.MEDIA_ERROR_UNKNOWN, extra);
+        });
+    }
+
+    private void post(Runnable runnable) {
+        handler.post(() -> {
+            if (!released)
+                runnable.run();
+        });
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.mp3player;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Reads ID3 tags through a persistent cache in the library database.
+ * Entries are keyed by path and only reused while the file's size and
+ * modification time are unchanged, so each file is parsed once.
+ * Not thread safe; use from a single background thread.
+ */
+public class Id3TagCache {
+
+    private final LibraryDatabase database;
+    private final Id3TagReader reader = new Id3TagReader();
+
+    // Lookups served from the cache and files parsed, for logging
+    private int hits;
+    private int misses;
+
+    /**
+     * Creates a cache backed by the library database.
+     *
+     * @param database The database holding the cached tags.
+     */
+    public Id3TagCache(LibraryDatabase database) {
+        this.database = database;
+    }
+
+    /**
+     * Gets the tags of a file, parsing it only if it changed since it was last read.
+     *
+     * @param file The MP3 file.
+     * @return The tags, or null if the file cannot be read.
+     */
+    public Id3Tags get(File file) {
+        String path = file.getPath();
+        long size = file.length();
+        long mtime = file.lastModified();
+        if (size == 0) {
+            return null;
+        }
+
+        Id3Tags tags = database.getTags(path, size, mtime);
+        if (tags != null) {
+            hits++;
+            return tags;
+        }
+
+        try {
+            tags = reader.read(file);
+        } catch (IOException e) {
+            Log.e("Id3TagCache", e.toString());
+            return null;
+        }
+        misses++;
+        database.putTags(path, size, mtime, tags);
+        return tags;
+    }
+
+    public int getHitCount() {
+        return hits;
+    }
+
+    public int getMissCount() {
+        return misses;
+    }
+}
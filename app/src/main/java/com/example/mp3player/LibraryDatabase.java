@@ -0,0 +1,510 @@
+package com.example.mp3player;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Singleton Class: Local SQLite copy of the songs found in MediaStore.
+ * Warm starts read the library from here instead of querying MediaStore.
+ */
+public class LibraryDatabase extends SQLiteOpenHelper {
+
+    private static final String DATABASE_NAME = "library.db";
+    private static final int DATABASE_VERSION = 4;
+
+    public static final String TABLE_SONGS = "songs";
+    public static final String COLUMN_ID = "_id";
+    public static final String COLUMN_PATH = "path";
+    public static final String COLUMN_TITLE = "title";
+    public static final String COLUMN_ARTIST = "artist";
+    public static final String COLUMN_ALBUM = "album";
+    public static final String COLUMN_DURATION = "duration";
+    public static final String COLUMN_DATE_MODIFIED = "date_modified";
+
+    // Index on the song path, so the title of a playing track is found without a table scan
+    private static final String INDEX_SONGS_PATH = "songs_path";
+
+    private static final String TABLE_META = "meta";
+    private static final String COLUMN_KEY = "key";
+    private static final String COLUMN_VALUE = "value";
+
+    private static final String TABLE_TAGS = "tags";
+    private static final String COLUMN_SIZE = "size";
+    private static final String COLUMN_MTIME = "mtime";
+    private static final String COLUMN_TRACK = "track";
+
+    private static final String TABLE_LOUDNESS = "loudness";
+    private static final String COLUMN_TRACK_LOUDNESS = "track_loudness";
+    private static final String COLUMN_TRACK_PEAK = "track_peak";
+    private static final String COLUMN_ALBUM_LOUDNESS = "album_loudness";
+    private static final String COLUMN_ALBUM_PEAK = "album_peak";
+
+    private static final String[] SONG_PROJECTION = {
+            COLUMN_ID, COLUMN_PATH, COLUMN_TITLE, COLUMN_ARTIST, COLUMN_ALBUM, COLUMN_DURATION
+    };
+
+    private static LibraryDatabase instance;
+
+    /**
+     * Private constructor for Singleton pattern.
+     *
+     * @param context The application context.
+     */
+    private LibraryDatabase(Context context) {
+        super(context.getApplicationContext(), DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    /**
+     * Creates an instance of LibraryDatabase if null, else returns the existing instance.
+     *
+     * @param context The context used to open the database.
+     * @return The instance of LibraryDatabase.
+     */
+    public static synchronized LibraryDatabase getInstance(Context context) {
+        if (instance == null) {
+            instance = new LibraryDatabase(context);
+        }
+        return instance;
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_SONGS + " ("
+                + COLUMN_ID + " INTEGER PRIMARY KEY, "
+                + COLUMN_PATH + " TEXT NOT NULL, "
+                + COLUMN_TITLE + " TEXT, "
+                + COLUMN_ARTIST + " TEXT, "
+                + COLUMN_ALBUM + " TEXT, "
+                + COLUMN_DURATION + " INTEGER, "
+                + COLUMN_DATE_MODIFIED + " INTEGER)");
+        db.execSQL("CREATE INDEX " + INDEX_SONGS_PATH + " ON " + TABLE_SONGS + " (" + COLUMN_PATH + ")");
+        db.execSQL("CREATE TABLE " + TABLE_META + " ("
+                + COLUMN_KEY + " TEXT PRIMARY KEY, "
+                + COLUMN_VALUE + " TEXT)");
+        db.execSQL("CREATE TABLE " + TABLE_TAGS + " ("
+                + COLUMN_PATH + " TEXT PRIMARY KEY, "
+                + COLUMN_SIZE + " INTEGER, "
+                + COLUMN_MTIME + " INTEGER, "
+                + COLUMN_TITLE + " TEXT, "
+                + COLUMN_ARTIST + " TEXT, "
+                + COLUMN_ALBUM + " TEXT, "
+                + COLUMN_TRACK + " INTEGER, "
+                + COLUMN_DURATION + " INTEGER)");
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_LOUDNESS + " ("
+                + COLUMN_PATH + " TEXT PRIMARY KEY, "
+                + COLUMN_MTIME + " INTEGER, "
+                + COLUMN_ALBUM + " TEXT, "
+                + COLUMN_TRACK_LOUDNESS + " REAL, "
+                + COLUMN_TRACK_PEAK + " REAL, "
+                + COLUMN_ALBUM_LOUDNESS + " REAL, "
+                + COLUMN_ALBUM_PEAK + " REAL)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // The index is only a cache of MediaStore, so rebuild it from scratch.
+        // Loudness takes hours to measure and is kept.
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_SONGS);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_META);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_TAGS);
+        onCreate(db);
+    }
+
+    /**
+     * Gets a value stored alongside the index, such as a MediaStore generation.
+     *
+     * @param key          The key of the value.
+     * @param defaultValue The value to return if none is stored.
+     * @return The stored value, or defaultValue.
+     */
+    public String getMeta(String key, String defaultValue) {
+        try (Cursor cursor = getReadableDatabase().query(TABLE_META, new String[]{COLUMN_VALUE},
+                COLUMN_KEY + " = ?", new String[]{key}, null, null, null)) {
+            return cursor.moveToFirst() ? cursor.getString(0) : defaultValue;
+        }
+    }
+
+    /**
+     * Stores a value alongside the index.
+     *
+     * @param key   The key of the value.
+     * @param value The value to store.
+     */
+    public void putMeta(String key, String value) {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_KEY, key);
+        values.put(COLUMN_VALUE, value);
+        getWritableDatabase().insertWithOnConflict(TABLE_META, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    /**
+     * Inserts or replaces a batch of songs in a single transaction.
+     *
+     * @param songs         The songs to store.
+     * @param datesModified The MediaStore modification date of each song, in seconds.
+     */
+    public void putSongs(List<Song> songs, long[] datesModified) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try (SQLiteStatement statement = db.compileStatement("INSERT OR REPLACE INTO " + TABLE_SONGS
+                + " VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+            for (int i = 0; i < songs.size(); i++) {
+                Song song = songs.get(i);
+                statement.clearBindings();
+                statement.bindLong(1, song.getId());
+                statement.bindString(2, song.getPath());
+                bindNullable(statement, 3, song.getTitle());
+                bindNullable(statement, 4, song.getArtist());
+                bindNullable(statement, 5, song.getAlbum());
+                statement.bindLong(6, song.getDuration());
+                statement.bindLong(7, datesModified[i]);
+                statement.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private static void bindNullable(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+
+    /**
+     * Deletes songs that are no longer in MediaStore.
+     *
+     * @param ids The IDs of the songs to delete.
+     */
+    public void deleteSongs(Set<Long> ids) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try (SQLiteStatement statement = db.compileStatement("DELETE FROM " + TABLE_SONGS
+                + " WHERE " + COLUMN_ID + " = ?")) {
+            for (long id : ids) {
+                statement.bindLong(1, id);
+                statement.executeUpdateDelete();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Gets the IDs of every song in the index.
+     *
+     * @return The set of song IDs.
+     */
+    public Set<Long> getSongIds() {
+        Set<Long> ids = new HashSet<>();
+        try (Cursor cursor = getReadableDatabase().query(TABLE_SONGS, new String[]{COLUMN_ID},
+                null, null, null, null, null)) {
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getLong(0));
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Gets the highest song ID in the index. MediaStore never reuses IDs, so rows
+     * above it were added since.
+     *
+     * @return The highest ID, or 0 if the index is empty.
+     */
+    public long getMaxSongId() {
+        return DatabaseUtils.longForQuery(getReadableDatabase(),
+                "SELECT IFNULL(MAX(" + COLUMN_ID + "), 0) FROM " + TABLE_SONGS, null);
+    }
+
+    /**
+     * Gets the IDs of every song in the index, in the order the list shows them.
+     *
+     * @return The song IDs in MediaStore ID order.
+     */
+    public long[] getSongIdsInOrder() {
+        try (Cursor cursor = getReadableDatabase().query(TABLE_SONGS, new String[]{COLUMN_ID},
+                null, null, null, null, COLUMN_ID)) {
+            long[] ids = new long[cursor.getCount()];
+            for (int i = 0; cursor.moveToNext(); i++) {
+                ids[i] = cursor.getLong(0);
+            }
+            return ids;
+        }
+    }
+
+    /**
+     * Gets the file path of a song.
+     *
+     * @param id The song ID.
+     * @return The file path, or null if the song is not in the index.
+     */
+    public String getSongPath(long id) {
+        try (Cursor cursor = getReadableDatabase().query(TABLE_SONGS, new String[]{COLUMN_PATH},
+                COLUMN_ID + " = ?", new String[]{Long.toString(id)}, null, null, null)) {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        }
+    }
+
+    /**
+     * Gets the title of a song from its file path, using the index on the path.
+     *
+     * @param path The file path.
+     * @return The title, or the file name if the song is not in the index or has no title.
+     */
+    public String getSongTitle(String path) {
+        try (Cursor cursor = getReadableDatabase().query(TABLE_SONGS, new String[]{COLUMN_TITLE},
+                COLUMN_PATH + " = ?", new String[]{path}, null, null, null, "1")) {
+            String title = cursor.moveToFirst() ? cursor.getString(0) : null;
+            return title != null ? title : TitleFormatter.fromPath(path);
+        }
+    }
+
+    /**
+     * Gets the number of songs in the index.
+     *
+     * @return The number of songs.
+     */
+    public int getSongCount() {
+        return (int) DatabaseUtils.queryNumEntries(getReadableDatabase(), TABLE_SONGS);
+    }
+
+    /**
+     * Gets a page of songs from the index, in MediaStore ID order. Pages are
+     * keyed by the last ID of the page before, so each page is a range read
+     * on the primary key however deep into the library it is.
+     *
+     * @param afterId The ID of the last song in the previous page, or -1 for the first page.
+     * @param limit   The maximum number of songs in the page.
+     * @return The songs in the page.
+     */
+    public List<Song> getSongPage(long afterId, int limit) {
+        try (Cursor cursor = getReadableDatabase().query(TABLE_SONGS, SONG_PROJECTION,
+                COLUMN_ID + " > ?", new String[]{String.valueOf(afterId)},
+                null, null, COLUMN_ID, String.valueOf(limit))) {
+            return readSongs(cursor);
+        }
+    }
+
+    /**
+     * Gets the ID of the song at a position in MediaStore ID order. This walks
+     * the rows before the position, so use it only to find the key of a page
+     * that cannot be reached from the page before it.
+     *
+     * @param position The position of the song.
+     * @return The song ID, or -1 if there are not that many songs.
+     */
+    public long getSongIdAt(int position) {
+        try (Cursor cursor = getReadableDatabase().query(TABLE_SONGS, new String[]{COLUMN_ID},
+                null, null, null, null, COLUMN_ID, position + ", 1")) {
+            return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        }
+    }
+
+    /**
+     * Gets songs by ID.
+     *
+     * @param ids   The song IDs.
+     * @param from  The index of the first ID to look up.
+     * @param count The number of IDs to look up.
+     * @return The songs that are in the index, in ID order.
+     */
+    public List<Song> getSongs(long[] ids, int from, int count) {
+        StringBuilder selection = new StringBuilder(COLUMN_ID).append(" IN (");
+        for (int i = from; i < from + count; i++) {
+            selection.append(i == from ? "" : ",").append(ids[i]);
+        }
+        selection.append(')');
+
+        try (Cursor cursor = getReadableDatabase().query(TABLE_SONGS, SONG_PROJECTION,
+                selection.toString(), null, null, null, COLUMN_ID)) {
+            return readSongs(cursor);
+        }
+    }
+
+    /**
+     * Updates the title, artist, album and duration of songs already in the index.
+     *
+     * @param songs The songs with their new values.
+     */
+    public void updateSongTags(List<Song> songs) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try (SQLiteStatement statement = db.compileStatement("UPDATE " + TABLE_SONGS + " SET "
+                + COLUMN_TITLE + " = ?, " + COLUMN_ARTIST + " = ?, " + COLUMN_ALBUM + " = ?, "
+                + COLUMN_DURATION + " = ? WHERE " + COLUMN_ID + " = ?")) {
+            for (Song song : songs) {
+                statement.clearBindings();
+                bindNullable(statement, 1, song.getTitle());
+                bindNullable(statement, 2, song.getArtist());
+                bindNullable(statement, 3, song.getAlbum());
+                statement.bindLong(4, song.getDuration());
+                statement.bindLong(5, song.getId());
+                statement.executeUpdateDelete();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Gets the cached tags of a file if the file has not changed since they were read.
+     *
+     * @param path  The file path.
+     * @param size  The current size of the file in bytes.
+     * @param mtime The current modification time of the file in milliseconds.
+     * @return The cached tags, or null if there are none or the file has changed.
+     */
+    public Id3Tags getTags(String path, long size, long mtime) {
+        try (Cursor cursor = getReadableDatabase().query(TABLE_TAGS,
+                new String[]{COLUMN_SIZE, COLUMN_MTIME, COLUMN_TITLE, COLUMN_ARTIST, COLUMN_ALBUM,
+                        COLUMN_TRACK, COLUMN_DURATION},
+                COLUMN_PATH + " = ?", new String[]{path}, null, null, null)) {
+            if (!cursor.moveToFirst() || cursor.getLong(0) != size || cursor.getLong(1) != mtime) {
+                return null;
+            }
+            return new Id3Tags(cursor.getString(2), cursor.getString(3), cursor.getString(4),
+                    cursor.getInt(5), cursor.getInt(6));
+        }
+    }
+
+    /**
+     * Caches the tags read from a file.
+     *
+     * @param path  The file path.
+     * @param size  The size of the file in bytes when the tags were read.
+     * @param mtime The modification time of the file in milliseconds when the tags were read.
+     * @param tags  The tags read from the file.
+     */
+    public void putTags(String path, long size, long mtime, Id3Tags tags) {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_PATH, path);
+        values.put(COLUMN_SIZE, size);
+        values.put(COLUMN_MTIME, mtime);
+        values.put(COLUMN_TITLE, tags.getTitle());
+        values.put(COLUMN_ARTIST, tags.getArtist());
+        values.put(COLUMN_ALBUM, tags.getAlbum());
+        values.put(COLUMN_TRACK, tags.getTrackNumber());
+        values.put(COLUMN_DURATION, tags.getDurationMs());
+        getWritableDatabase().insertWithOnConflict(TABLE_TAGS, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    /**
+     * Gets the modification time of every file with a stored loudness.
+     *
+     * @return The modification times in milliseconds by file path.
+     */
+    public Map<String, Long> getLoudnessTimes() {
+        Map<String, Long> times = new HashMap<>();
+        try (Cursor cursor = getReadableDatabase().query(TABLE_LOUDNESS, new String[]{COLUMN_PATH, COLUMN_MTIME},
+                null, null, null, null, null)) {
+            while (cursor.moveToNext()) {
+                times.put(cursor.getString(0), cursor.getLong(1));
+            }
+        }
+        return times;
+    }
+
+    /**
+     * Stores the loudness of every track of an album in a single transaction.
+     *
+     * @param album    The key the tracks were grouped by.
+     * @param files    The tracks of the album.
+     * @param tracks   The loudness of each track, null where a file could not be decoded.
+     * @param loudness The loudness of the tracks together, or null if none could be decoded.
+     */
+    public void putLoudness(String album, List<File> files, Loudness[] tracks, Loudness loudness) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try (SQLiteStatement statement = db.compileStatement("INSERT OR REPLACE INTO " + TABLE_LOUDNESS
+                + " VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+            for (int i = 0; i < files.size(); i++) {
+                statement.clearBindings();
+                statement.bindString(1, files.get(i).getPath());
+                statement.bindLong(2, files.get(i).lastModified());
+                statement.bindString(3, album);
+                // Unreadable tracks are stored without loudness so they are not scanned again
+                bindLoudness(statement, 4, tracks[i]);
+                bindLoudness(statement, 6, tracks[i] != null ? loudness : null);
+                statement.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private static void bindLoudness(SQLiteStatement statement, int index, Loudness loudness) {
+        // Silence has no finite loudness, and SQLite has no infinity, so it is stored as null too
+        if (loudness == null || Double.isInfinite(loudness.getIntegrated())) {
+            statement.bindNull(index);
+            statement.bindNull(index + 1);
+        } else {
+            statement.bindDouble(index, loudness.getIntegrated());
+            statement.bindDouble(index + 1, loudness.getPeak());
+        }
+    }
+
+    /**
+     * Gets the album key a file was measured with.
+     *
+     * @param path The file path, or null.
+     * @return The album key, or null if the file has not been measured.
+     */
+    public String getLoudnessAlbum(String path) {
+        if (path == null) {
+            return null;
+        }
+        try (Cursor cursor = getReadableDatabase().query(TABLE_LOUDNESS, new String[]{COLUMN_ALBUM},
+                COLUMN_PATH + " = ?", new String[]{path}, null, null, null)) {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        }
+    }
+
+    /**
+     * Gets the stored loudness of a file or of its album.
+     *
+     * @param path  The file path.
+     * @param album Whether to get the loudness of the file's album rather than of the file.
+     * @return The loudness, or null if it has not been measured or could not be.
+     */
+    public Loudness getLoudness(String path, boolean album) {
+        String[] columns = album
+                ? new String[]{COLUMN_ALBUM_LOUDNESS, COLUMN_ALBUM_PEAK}
+                : new String[]{COLUMN_TRACK_LOUDNESS, COLUMN_TRACK_PEAK};
+        try (Cursor cursor = getReadableDatabase().query(TABLE_LOUDNESS, columns,
+                COLUMN_PATH + " = ?", new String[]{path}, null, null, null)) {
+            if (!cursor.moveToFirst() || cursor.isNull(0)) {
+                return null;
+            }
+            return new Loudness(cursor.getDouble(0), cursor.getDouble(1));
+        }
+    }
+
+    private static List<Song> readSongs(Cursor cursor) {
+        List<Song> songs = new ArrayList<>(cursor.getCount());
+        while (cursor.moveToNext()) {
+            songs.add(new Song(cursor.getLong(0), cursor.getString(1), cursor.getString(2),
+                    cursor.getString(3), cursor.getString(4), cursor.getInt(5)));
+        }
+        return songs;
+    }
+}
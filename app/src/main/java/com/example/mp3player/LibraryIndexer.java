@@ -0,0 +1,360 @@
+package com.example.mp3player;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Singleton Class: Keeps the local library index in sync with MediaStore.
+ * All work runs on a background thread; results are delivered on the main thread.
+ * The cached index is read first, then only rows MediaStore reports as changed
+ * since the last refresh are queried. Changed songs are then tagged from their
+ * ID3 tags, which are cached so each file is only parsed once. Deleted songs are
+ * only looked for when MediaStore has changed and holds fewer of the indexed
+ * rows than the index does.
+ */
+public class LibraryIndexer {
+
+    /**
+     * Receives library updates on the main thread.
+     */
+    public interface Listener {
+        /**
+         * Called when the cached index has been loaded or has changed. On a cold
+         * start this is called after each batch of songs is indexed.
+         */
+        void onLibraryChanged();
+    }
+
+    // Number of rows written to the index per transaction
+    private static final int BATCH_SIZE = 500;
+
+    // Keys for the MediaStore markers stored with the index
+    private static final String META_VERSION = "version_";
+    private static final String META_GENERATION = "generation_";
+    private static final String META_DATE_MODIFIED = "date_modified";
+
+    // Only the columns the index needs
+    private static final String[] PROJECTION = {
+            MediaStore.Audio.Media._ID,
+            MediaStore.Audio.Media.DATA,
+            MediaStore.Audio.Media.TITLE,
+            MediaStore.Audio.Media.ARTIST,
+            MediaStore.Audio.Media.ALBUM,
+            MediaStore.Audio.Media.DURATION,
+            MediaStore.Audio.Media.DATE_MODIFIED
+    };
+
+    private static final String IS_MUSIC = MediaStore.Audio.Media.IS_MUSIC + " != 0";
+
+    private static LibraryIndexer instance;
+
+    private final Context context;
+    private final LibraryDatabase database;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Id3TagCache tagCache;
+
+    private Listener listener;
+
+    // IDs of the songs indexed by the current refresh, waiting to be tagged
+    private long[] changedIds = new long[BATCH_SIZE];
+    private int changedCount;
+
+    /**
+     * Private constructor for Singleton pattern.
+     *
+     * @param context The application context.
+     */
+    private LibraryIndexer(Context context) {
+        this.context = context.getApplicationContext();
+        this.database = LibraryDatabase.getInstance(this.context);
+        this.tagCache = new Id3TagCache(database);
+    }
+
+    /**
+     * Creates an instance of LibraryIndexer if null, else returns the existing instance.
+     *
+     * @param context The context used to access MediaStore.
+     * @return The instance of LibraryIndexer.
+     */
+    public static synchronized LibraryIndexer getInstance(Context context) {
+        if (instance == null) {
+            instance = new LibraryIndexer(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Sets the listener that receives library updates.
+     *
+     * @param listener The listener, or null to stop receiving updates.
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Loads the cached library, then refreshes it from MediaStore in the background.
+     */
+    public void load() {
+        executor.execute(() -> {
+            boolean cached = database.getSongCount() > 0;
+            if (cached) {
+                postLibraryChanged();
+            }
+
+            try {
+                if (refresh(!cached)) {
+                    postLibraryChanged();
+                }
+                if (tagChangedSongs()) {
+                    postLibraryChanged();
+                }
+                // Measure new and changed albums, now their tags are final
+                LoudnessAnalyzer.getInstance(context).scanLibrary();
+            } catch (RuntimeException e) {
+                // A failed refresh leaves the cached index in place
+                Log.e("LibraryIndexer", e.toString());
+            }
+        });
+    }
+
+    /**
+     * Brings the index up to date with MediaStore.
+     *
+     * @param streamBatches Whether to deliver each batch to the listener as it is indexed.
+     * @return Whether the index changed.
+     */
+    private boolean refresh(boolean streamBatches) {
+        changedCount = 0;
+        boolean changed = false;
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            // Deleting a song moves its volume on a generation
+            if (volumesChanged()) {
+                changed = removeDeletedSongs();
+            }
+
+            // Generations are tracked per volume and reset when the volume version changes
+            for (String volume : MediaStore.getExternalVolumeNames(context)) {
+                String version = MediaStore.getVersion(context, volume);
+                long generation = 0;
+                if (version.equals(database.getMeta(META_VERSION + volume, null))) {
+                    generation = Long.parseLong(database.getMeta(META_GENERATION + volume, "0"));
+                }
+                long currentGeneration = MediaStore.getGeneration(context, volume);
+
+                changed |= indexRows(MediaStore.Audio.Media.getContentUri(volume),
+                        IS_MUSIC + " AND " + MediaStore.MediaColumns.GENERATION_MODIFIED + " > ?",
+                        new String[]{Long.toString(generation)}, streamBatches);
+
+                database.putMeta(META_VERSION + volume, version);
+                database.putMeta(META_GENERATION + volume, Long.toString(currentGeneration));
+            }
+        } else {
+            changed = removeDeletedSongs();
+
+            // Without generations, fall back to the newest modification date seen. Files
+            // copied or moved onto the device keep an older date, but are new rows, so
+            // rows added since the last refresh are queried as well.
+            long dateModified = Long.parseLong(database.getMeta(META_DATE_MODIFIED, "0"));
+            long maxId = database.getMaxSongId();
+            long scanStart = System.currentTimeMillis() / 1000;
+
+            changed |= indexRows(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI,
+                    IS_MUSIC + " AND (" + MediaStore.Audio.Media.DATE_MODIFIED + " >= ? OR "
+                            + MediaStore.Audio.Media._ID + " > ?)",
+                    new String[]{Long.toString(dateModified), Long.toString(maxId)}, streamBatches);
+
+            database.putMeta(META_DATE_MODIFIED, Long.toString(scanStart));
+        }
+        return changed;
+    }
+
+    /**
+     * Checks whether any volume has changed since the last refresh.
+     *
+     * @return Whether a volume's version or generation differs from the stored one.
+     */
+    private boolean volumesChanged() {
+        for (String volume : MediaStore.getExternalVolumeNames(context)) {
+            String version = MediaStore.getVersion(context, volume);
+            String generation = Long.toString(MediaStore.getGeneration(context, volume));
+            if (!version.equals(database.getMeta(META_VERSION + volume, null))
+                    || !generation.equals(database.getMeta(META_GENERATION + volume, null))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes songs from the index that are no longer in MediaStore. The IDs are
+     * only compared when MediaStore has fewer rows in the indexed range of IDs
+     * than the index has songs.
+     *
+     * @return Whether any songs were removed.
+     */
+    private boolean removeDeletedSongs() {
+        int indexedCount = database.getSongCount();
+        if (indexedCount == 0) {
+            return false;
+        }
+
+        Set<Long> missing;
+        ContentResolver resolver = context.getContentResolver();
+        try (Cursor cursor = resolver.query(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI,
+                new String[]{MediaStore.Audio.Media._ID},
+                IS_MUSIC + " AND " + MediaStore.Audio.Media._ID + " <= ?",
+                new String[]{Long.toString(database.getMaxSongId())}, null)) {
+            // IDs are never reused, so every indexed song is still there if the counts match
+            if (cursor == null || cursor.getCount() >= indexedCount) {
+                return false;
+            }
+
+            missing = database.getSongIds();
+            while (cursor.moveToNext()) {
+                missing.remove(cursor.getLong(0));
+            }
+        }
+
+        if (missing.isEmpty()) {
+            return false;
+        }
+        database.deleteSongs(missing);
+        LibrarySearch.getInstance(context).removeSongs(missing);
+        return true;
+    }
+
+    /**
+     * Streams rows from MediaStore into the index in batches.
+     *
+     * @return Whether any rows were indexed.
+     */
+    private boolean indexRows(Uri uri, String selection, String[] selectionArgs, boolean streamBatches) {
+        ContentResolver resolver = context.getContentResolver();
+        // Rows arrive in ID order so a cold start fills the list from the top
+        try (Cursor cursor = resolver.query(uri, PROJECTION, selection, selectionArgs,
+                MediaStore.Audio.Media._ID)) {
+            if (cursor == null) {
+                return false;
+            }
+
+            boolean indexed = false;
+            List<Song> batch = new ArrayList<>(BATCH_SIZE);
+            long[] datesModified = new long[BATCH_SIZE];
+            while (cursor.moveToNext()) {
+                datesModified[batch.size()] = cursor.getLong(6);
+                addChangedId(cursor.getLong(0));
+                batch.add(new Song(cursor.getLong(0), cursor.getString(1), cursor.getString(2),
+                        cursor.getString(3), cursor.getString(4), cursor.getInt(5)));
+
+                if (batch.size() == BATCH_SIZE || cursor.isLast()) {
+                    database.putSongs(batch, datesModified);
+                    if (streamBatches) {
+                        postLibraryChanged();
+                    }
+                    batch.clear();
+                    indexed = true;
+                }
+            }
+            return indexed;
+        }
+    }
+
+    private void addChangedId(long id) {
+        if (changedCount == changedIds.length) {
+            changedIds = Arrays.copyOf(changedIds, changedCount * 2);
+        }
+        changedIds[changedCount++] = id;
+    }
+
+    /**
+     * Replaces the MediaStore metadata of the songs indexed by the last refresh
+     * with the values from their ID3 tags.
+     *
+     * @return Whether any songs changed.
+     */
+    private boolean tagChangedSongs() {
+        long start = System.currentTimeMillis();
+        boolean changed = false;
+        List<Song> updated = new ArrayList<>(BATCH_SIZE);
+        List<Song> searchable = new ArrayList<>(BATCH_SIZE);
+        List<String> paths = new ArrayList<>(changedCount);
+        for (int from = 0; from < changedCount; from += BATCH_SIZE) {
+            for (Song song : database.getSongs(changedIds, from, Math.min(BATCH_SIZE, changedCount - from))) {
+                paths.add(song.getPath());
+                Id3Tags tags = tagCache.get(new File(song.getPath()));
+                Song tagged = tags != null ? applyTags(song, tags) : song;
+                if (tagged != song) {
+                    updated.add(tagged);
+                }
+                searchable.add(tagged);
+            }
+
+            // Search finds new and changed songs by their final tags
+            LibrarySearch.getInstance(context).putSongs(searchable);
+            searchable.clear();
+
+            if (!updated.isEmpty()) {
+                database.updateSongTags(updated);
+                updated.clear();
+                changed = true;
+            }
+        }
+
+        if (changedCount > 0) {
+            Log.d("Tag scan", changedCount + " songs in " + (System.currentTimeMillis() - start)
+                    + "ms, " + tagCache.getHitCount() + " cached, " + tagCache.getMissCount() + " parsed");
+            // Summarise new and changed songs now, so the player screen finds their waveforms cached
+            WaveformLoader.getInstance(context).precompute(paths);
+        }
+        changedCount = 0;
+        return changed;
+    }
+
+    /**
+     * Fills in a song's metadata from its tags, keeping MediaStore values the tags lack.
+     *
+     * @return The tagged song, or the same song if nothing changed.
+     */
+    private static Song applyTags(Song song, Id3Tags tags) {
+        String title = tags.getTitle() != null ? tags.getTitle() : song.getTitle();
+        String artist = tags.getArtist() != null ? tags.getArtist() : song.getArtist();
+        String album = tags.getAlbum() != null ? tags.getAlbum() : song.getAlbum();
+        int duration = song.getDuration() > 0 ? song.getDuration() : tags.getDurationMs();
+
+        if (equal(title, song.getTitle()) && equal(artist, song.getArtist())
+                && equal(album, song.getAlbum()) && duration == song.getDuration()) {
+            return song;
+        }
+        return new Song(song.getId(), song.getPath(), title, artist, album, duration);
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private void postLibraryChanged() {
+        handler.post(() -> {
+            if (listener != null) {
+                listener.onLibraryChanged();
+            }
+        });
+    }
+}
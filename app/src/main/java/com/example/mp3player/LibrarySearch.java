@@ -0,0 +1,192 @@
+package com.example.mp3player;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Singleton Class: Searches the library as the user types.
+ * A SearchIndex is built from the library index in the background when the
+ * library is first shown, then kept up to date with the songs LibraryIndexer
+ * adds, changes and removes, rather than being built again. Building, updating
+ * and searching run on one background thread, in order, and only the results
+ * of the latest query are delivered, on the main thread.
+ */
+public class LibrarySearch {
+
+    /**
+     * Receives search results on the main thread.
+     */
+    public interface Callback {
+        /**
+         * Called with the songs matching the latest query.
+         *
+         * @param songs The matching songs, best matches first.
+         */
+        void onResults(List<Song> songs);
+    }
+
+    // Most results returned for a query
+    private static final int MAX_RESULTS = 100;
+
+    // Songs read from the index per query while building
+    private static final int PAGE_SIZE = 500;
+
+    private static LibrarySearch instance;
+
+    private final LibraryDatabase database;
+    private final SearchIndex index = new SearchIndex();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    // Results are written into this on the executor
+    private final long[] results = new long[MAX_RESULTS];
+
+    // Incremented for every query so superseded ones are skipped
+    private final AtomicInteger generation = new AtomicInteger();
+
+    // Whether the index has been built or is queued to be, only touched on the main thread
+    private boolean loaded;
+
+    /**
+     * Private constructor for Singleton pattern.
+     *
+     * @param context The application context.
+     */
+    private LibrarySearch(Context context) {
+        this.database = LibraryDatabase.getInstance(context);
+    }
+
+    /**
+     * Creates an instance of LibrarySearch if null, else returns the existing instance.
+     *
+     * @param context The context used to open the library database.
+     * @return The instance of LibrarySearch.
+     */
+    public static synchronized LibrarySearch getInstance(Context context) {
+        if (instance == null) {
+            instance = new LibrarySearch(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Builds the index from the library index in the background, unless it
+     * has already been built. Call it before LibraryIndexer.load(), so changes
+     * found by the refresh are applied after the build.
+     */
+    public void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+
+        executor.execute(() -> {
+            long start = SystemClock.elapsedRealtime();
+            long lastId = -1;
+            List<Song> page;
+            do {
+                page = database.getSongPage(lastId, PAGE_SIZE);
+                for (Song song : page) {
+                    index.put(song);
+                    lastId = song.getId();
+                }
+            } while (page.size() == PAGE_SIZE);
+            Log.d("LibrarySearch", "Indexed " + index.size() + " songs in "
+                    + (SystemClock.elapsedRealtime() - start) + "ms");
+        });
+    }
+
+    /**
+     * Adds new songs to the index and replaces changed ones. Can be called on any thread.
+     *
+     * @param songs The songs as they are now in the library index.
+     */
+    public void putSongs(List<Song> songs) {
+        List<Song> copy = new ArrayList<>(songs);
+        executor.execute(() -> {
+            for (Song song : copy) {
+                index.put(song);
+            }
+        });
+    }
+
+    /**
+     * Removes songs from the index. Can be called on any thread.
+     *
+     * @param ids The IDs of the songs no longer in the library.
+     */
+    public void removeSongs(Collection<Long> ids) {
+        long[] copy = new long[ids.size()];
+        int i = 0;
+        for (long id : ids) {
+            copy[i++] = id;
+        }
+        executor.execute(() -> {
+            for (long id : copy) {
+                index.remove(id);
+            }
+        });
+    }
+
+    /**
+     * Searches the library in the background. Queries made while this one is
+     * waiting replace it, so a burst of keystrokes is only searched once.
+     *
+     * @param query    The text typed.
+     * @param callback Receives the results on the main thread, unless a newer query was made.
+     */
+    public void search(String query, Callback callback) {
+        final int queryGeneration = generation.incrementAndGet();
+        executor.execute(() -> {
+            if (queryGeneration != generation.get()) {
+                return;
+            }
+            int count = index.search(query, results);
+            List<Song> songs = count > 0 ? rankedSongs(count) : new ArrayList<>();
+
+            handler.post(() -> {
+                if (queryGeneration == generation.get()) {
+                    callback.onResults(songs);
+                }
+            });
+        });
+    }
+
+    /**
+     * Stops any query in flight from delivering its results.
+     */
+    public void cancel() {
+        generation.incrementAndGet();
+    }
+
+    /**
+     * Reads the songs in the results from the library index, in ranked order.
+     */
+    private List<Song> rankedSongs(int count) {
+        Map<Long, Song> byId = new HashMap<>(count * 2);
+        for (Song song : database.getSongs(results, 0, count)) {
+            byId.put(song.getId(), song);
+        }
+        List<Song> songs = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Song song = byId.get(results[i]);
+            // Skip songs removed from the library since the index was updated
+            if (song != null) {
+                songs.add(song);
+            }
+        }
+        return songs;
+    }
+}
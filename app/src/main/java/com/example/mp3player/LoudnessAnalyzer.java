@@ -0,0 +1,215 @@
+package com.example.mp3player;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.PowerManager;
+import android.util.Log;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Singleton Class: Measures the loudness of the library in the background and
+ * works out the gain to play each track at.
+ * Songs are grouped into albums by folder and album name, and albums with a
+ * new or changed file are measured by a LoudnessScanner using half the cores.
+ * Results are stored in the LibraryDatabase, so each album is only measured
+ * once. The scan pauses while the battery is low and not charging, or in
+ * battery saver, and carries on when that changes.
+ */
+public class LoudnessAnalyzer {
+
+    // Battery level below which scanning waits for a charger
+    private static final int LOW_BATTERY_PERCENT = 30;
+
+    // Songs read from the index per query
+    private static final int PAGE_SIZE = 500;
+
+    private static LoudnessAnalyzer instance;
+
+    private final Context context;
+    private final LibraryDatabase database;
+    private final LoudnessScanner scanner;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    // Whether the battery receiver is registered, guarded by this
+    private boolean watchingBattery;
+
+    private final BroadcastReceiver batteryReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (Intent.ACTION_BATTERY_CHANGED.equals(intent.getAction()))
+                onBatteryChanged(intent);
+            else
+                updatePaused();
+        }
+    };
+
+    // Last battery state, only touched on the main thread
+    private boolean batteryLow;
+
+    /**
+     * Private constructor for Singleton pattern.
+     *
+     * @param context The application context.
+     */
+    private LoudnessAnalyzer(Context context) {
+        this.context = context;
+        this.database = LibraryDatabase.getInstance(context);
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        this.scanner = new LoudnessScanner(threads, this::onAlbumMeasured);
+    }
+
+    /**
+     * Creates an instance of LoudnessAnalyzer if null, else returns the existing instance.
+     *
+     * @param context The application context.
+     * @return The instance of LoudnessAnalyzer.
+     */
+    public static synchronized LoudnessAnalyzer getInstance(Context context) {
+        if (instance == null) {
+            instance = new LoudnessAnalyzer(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Queues every album with a file that is new or has changed since it was
+     * measured. Does nothing while an earlier scan is still running.
+     */
+    public void scanLibrary() {
+        executor.execute(() -> {
+            if (scanner.getPendingCount() > 0)
+                return;
+
+            Map<String, Long> measured = database.getLoudnessTimes();
+            Map<String, List<File>> albums = new LinkedHashMap<>();
+            long lastId = -1;
+            List<Song> page;
+            do {
+                page = database.getSongPage(lastId, PAGE_SIZE);
+                for (Song song : page) {
+                    File file = new File(song.getPath());
+                    albums.computeIfAbsent(albumKey(file, song.getAlbum()), key -> new ArrayList<>()).add(file);
+                    lastId = song.getId();
+                }
+            } while (page.size() == PAGE_SIZE);
+
+            int queued = 0;
+            synchronized (this) {
+                for (Map.Entry<String, List<File>> album : albums.entrySet()) {
+                    if (!isMeasured(album.getValue(), measured)) {
+                        scanner.submit(album.getKey(), album.getValue());
+                        queued++;
+                    }
+                }
+                if (queued > 0)
+                    watchBattery(true);
+            }
+            Log.d("LoudnessAnalyzer", "Queued " + queued + " of " + albums.size() + " albums");
+        });
+    }
+
+    /**
+     * Groups songs by folder as well as album name, so albums that share a
+     * name, like greatest hits, are measured apart.
+     */
+    private static String albumKey(File file, String album) {
+        if (album == null)
+            return file.getPath();
+        return file.getParent() + "/" + album;
+    }
+
+    private static boolean isMeasured(List<File> files, Map<String, Long> measured) {
+        for (File file : files) {
+            Long time = measured.get(file.getPath());
+            if (time == null || time != file.lastModified())
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Called on a scanner thread with the loudness of an album.
+     */
+    private void onAlbumMeasured(String album, List<File> files, Loudness[] tracks, Loudness loudness) {
+        try {
+            database.putLoudness(album, files, tracks, loudness);
+        } catch (RuntimeException e) {
+            Log.e("LoudnessAnalyzer", e.toString());
+        }
+        synchronized (this) {
+            if (scanner.getPendingCount() == 0) {
+                Log.d("LoudnessAnalyzer", "Scan finished");
+                watchBattery(false);
+            }
+        }
+    }
+
+    /**
+     * Gets the gain to play a track at. Album gain is used when a neighbouring
+     * track in the queue is from the same album, so the album keeps its own
+     * dynamics, and track gain otherwise. Reads the database, so call it off the
+     * main thread.
+     *
+     * @param path         The file path of the track.
+     * @param previousPath The file path of the track before it in the queue, or null.
+     * @param nextPath     The file path of the track after it in the queue, or null.
+     * @return The gain in dB, 0 if the track has not been measured.
+     */
+    public double getGainDb(String path, String previousPath, String nextPath) {
+        String album = database.getLoudnessAlbum(path);
+        if (album == null)
+            return 0;
+        boolean albumGain = album.equals(database.getLoudnessAlbum(previousPath))
+                || album.equals(database.getLoudnessAlbum(nextPath));
+        Loudness loudness = database.getLoudness(path, albumGain);
+        return loudness != null ? loudness.getGainDb() : 0;
+    }
+
+    /**
+     * Registers for battery changes while albums are queued. The battery
+     * broadcast is sticky, so registering delivers the current state at once.
+     */
+    private void watchBattery(boolean watch) {
+        if (watch == watchingBattery)
+            return;
+        watchingBattery = watch;
+        if (watch) {
+            IntentFilter filter = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
+            filter.addAction(PowerManager.ACTION_POWER_SAVE_MODE_CHANGED);
+            context.registerReceiver(batteryReceiver, filter);
+        } else {
+            context.unregisterReceiver(batteryReceiver);
+            scanner.resume();
+        }
+    }
+
+    private void onBatteryChanged(Intent intent) {
+        int level = intent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        int scale = intent.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+        boolean charging = intent.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+        batteryLow = !charging && level >= 0 && scale > 0 && level * 100 / scale < LOW_BATTERY_PERCENT;
+        updatePaused();
+    }
+
+    private void updatePaused() {
+        PowerManager powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        boolean pause = batteryLow || powerManager.isPowerSaveMode();
+        if (pause == scanner.isPaused())
+            return;
+        if (pause)
+            scanner.pause();
+        else
+            scanner.resume();
+        Log.d("LoudnessAnalyzer", pause ? "Paused for battery" : "Resumed");
+    }
+}
@@ -1,109 +1,746 @@
 package com.example.mp3player;
 
-import android.media.AudioManager;
-import android.media.MediaPlayer;
+import android.os.Build;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.os.Trace;
 import android.util.Log;
 import java.io.IOException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Created by pszmdf on 06/11/16. Modified by pszat on 19/9/23
+ *
+ * Driven from the PlaybackThread. The state only changes along the transitions
+ * in MP3PlayerState, each made by a compare-and-set of an immutable PlayerStatus,
+ * which any thread can read through getStatus() without locking. Transitions and
+ * commands the table does not allow are logged and counted rather than applied.
  */
 public class MP3Player {
 
-    protected MediaPlayer mediaPlayer;
-    protected MP3PlayerState state;
+    protected PlayerEngine engine;
     protected String filePath;
 
-    public enum MP3PlayerState {
-        ERROR,
-        PLAYING,
-        PAUSED,
-        STOPPED
+    // State, track and position anchor, replaced whole on every change
+    private final AtomicReference<PlayerStatus> status = new AtomicReference<>(PlayerStatus.STOPPED);
+
+    // Notified after every status change
+    private final CopyOnWriteArrayList<StatusListener> statusListeners = new CopyOnWriteArrayList<>();
+
+    // Whether playback should start as soon as preparation completes
+    protected boolean playWhenPrepared;
+
+    // Playback speed applied once the player is prepared
+    protected float pendingSpeed = 1;
+
+    // Playback speed last set on the engine
+    protected float appliedSpeed = 1;
+
+    // Speed changes while playing glide over this many steps
+    private static final int RAMP_STEPS = 4;
+    private static final long RAMP_INTERVAL_MS = 30;
+
+    private final Handler handler = new Handler(PlaybackThread.getInstance().getLooper());
+    private final Runnable rampTick = this::rampTick;
+    private float rampFrom;
+    private int rampStep;
+
+    // Time the current load was requested, from SystemClock.elapsedRealtime()
+    protected long requestTime;
+
+    // Request-to-start latency of the last load in milliseconds, -1 if unknown
+    protected long lastStartLatency = -1;
+
+    // Loudness correction applied through the engine volume, as a factor of at most 1
+    protected float gain = 1;
+
+    // Whether the gain is still being looked up, so starting waits for setGain()
+    protected boolean gainPending;
+
+    // Player chained to start when this one completes, or null
+    protected MP3Player nextPlayer;
+
+    // Receives preparation and completion events, may be null
+    protected Listener listener;
+
+    // Frame index of the loaded file for an exact duration, null until built
+    protected Mp3FrameIndex frameIndex;
+
+    // Whether a seek has been sent to the engine and not yet completed
+    protected boolean seekInFlight;
+
+    // Latest seek target waiting for the in-flight seek or preparation to finish, -1 if none
+    protected int pendingSeek = -1;
+    protected boolean pendingSeekExact;
+
+    // Target of the last seek sent to the engine
+    protected int seekTarget;
+
+    // Time the latest seek was requested, from SystemClock.elapsedRealtime()
+    protected long seekRequestTime;
+
+    // Request-to-audible latency of the last seek in milliseconds, -1 if unknown
+    protected long lastSeekLatency = -1;
+
+    // Time the current prepareAsync was issued, from SystemClock.elapsedRealtimeNanos()
+    protected long prepareStartNanos;
+
+    // Last cookie given to an asynchronous prepare trace section, by any player
+    private static int lastTraceCookie;
+
+    // Cookie of this player's open prepare trace section, 0 if none is open
+    private int traceCookie;
+
+    // Creates the engine for each load
+    private static PlayerEngine.Factory engineFactory = MediaPlayerEngine::new;
+
+    private final PlayerEngine.Listener engineListener = new EngineListener();
+
+    /**
+     * Callbacks used to chain players for gapless playback and follow state changes.
+     */
+    public interface Listener {
+        /**
+         * Called when a player has finished preparing.
+         *
+         * @param player The prepared player.
+         */
+        void onPrepared(MP3Player player);
+
+        /**
+         * Called when a player reaches the end of its track.
+         *
+         * @param player The completed player.
+         */
+        void onCompletion(MP3Player player);
+
+        /**
+         * Called when a player fails and moves to the ERROR state.
+         *
+         * @param player The failed player.
+         */
+        void onError(MP3Player player);
+
+        /**
+         * Called when the last requested seek has completed.
+         *
+         * @param player The player that seeked.
+         */
+        void onSeekComplete(MP3Player player);
+    }
+
+    /**
+     * Receives every change to a player's status.
+     */
+    public interface StatusListener {
+        /**
+         * Called on the playback thread after each state transition, and after the
+         * position anchor, speed or duration changes within a state.
+         *
+         * @param player   The player.
+         * @param previous The status before the change.
+         * @param current  The status after the change.
+         */
+        void onStatusChanged(MP3Player player, PlayerStatus previous, PlayerStatus current);
     }
 
     public MP3Player() {
-        this.state = MP3PlayerState.STOPPED;
+    }
+
+    /**
+     * Sets how engines are created for loads from now on. Players that are
+     * already loaded keep their current engine.
+     *
+     * @param factory The engine factory.
+     */
+    public static void setEngineFactory(PlayerEngine.Factory factory) {
+        engineFactory = factory;
     }
 
     public MP3PlayerState getState() {
-        return this.state;
+        return status.get().getState();
+    }
+
+    /**
+     * Gets the state, track and position anchor of the player. Can be called on any thread.
+     *
+     * @return The current status.
+     */
+    public PlayerStatus getStatus() {
+        return status.get();
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
     }
 
-    public void load(String filePath, float speed)
+    public void addStatusListener(StatusListener listener) {
+        statusListeners.addIfAbsent(listener);
+    }
+
+    public void removeStatusListener(StatusListener listener) {
+        statusListeners.remove(listener);
+    }
+
+    /**
+     * Moves to another state, if the transition table allows it.
+     *
+     * @return Whether the player moved.
+     */
+    private boolean moveTo(MP3PlayerState next) {
+        PlayerStatus current;
+        PlayerStatus updated;
+        do {
+            current = status.get();
+            if (!current.getState().canMoveTo(next)) {
+                reject(current.getState() + " -> " + next);
+                return false;
+            }
+            updated = new PlayerStatus(next, filePath, anchor(next));
+        } while (!status.compareAndSet(current, updated));
+        notifyStatusChanged(current, updated);
+        return true;
+    }
+
+    /**
+     * Replaces the status in the same state, after the position anchor, speed
+     * or duration has changed.
+     */
+    private void republish() {
+        PlayerStatus current;
+        PlayerStatus updated;
+        do {
+            current = status.get();
+            updated = new PlayerStatus(current.getState(), filePath, anchor(current.getState()));
+        } while (!status.compareAndSet(current, updated));
+        notifyStatusChanged(current, updated);
+    }
+
+    private void notifyStatusChanged(PlayerStatus previous, PlayerStatus current) {
+        for (StatusListener statusListener : statusListeners) {
+            statusListener.onStatusChanged(this, previous, current);
+        }
+    }
+
+    /**
+     * Reads the position in a state into an anchor, taken now.
+     */
+    private PlaybackPosition anchor(MP3PlayerState state) {
+        return new PlaybackPosition(progressIn(state), SystemClock.elapsedRealtime(), durationIn(state),
+                pendingSpeed, state == MP3PlayerState.PLAYING, filePath);
+    }
+
+    /**
+     * Records a transition or command that is not allowed in the current state.
+     */
+    private void reject(String what) {
+        Log.w("MP3Player", "Illegal in " + getState() + ": " + what);
+        Metrics.getInstance().increment(Metrics.ILLEGAL_TRANSITION);
+    }
+
+    public void load(String filePath, float speed) {
+        load(filePath, speed, SystemClock.elapsedRealtime());
+    }
+
+    /**
+     * Loads a file without blocking the calling thread. Playback starts once the
+     * engine has finished preparing, unless paused in the meantime.
+     *
+     * @param filePath    The file path of the audio file.
+     * @param speed       The playback speed.
+     * @param requestTime When the user asked for the track, from SystemClock.elapsedRealtime().
+     */
+    public void load(String filePath, float speed, long requestTime)
     {
+        prepare(filePath, speed, requestTime, true);
+    }
+
+    /**
+     * Prepares a file in the background without starting playback, so it can be
+     * chained behind another player or started later with play().
+     *
+     * @param filePath The file path of the audio file.
+     * @param speed    The playback speed.
+     */
+    public void preload(String filePath, float speed) {
+        prepare(filePath, speed, 0, false);
+    }
+
+    private void prepare(String filePath, float speed, long requestTime, boolean playWhenPrepared) {
+        Trace.beginSection("MP3Player.load");
+        try {
+            prepareTraced(filePath, speed, requestTime, playWhenPrepared);
+        } finally {
+            Trace.endSection();
+        }
+    }
+
+    private void prepareTraced(String filePath, float speed, long requestTime, boolean playWhenPrepared) {
+        long start = SystemClock.elapsedRealtimeNanos();
+        Metrics.getInstance().increment(Metrics.LOAD);
+
+        // Release any player left over from a previous load
+        stop();
+
         this.filePath = filePath;
-        mediaPlayer = new MediaPlayer();
-        mediaPlayer.setAudioStreamType(AudioManager.STREAM_MUSIC);
+        this.frameIndex = null;
+        this.gain = 1;
+        this.gainPending = false;
+        this.requestTime = requestTime;
+        speed = PlaybackSpeeds.snap(speed);
+        this.pendingSpeed = speed;
+        this.playWhenPrepared = playWhenPrepared;
+        this.pendingSeek = -1;
+        this.seekInFlight = false;
 
-        try{
-            mediaPlayer.setDataSource(filePath);
-            mediaPlayer.setPlaybackParams(mediaPlayer.getPlaybackParams().setSpeed(speed));
+        engine = engineFactory.create();
+        engine.setListener(engineListener);
 
-            mediaPlayer.prepare();
+        try{
+            engine.setDataSource(filePath);
+            // Setting the speed before preparing does not start playback,
+            // so a chained player starts at the right speed
+            engine.setSpeed(speed);
+            appliedSpeed = speed;
+            // Pooled engines may still have the previous track's gain
+            engine.setVolume(gain);
         } catch (IOException e) {
             Log.e("MP3Player", e.toString());
             e.printStackTrace();
-            this.state = MP3PlayerState.ERROR;
+            Metrics.getInstance().increment(Metrics.LOAD_ERROR);
+            moveTo(MP3PlayerState.ERROR);
             return;
-        } catch (IllegalArgumentException e) {
-            Log.e("MP3Player", e.toString());
-            e.printStackTrace();
-            this.state = MP3PlayerState.ERROR;
+        }
+
+        moveTo(MP3PlayerState.PREPARING);
+        prepareStartNanos = SystemClock.elapsedRealtimeNanos();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q)
+            Trace.beginAsyncSection("MP3Player.prepare", traceCookie = ++lastTraceCookie);
+        engine.prepareAsync();
+        // Time the calling thread spent in load, which should stay well under a frame
+        Metrics.getInstance().record(Metrics.PREPARE_BLOCKING, (SystemClock.elapsedRealtimeNanos() - start) / 1000);
+    }
+
+    /**
+     * Closes the prepare trace section, if open. Called whenever the player leaves
+     * PREPARING: prepared, failed, stopped or reloaded.
+     */
+    private void endPrepareTrace() {
+        if (traceCookie != 0 && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q)
+            Trace.endAsyncSection("MP3Player.prepare", traceCookie);
+        traceCookie = 0;
+    }
+
+    /**
+     * Forwards engine events to the player, ignoring those from an engine that
+     * has since been replaced.
+     */
+    private class EngineListener implements PlayerEngine.Listener {
+        @Override
+        public void onPrepared(PlayerEngine source) {
+            if (source == engine)
+                MP3Player.this.onPrepared();
+        }
+
+        @Override
+        public void onCompletion(PlayerEngine source) {
+            if (source == engine)
+                MP3Player.this.onCompletion();
+        }
+
+        @Override
+        public void onSeekComplete(PlayerEngine source) {
+            if (source == engine)
+                MP3Player.this.onSeekComplete();
+        }
+
+        @Override
+        public void onError(PlayerEngine source, int what, int extra) {
+            if (source == engine)
+                MP3Player.this.onError(what, extra);
+        }
+    }
+
+    /**
+     * Called by the engine once asynchronous preparation has completed.
+     * Applies any commands that were issued while preparing.
+     */
+    private void onPrepared() {
+        if (getState() != MP3PlayerState.PREPARING)
             return;
+
+        endPrepareTrace();
+        Metrics.getInstance().record(Metrics.PREPARE, (SystemClock.elapsedRealtimeNanos() - prepareStartNanos) / 1000);
+
+        moveTo(MP3PlayerState.PREPARED);
+        // Seek requested while preparing, before any audio is heard
+        if (pendingSeek >= 0) {
+            int target = pendingSeek;
+            pendingSeek = -1;
+            sendSeek(target, pendingSeekExact);
         }
+        if (playWhenPrepared && !gainPending)
+            start();
+        if (listener != null)
+            listener.onPrepared(this);
+    }
 
-        this.state = MP3PlayerState.PLAYING;
-        mediaPlayer.start();
+    /**
+     * Called by the engine when the end of the track is reached.
+     */
+    private void onCompletion() {
+        // Starting again from the completed state replays the track from the beginning
+        if (nextPlayer == null && getState() == MP3PlayerState.PLAYING)
+            moveTo(MP3PlayerState.PAUSED);
+        if (listener != null)
+            listener.onCompletion(this);
     }
 
+    /**
+     * Called by the engine when a seek has completed. Sends the latest
+     * target requested in the meantime, if any, so drags only ever have one
+     * seek in flight.
+     */
+    private void onSeekComplete() {
+        seekInFlight = false;
+        if (pendingSeek >= 0) {
+            int target = pendingSeek;
+            pendingSeek = -1;
+            sendSeek(target, pendingSeekExact);
+            return;
+        }
+
+        lastSeekLatency = SystemClock.elapsedRealtime() - seekRequestTime;
+        Metrics.getInstance().record(Metrics.SEEK, lastSeekLatency * 1000);
+        Log.d("MP3Player", "Seek to audible latency: " + lastSeekLatency + "ms");
+        republish();
+        if (listener != null)
+            listener.onSeekComplete(this);
+    }
+
+    /**
+     * Called by the engine when it fails. The engine is released on the next load or stop.
+     */
+    private void onError(int what, int extra) {
+        Log.e("MP3Player", "Engine error " + what + ", " + extra);
+        MP3PlayerState state = getState();
+        if (state == MP3PlayerState.PREPARING)
+            endPrepareTrace();
+        Metrics.getInstance().increment(Metrics.LOAD_ERROR);
+        if (state != MP3PlayerState.ERROR)
+            moveTo(MP3PlayerState.ERROR);
+        if (listener != null)
+            listener.onError(this);
+    }
+
+    /**
+     * Seeks to a position. While a seek is in flight only the latest target is
+     * kept and sent once it completes. Seeks made while preparing are applied
+     * before playback starts.
+     *
+     * @param position The position in milliseconds.
+     * @param exact    Whether to seek to the exact frame rather than the nearest sync point,
+     *                 which is faster while the user is still dragging.
+     */
+    public void seekTo(int position, boolean exact) {
+        seekRequestTime = SystemClock.elapsedRealtime();
+        MP3PlayerState state = getState();
+        if (state == MP3PlayerState.PREPARING || seekInFlight) {
+            if (pendingSeek >= 0)
+                Metrics.getInstance().increment(Metrics.SEEK_COALESCED);
+            pendingSeek = position;
+            pendingSeekExact = exact;
+        } else if (state == MP3PlayerState.PREPARED || state == MP3PlayerState.PLAYING
+                || state == MP3PlayerState.PAUSED) {
+            sendSeek(position, exact);
+        } else {
+            reject("seekTo");
+        }
+    }
+
+    private void sendSeek(int position, boolean exact) {
+        // Land exact seeks on a frame boundary from the index when it is built
+        if (exact && frameIndex != null && frameIndex.getFrameCount() > 0)
+            position = (int) frameIndex.getTimeForFrame(frameIndex.getFrameForTime(position));
+
+        seekInFlight = true;
+        seekTarget = position;
+        Trace.beginSection("MP3Player.seek");
+        try {
+            engine.seekTo(position, exact);
+        } finally {
+            Trace.endSection();
+        }
+    }
+
+    /**
+     * Gets how long the last seek took from request to completion.
+     *
+     * @return The latency in milliseconds, or -1 if no seek has completed.
+     */
+    public long getLastSeekLatency() {
+        return this.lastSeekLatency;
+    }
+
+    /**
+     * Chains a prepared player to start as soon as this one completes, without a gap.
+     *
+     * @param next A player in the PREPARED state, or null to remove the chained player.
+     * @return Whether the player was chained, false if the engine cannot chain.
+     */
+    public boolean setNextPlayer(MP3Player next) {
+        if (engine == null || getState() == MP3PlayerState.ERROR
+                || getState() == MP3PlayerState.PREPARING)
+            return false;
+        if (next != null && next.getState() != MP3PlayerState.PREPARED)
+            return false;
+
+        if (!engine.setNextEngine(next != null ? next.engine : null))
+            return false;
+        this.nextPlayer = next;
+        return true;
+    }
+
+    /**
+     * Gets the player chained to start after this one.
+     *
+     * @return The chained player, or null if none.
+     */
+    public MP3Player getNextPlayer() {
+        return this.nextPlayer;
+    }
+
+    /**
+     * Marks a chained player as playing after the engine started it automatically.
+     */
+    public void onStartedAsNext() {
+        if (getState() != MP3PlayerState.PREPARED)
+            return;
+        // Pick up any speed change made while this player was waiting
+        applySpeed(pendingSpeed);
+        moveTo(MP3PlayerState.PLAYING);
+    }
+
+    /**
+     * Starts a prepared player with the pending playback speed.
+     */
+    private void start() {
+        Trace.beginSection("MP3Player.start");
+        long start = SystemClock.elapsedRealtimeNanos();
+        try {
+            applySpeed(pendingSpeed);
+            engine.start();
+        } finally {
+            Trace.endSection();
+        }
+        Metrics.getInstance().record(Metrics.START, (SystemClock.elapsedRealtimeNanos() - start) / 1000);
+        moveTo(MP3PlayerState.PLAYING);
+
+        if (requestTime > 0) {
+            lastStartLatency = SystemClock.elapsedRealtime() - requestTime;
+            requestTime = 0;
+            Metrics.getInstance().record(Metrics.REQUEST_TO_START, lastStartLatency * 1000);
+            Log.d("MP3Player", "Request to start latency: " + lastStartLatency + "ms");
+        }
+    }
 
     public String getFilePath() {
         return this.filePath;
     }
 
     public int getProgress() {
-        if(mediaPlayer!=null) {
-            if(this.state == MP3PlayerState.PAUSED || this.state == MP3PlayerState.PLAYING)
-                return mediaPlayer.getCurrentPosition();
+        return progressIn(getState());
+    }
+
+    private int progressIn(MP3PlayerState state) {
+        if(engine!=null) {
+            if(state == MP3PlayerState.PAUSED || state == MP3PlayerState.PLAYING) {
+                // Report where the player is heading rather than where it was
+                if(pendingSeek >= 0)
+                    return pendingSeek;
+                if(seekInFlight)
+                    return seekTarget;
+                return engine.getCurrentPosition();
+            }
         }
         return 0;
     }
 
     public int getDuration() {
-        if(mediaPlayer!=null)
-            if(this.state == MP3PlayerState.PAUSED || this.state == MP3PlayerState.PLAYING)
-                return mediaPlayer.getDuration();
+        return durationIn(getState());
+    }
+
+    private int durationIn(MP3PlayerState state) {
+        // Engines only estimate the duration of VBR files, prefer the frame index
+        if(frameIndex!=null && state != MP3PlayerState.STOPPED && state != MP3PlayerState.ERROR)
+            return frameIndex.getDurationMs();
+        if(engine!=null)
+            if(state == MP3PlayerState.PREPARED || state == MP3PlayerState.PAUSED
+                    || state == MP3PlayerState.PLAYING)
+                return engine.getDuration();
         return 0;
     }
 
+    /**
+     * Sets the frame index of the loaded file, once built in the background.
+     *
+     * @param frameIndex The frame index of the file at getFilePath().
+     */
+    public void setFrameIndex(Mp3FrameIndex frameIndex) {
+        this.frameIndex = frameIndex;
+        // The duration from the index replaces the engine's estimate
+        republish();
+    }
+
+    public Mp3FrameIndex getFrameIndex() {
+        return this.frameIndex;
+    }
+
+    /**
+     * Sets the loudness correction of the loaded file, once looked up in the
+     * background. The engine volume cannot go above full scale, so gains above
+     * 0dB play at 0dB.
+     *
+     * @param gainDb The gain in dB.
+     */
+    public void setGain(double gainDb) {
+        this.gain = (float) Math.min(1, Math.pow(10, gainDb / 20));
+        if (engine != null)
+            engine.setVolume(gain);
+        if (gainPending) {
+            gainPending = false;
+            // Playback asked for while the gain was being looked up
+            if (getState() == MP3PlayerState.PREPARED && playWhenPrepared)
+                start();
+        }
+    }
+
+    /**
+     * Holds playback of the loaded file until setGain() is called, so the
+     * first audio is heard at the corrected level. Call it straight after
+     * loading, before the gain is looked up.
+     */
+    public void awaitGain() {
+        this.gainPending = true;
+    }
+
+    /**
+     * Gets whether playback is held until the gain of the loaded file is set.
+     *
+     * @return True if the gain is still being looked up.
+     */
+    public boolean isGainPending() {
+        return this.gainPending;
+    }
+
+    /**
+     * Gets how long the last load took from request to playback starting.
+     *
+     * @return The latency in milliseconds, or -1 if playback has not started yet.
+     */
+    public long getLastStartLatency() {
+        return this.lastStartLatency;
+    }
+
     public void play() {
-        if(this.state == MP3PlayerState.PAUSED) {
-            mediaPlayer.start();
-            this.state = MP3PlayerState.PLAYING;
+        MP3PlayerState state = getState();
+        if(state == MP3PlayerState.PREPARING) {
+            playWhenPrepared = true;
+        } else if(state == MP3PlayerState.PREPARED) {
+            if (gainPending)
+                playWhenPrepared = true;
+            else
+                start();
+        } else if(state == MP3PlayerState.PAUSED) {
+            engine.start();
+            // Speed changes made while paused were deferred until now
+            applySpeed(pendingSpeed);
+            moveTo(MP3PlayerState.PLAYING);
+        } else if(state != MP3PlayerState.PLAYING) {
+            reject("play");
         }
     }
 
     public void pause() {
-        if(this.state == MP3PlayerState.PLAYING) {
-            mediaPlayer.pause();
-            state = MP3PlayerState.PAUSED;
+        MP3PlayerState state = getState();
+        if(state == MP3PlayerState.PREPARING || state == MP3PlayerState.PREPARED) {
+            playWhenPrepared = false;
+        } else if(state == MP3PlayerState.PLAYING) {
+            handler.removeCallbacks(rampTick);
+            engine.pause();
+            moveTo(MP3PlayerState.PAUSED);
+        } else if(state == MP3PlayerState.STOPPED || state == MP3PlayerState.ERROR) {
+            reject("pause");
         }
     }
 
     public void stop() {
-        if(mediaPlayer!=null) {
-            if(mediaPlayer.isPlaying())
-                mediaPlayer.stop();
-            state = MP3PlayerState.STOPPED;
-            mediaPlayer.reset();
-            mediaPlayer.release();
-            mediaPlayer = null;
+        handler.removeCallbacks(rampTick);
+        nextPlayer = null;
+        pendingSeek = -1;
+        seekInFlight = false;
+        // Preparation abandoned by a stop or a reload never reaches onPrepared
+        endPrepareTrace();
+        if(getState() != MP3PlayerState.STOPPED)
+            moveTo(MP3PlayerState.STOPPED);
+        if(engine!=null) {
+            engine.release();
+            engine = null;
         }
     }
 
+    /**
+     * Changes the playback speed, snapped to the offered speeds. While playing,
+     * the speed glides to the new value over a few steps. In every other state
+     * the speed is applied when playback starts or resumes, because setting it
+     * on a paused MediaPlayer engine starts playback. Unchanged speeds are ignored.
+     *
+     * @param speed The playback speed.
+     */
     public void setPlaybackSpeed(float speed) {
-        if (mediaPlayer != null) {
-            mediaPlayer.setPlaybackParams(mediaPlayer.getPlaybackParams().setSpeed(speed));
+        speed = PlaybackSpeeds.snap(speed);
+        if (speed == pendingSpeed)
+            return;
+        pendingSpeed = speed;
+
+        if (getState() == MP3PlayerState.PLAYING) {
+            handler.removeCallbacks(rampTick);
+            rampFrom = appliedSpeed;
+            rampStep = 0;
+            rampTick();
+        }
+        republish();
+    }
+
+    /**
+     * Applies the next step of a speed ramp and schedules the one after.
+     */
+    private void rampTick() {
+        if (getState() != MP3PlayerState.PLAYING)
+            return;
+        rampStep++;
+        applySpeed(PlaybackSpeeds.ramp(rampFrom, pendingSpeed, rampStep, RAMP_STEPS));
+        if (rampStep < RAMP_STEPS)
+            handler.postDelayed(rampTick, RAMP_INTERVAL_MS);
+    }
+
+    /**
+     * Sets the speed on the engine, keeping the pitch unchanged.
+     * Only call when the player is about to play or is playing.
+     */
+    private void applySpeed(float speed) {
+        if (speed == appliedSpeed)
+            return;
+
+        Trace.beginSection("MP3Player.setPlaybackSpeed");
+        long start = SystemClock.elapsedRealtimeNanos();
+        try {
+            engine.setSpeed(speed);
+            appliedSpeed = speed;
+        } finally {
+            Trace.endSection();
         }
+        Metrics.getInstance().record(Metrics.SPEED_CHANGE, (SystemClock.elapsedRealtimeNanos() - start) / 1000);
     }
-}
\ No newline at end of file
+}
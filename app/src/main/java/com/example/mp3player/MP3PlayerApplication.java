@@ -0,0 +1,25 @@
+package com.example.mp3player;
+
+import android.app.ActivityManager;
+import android.app.Application;
+
+/**
+ * Application for the MP3 Player App. Starts the background startup work as soon
+ * as the process starts, before any activity or service is created.
+ */
+public class MP3PlayerApplication extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        StartupTrace.section("application", () -> {
+            // A process started to show an activity is already in the foreground
+            ActivityManager.RunningAppProcessInfo processInfo = new ActivityManager.RunningAppProcessInfo();
+            ActivityManager.getMyMemoryState(processInfo);
+            StartupTrace.onProcessStart(
+                    processInfo.importance == ActivityManager.RunningAppProcessInfo.IMPORTANCE_FOREGROUND);
+
+            StartupInitializers.start(this);
+        });
+    }
+}
@@ -1,33 +1,133 @@
 package com.example.mp3player;
 
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 /**
  * Wrapper class for MP3Player class.
+ * Holds the playback queue and prepares the next track in the background so
+ * track boundaries play without a gap. The queue holds song IDs, whose files
+ * are looked up in the library as they are needed, and is logged to disk so
+ * it survives process death. Where playback got to is saved as well, and on
+ * the next launch the last track is prepared at that position, so playing it
+ * again carries on at once. Long tracks also carry on from their own bookmark
+ * whenever they are loaded.
+ * <p>
+ * Every method except getStatus() must be called on the PlaybackThread, and
+ * the state listener is called on it too, after every change to the current
+ * player's status.
  */
-public class MP3PlayerWrapper {
+public class MP3PlayerWrapper implements MP3Player.Listener {
+
+    // Instance of the MP3Player for the current track, read by getStatus() on any thread.
+    private volatile MP3Player mp3Player;
+
+    // Player preparing or holding the next track in the queue, or null.
+    private MP3Player nextPlayer;
+
+    // Song IDs of the tracks in the playback queue.
+    private PlayQueue queue = new PlayQueue();
+
+    // Logs queue changes to disk, null until set by the service.
+    private PlayQueueJournal queueJournal;
+
+    // Whether the queue was replaced while the logged one was being restored.
+    private boolean queueReplaced;
+
+    // Slot in the queue of the track held by nextPlayer.
+    private int nextSlot = PlayQueue.NONE;
+
+    // Incremented whenever the next track changes, so stale lookups are dropped.
+    private int prepareGeneration;
+
+    // Finds the files of queued songs, null until set by the service.
+    private LibraryDatabase library;
+
+    // Saves playback snapshots and bookmarks, null until restoreSnapshot() is called.
+    private PlaybackSnapshotStore snapshotStore;
+
+    // File of the track prepared from the last snapshot, until another is loaded.
+    private String restoredPath;
+
+    // Playback speed used for tracks loaded from the queue.
+    private float playbackSpeed = 1;
+
+    // Notified whenever the playback state of the current track changes.
+    private StateListener stateListener;
+
+    // Forwards status changes of the current player, but not of the next one.
+    private final MP3Player.StatusListener statusListener = (player, previous, current) -> {
+        if (player == mp3Player)
+            notifyStateChanged();
+    };
+
+    // Cache of MP3 frame indexes, null until set by the service.
+    private Mp3FrameIndexCache frameIndexCache;
+
+    // Looks up the gain of each track, null until set by the service.
+    private LoudnessAnalyzer loudnessAnalyzer;
 
-    // Singleton instance of the MP3PlayerWrapper.
-    private static MP3PlayerWrapper instance;
+    // Builds frame indexes and looks up gains off the main thread.
+    private final ExecutorService indexExecutor = Executors.newSingleThreadExecutor();
 
-    // Instance of the underlying MP3Player.
-    private final MP3Player mp3Player;
+    // Looks up queued files and writes the queue log and snapshots, kept apart so neither waits on indexing.
+    private final ExecutorService queueExecutor = Executors.newSingleThreadExecutor();
+    private final Handler handler = new Handler(PlaybackThread.getInstance().getLooper());
+
+    /**
+     * Listener for changes to the playback state, position jumps and track changes.
+     */
+    public interface StateListener {
+        /**
+         * Called after the playback state of the current track changes.
+         */
+        void onPlaybackStateChanged();
+    }
+
+    /**
+     * Holds the singleton instance, created when getInstance() is first called.
+     * Class initialisation makes it safe without locking on every call.
+     */
+    private static class Holder {
+        static final MP3PlayerWrapper INSTANCE = new MP3PlayerWrapper();
+    }
 
     /**
      * Private constructor for Singleton pattern.
      */
     private MP3PlayerWrapper() {
         this.mp3Player = new MP3Player();
+        this.mp3Player.setListener(this);
+        this.mp3Player.addStatusListener(statusListener);
     }
 
     /**
-     * Creates an instance of MP3PlayerWrapper if null, else returns the existing instance.
+     * Returns the instance of MP3PlayerWrapper, creating it on first use.
      *
      * @return The instance of MP3PlayerWrapper.
      */
-    public static synchronized MP3PlayerWrapper getInstance() {
-        if (instance == null) {
-            instance = new MP3PlayerWrapper();
-        }
-        return instance;
+    public static MP3PlayerWrapper getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Sets the listener notified of playback state changes.
+     *
+     * @param stateListener The listener, or null to remove it.
+     */
+    public void setStateListener(StateListener stateListener) {
+        this.stateListener = stateListener;
+    }
+
+    private void notifyStateChanged() {
+        if (stateListener != null)
+            stateListener.onPlaybackStateChanged();
     }
 
     /**
@@ -44,7 +144,339 @@ public class MP3PlayerWrapper {
      * @param playbackSpeed  The playback speed.
      */
     public void load(String filePath, float playbackSpeed) {
-        mp3Player.load(filePath, playbackSpeed);
+        load(filePath, playbackSpeed, SystemClock.elapsedRealtime());
+    }
+
+    /**
+     * Wrapper method for loading an audio file using MP3Player, recording when it was requested.
+     *
+     * @param filePath       The file path of the audio file.
+     * @param playbackSpeed  The playback speed.
+     * @param requestTime    When the track was requested, from SystemClock.elapsedRealtime().
+     */
+    public void load(String filePath, float playbackSpeed, long requestTime) {
+        // The track restored from the last snapshot is already prepared where it was left
+        if (filePath.equals(restoredPath) && filePath.equals(mp3Player.getFilePath())
+                && mp3Player.getState() != MP3PlayerState.STOPPED && mp3Player.getState() != MP3PlayerState.ERROR) {
+            restoredPath = null;
+            setPlaybackSpeed(playbackSpeed);
+            mp3Player.play();
+            return;
+        }
+        restoredPath = null;
+
+        cancelNext();
+        this.playbackSpeed = playbackSpeed;
+
+        mp3Player.load(filePath, playbackSpeed, requestTime);
+        // Long tracks carry on from their bookmark, seeking before any audio is heard
+        int bookmark = snapshotStore != null ? snapshotStore.getBookmark(filePath) : -1;
+        if (bookmark > 0)
+            mp3Player.seekTo(bookmark, true);
+        loadTrackInfo(mp3Player, filePath, queue.getCurrent());
+        prepareNext();
+    }
+
+    /**
+     * Sets the cache used to index loaded files for exact durations.
+     *
+     * @param frameIndexCache The frame index cache.
+     */
+    public void setFrameIndexCache(Mp3FrameIndexCache frameIndexCache) {
+        this.frameIndexCache = frameIndexCache;
+    }
+
+    /**
+     * Sets the analyzer used to look up the gain of loaded files.
+     *
+     * @param loudnessAnalyzer The loudness analyzer.
+     */
+    public void setLoudnessAnalyzer(LoudnessAnalyzer loudnessAnalyzer) {
+        this.loudnessAnalyzer = loudnessAnalyzer;
+    }
+
+    /**
+     * Sets the library used to find the files of queued songs.
+     *
+     * @param library The library database.
+     */
+    public void setLibraryDatabase(LibraryDatabase library) {
+        this.library = library;
+    }
+
+    /**
+     * Restores the queue logged to a file in the background, then logs every
+     * change to it. Only the first call has any effect.
+     *
+     * @param file The queue log.
+     */
+    public void restoreQueue(File file) {
+        if (queueJournal != null)
+            return;
+        PlayQueueJournal journal = new PlayQueueJournal(file, queueExecutor);
+        queueJournal = journal;
+        queueExecutor.execute(() -> {
+            PlayQueue restored = journal.restore();
+            handler.post(() -> {
+                // A queue set while restoring is newer, so it replaces the logged one
+                if (!queueReplaced) {
+                    queue = restored;
+                    prepareNext();
+                }
+                journal.attach(queue);
+            });
+        });
+    }
+
+    /**
+     * Reads the last playback snapshot and the bookmarks in the background,
+     * then prepares the last track at its saved position unless something has
+     * been loaded meanwhile. Playback does not start until the track is played
+     * or loaded again. Only the first call has any effect.
+     *
+     * @param directory The directory holding the snapshot and bookmark files.
+     */
+    public void restoreSnapshot(File directory) {
+        if (snapshotStore != null)
+            return;
+        PlaybackSnapshotStore store = new PlaybackSnapshotStore(new File(directory, "playback.snapshot"),
+                new File(directory, "bookmarks"), queueExecutor);
+        snapshotStore = store;
+        queueExecutor.execute(() -> {
+            PlaybackSnapshot snapshot = store.restore();
+            if (snapshot == null || !new File(snapshot.getFilePath()).isFile())
+                return;
+            handler.post(() -> {
+                if (mp3Player.getFilePath() != null)
+                    return;
+                restoredPath = snapshot.getFilePath();
+                playbackSpeed = PlaybackSpeeds.snap(snapshot.getSpeed());
+                mp3Player.preload(restoredPath, playbackSpeed);
+                mp3Player.seekTo(snapshot.getPosition(), true);
+                loadTrackInfo(mp3Player, restoredPath, queue.getCurrent());
+                prepareNext();
+            });
+        });
+    }
+
+    /**
+     * Saves where the current track is up to, writing it in the background.
+     * Does nothing unless the track is playing or paused.
+     */
+    public void saveSnapshot() {
+        MP3PlayerState state = mp3Player.getState();
+        if (snapshotStore == null || (state != MP3PlayerState.PLAYING && state != MP3PlayerState.PAUSED))
+            return;
+        snapshotStore.save(new PlaybackSnapshot(mp3Player.getFilePath(), mp3Player.getProgress(),
+                mp3Player.getDuration(), playbackSpeed, System.currentTimeMillis()));
+    }
+
+    /**
+     * Gets the gain and frame index of a file in the background and hands them
+     * to the player if it still has that file loaded. The player holds playback
+     * until the gain arrives, so the gain is looked up first as it is quick.
+     *
+     * @param slot The file's slot in the queue, whose neighbours decide between
+     *             album and track gain, or PlayQueue.NONE.
+     */
+    private void loadTrackInfo(MP3Player player, String filePath, int slot) {
+        long id = slot != PlayQueue.NONE ? queue.getId(slot) : -1;
+        long previousId = idAt(slot != PlayQueue.NONE ? queue.previous(slot) : PlayQueue.NONE);
+        long nextId = idAt(slot != PlayQueue.NONE ? queue.next(slot) : PlayQueue.NONE);
+        LibraryDatabase library = this.library;
+        LoudnessAnalyzer analyzer = loudnessAnalyzer;
+        Mp3FrameIndexCache cache = frameIndexCache;
+        if (analyzer == null && cache == null)
+            return;
+        if (analyzer != null)
+            player.awaitGain();
+
+        indexExecutor.execute(() -> {
+            if (analyzer != null) {
+                double gain;
+                try {
+                    // Neighbours only count if the queue entry is the loaded file
+                    String previousPath = null;
+                    String nextPath = null;
+                    if (library != null && id >= 0 && filePath.equals(library.getSongPath(id))) {
+                        previousPath = previousId >= 0 ? library.getSongPath(previousId) : null;
+                        nextPath = nextId >= 0 ? library.getSongPath(nextId) : null;
+                    }
+                    gain = analyzer.getGainDb(filePath, previousPath, nextPath);
+                } catch (RuntimeException e) {
+                    Log.w("MP3PlayerWrapper", e.toString());
+                    gain = 0;
+                }
+                double gainDb = gain;
+                handler.post(() -> {
+                    if (!filePath.equals(player.getFilePath()))
+                        return;
+                    player.setGain(gainDb);
+                    // A prepared next track is chained once it has its gain
+                    if (player == nextPlayer)
+                        chainNext();
+                });
+            }
+            if (cache == null)
+                return;
+
+            Mp3FrameIndex index;
+            try {
+                index = cache.get(new File(filePath));
+            } catch (IOException e) {
+                Log.w("MP3PlayerWrapper", e.toString());
+                return;
+            }
+            handler.post(() -> {
+                if (filePath.equals(player.getFilePath()))
+                    player.setFrameIndex(index);
+            });
+        });
+    }
+
+    private long idAt(int slot) {
+        return slot != PlayQueue.NONE ? queue.getId(slot) : -1;
+    }
+
+    /**
+     * Replaces the playback queue. The current track keeps playing, but any
+     * track being prepared for the old queue is cancelled.
+     *
+     * @param songIds The song IDs of the tracks to queue, in play order.
+     * @param index   The position in the queue of the track that is or will be playing.
+     */
+    public void setQueue(long[] songIds, int index) {
+        cancelNext();
+        queue.replace(songIds, index);
+        queueReplaced = true;
+
+        // Pre-buffer the track after the current one if it is already loaded
+        prepareNext();
+    }
+
+    /**
+     * Looks up the files of the current and next queue entries in the background,
+     * then starts preparing the next track in a second player. The queue is only
+     * followed while its current entry is the loaded file.
+     */
+    private void prepareNext() {
+        int generation = ++prepareGeneration;
+        int current = queue.getCurrent();
+        LibraryDatabase library = this.library;
+        if (current == PlayQueue.NONE || library == null)
+            return;
+        int next = queue.next(current);
+        if (next == PlayQueue.NONE)
+            return;
+
+        long currentId = queue.getId(current);
+        long nextId = queue.getId(next);
+        queueExecutor.execute(() -> {
+            String currentPath = library.getSongPath(currentId);
+            String nextPath = library.getSongPath(nextId);
+            handler.post(() -> {
+                if (generation != prepareGeneration || nextPath == null || currentPath == null
+                        || !currentPath.equals(mp3Player.getFilePath())
+                        || mp3Player.getState() == MP3PlayerState.STOPPED)
+                    return;
+
+                nextPlayer = new MP3Player();
+                nextPlayer.setListener(this);
+                nextPlayer.addStatusListener(statusListener);
+                nextPlayer.preload(nextPath, playbackSpeed);
+                nextSlot = next;
+                loadTrackInfo(nextPlayer, nextPath, next);
+            });
+        });
+    }
+
+    /**
+     * Stops preparing the next track and unchains it from the current one.
+     */
+    private void cancelNext() {
+        // Drops any lookup for a next track still in flight
+        prepareGeneration++;
+        if (nextPlayer == null)
+            return;
+
+        if (mp3Player.getNextPlayer() == nextPlayer)
+            mp3Player.setNextPlayer(null);
+        nextPlayer.setListener(null);
+        nextPlayer.removeStatusListener(statusListener);
+        nextPlayer.stop();
+        nextPlayer = null;
+        nextSlot = PlayQueue.NONE;
+    }
+
+    @Override
+    public void onPrepared(MP3Player player) {
+        // Chain the next track once both players are ready, whichever finishes first
+        if (player == nextPlayer || player == mp3Player)
+            chainNext();
+    }
+
+    /**
+     * Chains the next track to the current one. A chained track is started by
+     * the engine, so it is not chained while its gain is still being looked up;
+     * setNextPlayer() also refuses players that are not yet prepared.
+     */
+    private void chainNext() {
+        if (nextPlayer != null && !nextPlayer.isGainPending())
+            mp3Player.setNextPlayer(nextPlayer);
+    }
+
+    @Override
+    public void onError(MP3Player player) {
+        // The status listener has already published the error
+    }
+
+    @Override
+    public void onSeekComplete(MP3Player player) {
+        // The player republishes its position once it has landed
+    }
+
+    @Override
+    public void onCompletion(MP3Player player) {
+        if (player != mp3Player)
+            return;
+        // A finished track starts from the beginning next time
+        if (snapshotStore != null)
+            snapshotStore.clearBookmark(player.getFilePath());
+        if (nextPlayer == null)
+            return;
+
+        MP3Player finished = mp3Player;
+        boolean chained = finished.getNextPlayer() == nextPlayer;
+        mp3Player = nextPlayer;
+        nextPlayer = null;
+        queue.setCurrent(nextSlot);
+        nextSlot = PlayQueue.NONE;
+
+        if (chained) {
+            // The engine has already started the next track
+            mp3Player.onStartedAsNext();
+        } else {
+            // The next track was not ready in time, start it as soon as it is
+            mp3Player.play();
+        }
+
+        finished.setListener(null);
+        finished.removeStatusListener(statusListener);
+        finished.stop();
+        prepareNext();
+        // The new current player may not have changed state, but the track has
+        notifyStateChanged();
+    }
+
+    /**
+     * Wrapper method for seeking within the current track using MP3Player.
+     * Listeners are notified once the seek completes.
+     *
+     * @param position The position in milliseconds.
+     * @param exact    Whether to seek exactly, rather than to the nearest sync point while dragging.
+     */
+    public void seekTo(int position, boolean exact) {
+        mp3Player.seekTo(position, exact);
     }
 
     /**
@@ -56,8 +488,11 @@ public class MP3PlayerWrapper {
 
     /**
      * Wrapper method for stopping audio playback using MP3Player.
+     * Where playback got to is saved first.
      */
     public void stop() {
+        saveSnapshot();
+        cancelNext();
         mp3Player.stop();
     }
 
@@ -93,16 +528,50 @@ public class MP3PlayerWrapper {
      *
      * @return The current state of MP3Player.
      */
-    public MP3Player.MP3PlayerState getState() {
+    public MP3PlayerState getState() {
         return mp3Player.getState();
     }
 
+    /**
+     * Gets the state, track and position anchor of the current track in one
+     * consistent read. Unlike the other methods, can be called on any thread.
+     *
+     * @return The status of the current player.
+     */
+    public PlayerStatus getStatus() {
+        return mp3Player.getStatus();
+    }
+
+    /**
+     * Wrapper method for getting the request-to-start latency of the last load.
+     *
+     * @return The latency in milliseconds, or -1 if playback has not started yet.
+     */
+    public long getLastStartLatency() {
+        return mp3Player.getLastStartLatency();
+    }
+
     /**
      * Wrapper method for setting the playback speed using MP3Player.
      *
      * @param speed The playback speed to set.
      */
     public void setPlaybackSpeed(float speed) {
+        speed = PlaybackSpeeds.snap(speed);
+        if (speed == playbackSpeed)
+            return;
+        playbackSpeed = speed;
         mp3Player.setPlaybackSpeed(speed);
+        if (nextPlayer != null)
+            nextPlayer.setPlaybackSpeed(speed);
+    }
+
+    /**
+     * Gets the playback speed of the current track.
+     *
+     * @return The playback speed.
+     */
+    public float getPlaybackSpeed() {
+        return playbackSpeed;
     }
 }
\ No newline at end of file
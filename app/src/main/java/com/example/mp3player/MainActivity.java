@@ -4,21 +4,20 @@ import androidx.activity.result.ActivityResultLauncher;
 import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.constraintlayout.widget.ConstraintLayout;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
 import android.annotation.SuppressLint;
 import android.app.Activity;
-import android.app.ActivityManager;
-import android.content.Context;
 import android.content.Intent;
 import android.os.Bundle;
+import android.os.SystemClock;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.view.View;
-import android.widget.ListView;
-import android.database.Cursor;
-import android.provider.MediaStore;
-import android.widget.AdapterView;
-import android.widget.SimpleCursorAdapter;
+import android.widget.EditText;
 
-import java.util.List;
+import java.io.File;
 
 /**
  * Main Activity for the MP3 Player App.
@@ -34,19 +33,41 @@ public class MainActivity extends AppCompatActivity {
     // Instance of AppPreferences for managing user preferences.
     private AppPreferences preferences;
 
+    // Adapter paging songs from the library index into the list.
+    private SongListAdapter adapter;
+
+    // Adapter showing search results in the list while a search is typed.
+    private SearchResultsAdapter searchAdapter;
+
+    // The list of songs, showing either the library or search results.
+    private RecyclerView listView;
+
+    // Text typed to search the library.
+    private EditText searchText;
+
+    // Time of the last song tap, used to measure tap-to-sound latency.
+    private long tapTime;
+
+    // Times this launch and runs the work deferred until its first frame.
+    private StartupTrace startupTrace;
+
     @SuppressLint("Range")
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        setContentView(R.layout.activity_main);
+        StartupTrace.section("inflate", () -> setContentView(R.layout.activity_main));
+
+        // Load the library and prepare the last track only once the first frame is
+        // drawn, as that work competes with it for the CPU and disk.
+        startupTrace = new StartupTrace(this, this::onFirstFrame);
 
-        // Initialize AppPreferences and mainLayout.
+        // Initialize AppPreferences and mainLayout. Preferences are applied in onResume().
         preferences = AppPreferences.getInstance(this);
         mainLayout = findViewById(R.id.mainLayout);
 
-        // Initialize the list of songs and load preferences.
-        initializeList();
-        loadPreferences();
+        // Initialize the list of songs from the cached library index, and the search box.
+        StartupTrace.section("list", this::initializeList);
+        StartupTrace.section("search", this::initializeSearch);
 
         // Register activity result launcher for handling activity results.
         activityResultLauncher = registerForActivityResult(
@@ -61,6 +82,23 @@ public class MainActivity extends AppCompatActivity {
                 }
         );
     }
+
+    /**
+     * Starts the startup work deferred until the first frame, in order.
+     */
+    private void onFirstFrame() {
+        StartupTrace.section("deferred", () -> {
+            // Prepare the last track where it was left.
+            File filesDir = getFilesDir();
+            PlaybackThread.getInstance().execute(() -> MP3PlayerWrapper.getInstance().restoreSnapshot(filesDir));
+
+            // Build the search index, then load the cached library index and refresh it
+            // from MediaStore off the UI thread, so search picks up the changes.
+            LibrarySearch.getInstance(this).load();
+            LibraryIndexer.getInstance(this).load();
+        });
+    }
+
     @Override
     protected void onResume() {
         super.onResume();
@@ -68,74 +106,126 @@ public class MainActivity extends AppCompatActivity {
         loadPreferences();
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        // Stop receiving library updates for this activity.
+        LibraryIndexer.getInstance(this).setListener(null);
+        LibrarySearch.getInstance(this).cancel();
+        adapter.release();
+    }
+
     /**
-     * Method to initialize the ListView of songs.
+     * Method to initialize the RecyclerView of songs.
      */
     private void initializeList() {
-        final ListView lv = findViewById(R.id.listView);
-
-        // Locate music files on the device.
-        Cursor cursor = getContentResolver().query(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, null,
-                MediaStore.Audio.Media.IS_MUSIC + "!= 0", null,
-                null);
-
-        // Set the data to ListView items using SimpleCursorAdapter.
-        lv.setAdapter(new SimpleCursorAdapter(this,
-                android.R.layout.simple_list_item_1, cursor,
-                new String[]{MediaStore.Audio.Media.DATA}, new
-                int[]{android.R.id.text1}));
-
-        // Set on click listener to ListView items.
-        lv.setOnItemClickListener((AdapterView<?> myAdapter,
-                                   View myView,
-                                   int myItemInt,
-                                   long mylng) -> {
-            Cursor c = (Cursor) lv.getItemAtPosition(myItemInt);
-            @SuppressLint("Range") String uri = c.getString(c.getColumnIndex(MediaStore.Audio.Media.DATA));
-
-            checkSongStream(uri);
+        listView = findViewById(R.id.listView);
+        listView.setLayoutManager(new LinearLayoutManager(this));
+        listView.setHasFixedSize(true);
+
+        // Page songs in from the library index as they scroll into view, starting
+        // with the first page if it was read while the app started.
+        adapter = new SongListAdapter(this);
+        listView.setAdapter(adapter);
+        if (adapter.getItemCount() == 0) {
+            adapter.refresh();
+        }
+        adapter.setOnFirstPageLoadedListener(startupTrace::reportInteractive);
+
+        // Follow changes found by refreshing the library, once the first frame is drawn.
+        LibraryIndexer.getInstance(this).setListener(() -> {
+            adapter.refresh();
+            search();
+        });
+
+        // Set on click listener to list items.
+        adapter.setOnSongClickListener((position, uri) -> {
+            tapTime = SystemClock.elapsedRealtime();
+
+            // Queue the whole library at the tapped song unless it is already playing.
+            if (!uri.equals(PlaybackSessionRegistry.getInstance().getSession().getFilePath())) {
+                adapter.loadSongIds(ids -> PlaybackThread.getInstance().execute(
+                        () -> MP3PlayerWrapper.getInstance().setQueue(ids, position)));
+            }
+            checkSongStream(uri, adapter.getTitle(position));
         });
     }
 
     /**
-     * Method to handle a music file and change activity startup.
-     *
-     * @param uri The URI of the music file.
+     * Method to initialize the search box, which shows matching songs in the
+     * list as the user types.
      */
-    private void checkSongStream(String uri) {
-        ActivityManager activityManager = (ActivityManager) getSystemService(Context.ACTIVITY_SERVICE);
-        List<ActivityManager.RunningServiceInfo> runningServices = activityManager.getRunningServices(Integer.MAX_VALUE);
-
-        String songTitle = convertStringUriToTitle(uri);
-
-        // If there's a running service, start the activity using onMusicContinueClick().
-        if (runningServices != null) {
-            for (ActivityManager.RunningServiceInfo service : runningServices) {
-                if (MusicService.class.getName().equals(service.service.getClassName())) {
-                    MP3PlayerWrapper mp3Wrapper = MP3PlayerWrapper.getInstance();
-                    if (uri.equals(mp3Wrapper.getFilePath())) {
-                        onMusicContinueClick(mp3Wrapper.getFilePath(), mp3Wrapper.getDuration(), songTitle);
-                    } else {
-                        mp3Wrapper.stop();
-                        onMusicClick(uri, songTitle);
-                    }
-                    return;
-                }
+    private void initializeSearch() {
+        searchText = findViewById(R.id.searchText);
+        searchAdapter = new SearchResultsAdapter();
+
+        searchText.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                search();
+            }
+        });
+
+        searchAdapter.setOnSongClickListener((position, uri) -> {
+            tapTime = SystemClock.elapsedRealtime();
+
+            // Queue the search results at the tapped song unless it is already playing.
+            if (!uri.equals(PlaybackSessionRegistry.getInstance().getSession().getFilePath())) {
+                long[] ids = searchAdapter.getSongIds();
+                PlaybackThread.getInstance().execute(() -> MP3PlayerWrapper.getInstance().setQueue(ids, position));
+            }
+            checkSongStream(uri, searchAdapter.getTitle(position));
+        });
+    }
+
+    /**
+     * Searches for the text in the search box, showing the whole library when it is empty.
+     */
+    private void search() {
+        String query = searchText.getText().toString();
+        LibrarySearch search = LibrarySearch.getInstance(this);
+        if (query.trim().isEmpty()) {
+            search.cancel();
+            if (listView.getAdapter() != adapter) {
+                listView.setAdapter(adapter);
             }
+            return;
         }
-        // Run onMusicClick when no services are found.
-        onMusicClick(uri, songTitle);
+
+        search.search(query, songs -> {
+            searchAdapter.setResults(songs);
+            if (listView.getAdapter() != searchAdapter) {
+                listView.setAdapter(searchAdapter);
+            }
+        });
     }
 
     /**
-     * Convert a string URI to a title by extracting the file name.
+     * Method to handle a music file and change activity startup.
      *
-     * @param uri The URI of the file.
-     * @return The title extracted from the URI.
+     * @param uri   The URI of the music file.
+     * @param title The title from the library index, or null to use the file name.
      */
-    private String convertStringUriToTitle(String uri) {
-        String[] parts = uri.split("/");
-        return parts[parts.length - 1].replace(".mp3", "");
+    private void checkSongStream(String uri, String title) {
+        PlaybackSession session = PlaybackSessionRegistry.getInstance().getSession();
+
+        String songTitle = title != null ? title : TitleFormatter.fromPath(uri);
+
+        // If the service is already playing this song, start the activity using onMusicContinueClick().
+        if (session.isServiceRunning() && uri.equals(session.getFilePath())) {
+            onMusicContinueClick(uri, session.getPosition().getDuration(), songTitle);
+            return;
+        }
+        // Otherwise run onMusicClick, whose intent has the service switch to the song.
+        onMusicClick(uri, songTitle);
     }
 
     /**
@@ -148,6 +238,7 @@ public class MainActivity extends AppCompatActivity {
         Intent intent = new Intent(this, MusicPlayer.class);
         intent.putExtra("uri", uri);
         intent.putExtra("songTitle", songTitle);
+        intent.putExtra("requestTime", tapTime);
 
         activityResultLauncher.launch(intent);
     }
@@ -180,9 +271,10 @@ public class MainActivity extends AppCompatActivity {
     }
 
     /**
-     * Load preferences and set the background color of the main layout.
+     * Load preferences and set the background color of the main layout, once
+     * they have loaded if they are still loading.
      */
     private void loadPreferences() {
-        mainLayout.setBackgroundColor(preferences.getBackgroundColour());
+        preferences.whenLoaded(snapshot -> mainLayout.setBackgroundColor(snapshot.getBackgroundColour()));
     }
 }
\ No newline at end of file
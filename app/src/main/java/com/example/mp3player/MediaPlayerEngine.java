@@ -0,0 +1,137 @@
+package com.example.mp3player;
+
+import android.media.AudioManager;
+import android.media.MediaPlayer;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.IOException;
+
+/**
+ * PlayerEngine backed by a pooled MediaPlayer.
+ * The platform chooses the buffer sizes and decode threads, and chained
+ * engines start without a gap through setNextMediaPlayer.
+ */
+public class MediaPlayerEngine implements PlayerEngine {
+
+    private MediaPlayer mediaPlayer;
+    private Listener listener;
+
+    public MediaPlayerEngine() {
+        mediaPlayer = MediaPlayerPool.getInstance().acquire();
+        mediaPlayer.setAudioStreamType(AudioManager.STREAM_MUSIC);
+        mediaPlayer.setOnPreparedListener(mp -> {
+            if (listener != null)
+                listener.onPrepared(this);
+        });
+        mediaPlayer.setOnCompletionListener(mp -> {
+            if (listener != null)
+                listener.onCompletion(this);
+        });
+        mediaPlayer.setOnSeekCompleteListener(mp -> {
+            if (listener != null)
+                listener.onSeekComplete(this);
+        });
+        mediaPlayer.setOnErrorListener((mp, what, extra) -> {
+            if (listener != null)
+                listener.onError(this, what, extra);
+            return true;
+        });
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void setDataSource(String path) throws IOException {
+        try {
+            mediaPlayer.setDataSource(path);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void prepareAsync() {
+        mediaPlayer.prepareAsync();
+    }
+
+    @Override
+    public void start() {
+        mediaPlayer.start();
+    }
+
+    @Override
+    public void pause() {
+        mediaPlayer.pause();
+    }
+
+    @Override
+    public void seekTo(int position, boolean exact) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            mediaPlayer.seekTo(position, exact ? MediaPlayer.SEEK_CLOSEST : MediaPlayer.SEEK_CLOSEST_SYNC);
+        } else {
+            mediaPlayer.seekTo(position);
+        }
+    }
+
+    /**
+     * Sets the speed with the pitch unchanged. Note that on a paused MediaPlayer
+     * this starts playback, so callers defer speed changes until playing.
+     */
+    @Override
+    public void setSpeed(float speed) {
+        try {
+            mediaPlayer.setPlaybackParams(mediaPlayer.getPlaybackParams().setSpeed(speed).setPitch(1f));
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            Log.e("MediaPlayerEngine", e.toString());
+        }
+    }
+
+    @Override
+    public void setVolume(float volume) {
+        mediaPlayer.setVolume(volume, volume);
+    }
+
+    @Override
+    public boolean setNextEngine(PlayerEngine next) {
+        if (next != null && !(next instanceof MediaPlayerEngine))
+            return false;
+        try {
+            mediaPlayer.setNextMediaPlayer(next != null ? ((MediaPlayerEngine) next).mediaPlayer : null);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            Log.e("MediaPlayerEngine", e.toString());
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean isPlaying() {
+        return mediaPlayer.isPlaying();
+    }
+
+    @Override
+    public int getCurrentPosition() {
+        return mediaPlayer.getCurrentPosition();
+    }
+
+    @Override
+    public int getDuration() {
+        return mediaPlayer.getDuration();
+    }
+
+    @Override
+    public void release() {
+        if (mediaPlayer == null)
+            return;
+        if (mediaPlayer.isPlaying())
+            mediaPlayer.stop();
+        // Keep the native player around for the next load instead of releasing it
+        MediaPlayerPool.getInstance().recycle(mediaPlayer);
+        mediaPlayer = null;
+        listener = null;
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.mp3player;
+
+import android.media.MediaPlayer;
+import android.os.Handler;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+
+/**
+ * Singleton Class: Pool of reset but unreleased MediaPlayer instances.
+ * Recycling players across loads avoids tearing down and rebuilding the native
+ * decoder and audio output on every track change. Used on the playback thread,
+ * where idle players are also released.
+ */
+public class MediaPlayerPool {
+
+    // Maximum number of idle players kept in the pool
+    private static final int MAX_IDLE_PLAYERS = 2;
+
+    // Idle players are released after going unused for this long
+    private static final long IDLE_TIMEOUT_MS = 30000;
+
+    private static MediaPlayerPool instance;
+
+    // Idle players, most recently recycled first
+    private final ArrayDeque<MediaPlayer> idlePlayers = new ArrayDeque<>();
+
+    private final Handler handler = new Handler(PlaybackThread.getInstance().getLooper());
+    private final Runnable evictIdlePlayers = this::releaseAll;
+
+    // Counters for native players created, reused from the pool and released
+    private int createdCount;
+    private int reusedCount;
+    private int releasedCount;
+
+    /**
+     * Private constructor for Singleton pattern.
+     */
+    private MediaPlayerPool() {
+    }
+
+    /**
+     * Creates an instance of MediaPlayerPool if null, else returns the existing instance.
+     *
+     * @return The instance of MediaPlayerPool.
+     */
+    public static synchronized MediaPlayerPool getInstance() {
+        if (instance == null) {
+            instance = new MediaPlayerPool();
+        }
+        return instance;
+    }
+
+    /**
+     * Takes an idle player from the pool, or creates one if the pool is empty.
+     *
+     * @return A MediaPlayer in the idle state.
+     */
+    public synchronized MediaPlayer acquire() {
+        MediaPlayer mediaPlayer = idlePlayers.pollFirst();
+        if (mediaPlayer != null) {
+            reusedCount++;
+            if (idlePlayers.isEmpty()) {
+                handler.removeCallbacks(evictIdlePlayers);
+            }
+            return mediaPlayer;
+        }
+        createdCount++;
+        return new MediaPlayer();
+    }
+
+    /**
+     * Resets a player and returns it to the pool, releasing it if the pool is full.
+     *
+     * @param mediaPlayer The player to recycle. It must not be used by the caller afterwards.
+     */
+    public synchronized void recycle(MediaPlayer mediaPlayer) {
+        // Drop listeners so the pool does not keep the previous owner alive
+        mediaPlayer.setOnPreparedListener(null);
+        mediaPlayer.setOnErrorListener(null);
+        mediaPlayer.setOnCompletionListener(null);
+        mediaPlayer.setOnSeekCompleteListener(null);
+
+        try {
+            mediaPlayer.reset();
+        } catch (IllegalStateException e) {
+            Log.e("MediaPlayerPool", e.toString());
+            release(mediaPlayer);
+            return;
+        }
+
+        if (idlePlayers.size() >= MAX_IDLE_PLAYERS) {
+            release(mediaPlayer);
+            return;
+        }
+
+        idlePlayers.addFirst(mediaPlayer);
+        handler.removeCallbacks(evictIdlePlayers);
+        handler.postDelayed(evictIdlePlayers, IDLE_TIMEOUT_MS);
+    }
+
+    /**
+     * Releases every idle player in the pool.
+     */
+    public synchronized void releaseAll() {
+        handler.removeCallbacks(evictIdlePlayers);
+        MediaPlayer mediaPlayer;
+        while ((mediaPlayer = idlePlayers.pollFirst()) != null) {
+            release(mediaPlayer);
+        }
+    }
+
+    private void release(MediaPlayer mediaPlayer) {
+        mediaPlayer.release();
+        releasedCount++;
+    }
+
+    /**
+     * Gets the number of native players created by the pool.
+     *
+     * @return The number of players created.
+     */
+    public synchronized int getCreatedCount() {
+        return createdCount;
+    }
+
+    /**
+     * Gets the number of loads served by a recycled player, i.e. native allocations saved.
+     *
+     * @return The number of players reused.
+     */
+    public synchronized int getReusedCount() {
+        return reusedCount;
+    }
+
+    /**
+     * Gets the number of native players released by the pool.
+     *
+     * @return The number of players released.
+     */
+    public synchronized int getReleasedCount() {
+        return releasedCount;
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.mp3player;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Writes the playback metrics to a file on request, so they can be collected
+ * from field devices without attaching a profiler:
+ * <pre>
+ * adb shell am broadcast -a com.example.mp3player.action.DUMP_METRICS -n com.example.mp3player/.MetricsDumpReceiver
+ * adb pull /sdcard/Android/data/com.example.mp3player/files/metrics.txt
+ * </pre>
+ * Add the extra "reset" (--ez reset true) to clear the metrics after writing them.
+ */
+public class MetricsDumpReceiver extends BroadcastReceiver {
+
+    public static final String ACTION_DUMP_METRICS = "com.example.mp3player.action.DUMP_METRICS";
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        if (!ACTION_DUMP_METRICS.equals(intent.getAction())) {
+            return;
+        }
+
+        File directory = context.getExternalFilesDir(null);
+        if (directory == null) {
+            directory = context.getFilesDir();
+        }
+        File file = new File(directory, "metrics.txt");
+        try (PrintWriter writer = new PrintWriter(new FileWriter(file))) {
+            Metrics.getInstance().dump(writer);
+        } catch (IOException e) {
+            Log.e("MetricsDumpReceiver", e.toString());
+            return;
+        }
+        Log.i("MetricsDumpReceiver", "Metrics written to " + file);
+
+        if (intent.getBooleanExtra("reset", false)) {
+            Metrics.getInstance().reset();
+        }
+    }
+}
@@ -3,7 +3,6 @@ package com.example.mp3player;
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.constraintlayout.widget.ConstraintLayout;
-import androidx.core.app.NotificationCompat;
 import androidx.core.content.ContextCompat;
 
 import android.annotation.SuppressLint;
@@ -20,23 +19,53 @@ import android.os.Bundle;
 import android.os.Handler;
 import android.os.IBinder;
 import android.os.Looper;
+import android.os.SystemClock;
+import android.os.Trace;
 import android.view.View;
+import android.widget.ImageView;
 import android.widget.SeekBar;
 import android.widget.TextView;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 /**
  * Class for MusicPlayer Activity.
  */
-public class MusicPlayer extends AppCompatActivity {
+public class MusicPlayer extends AppCompatActivity implements PlaybackClock.Observer {
 
-    private static final String CHANNEL_ID = "MusicChannel";
+    // File and title of the track shown, which follow the queue as it moves on
     private String filePath;
-    private MP3PlayerWrapper mp3Player;
     private MusicService musicService;
-    private SeekBar progressBar;
+    private WaveformSeekBar progressBar;
     private boolean resume;
     private String songTitle;
     private boolean isBound = false;
+    private long requestTime;
+
+    // Time bindService was called, from SystemClock.elapsedRealtimeNanos()
+    private long bindStartNanos;
+    private TextView progressText;
+
+    // Latest position anchor published by the service
+    private PlaybackPosition position = PlaybackPosition.STOPPED;
+
+    // Track of the last anchor that named one
+    private String publishedPath;
+
+    // Reused buffer for the progress text, so ticks do not allocate
+    private final char[] progressBuffer = new char[TimeFormatter.PROGRESS_BUFFER_LENGTH];
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    // Redraws the progress each time the position reaches a new second
+    private final Runnable tick = this::updateProgress;
+
+    // Whether the user is dragging the progress bar
+    private boolean seeking;
+
+    // Looks up the titles of tracks the queue moves on to
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
 
     // Invokes methods when a service is being connected.
     ServiceConnection serviceConnection = new ServiceConnection() {
@@ -44,16 +73,17 @@ public class MusicPlayer extends AppCompatActivity {
         public void onServiceConnected(ComponentName componentName, IBinder iBinder) {
             MusicService.LocalBinder binder = (MusicService.LocalBinder) iBinder;
             musicService = binder.getService();
-            mp3Player = MP3PlayerWrapper.getInstance();
-            progressBar.setMax(mp3Player.getDuration() / 1000);
             isBound = true;
+            Metrics.getInstance().record(Metrics.BIND, (SystemClock.elapsedRealtimeNanos() - bindStartNanos) / 1000);
+
+            // Follow the playback position while the activity is visible
+            musicService.getPlaybackClock().addObserver(MusicPlayer.this);
         }
 
         @Override
         public void onServiceDisconnected(ComponentName componentName) {
             musicService.stop();
             musicService = null;
-            mp3Player = null;
             isBound = false;
         }
     };
@@ -62,6 +92,8 @@ public class MusicPlayer extends AppCompatActivity {
     protected void onSaveInstanceState(@NonNull Bundle outState) {
         super.onSaveInstanceState(outState);
         outState.putBoolean("resume", resume);
+        outState.putString("uri", filePath);
+        outState.putString("songTitle", songTitle);
     }
 
     @SuppressLint("SetTextI18n")
@@ -72,23 +104,93 @@ public class MusicPlayer extends AppCompatActivity {
 
         resume = getIntent().getBooleanExtra("resume", false);
 
+        // Get extras from intent, or the track shown last time if the queue has moved on since
+        filePath = getIntent().getStringExtra("uri");
+        songTitle = getIntent().getStringExtra("songTitle");
         if (savedInstanceState != null) {
             resume = savedInstanceState.getBoolean("resume");
+            filePath = savedInstanceState.getString("uri", filePath);
+            songTitle = savedInstanceState.getString("songTitle", songTitle);
         }
-
-        // Get extras from intent
-        filePath = getIntent().getStringExtra("uri");
-        songTitle = getIntent().getStringExtra("songTitle");
+        requestTime = getIntent().getLongExtra("requestTime", SystemClock.elapsedRealtime());
 
         // Load Data
         loadData();
 
-        // Set progress bar max
+        // Progress is updated from the service's playback clock while bound
         progressBar = findViewById(R.id.progressBar);
-        progressBar.setEnabled(false);
+        progressText = findViewById(R.id.progressText);
+        progressBar.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
+            @Override
+            public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
+                if (fromUser) {
+                    seekTo(progress * 1000, false);
+                }
+            }
+
+            @Override
+            public void onStartTrackingTouch(SeekBar seekBar) {
+                seeking = true;
+            }
+
+            @Override
+            public void onStopTrackingTouch(SeekBar seekBar) {
+                seeking = false;
+                seekTo(seekBar.getProgress() * 1000, true);
+            }
+        });
+
+        loadTrack();
+    }
+
+    /**
+     * Loads the artwork and waveform of the track shown.
+     */
+    private void loadTrack() {
+        // Artwork is decoded off the UI thread at the size it is shown at
+        ImageView artwork = findViewById(R.id.artwork);
+        int artworkSize = artwork.getLayoutParams().width;
+        ArtworkLoader.getInstance(this).load(filePath, artworkSize, (path, bitmap) -> {
+            if (!isDestroyed() && path.equals(filePath)) {
+                artwork.setImageBitmap(bitmap);
+            }
+        });
+
+        // The waveform is precomputed or cached, so the seek bar only draws it
+        WaveformLoader.getInstance(this).load(filePath, (path, waveform) -> {
+            if (!isDestroyed() && path.equals(filePath)) {
+                progressBar.setWaveform(waveform);
+            }
+        });
+    }
+
+    /**
+     * Shows a track the queue has moved on to: its title, artwork and waveform.
+     *
+     * @param path The file path of the track.
+     */
+    private void onTrackChanged(String path) {
+        filePath = path;
+        songTitle = TitleFormatter.fromPath(path);
+        TextView songName = findViewById(R.id.textView);
+        songName.setText(songTitle);
 
-        // Update Song Progress
-        updateProgressPeriodically();
+        // Clear the previous track's pictures until the new ones load
+        ImageView artwork = findViewById(R.id.artwork);
+        artwork.setImageBitmap(null);
+        progressBar.setWaveform(null);
+        loadTrack();
+
+        Context context = getApplicationContext();
+        executor.execute(() -> {
+            String title = LibraryDatabase.getInstance(context).getSongTitle(path);
+            handler.post(() -> {
+                if (!isDestroyed() && path.equals(filePath)) {
+                    songTitle = title;
+                    songName.setText(title);
+                }
+            });
+        });
     }
 
     @Override
@@ -107,6 +209,7 @@ public class MusicPlayer extends AppCompatActivity {
     protected void onDestroy() {
         super.onDestroy();
         unbindFromService();
+        executor.shutdown();
     }
 
     /**
@@ -114,11 +217,12 @@ public class MusicPlayer extends AppCompatActivity {
      */
     private void bindToService() {
         Intent serviceIntent = new Intent(this, MusicService.class);
-        Notification notification = createNotification();
+        Notification notification = MusicService.createNotification(this, songTitle);
 
         serviceIntent.putExtra("notification", notification);
         serviceIntent.putExtra("uri", filePath);
         serviceIntent.putExtra("resume", resume);
+        serviceIntent.putExtra("requestTime", requestTime);
 
         createNotificationChannel();
         if (!resume) {
@@ -128,58 +232,69 @@ public class MusicPlayer extends AppCompatActivity {
             resume = true;
         }
 
-        bindService(serviceIntent, serviceConnection, Context.BIND_AUTO_CREATE);
+        Trace.beginSection("MusicPlayer.bind");
+        bindStartNanos = SystemClock.elapsedRealtimeNanos();
+        try {
+            bindService(serviceIntent, serviceConnection, Context.BIND_AUTO_CREATE);
+        } finally {
+            Trace.endSection();
+        }
     }
 
-    /**
-     * Updates both Seekbar and TextView with the amount of time a Song has left
-     */
-    private void updateProgressPeriodically() {
-        Handler handler = new Handler(Looper.getMainLooper());
-        TextView progressText = findViewById(R.id.progressText);
-
-        handler.postDelayed(new Runnable() {
-            @Override
-            public void run() {
-                mp3Player = MP3PlayerWrapper.getInstance();
-                String duration = formatTime(mp3Player.getDuration());
-                String progress = formatTime(mp3Player.getProgress());
-                updateText(duration, progress);
-                updateProgressPeriodically();
-            }
-
-            private void updateText(String duration, String progress) {
-                progressText.setText(progress + '/' + duration);
-                progressBar.setProgress(mp3Player.getProgress()/1000);
-            }
-        }, 1000);
+    @Override
+    public void onPositionChanged(PlaybackPosition position) {
+        this.position = position;
+        // Follow the player when it moves on to another track, but not while it is
+        // still playing the track from before this activity asked for a new one
+        String path = position.getFilePath();
+        if (path != null && publishedPath != null && !path.equals(publishedPath) && !path.equals(filePath)) {
+            onTrackChanged(path);
+        }
+        if (path != null) {
+            publishedPath = path;
+        }
+        // Duration is only known once the track has finished preparing
+        progressBar.setMax(position.getDuration() / 1000);
+        updateProgress();
     }
 
     /**
-     * Formats time from MP3Player, to make more readable
+     * Sends a seek to the service and shows the target straight away.
+     * Drags seek to the nearest sync point; the release seeks exactly.
      *
-     * @param milliseconds Time in milliseconds
-     * @return The formatted time
+     * @param target The position in milliseconds.
+     * @param exact  Whether this is the final, exact seek.
      */
-    private String formatTime(int milliseconds) {
-        int seconds = milliseconds / 1000;
-        int minutes = seconds / 60;
-        seconds = seconds % 60;
-        return String.format("%02d:%02d", minutes, seconds);
+    private void seekTo(int target, boolean exact) {
+        int length = TimeFormatter.formatProgress(progressBuffer, target, position.getDuration());
+        progressText.setText(progressBuffer, 0, length);
+        if (isBound) {
+            musicService.seekTo(target, exact);
+        }
     }
 
     /**
-     * Creates an instance of a notification with the current song title
-     *
-     * @return A Notification Object
+     * Updates both Seekbar and TextView from the position anchor, then schedules
+     * the next update for when the displayed second changes
      */
-    private Notification createNotification() {
-        return new NotificationCompat.Builder(this,
-                CHANNEL_ID)
-                .setContentTitle("Music Playing")
-                .setContentText("Currently playing: " + songTitle)
-                .setSmallIcon(R.drawable.music_note)
-                .build();
+    private void updateProgress() {
+        handler.removeCallbacks(tick);
+
+        if (seeking) {
+            // Leave the bar and text showing where the user is dragging to
+            return;
+        }
+
+        long now = SystemClock.elapsedRealtime();
+        int progress = position.positionAt(now);
+        int length = TimeFormatter.formatProgress(progressBuffer, progress, position.getDuration());
+        progressText.setText(progressBuffer, 0, length);
+        progressBar.setProgress(progress / 1000);
+
+        long delay = position.delayToNextSecond(now);
+        if (delay >= 0) {
+            handler.postDelayed(tick, delay);
+        }
     }
 
     /**
@@ -190,7 +305,7 @@ public class MusicPlayer extends AppCompatActivity {
             CharSequence name = "MP3Player";
             String description = "Playing Songs";
             int importance = NotificationManager.IMPORTANCE_LOW;
-            NotificationChannel channel = new NotificationChannel(CHANNEL_ID, name, importance);
+            NotificationChannel channel = new NotificationChannel(MusicService.CHANNEL_ID, name, importance);
             channel.setDescription(description);
             NotificationManager notificationManager = getSystemService(NotificationManager.class);
             notificationManager.createNotificationChannel(channel);
@@ -201,9 +316,18 @@ public class MusicPlayer extends AppCompatActivity {
      * Unbinds the service from the activity
      */
     private void unbindFromService() {
+        // Stop ticking while the activity is not visible
+        handler.removeCallbacks(tick);
         if (isBound) {
-            unbindService(serviceConnection);
-            mp3Player = null;
+            musicService.getPlaybackClock().removeObserver(this);
+            Trace.beginSection("MusicPlayer.unbind");
+            long start = SystemClock.elapsedRealtimeNanos();
+            try {
+                unbindService(serviceConnection);
+            } finally {
+                Trace.endSection();
+            }
+            Metrics.getInstance().record(Metrics.UNBIND, (SystemClock.elapsedRealtimeNanos() - start) / 1000);
             isBound = false;
         }
     }
@@ -251,13 +375,8 @@ public class MusicPlayer extends AppCompatActivity {
      * Loads data onto activity
      */
     private void loadData() {
-        // Get the AppPreferences instance for managing user preferences
-        AppPreferences preferences;
-        preferences = AppPreferences.getInstance(this);
-
         // Find the main layout to set the background color based on user preferences
         ConstraintLayout mainLayout = findViewById(R.id.mainLayout);
-        mainLayout.setBackgroundColor(preferences.getBackgroundColour());
 
         // Find TextView for displaying the song name
         TextView songName = findViewById(R.id.textView);
@@ -265,14 +384,15 @@ public class MusicPlayer extends AppCompatActivity {
         // Find TextView for displaying the playback speed
         TextView speed = findViewById(R.id.viewSpeed);
 
-        // Get the playback speed from preferences
-        float playbackSpeed = preferences.getPlaybackSpeed();
-
         // Get the playback speed text from resources
         String playbackSpeedText = getResources().getString(R.string.playback);
 
-        // Set the playback speed text with the actual speed
-        speed.setText(playbackSpeedText + playbackSpeed);
+        // Apply the colour and speed from one read of the preferences, without waiting
+        // for them to load on the main thread
+        AppPreferences.getInstance(this).whenLoaded(preferences -> {
+            mainLayout.setBackgroundColor(preferences.getBackgroundColour());
+            speed.setText(playbackSpeedText + PlaybackSpeeds.format(preferences.getPlaybackSpeed()));
+        });
 
         // Set the song name text to the title of the currently playing song
         songName.setText(songTitle);
@@ -1,30 +1,80 @@
 package com.example.mp3player;
 
 import android.app.Notification;
+import android.app.NotificationManager;
 import android.app.Service;
+import android.content.Context;
 import android.content.Intent;
 import android.os.Binder;
+import android.os.Handler;
 import android.os.IBinder;
+import android.os.SystemClock;
+import android.util.Log;
 
 import androidx.annotation.Nullable;
+import androidx.core.app.NotificationCompat;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Service class for managing music playback in the background.
+ * Every player operation is queued on the PlaybackThread, so no call into the
+ * native players is made on the main thread. Play and pause taps, seeks and
+ * speed changes that arrive faster than the player handles them are folded
+ * into the latest of each before they reach it.
  */
 public class MusicService extends Service {
 
     // Notification ID for the foreground service
     private static final int NOTIFICATION_ID = 1;
 
-    // Playback speed of the music
-    private float playbackSpeed;
+    /**
+     * ID of the notification channel the playing song is shown in.
+     */
+    public static final String CHANNEL_ID = "MusicChannel";
+
+    // How often the playback position is saved while playing
+    private static final long SNAPSHOT_INTERVAL_MS = 10000;
+
+    // Kinds of command folded into the latest of their kind
+    private static final String TRANSPORT = "transport";
+    private static final String SEEK = "seek";
+    private static final String SPEED = "speed";
 
-    // Wrapper class for the MP3Player
+    // Runs every player operation, in order
+    private final PlaybackThread playbackThread = PlaybackThread.getInstance();
+
+    // Playback speed of the music and the audio engine buffer, only touched on the main thread.
+    // The buffer starts out unset, so the stored engine is applied once preferences load.
+    private float playbackSpeed = PreferencesSnapshot.DEFAULTS.getPlaybackSpeed();
+    private int codecBufferMs = -1;
+
+    // Wrapper class for the MP3Player, only touched on the playback thread
     private MP3PlayerWrapper mp3Wrapper;
 
     // Flag indicating whether to resume playback
     private Boolean resume = false;
 
+    // Publishes the playback position to bound activities
+    private final PlaybackClock playbackClock = new PlaybackClock();
+
+    // File of the track named in the notification, null until the service is started with one
+    private volatile String notifiedPath;
+
+    // Looks up titles for the notification when the queue moves on to another track
+    private final ExecutorService titleExecutor = Executors.newSingleThreadExecutor();
+
+    // Saves the playback position periodically while playing, on the playback thread
+    private final Handler handler = playbackThread.getHandler();
+    private final Runnable saveSnapshot = this::saveSnapshot;
+
+    // Applies the playback speed and audio engine when they are changed in Settings
+    private final AppPreferences.OnPreferencesChangedListener preferencesListener = this::onPreferencesChanged;
+
     // Local class to instantiate a service
     public class LocalBinder extends Binder {
         MusicService getService() {
@@ -35,17 +85,95 @@ public class MusicService extends Service {
     @Override
     public void onCreate() {
         super.onCreate();
-        // Get MP3Wrapper instance
-        mp3Wrapper = MP3PlayerWrapper.getInstance();
+        Mp3FrameIndexCache frameIndexCache = new Mp3FrameIndexCache(new File(getCacheDir(), "frame_index"));
+        LoudnessAnalyzer loudnessAnalyzer = LoudnessAnalyzer.getInstance(this);
+        LibraryDatabase library = LibraryDatabase.getInstance(this);
+        File filesDir = getFilesDir();
+
+        // Let activities know the service is running without asking ActivityManager
+        PlaybackSessionRegistry.getInstance().onServiceCreated();
 
-        // Get user preferences for playback speed
+        playbackThread.execute(() -> {
+            // Get MP3Wrapper instance
+            mp3Wrapper = MP3PlayerWrapper.getInstance();
+            mp3Wrapper.setStateListener(this::onPlaybackStateChanged);
+            mp3Wrapper.setFrameIndexCache(frameIndexCache);
+            mp3Wrapper.setLoudnessAnalyzer(loudnessAnalyzer);
+            mp3Wrapper.setLibraryDatabase(library);
+            mp3Wrapper.restoreQueue(new File(filesDir, "queue.log"));
+            // Prepares the last track if the process was restarted by binding to the service
+            mp3Wrapper.restoreSnapshot(filesDir);
+        });
+
+        // Apply the playback speed and audio engine once the preferences have loaded,
+        // then whenever they are changed
         AppPreferences preferences = AppPreferences.getInstance(this);
-        playbackSpeed = preferences.getPlaybackSpeed();
+        preferences.whenLoaded(preferencesListener);
+        preferences.addListener(preferencesListener);
+    }
+
+    /**
+     * Applies changes made in Settings: a new playback speed to the current
+     * track, and a new audio engine to the next load. Does nothing for values
+     * already applied, so it can be called again with the same preferences.
+     *
+     * @param preferences The new preferences.
+     */
+    private void onPreferencesChanged(PreferencesSnapshot preferences) {
+        int bufferMs = preferences.getCodecBufferMs();
+        if (bufferMs != codecBufferMs) {
+            codecBufferMs = bufferMs;
+            playbackThread.execute(() -> setEngine(bufferMs));
+        }
+
+        float speed = preferences.getPlaybackSpeed();
+        if (speed != playbackSpeed) {
+            playbackSpeed = speed;
+            playbackThread.executeLatest(SPEED, () -> {
+                if (mp3Wrapper != null) {
+                    mp3Wrapper.setPlaybackSpeed(speed);
+                }
+            });
+        }
+    }
+
+    /**
+     * Sets the engine used for new loads. The current track keeps its engine.
+     * Runs on the playback thread.
+     *
+     * @param bufferMs The MediaCodec engine buffer in milliseconds, or 0 for MediaPlayer.
+     */
+    private void setEngine(int bufferMs) {
+        if (bufferMs > 0) {
+            MP3Player.setEngineFactory(() -> new CodecPlayerEngine(bufferMs));
+        } else {
+            MP3Player.setEngineFactory(MediaPlayerEngine::new);
+        }
     }
 
     @Override
     public void onDestroy() {
         super.onDestroy();
+        AppPreferences.getInstance(this).removeListener(preferencesListener);
+        PlaybackSessionRegistry.getInstance().onServiceDestroyed();
+
+        playbackThread.execute(() -> {
+            // Save where playback got to, stop publishing positions and tell observers playback has ended
+            handler.removeCallbacks(saveSnapshot);
+            if (mp3Wrapper != null) {
+                mp3Wrapper.saveSnapshot();
+                mp3Wrapper.setStateListener(null);
+                mp3Wrapper = null;
+            }
+            playbackClock.publish(null);
+            titleExecutor.shutdown();
+
+            // Release the native players kept for reuse
+            MediaPlayerPool pool = MediaPlayerPool.getInstance();
+            pool.releaseAll();
+            Log.d("MusicService", "MediaPlayer pool created " + pool.getCreatedCount()
+                    + ", reused " + pool.getReusedCount() + ", released " + pool.getReleasedCount());
+        });
         stopSelf();
     }
 
@@ -56,10 +184,23 @@ public class MusicService extends Service {
             Notification notification = intent.getParcelableExtra("notification");
             String filePath = intent.getStringExtra("uri");
             resume = intent.getBooleanExtra("resume", false);
+            long requestTime = intent.getLongExtra("requestTime", SystemClock.elapsedRealtime());
 
-            // If not resuming, load the specified file with the playback speed
+            // If not resuming, start preparing the specified file with the playback speed,
+            // saving where the previous track got to first
             if (!resume) {
-                mp3Wrapper.load(filePath, playbackSpeed);
+                // Wait for the stored speed and engine, which apply to this load
+                AppPreferences.getInstance(this).whenLoaded(preferences -> {
+                    onPreferencesChanged(preferences);
+                    float speed = playbackSpeed;
+                    playbackThread.execute(() -> {
+                        if (mp3Wrapper != null) {
+                            mp3Wrapper.saveSnapshot();
+                            mp3Wrapper.load(filePath, speed, requestTime);
+                            notifiedPath = filePath;
+                        }
+                    });
+                });
             }
 
             // Start the service in the foreground with the provided notification
@@ -68,6 +209,17 @@ public class MusicService extends Service {
         return START_NOT_STICKY;
     }
 
+    /**
+     * Dumps playback metrics, for "adb shell dumpsys activity service MusicService".
+     */
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        MediaPlayerPool pool = MediaPlayerPool.getInstance();
+        writer.println("MediaPlayer pool: created " + pool.getCreatedCount()
+                + ", reused " + pool.getReusedCount() + ", released " + pool.getReleasedCount());
+        Metrics.getInstance().dump(writer);
+    }
+
     @Nullable
     @Override
     public IBinder onBind(Intent intent) {
@@ -91,47 +243,147 @@ public class MusicService extends Service {
     }
 
     /**
-     * Pauses the music playback.
+     * Pauses the music playback. Replaces a play or pause still waiting to run.
      */
     public void pause() {
-        if (mp3Wrapper != null) {
-            mp3Wrapper.pause();
-        }
+        playbackThread.executeLatest(TRANSPORT, () -> {
+            if (mp3Wrapper != null) {
+                mp3Wrapper.pause();
+            }
+        });
+    }
+
+    /**
+     * Seeks within the current track. Replaces a seek still waiting to run.
+     *
+     * @param position The position in milliseconds.
+     * @param exact    Whether to seek exactly, rather than to the nearest sync point while dragging.
+     */
+    public void seekTo(int position, boolean exact) {
+        playbackThread.executeLatest(SEEK, () -> {
+            if (mp3Wrapper != null) {
+                mp3Wrapper.seekTo(position, exact);
+            }
+        });
     }
 
     /**
      * Stops the music playback and the service.
      */
     public void stop() {
-        if (mp3Wrapper != null) {
-            mp3Wrapper.stop();
-            mp3Wrapper = null;
-            stopSelf();
-        }
+        playbackThread.execute(() -> {
+            if (mp3Wrapper != null) {
+                mp3Wrapper.stop();
+                mp3Wrapper.setStateListener(null);
+                mp3Wrapper = null;
+            }
+        });
+        stopSelf();
     }
 
     /**
-     * Resumes or starts the music playback.
+     * Resumes or starts the music playback. Replaces a play or pause still waiting to run.
      */
     public void play() {
-        mp3Wrapper.play();
+        playbackThread.executeLatest(TRANSPORT, () -> {
+            if (mp3Wrapper != null) {
+                mp3Wrapper.play();
+            }
+        });
+    }
+
+    /**
+     * Publishes a playback state change to bound activities and the session
+     * registry. Runs on the playback thread.
+     */
+    private void onPlaybackStateChanged() {
+        PlayerStatus status = mp3Wrapper.getStatus();
+        playbackClock.publish(mp3Wrapper);
+        PlaybackSessionRegistry.getInstance().update(status.getFilePath(), status.getState(),
+                status.getPosition());
+        saveSnapshot();
+
+        // The queue moved on to the next track by itself
+        String filePath = status.getFilePath();
+        String previousPath = notifiedPath;
+        if (filePath != null && previousPath != null && !filePath.equals(previousPath)) {
+            notifiedPath = filePath;
+            updateNotification(filePath);
+        }
+    }
+
+    /**
+     * Names a new track in the notification, looking up its title in the background.
+     *
+     * @param filePath The file path of the track.
+     */
+    private void updateNotification(String filePath) {
+        Context context = getApplicationContext();
+        titleExecutor.execute(() -> {
+            String songTitle = LibraryDatabase.getInstance(context).getSongTitle(filePath);
+            // Drop the title if the track changed again meanwhile
+            if (filePath.equals(notifiedPath)) {
+                context.getSystemService(NotificationManager.class)
+                        .notify(NOTIFICATION_ID, createNotification(context, songTitle));
+            }
+        });
+    }
+
+    /**
+     * Creates the notification shown while a song plays.
+     *
+     * @param context   The context to build the notification with.
+     * @param songTitle The title of the song.
+     * @return A Notification Object
+     */
+    public static Notification createNotification(Context context, String songTitle) {
+        return new NotificationCompat.Builder(context, CHANNEL_ID)
+                .setContentTitle("Music Playing")
+                .setContentText("Currently playing: " + songTitle)
+                .setSmallIcon(R.drawable.music_note)
+                .build();
+    }
+
+    /**
+     * Saves the playback position, then again periodically while playing, so
+     * little is lost if the process dies. Runs on the playback thread.
+     */
+    private void saveSnapshot() {
+        handler.removeCallbacks(saveSnapshot);
+        if (mp3Wrapper == null) {
+            return;
+        }
+        mp3Wrapper.saveSnapshot();
+        if (mp3Wrapper.getState() == MP3PlayerState.PLAYING) {
+            handler.postDelayed(saveSnapshot, SNAPSHOT_INTERVAL_MS);
+        }
+    }
+
+    /**
+     * Gets the clock that publishes the playback position.
+     *
+     * @return The playback clock.
+     */
+    public PlaybackClock getPlaybackClock() {
+        return playbackClock;
     }
 
     /**
-     * Gets the duration of the currently playing music.
+     * Gets the duration of the currently playing music, as last published.
      *
      * @return The duration in milliseconds.
      */
     public int getDuration() {
-        return mp3Wrapper.getDuration();
+        return playbackClock.getPosition().getDuration();
     }
 
     /**
-     * Gets the current progress of the music playback.
+     * Gets the current progress of the music playback, extrapolated from the
+     * last published position rather than asking the player.
      *
      * @return The progress in milliseconds.
      */
     public int getProgress() {
-        return mp3Wrapper.getProgress();
+        return playbackClock.getPosition().positionAt(SystemClock.elapsedRealtime());
     }
 }
\ No newline at end of file
@@ -0,0 +1,87 @@
+package com.example.mp3player;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Publishes the playback position to observers when the playback state changes.
+ * Owned by MusicService. Observers get a PlaybackPosition anchor and extrapolate
+ * the position themselves, so nothing polls the player.
+ */
+public class PlaybackClock {
+
+    /**
+     * Receives position anchors on the main thread.
+     */
+    public interface Observer {
+        /**
+         * Called when playback starts, pauses, seeks, changes speed or changes track.
+         *
+         * @param position The new position anchor.
+         */
+        void onPositionChanged(PlaybackPosition position);
+    }
+
+    private final CopyOnWriteArrayList<Observer> observers = new CopyOnWriteArrayList<>();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    private volatile PlaybackPosition position = PlaybackPosition.STOPPED;
+
+    /**
+     * Adds an observer and immediately sends it the current position.
+     *
+     * @param observer The observer to add.
+     */
+    public void addObserver(Observer observer) {
+        observers.addIfAbsent(observer);
+        PlaybackPosition current = position;
+        handler.post(() -> {
+            if (observers.contains(observer)) {
+                observer.onPositionChanged(current);
+            }
+        });
+    }
+
+    /**
+     * Removes an observer.
+     *
+     * @param observer The observer to remove.
+     */
+    public void removeObserver(Observer observer) {
+        observers.remove(observer);
+    }
+
+    /**
+     * Gets the latest position anchor.
+     *
+     * @return The position anchor.
+     */
+    public PlaybackPosition getPosition() {
+        return position;
+    }
+
+    /**
+     * Takes the anchor from the player's latest status and sends it to every observer.
+     *
+     * @param mp3Wrapper The player to read, or null if playback has stopped.
+     */
+    public void publish(MP3PlayerWrapper mp3Wrapper) {
+        PlaybackPosition published = mp3Wrapper != null
+                ? mp3Wrapper.getStatus().getPosition() : PlaybackPosition.STOPPED;
+        position = published;
+
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            dispatch(published);
+        } else {
+            handler.post(() -> dispatch(published));
+        }
+    }
+
+    private void dispatch(PlaybackPosition published) {
+        for (Observer observer : observers) {
+            observer.onPositionChanged(published);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.mp3player;
+
+/**
+ * Immutable record of the current playback session, published by MusicService.
+ */
+public final class PlaybackSession {
+
+    /**
+     * Session used while MusicService is not running.
+     */
+    public static final PlaybackSession NONE = new PlaybackSession(false, null,
+            MP3PlayerState.STOPPED, PlaybackPosition.STOPPED);
+
+    private final boolean serviceRunning;
+    private final String filePath;
+    private final MP3PlayerState state;
+    private final PlaybackPosition position;
+
+    /**
+     * Creates a session record.
+     *
+     * @param serviceRunning Whether MusicService is running.
+     * @param filePath       The file path of the current track, or null.
+     * @param state          The state of the player.
+     * @param position       The playback position anchor.
+     */
+    public PlaybackSession(boolean serviceRunning, String filePath, MP3PlayerState state,
+                           PlaybackPosition position) {
+        this.serviceRunning = serviceRunning;
+        this.filePath = filePath;
+        this.state = state;
+        this.position = position;
+    }
+
+    public boolean isServiceRunning() {
+        return serviceRunning;
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    public MP3PlayerState getState() {
+        return state;
+    }
+
+    public PlaybackPosition getPosition() {
+        return position;
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.mp3player;
+
+import android.os.Handler;
+import android.util.Log;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Singleton Class: In-process record of whether MusicService is running and what it is playing.
+ * Reading the session is a single volatile read, so activities can check it on every tap
+ * instead of asking ActivityManager for the running services. Updates from the
+ * playback thread are compare-and-set, so they cannot bring back a session the
+ * service ended on the main thread in the meantime.
+ */
+public class PlaybackSessionRegistry {
+
+    // How often the registry is checked against the player while the service runs
+    private static final long RECONCILE_INTERVAL_MS = 5000;
+
+    private static PlaybackSessionRegistry instance;
+
+    private final Handler handler = new Handler(PlaybackThread.getInstance().getLooper());
+    private final Runnable reconcile = this::reconcile;
+
+    private final AtomicReference<PlaybackSession> session = new AtomicReference<>(PlaybackSession.NONE);
+
+    /**
+     * Private constructor for Singleton pattern.
+     */
+    private PlaybackSessionRegistry() {
+    }
+
+    /**
+     * Creates an instance of PlaybackSessionRegistry if null, else returns the existing instance.
+     *
+     * @return The instance of PlaybackSessionRegistry.
+     */
+    public static synchronized PlaybackSessionRegistry getInstance() {
+        if (instance == null) {
+            instance = new PlaybackSessionRegistry();
+        }
+        return instance;
+    }
+
+    /**
+     * Gets the current session.
+     *
+     * @return The session, PlaybackSession.NONE if the service is not running.
+     */
+    public PlaybackSession getSession() {
+        return session.get();
+    }
+
+    /**
+     * Called from MusicService.onCreate.
+     */
+    public void onServiceCreated() {
+        session.set(new PlaybackSession(true, null, MP3PlayerState.STOPPED, PlaybackPosition.STOPPED));
+        handler.removeCallbacks(reconcile);
+        handler.postDelayed(reconcile, RECONCILE_INTERVAL_MS);
+    }
+
+    /**
+     * Called from MusicService.onDestroy.
+     */
+    public void onServiceDestroyed() {
+        handler.removeCallbacks(reconcile);
+        session.set(PlaybackSession.NONE);
+    }
+
+    /**
+     * Records a playback state change published by MusicService.
+     *
+     * @param filePath The file path of the current track.
+     * @param state    The state of the player.
+     * @param position The playback position anchor.
+     */
+    public void update(String filePath, MP3PlayerState state, PlaybackPosition position) {
+        PlaybackSession current = session.get();
+        if (!current.isServiceRunning()) {
+            return;
+        }
+        // Fails if the service was destroyed since the read
+        session.compareAndSet(current, new PlaybackSession(true, filePath, state, position));
+    }
+
+    /**
+     * Checks the registry against the player in case a state change was not published,
+     * and corrects it. Runs periodically on the playback thread while the service is running,
+     * the same thread the player is driven from.
+     */
+    private void reconcile() {
+        PlaybackSession current = session.get();
+        if (!current.isServiceRunning()) {
+            return;
+        }
+
+        // One status read gives a state, track and position that belong together
+        PlayerStatus status = MP3PlayerWrapper.getInstance().getStatus();
+        String filePath = status.getFilePath();
+        MP3PlayerState state = status.getState();
+        boolean samePath = filePath == null ? current.getFilePath() == null : filePath.equals(current.getFilePath());
+        if (!samePath || state != current.getState()) {
+            Log.w("PlaybackSessionRegistry", "Session was " + current.getState() + ", player is " + state);
+            if (!session.compareAndSet(current, new PlaybackSession(true, filePath, state, status.getPosition()))) {
+                // The service was destroyed or created again since the read, which schedules its own check
+                return;
+            }
+        }
+        handler.postDelayed(reconcile, RECONCILE_INTERVAL_MS);
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.mp3player;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+
+/**
+ * Singleton Class: The thread every player operation runs on.
+ * MP3PlayerWrapper, MP3Player, the engines and the MediaPlayer pool are only
+ * touched on this thread, so calls into MediaPlayer and MediaCodec, some of
+ * which block for tens of milliseconds, never hold up the UI. MediaPlayers are
+ * created here too, so their callbacks arrive here. Commands are queued through
+ * a CommandQueue, which folds redundant play, pause, seek and speed commands
+ * together before they reach the player. Results reach the UI through
+ * PlaybackClock and PlaybackSessionRegistry, on the main thread.
+ */
+public class PlaybackThread {
+
+    private static PlaybackThread instance;
+
+    private final Handler handler;
+    private final CommandQueue commands;
+
+    /**
+     * Private constructor for Singleton pattern.
+     */
+    private PlaybackThread() {
+        HandlerThread thread = new HandlerThread("Playback");
+        thread.start();
+        handler = new Handler(thread.getLooper());
+        commands = new CommandQueue(handler::post);
+    }
+
+    /**
+     * Creates an instance of PlaybackThread if null, else returns the existing instance.
+     *
+     * @return The instance of PlaybackThread.
+     */
+    public static synchronized PlaybackThread getInstance() {
+        if (instance == null) {
+            instance = new PlaybackThread();
+        }
+        return instance;
+    }
+
+    /**
+     * Gets the looper of the playback thread, for handlers used by the player.
+     *
+     * @return The looper.
+     */
+    public Looper getLooper() {
+        return handler.getLooper();
+    }
+
+    /**
+     * Gets a handler on the playback thread, for delayed work.
+     *
+     * @return The handler.
+     */
+    public Handler getHandler() {
+        return handler;
+    }
+
+    /**
+     * Runs a command on the playback thread after those already queued. Later
+     * commands are never folded past it.
+     *
+     * @param command The command.
+     */
+    public void execute(Runnable command) {
+        commands.execute(command);
+    }
+
+    /**
+     * Runs a command on the playback thread, replacing the waiting command of the
+     * same kind if there is one.
+     *
+     * @param kind    The kind of command, such as "seek".
+     * @param command The command.
+     */
+    public void executeLatest(String kind, Runnable command) {
+        commands.executeLatest(kind, command);
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.mp3player;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.List;
+
+/**
+ * RecyclerView adapter showing the songs found by a library search.
+ * Results are few, so they are held in full with their display text
+ * formatted once when they arrive.
+ */
+public class SearchResultsAdapter extends RecyclerView.Adapter<SongListAdapter.ViewHolder> {
+
+    private long[] ids = new long[0];
+    private String[] paths = new String[0];
+    private String[] titles = new String[0];
+    private String[] displayText = new String[0];
+
+    private SongListAdapter.OnSongClickListener listener;
+
+    public void setOnSongClickListener(SongListAdapter.OnSongClickListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Replaces the results shown.
+     *
+     * @param songs The songs found, best matches first.
+     */
+    public void setResults(List<Song> songs) {
+        int size = songs.size();
+        ids = new long[size];
+        paths = new String[size];
+        titles = new String[size];
+        displayText = new String[size];
+        for (int i = 0; i < size; i++) {
+            Song song = songs.get(i);
+            ids[i] = song.getId();
+            paths[i] = song.getPath();
+            titles[i] = TitleFormatter.title(song);
+            displayText[i] = TitleFormatter.displayText(song);
+        }
+        // Every row may change with each keystroke
+        notifyDataSetChanged();
+    }
+
+    @NonNull
+    @Override
+    public SongListAdapter.ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext())
+                .inflate(android.R.layout.simple_list_item_1, parent, false);
+        SongListAdapter.ViewHolder holder = new SongListAdapter.ViewHolder(view);
+        view.setOnClickListener(v -> {
+            int position = holder.getBindingAdapterPosition();
+            if (listener != null && position != RecyclerView.NO_POSITION) {
+                listener.onSongClick(position, paths[position]);
+            }
+        });
+        return holder;
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull SongListAdapter.ViewHolder holder, int position) {
+        holder.text.setText(displayText[position]);
+    }
+
+    @Override
+    public int getItemCount() {
+        return ids.length;
+    }
+
+    /**
+     * Gets the IDs of the songs found, in the order shown.
+     *
+     * @return The song IDs.
+     */
+    public long[] getSongIds() {
+        return ids.clone();
+    }
+
+    /**
+     * Gets the title of a song in the results.
+     *
+     * @param position The position of the song in the results.
+     * @return The title.
+     */
+    public String getTitle(int position) {
+        return titles[position];
+    }
+}
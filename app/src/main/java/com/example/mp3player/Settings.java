@@ -16,8 +16,11 @@ import android.widget.Spinner;
  */
 public class Settings extends AppCompatActivity {
 
-    // Available playback speeds
-    private static final String[] speeds = {"1.0", "1.25", "1.5", "1.75", "2.0"};
+    // Available playback speeds, 0.5x to 3x in 0.05 steps
+    private static final String[] speeds = PlaybackSpeeds.labels();
+
+    // Decode buffer of each entry in R.array.audio_engines, 0 for MediaPlayer
+    private static final int[] ENGINE_BUFFER_MS = {0, 50, 100, 200, 400};
 
     // SeekBars for adjusting RGB values
     private SeekBar redSeekBar, greenSeekBar, blueSeekBar;
@@ -40,11 +43,17 @@ public class Settings extends AppCompatActivity {
         preferences = AppPreferences.getInstance(this);
         mainLayout = findViewById(R.id.mainLayout);
 
-        // Sets dropdown to speeds
-        Spinner dropdown = setDropDown();
+        // The dropdowns show the stored choices, so are set up once they have loaded
+        preferences.whenLoaded(snapshot -> {
+            // Sets dropdown to speeds
+            Spinner dropdown = setDropDown(snapshot);
+
+            // Sets listener to dropdown
+            setDropdownListener(dropdown);
 
-        // Sets listener to dropdown
-        setDropdownListener(dropdown);
+            // Sets dropdown to audio engines
+            setEngineDropDown(snapshot);
+        });
 
         // Sets sliders
         setSliders();
@@ -120,19 +129,16 @@ public class Settings extends AppCompatActivity {
     /**
      * Sets the dropdown for selecting playback speed.
      *
+     * @param snapshot The loaded preferences, whose speed is selected.
      * @return The initialized Spinner object.
      */
-    private Spinner setDropDown() {
+    private Spinner setDropDown(PreferencesSnapshot snapshot) {
         ArrayAdapter<String> adapter = new ArrayAdapter<>(this, android.R.layout.simple_spinner_item, speeds);
         adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
 
         Spinner dropdown = findViewById(R.id.playbackSpeed);
         dropdown.setAdapter(adapter);
-        for (int i = 0; i < speeds.length; i++) {
-            if (Float.parseFloat(speeds[i]) == preferences.getPlaybackSpeed()) {
-                dropdown.setSelection(i);
-            }
-        }
+        dropdown.setSelection(PlaybackSpeeds.indexOf(snapshot.getPlaybackSpeed()), false);
 
         return dropdown;
     }
@@ -146,10 +152,48 @@ public class Settings extends AppCompatActivity {
         dropdown.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
             @Override
             public void onItemSelected(AdapterView<?> parentView, View selectedItemView, int position, long id) {
-                String selectedValue = speeds[position];
-                preferences.setPlaybackSpeed(Float.parseFloat(selectedValue));
-                MP3PlayerWrapper mp3player = MP3PlayerWrapper.getInstance();
-                mp3player.setPlaybackSpeed(preferences.getPlaybackSpeed());
+                float speed = PlaybackSpeeds.speedAt(position);
+                // The spinner also reports its initial selection, which changes nothing
+                if (speed == PlaybackSpeeds.snap(preferences.getPlaybackSpeed())) {
+                    return;
+                }
+                // MusicService listens for the change and applies it to the playing track
+                preferences.setPlaybackSpeed(speed);
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parentView) {
+                // Do nothing here
+            }
+        });
+    }
+
+    /**
+     * Sets the dropdown for choosing between MediaPlayer and the MediaCodec engine
+     * with different buffer depths. Takes effect from the next track.
+     *
+     * @param snapshot The loaded preferences, whose engine is selected.
+     */
+    private void setEngineDropDown(PreferencesSnapshot snapshot) {
+        ArrayAdapter<CharSequence> adapter = ArrayAdapter.createFromResource(this,
+                R.array.audio_engines, android.R.layout.simple_spinner_item);
+        adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+
+        Spinner dropdown = findViewById(R.id.audioEngine);
+        dropdown.setAdapter(adapter);
+        int selected = 0;
+        for (int i = 0; i < ENGINE_BUFFER_MS.length; i++) {
+            if (ENGINE_BUFFER_MS[i] == snapshot.getCodecBufferMs()) {
+                selected = i;
+            }
+        }
+        dropdown.setSelection(selected, false);
+
+        dropdown.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parentView, View selectedItemView, int position, long id) {
+                // MusicService listens for the change and switches engines
+                preferences.setCodecBufferMs(ENGINE_BUFFER_MS[position]);
             }
 
             @Override
@@ -180,7 +224,7 @@ public class Settings extends AppCompatActivity {
      */
     public void saveColour(View v) {
         preferences.setBackgroundColor(colour);
-        mainLayout.setBackgroundColor(preferences.getBackgroundColour());
+        mainLayout.setBackgroundColor(colour);
     }
 
     /**
@@ -196,6 +240,6 @@ public class Settings extends AppCompatActivity {
      * Loads user preferences and updates the main layout background.
      */
     private void loadData() {
-        mainLayout.setBackgroundColor(preferences.getBackgroundColour());
+        preferences.whenLoaded(snapshot -> mainLayout.setBackgroundColor(snapshot.getBackgroundColour()));
     }
 }
\ No newline at end of file
@@ -0,0 +1,481 @@
+package com.example.mp3player;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListUpdateCallback;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * RecyclerView adapter that pages songs in from the library index.
+ * Only a bounded number of fixed-size pages are held in memory, so memory use
+ * does not grow with the size of the library. Pages are loaded off the UI
+ * thread and hold display strings formatted once at load time. The first page
+ * can be read ahead with preloadFirstPage() while the app starts, so the first
+ * adapter created shows songs in its first frame. Each page is read by key,
+ * starting after the last ID of the page before it, so scrolling deep into a
+ * large library does not make every page read slower.
+ */
+public class SongListAdapter extends RecyclerView.Adapter<SongListAdapter.ViewHolder> {
+
+    /**
+     * Receives taps on songs in the list.
+     */
+    public interface OnSongClickListener {
+        /**
+         * Called when a song is tapped.
+         *
+         * @param position The position of the song in the list.
+         * @param path     The file path of the song.
+         */
+        void onSongClick(int position, String path);
+    }
+
+    /**
+     * Receives the IDs of every song in the list.
+     */
+    public interface SongIdsCallback {
+        /**
+         * Called on the main thread with the song IDs.
+         *
+         * @param ids The song IDs, in list order.
+         */
+        void onSongIds(long[] ids);
+    }
+
+    // Number of songs in each page
+    private static final int PAGE_SIZE = 100;
+
+    // Maximum number of pages kept in memory
+    private static final int MAX_PAGES = 8;
+
+    /**
+     * A page of songs with preformatted display text.
+     */
+    private static class Page {
+        final long[] ids;
+        final String[] paths;
+        final String[] titles;
+        final String[] displayText;
+
+        Page(List<Song> songs) {
+            int size = songs.size();
+            ids = new long[size];
+            paths = new String[size];
+            titles = new String[size];
+            displayText = new String[size];
+            for (int i = 0; i < size; i++) {
+                Song song = songs.get(i);
+                ids[i] = song.getId();
+                paths[i] = song.getPath();
+                titles[i] = TitleFormatter.title(song);
+                displayText[i] = TitleFormatter.displayText(song);
+            }
+        }
+    }
+
+    /**
+     * ViewHolder for a single song row.
+     */
+    static class ViewHolder extends RecyclerView.ViewHolder {
+        final TextView text;
+
+        ViewHolder(View itemView) {
+            super(itemView);
+            text = itemView.findViewById(android.R.id.text1);
+        }
+    }
+
+    /**
+     * The song count and first page read before the first adapter was created.
+     */
+    private static class Preload {
+        final int count;
+        final Page page;
+
+        Preload(int count, Page page) {
+            this.count = count;
+            this.page = page;
+        }
+    }
+
+    // Preloaded first page waiting for the first adapter, guarded by the class
+    private static Preload preload;
+
+    // Whether the first adapter has been created, so later preloads would be stale
+    private static boolean preloadTaken;
+
+    private final LibraryDatabase database;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    // Loaded pages by page index, least recently used first
+    private final LinkedHashMap<Integer, Page> pages = new LinkedHashMap<Integer, Page>(MAX_PAGES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Page> eldest) {
+            return size() > MAX_PAGES;
+        }
+    };
+
+    // Last song ID of the page before, by page index, so pages are read by key.
+    // Only used on the executor thread.
+    private final Map<Integer, Long> pageKeys = new HashMap<>();
+
+    // Pages currently being loaded, to avoid requesting them twice
+    private final List<Integer> loadingPages = new ArrayList<>();
+
+    private OnSongClickListener listener;
+    private int itemCount;
+
+    // Incremented on every refresh so stale page loads are discarded
+    private int generation;
+
+    // Whether the first page, or an empty list, has been loaded
+    private boolean firstPageLoaded;
+    private Runnable firstPageListener;
+
+    /**
+     * Creates an adapter over the library index, showing the preloaded first
+     * page if there is one. Otherwise it is empty until refresh() is called.
+     *
+     * @param context The context used to open the library database.
+     */
+    public SongListAdapter(Context context) {
+        this.database = LibraryDatabase.getInstance(context);
+
+        Preload first = takePreload();
+        if (first != null) {
+            itemCount = first.count;
+            if (first.page.ids.length > 0) {
+                pages.put(0, first.page);
+                pageKeys.put(1, first.page.ids[first.page.ids.length - 1]);
+            }
+            firstPageLoaded = true;
+        }
+    }
+
+    /**
+     * Reads the song count and first page of the library for the first adapter
+     * created. Blocks, so call it off the main thread while the app starts.
+     *
+     * @param context The context used to open the library database.
+     */
+    public static void preloadFirstPage(Context context) {
+        LibraryDatabase database = LibraryDatabase.getInstance(context);
+        int count = database.getSongCount();
+        Page page = new Page(count > 0 ? database.getSongPage(-1, PAGE_SIZE) : new ArrayList<>());
+        synchronized (SongListAdapter.class) {
+            if (!preloadTaken) {
+                preload = new Preload(count, page);
+            }
+        }
+    }
+
+    private static synchronized Preload takePreload() {
+        preloadTaken = true;
+        Preload first = preload;
+        preload = null;
+        return first;
+    }
+
+    public void setOnSongClickListener(OnSongClickListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Sets a listener run once the first page of songs has been loaded, or the
+     * list has been found to be empty. It runs straight away if that has already happened.
+     *
+     * @param listener The listener, run on the main thread.
+     */
+    public void setOnFirstPageLoadedListener(Runnable listener) {
+        if (firstPageLoaded) {
+            listener.run();
+            return;
+        }
+        firstPageListener = listener;
+    }
+
+    private void onFirstPageLoaded() {
+        if (firstPageLoaded) {
+            return;
+        }
+        firstPageLoaded = true;
+        if (firstPageListener != null) {
+            firstPageListener.run();
+            firstPageListener = null;
+        }
+    }
+
+    @NonNull
+    @Override
+    public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext())
+                .inflate(android.R.layout.simple_list_item_1, parent, false);
+        ViewHolder holder = new ViewHolder(view);
+        view.setOnClickListener(v -> {
+            int position = holder.getBindingAdapterPosition();
+            String path = getPath(position);
+            if (listener != null && path != null) {
+                listener.onSongClick(position, path);
+            }
+        });
+        return holder;
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+        int pageIndex = position / PAGE_SIZE;
+        Page page = pages.get(pageIndex);
+        if (page == null || position % PAGE_SIZE >= page.displayText.length) {
+            // Show an empty row until the page has loaded
+            holder.text.setText(null);
+            loadPage(pageIndex);
+            return;
+        }
+
+        holder.text.setText(page.displayText[position % PAGE_SIZE]);
+
+        // Load the next page before the user reaches it
+        if (position % PAGE_SIZE >= PAGE_SIZE * 3 / 4 && (pageIndex + 1) * PAGE_SIZE < itemCount) {
+            loadPage(pageIndex + 1);
+        }
+    }
+
+    @Override
+    public int getItemCount() {
+        return itemCount;
+    }
+
+    /**
+     * Gets the file path of a song if its page is loaded.
+     *
+     * @param position The position of the song in the list.
+     * @return The file path, or null if the page is not loaded.
+     */
+    public String getPath(int position) {
+        Page page = pages.get(position / PAGE_SIZE);
+        if (page == null || position < 0 || position % PAGE_SIZE >= page.paths.length) {
+            return null;
+        }
+        return page.paths[position % PAGE_SIZE];
+    }
+
+    /**
+     * Gets the title of a song if its page is loaded.
+     *
+     * @param position The position of the song in the list.
+     * @return The title, or null if the page is not loaded.
+     */
+    public String getTitle(int position) {
+        Page page = pages.get(position / PAGE_SIZE);
+        if (page == null || position < 0 || position % PAGE_SIZE >= page.titles.length) {
+            return null;
+        }
+        return page.titles[position % PAGE_SIZE];
+    }
+
+    /**
+     * Reads the IDs of every song in the list in the background, whether or not
+     * their pages are loaded.
+     *
+     * @param callback Receives the IDs on the main thread.
+     */
+    public void loadSongIds(SongIdsCallback callback) {
+        executor.execute(() -> {
+            long[] ids = database.getSongIdsInOrder();
+            handler.post(() -> callback.onSongIds(ids));
+        });
+    }
+
+    /**
+     * Reloads the song count and the pages in memory after the library changes.
+     * Pages whose songs changed are diffed so only the affected rows rebind.
+     */
+    public void refresh() {
+        final int refreshGeneration = ++generation;
+        final List<Integer> pageIndexes = new ArrayList<>(pages.keySet());
+        loadingPages.clear();
+
+        executor.execute(() -> {
+            // Songs may have been added or removed, so the old keys may point into other pages
+            pageKeys.clear();
+            int count = database.getSongCount();
+            List<Page> reloaded = new ArrayList<>(pageIndexes.size());
+            for (int pageIndex : pageIndexes) {
+                reloaded.add(readPage(pageIndex));
+            }
+
+            handler.post(() -> {
+                if (refreshGeneration != generation) {
+                    return;
+                }
+                applyRefresh(count, pageIndexes, reloaded);
+            });
+        });
+    }
+
+    private void applyRefresh(int count, List<Integer> pageIndexes, List<Page> reloaded) {
+        if (count != itemCount) {
+            // Rows moved between pages, so every position may have changed
+            pages.clear();
+            for (int i = 0; i < pageIndexes.size(); i++) {
+                pages.put(pageIndexes.get(i), reloaded.get(i));
+            }
+            itemCount = count;
+            notifyDataSetChanged();
+            if (count == 0 || pages.containsKey(0)) {
+                onFirstPageLoaded();
+            }
+            return;
+        }
+
+        for (int i = 0; i < pageIndexes.size(); i++) {
+            int pageIndex = pageIndexes.get(i);
+            Page oldPage = pages.get(pageIndex);
+            Page newPage = reloaded.get(i);
+            pages.put(pageIndex, newPage);
+            if (oldPage != null) {
+                DiffUtil.calculateDiff(new PageDiff(oldPage, newPage), false)
+                        .dispatchUpdatesTo(new OffsetCallback(pageIndex * PAGE_SIZE));
+            }
+        }
+        if (count == 0 || pages.containsKey(0)) {
+            onFirstPageLoaded();
+        }
+    }
+
+    /**
+     * Stops loading pages. The adapter must not be used afterwards.
+     */
+    public void release() {
+        executor.shutdownNow();
+        handler.removeCallbacksAndMessages(null);
+    }
+
+    private void loadPage(int pageIndex) {
+        if (pages.containsKey(pageIndex) || loadingPages.contains(pageIndex)) {
+            return;
+        }
+        loadingPages.add(pageIndex);
+
+        final int loadGeneration = generation;
+        executor.execute(() -> {
+            Page page = readPage(pageIndex);
+            handler.post(() -> {
+                if (loadGeneration != generation) {
+                    return;
+                }
+                loadingPages.remove(Integer.valueOf(pageIndex));
+                pages.put(pageIndex, page);
+                notifyItemRangeChanged(pageIndex * PAGE_SIZE, page.ids.length);
+                if (pageIndex == 0) {
+                    onFirstPageLoaded();
+                }
+            });
+        });
+    }
+
+    /**
+     * Reads a page starting after the last ID of the page before it. The key is
+     * known when the page before was read; otherwise, after a jump, it is looked
+     * up once by position. Runs on the executor thread.
+     *
+     * @param pageIndex The index of the page.
+     * @return The page.
+     */
+    private Page readPage(int pageIndex) {
+        Long afterId = pageKeys.get(pageIndex);
+        if (afterId == null) {
+            afterId = pageIndex == 0 ? -1 : database.getSongIdAt(pageIndex * PAGE_SIZE - 1);
+            if (pageIndex > 0 && afterId == -1) {
+                // The library shrank past this page
+                return new Page(new ArrayList<>());
+            }
+        }
+        Page page = new Page(database.getSongPage(afterId, PAGE_SIZE));
+        if (page.ids.length == PAGE_SIZE) {
+            pageKeys.put(pageIndex + 1, page.ids[PAGE_SIZE - 1]);
+        }
+        return page;
+    }
+
+    /**
+     * Compares two versions of the same page.
+     */
+    private static class PageDiff extends DiffUtil.Callback {
+        private final Page oldPage;
+        private final Page newPage;
+
+        PageDiff(Page oldPage, Page newPage) {
+            this.oldPage = oldPage;
+            this.newPage = newPage;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return oldPage.ids.length;
+        }
+
+        @Override
+        public int getNewListSize() {
+            return newPage.ids.length;
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return oldPage.ids[oldItemPosition] == newPage.ids[newItemPosition];
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            return oldPage.displayText[oldItemPosition].equals(newPage.displayText[newItemPosition]);
+        }
+    }
+
+    /**
+     * Dispatches a page diff to the adapter at the page's position in the list.
+     */
+    private class OffsetCallback implements ListUpdateCallback {
+        private final int offset;
+
+        OffsetCallback(int offset) {
+            this.offset = offset;
+        }
+
+        @Override
+        public void onInserted(int position, int count) {
+            notifyItemRangeInserted(offset + position, count);
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            notifyItemRangeRemoved(offset + position, count);
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            notifyItemMoved(offset + fromPosition, offset + toPosition);
+        }
+
+        @Override
+        public void onChanged(int position, int count, Object payload) {
+            notifyItemRangeChanged(offset + position, count, payload);
+        }
+    }
+}
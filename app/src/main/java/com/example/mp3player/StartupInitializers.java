@@ -0,0 +1,46 @@
+package com.example.mp3player;
+
+import android.content.Context;
+import android.util.Log;
+
+/**
+ * Runs the startup work that does not need the main thread on one background
+ * thread, started when the process starts, so it overlaps with the first
+ * activity being created instead of delaying its first frame. Each step is a
+ * traced startup phase, and the steps run in this order, the one the first
+ * frame needs soonest first:
+ * <ol>
+ * <li>"preferences": starts loading the preferences on their own thread, so
+ * they are usually ready by the time the first screen asks for them.</li>
+ * <li>"database": opens the library database, creating or upgrading it.</li>
+ * <li>"first_page": reads the song count and first page of the library for
+ * SongListAdapter, so the list is shown from the cached index straight away.</li>
+ * </ol>
+ * Work that needs an activity, such as refreshing the library from MediaStore,
+ * is started by that activity once its first frame has been drawn.
+ */
+public final class StartupInitializers {
+
+    private StartupInitializers() {
+    }
+
+    /**
+     * Starts the steps in the background.
+     *
+     * @param context The application context.
+     */
+    public static void start(Context context) {
+        Context appContext = context.getApplicationContext();
+        Thread thread = new Thread(() -> {
+            try {
+                StartupTrace.section("preferences", () -> AppPreferences.getInstance(appContext));
+                StartupTrace.section("database", () -> LibraryDatabase.getInstance(appContext).getReadableDatabase());
+                StartupTrace.section("first_page", () -> SongListAdapter.preloadFirstPage(appContext));
+            } catch (RuntimeException e) {
+                // Each step is repeated on demand by whatever needs it
+                Log.e("StartupInitializers", e.toString());
+            }
+        }, "StartupInitializers");
+        thread.start();
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.mp3player;
+
+import android.app.Activity;
+import android.os.Process;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+/**
+ * Times one launch of an activity, from the launch starting to its first frame
+ * and to it being interactive, and marks the phases of startup in between.
+ * <p>
+ * Phases show as "Startup.&lt;phase&gt;" sections in a system trace and are
+ * recorded in Metrics under Metrics.STARTUP_PHASE plus the phase name. The first
+ * launch in a process started to show an activity is a cold start, timed from
+ * when the process started. Other launches are warm starts, timed from when the
+ * trace is created. The first frame and interactive times are recorded in
+ * Metrics with ".cold" or ".warm" appended to their names.
+ */
+public class StartupTrace {
+
+    private static final String TAG = "Startup";
+
+    // Whether the next launch is not a cold start, only touched on the main thread
+    private static boolean launched;
+
+    private final Activity activity;
+    private final boolean cold;
+
+    // When the launch started, from SystemClock.elapsedRealtime()
+    private final long launchTime;
+
+    // Run on the main thread once the first frame has been drawn
+    private final Runnable afterFirstFrame;
+
+    private boolean firstFrameDrawn;
+    private boolean interactive;
+    private boolean interactivePending;
+
+    /**
+     * Starts timing a launch. Call it on the main thread after setContentView().
+     *
+     * @param activity        The activity being launched.
+     * @param afterFirstFrame Run on the main thread once the first frame has been
+     *                        drawn, to start work deferred until then.
+     */
+    public StartupTrace(Activity activity, Runnable afterFirstFrame) {
+        this.activity = activity;
+        this.afterFirstFrame = afterFirstFrame;
+        cold = !launched;
+        launched = true;
+        launchTime = cold ? Process.getStartElapsedRealtime() : SystemClock.elapsedRealtime();
+
+        View decorView = activity.getWindow().getDecorView();
+        decorView.getViewTreeObserver().addOnDrawListener(new ViewTreeObserver.OnDrawListener() {
+            @Override
+            public void onDraw() {
+                if (firstFrameDrawn) {
+                    return;
+                }
+                firstFrameDrawn = true;
+                record(Metrics.STARTUP_FIRST_FRAME);
+
+                // Listeners cannot be removed while drawing, and the deferred work
+                // runs after the frame rather than delaying it
+                decorView.post(() -> {
+                    decorView.getViewTreeObserver().removeOnDrawListener(this);
+                    afterFirstFrame.run();
+                    if (interactivePending) {
+                        reportInteractive();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Records why the process was started. Call it from Application.onCreate().
+     *
+     * @param forActivity Whether the process was started to show an activity, rather
+     *                    than for a service or broadcast, so its first launch is cold.
+     */
+    public static void onProcessStart(boolean forActivity) {
+        launched = !forActivity;
+    }
+
+    /**
+     * Runs a phase of startup as a traced and timed section. Can be called on any thread.
+     *
+     * @param phase The name of the phase.
+     * @param work  The work done in the phase.
+     */
+    public static void section(String phase, Runnable work) {
+        Trace.beginSection("Startup." + phase);
+        long start = SystemClock.elapsedRealtimeNanos();
+        try {
+            work.run();
+        } finally {
+            Metrics.getInstance().record(Metrics.STARTUP_PHASE + phase,
+                    (SystemClock.elapsedRealtimeNanos() - start) / 1000);
+            Trace.endSection();
+        }
+    }
+
+    /**
+     * Marks the activity as interactive, once it shows the content the user came
+     * for, and tells the system so with Activity.reportFullyDrawn(). Only the
+     * first call counts, and one made before the first frame takes effect after it.
+     */
+    public void reportInteractive() {
+        if (interactive) {
+            return;
+        }
+        if (!firstFrameDrawn) {
+            interactivePending = true;
+            return;
+        }
+        interactive = true;
+        record(Metrics.STARTUP_INTERACTIVE);
+        activity.reportFullyDrawn();
+    }
+
+    /**
+     * Records the time since the launch started.
+     */
+    private void record(String name) {
+        long elapsed = SystemClock.elapsedRealtime() - launchTime;
+        Metrics.getInstance().record(name + (cold ? ".cold" : ".warm"), elapsed * 1000);
+        Log.i(TAG, name + (cold ? " (cold) " : " (warm) ") + elapsed + "ms");
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.mp3player;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Singleton Class: Loads waveform summaries for the seek bar off the UI thread.
+ * Summaries are read from a disk cache, or else generated across a bounded
+ * fork-join pool that leaves one core for playback and the UI. The library
+ * can be summarised ahead of time so the player screen never waits on a decode.
+ */
+public class WaveformLoader {
+
+    /**
+     * Receives loaded waveforms on the main thread.
+     */
+    public interface Callback {
+        /**
+         * Called when a waveform has been loaded.
+         *
+         * @param path     The file path of the song.
+         * @param waveform The waveform, or null if the song cannot be decoded.
+         */
+        void onWaveformLoaded(String path, WaveformSummary waveform);
+    }
+
+    // Summaries kept in memory, about 2KB each
+    private static final int MEMORY_CACHE_ENTRIES = 32;
+
+    private static WaveformLoader instance;
+
+    private final WaveformCache cache;
+    private final WaveformGenerator generator;
+    private final LruCache<String, WaveformSummary> memoryCache = new LruCache<>(MEMORY_CACHE_ENTRIES);
+
+    // Loads for the player screen, on their own thread so they are not queued behind
+    // library-wide generation, which also pauses between tracks while one is in progress
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final ExecutorService precomputeExecutor = Executors.newSingleThreadExecutor();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Private constructor for Singleton pattern.
+     *
+     * @param context The application context.
+     */
+    private WaveformLoader(Context context) {
+        cache = new WaveformCache(new File(context.getCacheDir(), "waveform"));
+        int parallelism = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        generator = new WaveformGenerator(parallelism, cache, WaveformGenerator.DEFAULT_BUCKETS);
+    }
+
+    /**
+     * Creates an instance of WaveformLoader if null, else returns the existing instance.
+     *
+     * @param context The application context.
+     * @return The instance of WaveformLoader.
+     */
+    public static synchronized WaveformLoader getInstance(Context context) {
+        if (instance == null) {
+            instance = new WaveformLoader(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Loads the waveform of a song, calling back straight away if it is in memory.
+     *
+     * @param path     The file path of the song.
+     * @param callback Receives the waveform on the main thread.
+     */
+    public void load(String path, Callback callback) {
+        WaveformSummary cached = memoryCache.get(path);
+        if (cached != null) {
+            callback.onWaveformLoaded(path, cached);
+            return;
+        }
+
+        executor.execute(() -> {
+            long start = SystemClock.elapsedRealtime();
+            WaveformSummary waveform = null;
+            try {
+                waveform = generator.get(new File(path));
+                memoryCache.put(path, waveform);
+            } catch (IOException | RuntimeException e) {
+                Log.e("WaveformLoader", e.toString());
+            }
+            Log.d("WaveformLoader", "Loaded in " + (SystemClock.elapsedRealtime() - start) + "ms");
+
+            WaveformSummary loaded = waveform;
+            handler.post(() -> callback.onWaveformLoaded(path, loaded));
+        });
+    }
+
+    /**
+     * Generates the waveforms of songs missing from the disk cache in the background.
+     *
+     * @param paths The file paths of the songs.
+     */
+    public void precompute(List<String> paths) {
+        List<File> files = new ArrayList<>(paths.size());
+        for (String path : paths) {
+            files.add(new File(path));
+        }
+
+        precomputeExecutor.execute(() -> {
+            long start = SystemClock.elapsedRealtime();
+            int generated = generator.generateAll(files);
+            Log.d("WaveformLoader", "Generated " + generated + " of " + files.size() + " waveforms in "
+                    + (SystemClock.elapsedRealtime() - start) + "ms");
+        });
+    }
+}
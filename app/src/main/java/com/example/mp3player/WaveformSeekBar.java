@@ -0,0 +1,109 @@
+package com.example.mp3player;
+
+import android.content.Context;
+import android.content.res.ColorStateList;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+
+import androidx.appcompat.widget.AppCompatSeekBar;
+
+/**
+ * SeekBar that draws the track's waveform behind the thumb, with the played
+ * part in the progress colour. The waveform is reduced to one line per pixel
+ * column when it is set or the size changes, so drawing allocates nothing.
+ */
+public class WaveformSeekBar extends AppCompatSeekBar {
+
+    // Alpha of the part of the waveform not yet played
+    private static final int UNPLAYED_ALPHA = 0x60;
+
+    private final Paint playedPaint = new Paint();
+    private final Paint unplayedPaint = new Paint();
+
+    private WaveformSummary waveform;
+
+    // Start and end points of a vertical line per pixel column, for Canvas.drawLines
+    private float[] lines = new float[0];
+    private int lineCount;
+
+    public WaveformSeekBar(Context context) {
+        this(context, null);
+    }
+
+    public WaveformSeekBar(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        ColorStateList tint = getProgressTintList();
+        int colour = tint != null ? tint.getDefaultColor() : Color.DKGRAY;
+        playedPaint.setColor(colour);
+        playedPaint.setStrokeWidth(1);
+        unplayedPaint.setColor(colour);
+        unplayedPaint.setAlpha(UNPLAYED_ALPHA);
+        unplayedPaint.setStrokeWidth(1);
+    }
+
+    /**
+     * Sets the waveform to draw.
+     *
+     * @param waveform The waveform, or null to draw a plain seek bar.
+     */
+    public void setWaveform(WaveformSummary waveform) {
+        this.waveform = waveform;
+        buildLines();
+        invalidate();
+    }
+
+    @Override
+    protected void onSizeChanged(int width, int height, int oldWidth, int oldHeight) {
+        super.onSizeChanged(width, height, oldWidth, oldHeight);
+        buildLines();
+    }
+
+    /**
+     * Reduces the waveform to the pixel columns between the paddings.
+     */
+    private void buildLines() {
+        int left = getPaddingLeft();
+        int columns = getWidth() - left - getPaddingRight();
+        if (waveform == null || columns <= 0) {
+            lineCount = 0;
+            return;
+        }
+        if (lines.length < columns * 4) {
+            lines = new float[columns * 4];
+        }
+
+        float centre = getHeight() / 2f;
+        float scale = (getHeight() - getPaddingTop() - getPaddingBottom()) / 2f / 128f;
+        int buckets = waveform.getBucketCount();
+        for (int column = 0; column < columns; column++) {
+            int from = column * buckets / columns;
+            int to = Math.max(from + 1, (column + 1) * buckets / columns);
+            int min = 0;
+            int max = 0;
+            for (int bucket = from; bucket < to; bucket++) {
+                min = Math.min(min, waveform.getMin(bucket));
+                max = Math.max(max, waveform.getMax(bucket));
+            }
+
+            int i = column * 4;
+            lines[i] = left + column + 0.5f;
+            lines[i + 1] = centre - max * scale;
+            lines[i + 2] = lines[i];
+            // Keep silent columns visible as a one pixel line
+            lines[i + 3] = Math.max(centre - min * scale, lines[i + 1] + 1);
+        }
+        lineCount = columns;
+    }
+
+    @Override
+    protected synchronized void onDraw(Canvas canvas) {
+        if (lineCount > 0) {
+            int played = getMax() > 0 ? (int) ((long) lineCount * getProgress() / getMax()) : 0;
+            canvas.drawLines(lines, 0, played * 4, playedPaint);
+            canvas.drawLines(lines, played * 4, (lineCount - played) * 4, unplayedPaint);
+        }
+        super.onDraw(canvas);
+    }
+}
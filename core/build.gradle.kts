@@ -0,0 +1,24 @@
+plugins {
+    id("java-library")
+    id("me.champeau.jmh")
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_1_8
+    targetCompatibility = JavaVersion.VERSION_1_8
+}
+
+dependencies {
+    // Pure-Java MP3 decoder behind Mp3PcmDecoder
+    implementation("javazoom:jlayer:1.0.1")
+    testImplementation("junit:junit:4.13.2")
+}
+
+jmh {
+    // Report allocation rates alongside timings so allocation regressions show up
+    profilers.add("gc")
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+    resultFormat.set("JSON")
+}
@@ -0,0 +1,171 @@
+package com.example.mp3player;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Synthetic fixtures for the benchmarks, generated at setup so none are checked in.
+ */
+final class Fixtures {
+
+    // MPEG 1 Layer III, 128 kbps, 44.1kHz, stereo, no padding
+    private static final int FRAME_LENGTH = 417;
+
+    private static final String[] WORDS = {
+            "love", "night", "blue", "river", "fire", "dream", "city", "heart", "road", "summer",
+            "ghost", "light", "rain", "golden", "home", "wild", "electric", "silent", "moon", "song"
+    };
+
+    private Fixtures() {
+    }
+
+    /**
+     * Writes a tagged constant bitrate MP3 file.
+     *
+     * @param file         The file to write.
+     * @param audioBytes   The approximate size of the audio frames in bytes.
+     * @param pictureBytes The size of the embedded APIC picture, 0 for none.
+     */
+    static void writeMp3(File file, long audioBytes, int pictureBytes) throws IOException {
+        byte[] frame = new byte[FRAME_LENGTH];
+        frame[0] = (byte) 0xFF;
+        frame[1] = (byte) 0xFB;
+        frame[2] = (byte) 0x90;
+        frame[3] = (byte) 0x00;
+
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 20)) {
+            writeTag(out, pictureBytes);
+            for (long written = 0; written < audioBytes; written += FRAME_LENGTH) {
+                out.write(frame);
+            }
+        }
+    }
+
+    /**
+     * Writes an untagged constant bitrate MP3 file whose frames hold random
+     * Huffman data, so decoding does the work of real audio rather than silence.
+     *
+     * @param file   The file to write.
+     * @param frames The number of frames.
+     * @param seed   The random seed, so every run decodes the same audio.
+     */
+    static void writeNoiseMp3(File file, int frames, long seed) throws IOException {
+        Random random = new Random(seed);
+        byte[] frame = new byte[FRAME_LENGTH];
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 20)) {
+            for (int i = 0; i < frames; i++) {
+                Arrays.fill(frame, (byte) 0);
+                frame[0] = (byte) 0xFF;
+                frame[1] = (byte) 0xFB;
+                frame[2] = (byte) 0x90;
+
+                // Side information: no bit reservoir, then per granule and channel
+                // 700 bits of long-block Huffman data with no scale factors
+                int bit = 32 + 9 + 3 + 8;
+                for (int j = 0; j < 4; j++) {
+                    bit = putBits(frame, bit, 700, 12);
+                    bit = putBits(frame, bit, 100, 9);
+                    bit = putBits(frame, bit, 170, 8);
+                    bit = putBits(frame, bit, 0, 5);
+                    bit = putBits(frame, bit, 7 << 10 | 7 << 5 | 7, 15);
+                    bit = putBits(frame, bit, 5 << 3 | 3, 7);
+                    bit = putBits(frame, bit, 0, 3);
+                }
+                for (int j = 4 + 32; j < FRAME_LENGTH; j++) {
+                    frame[j] = (byte) random.nextInt();
+                }
+                out.write(frame);
+            }
+        }
+    }
+
+    private static int putBits(byte[] bytes, int bit, int value, int count) {
+        for (int i = count - 1; i >= 0; i--, bit++) {
+            if (((value >>> i) & 1) != 0) {
+                bytes[bit >> 3] |= (byte) (0x80 >>> (bit & 7));
+            }
+        }
+        return bit;
+    }
+
+    private static void writeTag(OutputStream out, int pictureBytes) throws IOException {
+        byte[] title = textFrame("TIT2", "Synthetic Title");
+        byte[] artist = textFrame("TPE1", "Synthetic Artist");
+        byte[] album = textFrame("TALB", "Synthetic Album");
+        int size = title.length + artist.length + album.length + (pictureBytes > 0 ? 10 + 14 + pictureBytes : 0);
+
+        out.write(new byte[]{'I', 'D', '3', 3, 0, 0,
+                (byte) ((size >> 21) & 0x7F), (byte) ((size >> 14) & 0x7F),
+                (byte) ((size >> 7) & 0x7F), (byte) (size & 0x7F)});
+        if (pictureBytes > 0) {
+            // Artwork first, so readers that do not seek past it pay for it
+            out.write(frameHeader("APIC", 14 + pictureBytes));
+            out.write(0);
+            out.write("image/jpeg".getBytes(StandardCharsets.ISO_8859_1));
+            out.write(new byte[]{0, 3, 0});
+            out.write(new byte[pictureBytes]);
+        }
+        out.write(title);
+        out.write(artist);
+        out.write(album);
+    }
+
+    private static byte[] textFrame(String id, String value) {
+        byte[] text = value.getBytes(StandardCharsets.ISO_8859_1);
+        byte[] frame = new byte[10 + 1 + text.length];
+        System.arraycopy(frameHeader(id, 1 + text.length), 0, frame, 0, 10);
+        System.arraycopy(text, 0, frame, 11, text.length);
+        return frame;
+    }
+
+    private static byte[] frameHeader(String id, int size) {
+        byte[] header = new byte[10];
+        System.arraycopy(id.getBytes(StandardCharsets.ISO_8859_1), 0, header, 0, 4);
+        header[4] = (byte) (size >>> 24);
+        header[5] = (byte) (size >>> 16);
+        header[6] = (byte) (size >>> 8);
+        header[7] = (byte) size;
+        return header;
+    }
+
+    /**
+     * Generates a library of songs with realistic paths, titles and artists.
+     * Some songs have no title, so the file name fallback is exercised.
+     *
+     * @param count The number of songs.
+     * @param seed  The random seed, so every run sees the same library.
+     * @return The songs.
+     */
+    static List<Song> library(int count, long seed) {
+        Random random = new Random(seed);
+        List<Song> songs = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String artist = phrase(random, 2);
+            String album = phrase(random, 3);
+            String title = phrase(random, 1 + random.nextInt(4));
+            String path = "/storage/emulated/0/Music/" + artist + "/" + album + "/"
+                    + String.format("%02d", 1 + random.nextInt(20)) + " " + title + ".mp3";
+            songs.add(new Song(i + 1, path, random.nextInt(10) == 0 ? null : title, artist, album,
+                    120000 + random.nextInt(300000)));
+        }
+        return songs;
+    }
+
+    private static String phrase(Random random, int words) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            String word = WORDS[random.nextInt(WORDS.length)];
+            builder.append(i == 0 ? "" : " ")
+                    .append(Character.toUpperCase(word.charAt(0))).append(word, 1, word.length());
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.mp3player;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tagging a folder of songs, with and without large embedded artwork.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class Id3TagReaderBenchmark {
+
+    private static final int FILE_COUNT = 200;
+
+    // Size of the APIC frame in front of the text frames
+    @Param({"0", "2000000"})
+    public int pictureBytes;
+
+    private File[] files;
+    private final Id3TagReader reader = new Id3TagReader();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        files = new File[FILE_COUNT];
+        for (int i = 0; i < FILE_COUNT; i++) {
+            files[i] = File.createTempFile("benchmark", ".mp3");
+            Fixtures.writeMp3(files[i], 64 * 1024, pictureBytes);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (File file : files) {
+            file.delete();
+        }
+    }
+
+    @Benchmark
+    public void readTags(Blackhole blackhole) throws IOException {
+        for (File file : files) {
+            blackhole.consume(reader.read(file));
+        }
+    }
+
+    @Benchmark
+    public void readPictures(Blackhole blackhole) throws IOException {
+        for (File file : files) {
+            blackhole.consume(reader.readPicture(file));
+        }
+    }
+}
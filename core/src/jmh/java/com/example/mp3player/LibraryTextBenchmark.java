@@ -0,0 +1,47 @@
+package com.example.mp3player;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Formatting the text shown in the song list for large libraries.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LibraryTextBenchmark {
+
+    @Param({"1000", "50000"})
+    public int librarySize;
+
+    private List<Song> library;
+
+    @Setup
+    public void setUp() {
+        library = Fixtures.library(librarySize, 42);
+    }
+
+    @Benchmark
+    public void displayText(Blackhole blackhole) {
+        for (int i = 0; i < library.size(); i++) {
+            blackhole.consume(TitleFormatter.displayText(library.get(i)));
+        }
+    }
+
+    @Benchmark
+    public void titleFromPath(Blackhole blackhole) {
+        for (int i = 0; i < library.size(); i++) {
+            blackhole.consume(TitleFormatter.fromPath(library.get(i).getPath()));
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.mp3player;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Metering one stereo MP3 frame of PCM, the work a scan adds to each decoded
+ * frame. The gc profiler should report no allocation, so a scan can run for
+ * hours without growing the heap.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LoudnessMeterBenchmark {
+
+    private final LoudnessMeter meter = new LoudnessMeter();
+    private final short[] frame = new short[1152 * 2];
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        for (int i = 0; i < frame.length; i++) {
+            frame[i] = (short) (random.nextGaussian() * 3000);
+        }
+        meter.configure(44100, 2);
+    }
+
+    @Benchmark
+    public double process() {
+        meter.process(frame, 0, frame.length);
+        return meter.getPeak();
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.mp3player;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Indexing and probing long MP3 files, such as audiobooks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class Mp3FrameIndexBenchmark {
+
+    // Size of the audio in the file, in megabytes
+    @Param({"50", "300"})
+    public int sizeMb;
+
+    private File file;
+    private File cacheDirectory;
+    private Mp3FrameIndexCache cache;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = File.createTempFile("benchmark", ".mp3");
+        Fixtures.writeMp3(file, sizeMb * 1024L * 1024L, 0);
+
+        cacheDirectory = File.createTempFile("frame_index", "");
+        cacheDirectory.delete();
+        cache = new Mp3FrameIndexCache(cacheDirectory);
+        cache.get(file);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        file.delete();
+        File[] entries = cacheDirectory.listFiles();
+        if (entries != null) {
+            for (File entry : entries) {
+                entry.delete();
+            }
+        }
+        cacheDirectory.delete();
+    }
+
+    @Benchmark
+    public Mp3FrameIndex build() throws IOException {
+        return Mp3FrameIndex.build(file);
+    }
+
+    @Benchmark
+    public Mp3FrameIndex probe() throws IOException {
+        return Mp3FrameIndex.probe(file);
+    }
+
+    @Benchmark
+    public Mp3FrameIndex cachedLoad() throws IOException {
+        return cache.get(file);
+    }
+}
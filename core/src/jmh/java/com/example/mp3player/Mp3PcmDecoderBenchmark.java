@@ -0,0 +1,62 @@
+package com.example.mp3player;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Software decoding on one core. A 44.1kHz frame lasts 26.1ms, so decodeFrame
+ * divided into that is the real-time factor per core. The gc profiler should
+ * report no allocation for decodeFrame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class Mp3PcmDecoderBenchmark {
+
+    // About five minutes of audio
+    private static final int FRAMES = 11_500;
+
+    private File file;
+    private Mp3PcmDecoder decoder;
+    private long seekTarget;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = File.createTempFile("benchmark", ".mp3");
+        Fixtures.writeNoiseMp3(file, FRAMES, 42);
+        decoder = Mp3PcmDecoder.open(file);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        decoder.close();
+        file.delete();
+    }
+
+    @Benchmark
+    public int decodeFrame() throws IOException {
+        int length = decoder.decodeFrame();
+        if (length < 0) {
+            decoder.seekToSample(0);
+        }
+        return length;
+    }
+
+    @Benchmark
+    public int seekAndDecode() throws IOException {
+        seekTarget = (seekTarget + 1_234_567) % decoder.getSampleCount();
+        decoder.seekToSample(seekTarget);
+        return decoder.decodeFrame();
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.mp3player;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One decoded MP3 frame passing through the ring buffer of the MediaCodec engine,
+ * for each buffer depth offered in Settings. The gc profiler should report no allocation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PcmRingBufferBenchmark {
+
+    // 1152 stereo 16-bit samples
+    private static final int FRAME_BYTES = 1152 * 4;
+
+    // 44.1kHz stereo 16-bit is about 176 bytes per millisecond
+    @Param({"50", "100", "200", "400"})
+    public int bufferMs;
+
+    private PcmRingBuffer ring;
+    private final ByteBuffer frame = ByteBuffer.allocateDirect(FRAME_BYTES);
+
+    @Setup
+    public void setUp() {
+        ring = new PcmRingBuffer(bufferMs * 44100 / 1000 * 4);
+    }
+
+    @Benchmark
+    public int writeAndDrainFrame() {
+        frame.clear();
+        int written = ring.write(frame);
+        int drained = 0;
+        int chunk;
+        while ((chunk = ring.readableChunk()) > 0) {
+            ring.advanceRead(chunk);
+            drained += chunk;
+        }
+        return written + drained;
+    }
+}
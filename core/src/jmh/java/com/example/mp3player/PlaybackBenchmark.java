@@ -0,0 +1,53 @@
+package com.example.mp3player;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per-tick work of the player screen, metric recording and preference updates.
+ * The gc profiler should report no allocation for the progress tick or recording.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PlaybackBenchmark {
+
+    private final char[] buffer = new char[TimeFormatter.PROGRESS_BUFFER_LENGTH];
+    private final PlaybackPosition position = new PlaybackPosition(3_600_000, 0, 36_000_000, 1.5f, true);
+    private PreferencesSnapshot snapshot = PreferencesSnapshot.DEFAULTS;
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private long now;
+    private int step;
+
+    @Benchmark
+    public int progressTick() {
+        now += 1000;
+        int progress = position.positionAt(now);
+        return TimeFormatter.formatProgress(buffer, progress, position.getDuration())
+                + (int) position.delayToNextSecond(now);
+    }
+
+    @Benchmark
+    public void recordLatency() {
+        now += 7919;
+        histogram.record(now % 5_000_000);
+    }
+
+    @Benchmark
+    public PreferencesSnapshot speedChange() {
+        step = (step + 1) % 10;
+        snapshot = snapshot.withPlaybackSpeed(1 + step * 0.1f);
+        return snapshot;
+    }
+
+    @Benchmark
+    public PreferencesSnapshot unchangedSpeed() {
+        return snapshot.withPlaybackSpeed(snapshot.getPlaybackSpeed());
+    }
+}
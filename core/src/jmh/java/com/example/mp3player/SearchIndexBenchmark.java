@@ -0,0 +1,59 @@
+package com.example.mp3player;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Searching the library as a query is typed, and building the index. The
+ * fixture library only uses a few words, so most keystrokes match a large
+ * share of it, which is the slow case.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SearchIndexBenchmark {
+
+    @Param({"1000", "50000"})
+    public int librarySize;
+
+    @Param({"e", "el", "elec", "electric mo", "ghost rain summer"})
+    public String query;
+
+    private List<Song> library;
+    private SearchIndex index;
+    private final long[] results = new long[100];
+
+    @Setup
+    public void setUp() {
+        library = Fixtures.library(librarySize, 42);
+        index = build();
+    }
+
+    private SearchIndex build() {
+        SearchIndex built = new SearchIndex();
+        for (int i = 0; i < library.size(); i++) {
+            built.put(library.get(i));
+        }
+        return built;
+    }
+
+    @Benchmark
+    public int search() {
+        return index.search(query, results);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public SearchIndex buildIndex() {
+        return build();
+    }
+}
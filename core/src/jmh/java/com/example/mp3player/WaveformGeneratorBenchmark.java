@@ -0,0 +1,53 @@
+package com.example.mp3player;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Summarising one track without the cache, by worker count. Near-linear
+ * scaling up to the core count shows the bucket ranges split evenly.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class WaveformGeneratorBenchmark {
+
+    // About one minute of audio
+    private static final int FRAMES = 2_300;
+
+    @Param({"1", "2", "4"})
+    public int parallelism;
+
+    private File file;
+    private WaveformGenerator generator;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = File.createTempFile("benchmark", ".mp3");
+        Fixtures.writeNoiseMp3(file, FRAMES, 42);
+        generator = new WaveformGenerator(parallelism, null, WaveformGenerator.DEFAULT_BUCKETS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        generator.shutdown();
+        file.delete();
+    }
+
+    @Benchmark
+    public WaveformSummary generate() throws IOException {
+        return generator.get(file);
+    }
+}
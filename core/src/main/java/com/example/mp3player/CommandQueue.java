@@ -0,0 +1,87 @@
+package com.example.mp3player;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs commands in order on a serial executor, folding redundant ones together
+ * before they run.
+ * <p>
+ * A command given a kind replaces the waiting command of the same kind, if there
+ * is one, taking its place in the queue, so a burst of play and pause taps or of
+ * seek or speed updates runs only the latest. A command without a kind is a
+ * barrier: commands queued after it never replace ones queued before it, so for
+ * example a pause is never folded into a play queued before a load.
+ */
+public class CommandQueue {
+
+    /**
+     * A queued command, replaced in place while it waits.
+     */
+    private static class Slot {
+        Runnable command;
+    }
+
+    private final Executor executor;
+
+    // Commands waiting to run by kind, queued since the last barrier, guarded by this
+    private final Map<String, Slot> waiting = new HashMap<>();
+
+    /**
+     * Creates a queue over an executor.
+     *
+     * @param executor Runs the commands one at a time, in the order given.
+     */
+    public CommandQueue(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Queues a command that is never folded into another, and that commands
+     * queued after it are never folded past.
+     *
+     * @param command The command.
+     */
+    public void execute(Runnable command) {
+        synchronized (this) {
+            waiting.clear();
+        }
+        executor.execute(command);
+    }
+
+    /**
+     * Queues a command, replacing the waiting command of the same kind queued
+     * since the last barrier if there is one.
+     *
+     * @param kind    The kind of command, for example "seek".
+     * @param command The command.
+     */
+    public void executeLatest(String kind, Runnable command) {
+        Slot slot;
+        synchronized (this) {
+            slot = waiting.get(kind);
+            if (slot != null) {
+                slot.command = command;
+                Metrics.getInstance().increment(Metrics.COMMAND_COALESCED);
+                return;
+            }
+            slot = new Slot();
+            slot.command = command;
+            waiting.put(kind, slot);
+        }
+
+        Slot queued = slot;
+        executor.execute(() -> {
+            Runnable latest;
+            synchronized (this) {
+                // Commands queued from now on run after this one, so cannot replace it
+                if (waiting.get(kind) == queued) {
+                    waiting.remove(kind);
+                }
+                latest = queued.command;
+            }
+            latest.run();
+        });
+    }
+}
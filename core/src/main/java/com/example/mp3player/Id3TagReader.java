@@ -0,0 +1,525 @@
+package com.example.mp3player;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Streaming reader for ID3v2.2/2.3/2.4 and ID3v1 tags.
+ * Only the tag header and the frames the library needs (title, artist, album,
+ * track number and length) are read. Other frames, including APIC images, are
+ * skipped by seeking past them. ID3v1 is only read for values ID3v2 lacks.
+ * Embedded artwork is read separately, on request, by readPicture.
+ * <p>
+ * A reader reuses its buffer between files and is not thread safe.
+ */
+public class Id3TagReader {
+
+    // Frames larger than this are never text frames worth reading
+    private static final int MAX_TEXT_FRAME_SIZE = 64 * 1024;
+
+    // Larger pictures are skipped rather than held in memory
+    private static final int MAX_PICTURE_SIZE = 16 * 1024 * 1024;
+
+    // APIC picture type of the front cover
+    private static final int PICTURE_FRONT_COVER = 3;
+
+    // ID3v2 tag header flags
+    private static final int FLAG_UNSYNCHRONISATION = 0x80;
+    private static final int FLAG_EXTENDED_HEADER = 0x40;
+    private static final int FLAG_FOOTER = 0x10;
+
+    private static final Charset UTF_16 = Charset.forName("UTF-16");
+
+    private byte[] buffer = new byte[1024];
+
+    // Values found so far in the current file
+    private String title;
+    private String artist;
+    private String album;
+    private int trackNumber;
+    private int durationMs;
+
+    // Set while readPicture looks for APIC frames instead of text frames
+    private boolean readingPicture;
+    private byte[] picture;
+
+    /**
+     * Reads the tags of a file.
+     *
+     * @param file The MP3 file.
+     * @return The tags, Id3Tags.EMPTY if the file has none.
+     * @throws IOException If the file cannot be read.
+     */
+    public Id3Tags read(File file) throws IOException {
+        title = null;
+        artist = null;
+        album = null;
+        trackNumber = 0;
+        durationMs = 0;
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            readId3v2(raf);
+            if (title == null || artist == null || album == null || trackNumber == 0) {
+                readId3v1(raf);
+            }
+        }
+
+        if (title == null && artist == null && album == null && trackNumber == 0 && durationMs == 0) {
+            return Id3Tags.EMPTY;
+        }
+        return new Id3Tags(title, artist, album, trackNumber, durationMs);
+    }
+
+    /**
+     * Reads the embedded picture of a file, preferring the front cover.
+     * Text frames are skipped.
+     *
+     * @param file The MP3 file.
+     * @return The encoded image data, or null if the file has no picture.
+     * @throws IOException If the file cannot be read.
+     */
+    public byte[] readPicture(File file) throws IOException {
+        readingPicture = true;
+        picture = null;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            readId3v2(raf);
+        } finally {
+            readingPicture = false;
+        }
+
+        byte[] result = picture;
+        picture = null;
+        return result;
+    }
+
+    /**
+     * Reads the wanted frames of an ID3v2 tag at the start of the file.
+     */
+    private void readId3v2(RandomAccessFile raf) throws IOException {
+        if (raf.length() < 10) {
+            return;
+        }
+        raf.seek(0);
+        raf.readFully(buffer, 0, 10);
+        if (buffer[0] != 'I' || buffer[1] != 'D' || buffer[2] != '3') {
+            return;
+        }
+
+        int version = buffer[3];
+        int flags = buffer[5] & 0xFF;
+        int tagSize = syncsafe(buffer, 6);
+        if (version < 2 || version > 4) {
+            return;
+        }
+        long tagEnd = Math.min(10L + tagSize, raf.length());
+
+        // ID3v2.2 and 2.3 unsynchronise the whole tag, so it cannot be streamed
+        if ((flags & FLAG_UNSYNCHRONISATION) != 0 && version < 4) {
+            byte[] tag = new byte[(int) (tagEnd - 10)];
+            raf.readFully(tag);
+            int length = resynchronise(tag, tag.length);
+            readFrames(new ByteSource(tag, length), version, flags);
+            return;
+        }
+        readFrames(new FileSource(raf, tagEnd), version, flags);
+    }
+
+    private void readFrames(Source source, int version, int flags) throws IOException {
+        if ((flags & FLAG_EXTENDED_HEADER) != 0 && version >= 3) {
+            byte[] sizeBytes = source.read(4);
+            int size = version == 4 ? syncsafe(sizeBytes, 0) - 4 : bigEndian(sizeBytes, 0, 4);
+            source.skip(size);
+        }
+
+        int idLength = version == 2 ? 3 : 4;
+        int headerLength = version == 2 ? 6 : 10;
+        while (source.remaining() >= headerLength) {
+            byte[] header = source.read(headerLength);
+            if (header[0] == 0) {
+                // Padding after the last frame
+                return;
+            }
+
+            String id = new String(header, 0, idLength, StandardCharsets.ISO_8859_1);
+            int size;
+            int frameFlags = 0;
+            if (version == 2) {
+                size = bigEndian(header, 3, 3);
+            } else {
+                size = version == 4 ? syncsafe(header, 4) : bigEndian(header, 4, 4);
+                frameFlags = ((header[8] & 0xFF) << 8) | (header[9] & 0xFF);
+            }
+            if (size < 0 || size > source.remaining()) {
+                return;
+            }
+
+            int field = readingPicture ? pictureField(id) : wantedField(id);
+            int maxSize = readingPicture ? MAX_PICTURE_SIZE : MAX_TEXT_FRAME_SIZE;
+            if (field == 0 || size > maxSize || !isReadable(version, frameFlags)) {
+                // Seek past images and every other frame without reading them
+                source.skip(size);
+                continue;
+            }
+
+            byte[] data = source.read(size);
+            int offset = 0;
+            int length = size;
+            if (version == 3 && (frameFlags & 0x0020) != 0) {
+                // Grouping identity byte
+                offset++;
+            }
+            if (version == 4) {
+                if ((frameFlags & 0x0040) != 0) {
+                    offset++;
+                }
+                if ((frameFlags & 0x0001) != 0) {
+                    // Data length indicator
+                    offset += 4;
+                }
+                if ((frameFlags & 0x0002) != 0) {
+                    length = offset + resynchronise(data, offset, size - offset);
+                }
+            }
+            if (readingPicture) {
+                if (offset < length && readPictureFrame(version, data, offset, length)) {
+                    return;
+                }
+                continue;
+            }
+            if (offset < length) {
+                setField(field, decodeText(data, offset, length - offset));
+            }
+
+            if (title != null && artist != null && album != null && trackNumber != 0 && durationMs != 0) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Checks that a frame is neither compressed nor encrypted.
+     */
+    private static boolean isReadable(int version, int frameFlags) {
+        if (version == 3) {
+            return (frameFlags & 0x00C0) == 0;
+        }
+        if (version == 4) {
+            return (frameFlags & 0x000C) == 0;
+        }
+        return true;
+    }
+
+    /**
+     * Maps a frame ID to the field it holds: 1 title, 2 artist, 3 album, 4 track, 5 length, 0 unwanted.
+     */
+    private static int wantedField(String id) {
+        switch (id) {
+            case "TIT2":
+            case "TT2":
+                return 1;
+            case "TPE1":
+            case "TP1":
+                return 2;
+            case "TALB":
+            case "TAL":
+                return 3;
+            case "TRCK":
+            case "TRK":
+                return 4;
+            case "TLEN":
+            case "TLE":
+                return 5;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Maps a frame ID to 6 if it holds a picture, else 0.
+     */
+    private static int pictureField(String id) {
+        return "APIC".equals(id) || "PIC".equals(id) ? 6 : 0;
+    }
+
+    /**
+     * Extracts the image data from an APIC (or ID3v2.2 PIC) frame.
+     *
+     * @return Whether the picture is the front cover, so no other frame needs reading.
+     */
+    private boolean readPictureFrame(int version, byte[] data, int offset, int length) {
+        int encoding = data[offset];
+        int position = offset + 1;
+        if (version == 2) {
+            // Three character image format
+            position += 3;
+        } else {
+            // Null-terminated MIME type
+            while (position < length && data[position] != 0) {
+                position++;
+            }
+            position++;
+        }
+        if (position >= length) {
+            return false;
+        }
+        int type = data[position++];
+
+        // Skip the description, whose terminator depends on the text encoding
+        if (encoding == 1 || encoding == 2) {
+            while (position + 1 < length && (data[position] != 0 || data[position + 1] != 0)) {
+                position += 2;
+            }
+            position += 2;
+        } else {
+            while (position < length && data[position] != 0) {
+                position++;
+            }
+            position++;
+        }
+        if (position >= length) {
+            return false;
+        }
+
+        boolean frontCover = type == PICTURE_FRONT_COVER;
+        if (picture == null || frontCover) {
+            picture = Arrays.copyOfRange(data, position, length);
+        }
+        return frontCover;
+    }
+
+    private void setField(int field, String value) {
+        if (value == null || value.isEmpty()) {
+            return;
+        }
+        switch (field) {
+            case 1:
+                title = value;
+                break;
+            case 2:
+                artist = value;
+                break;
+            case 3:
+                album = value;
+                break;
+            case 4:
+                // "3/12" means track 3 of 12
+                trackNumber = parseLeadingInt(value);
+                break;
+            case 5:
+                durationMs = parseLeadingInt(value);
+                break;
+        }
+    }
+
+    /**
+     * Reads the fixed-size ID3v1 tag at the end of the file, keeping any ID3v2 values.
+     */
+    private void readId3v1(RandomAccessFile raf) throws IOException {
+        long length = raf.length();
+        if (length < 128) {
+            return;
+        }
+        raf.seek(length - 128);
+        raf.readFully(buffer, 0, 128);
+        if (buffer[0] != 'T' || buffer[1] != 'A' || buffer[2] != 'G') {
+            return;
+        }
+
+        if (title == null) {
+            title = latin1Field(buffer, 3, 30);
+        }
+        if (artist == null) {
+            artist = latin1Field(buffer, 33, 30);
+        }
+        if (album == null) {
+            album = latin1Field(buffer, 63, 30);
+        }
+        // ID3v1.1 stores the track in the last byte of the comment
+        if (trackNumber == 0 && buffer[125] == 0 && buffer[126] != 0) {
+            trackNumber = buffer[126] & 0xFF;
+        }
+    }
+
+    /**
+     * Decodes a text frame: an encoding byte followed by one or more null-separated strings.
+     * Only the first string is returned.
+     */
+    static String decodeText(byte[] data, int offset, int length) {
+        if (length < 1) {
+            return null;
+        }
+        int encoding = data[offset];
+        int start = offset + 1;
+        int end = offset + length;
+
+        Charset charset;
+        boolean wide;
+        switch (encoding) {
+            case 1:
+                charset = UTF_16;
+                wide = true;
+                break;
+            case 2:
+                charset = StandardCharsets.UTF_16BE;
+                wide = true;
+                break;
+            case 3:
+                charset = StandardCharsets.UTF_8;
+                wide = false;
+                break;
+            default:
+                charset = StandardCharsets.ISO_8859_1;
+                wide = false;
+                break;
+        }
+
+        // Stop at the first terminator
+        int stop = start;
+        if (wide) {
+            while (stop + 1 < end && (data[stop] != 0 || data[stop + 1] != 0)) {
+                stop += 2;
+            }
+        } else {
+            while (stop < end && data[stop] != 0) {
+                stop++;
+            }
+        }
+        String text = new String(data, start, Math.min(stop, end) - start, charset).trim();
+        return text.isEmpty() ? null : text;
+    }
+
+    private static String latin1Field(byte[] data, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && data[end] != 0) {
+            end++;
+        }
+        String text = new String(data, offset, end - offset, StandardCharsets.ISO_8859_1).trim();
+        return text.isEmpty() ? null : text;
+    }
+
+    private static int parseLeadingInt(String value) {
+        int result = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9' || result > 100000000) {
+                break;
+            }
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+
+    static int syncsafe(byte[] data, int offset) {
+        return ((data[offset] & 0x7F) << 21) | ((data[offset + 1] & 0x7F) << 14)
+                | ((data[offset + 2] & 0x7F) << 7) | (data[offset + 3] & 0x7F);
+    }
+
+    private static int bigEndian(byte[] data, int offset, int length) {
+        int value = 0;
+        for (int i = 0; i < length; i++) {
+            value = (value << 8) | (data[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    private static int resynchronise(byte[] data, int length) {
+        return resynchronise(data, 0, length);
+    }
+
+    /**
+     * Removes the zero byte inserted after every 0xFF by unsynchronisation, in place.
+     *
+     * @return The length of the resynchronised data.
+     */
+    private static int resynchronise(byte[] data, int offset, int length) {
+        int out = offset;
+        for (int in = offset; in < offset + length; in++) {
+            data[out++] = data[in];
+            if ((data[in] & 0xFF) == 0xFF && in + 1 < offset + length && data[in + 1] == 0) {
+                in++;
+            }
+        }
+        return out - offset;
+    }
+
+    /**
+     * Sequential source of tag bytes.
+     */
+    private interface Source {
+        long remaining();
+
+        byte[] read(int length) throws IOException;
+
+        void skip(int length) throws IOException;
+    }
+
+    /**
+     * Reads frames straight from the file, seeking past skipped frames.
+     */
+    private class FileSource implements Source {
+        private final RandomAccessFile raf;
+        private final long end;
+
+        FileSource(RandomAccessFile raf, long end) {
+            this.raf = raf;
+            this.end = end;
+        }
+
+        @Override
+        public long remaining() {
+            try {
+                return end - raf.getFilePointer();
+            } catch (IOException e) {
+                return 0;
+            }
+        }
+
+        @Override
+        public byte[] read(int length) throws IOException {
+            byte[] data = length <= buffer.length ? buffer : new byte[length];
+            raf.readFully(data, 0, length);
+            return data;
+        }
+
+        @Override
+        public void skip(int length) throws IOException {
+            raf.seek(raf.getFilePointer() + length);
+        }
+    }
+
+    /**
+     * Reads frames from a tag already held in memory.
+     */
+    private class ByteSource implements Source {
+        private final byte[] data;
+        private final int end;
+        private int position;
+
+        ByteSource(byte[] data, int end) {
+            this.data = data;
+            this.end = end;
+        }
+
+        @Override
+        public long remaining() {
+            return end - position;
+        }
+
+        @Override
+        public byte[] read(int length) {
+            byte[] copy = length <= buffer.length ? buffer : new byte[length];
+            System.arraycopy(data, position, copy, 0, length);
+            position += length;
+            return copy;
+        }
+
+        @Override
+        public void skip(int length) {
+            position += length;
+        }
+    }
+}
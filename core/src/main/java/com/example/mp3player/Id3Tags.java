@@ -0,0 +1,55 @@
+package com.example.mp3player;
+
+/**
+ * Immutable set of the ID3 tag values the library uses.
+ */
+public final class Id3Tags {
+
+    /**
+     * Tags of a file with no ID3 tag.
+     */
+    public static final Id3Tags EMPTY = new Id3Tags(null, null, null, 0, 0);
+
+    private final String title;
+    private final String artist;
+    private final String album;
+    private final int trackNumber;
+    private final int durationMs;
+
+    /**
+     * Creates a set of tags.
+     *
+     * @param title       The title, or null.
+     * @param artist      The artist, or null.
+     * @param album       The album, or null.
+     * @param trackNumber The track number, 0 if unknown.
+     * @param durationMs  The duration from a TLEN frame in milliseconds, 0 if unknown.
+     */
+    public Id3Tags(String title, String artist, String album, int trackNumber, int durationMs) {
+        this.title = title;
+        this.artist = artist;
+        this.album = album;
+        this.trackNumber = trackNumber;
+        this.durationMs = durationMs;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getArtist() {
+        return artist;
+    }
+
+    public String getAlbum() {
+        return album;
+    }
+
+    public int getTrackNumber() {
+        return trackNumber;
+    }
+
+    public int getDurationMs() {
+        return durationMs;
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.mp3player;
+
+/**
+ * Measured loudness of a track or album, and the gain that brings it to a reference level.
+ */
+public final class Loudness {
+
+    /**
+     * Target loudness in LUFS, the ReplayGain 2.0 reference level.
+     */
+    public static final double REFERENCE = -18;
+
+    private final double integrated;
+    private final double peak;
+
+    /**
+     * Creates a measurement.
+     *
+     * @param integrated The integrated loudness in LUFS, negative infinity if silent.
+     * @param peak       The sample peak, from 0 to 1 for full scale.
+     */
+    public Loudness(double integrated, double peak) {
+        this.integrated = integrated;
+        this.peak = peak;
+    }
+
+    public double getIntegrated() {
+        return integrated;
+    }
+
+    public double getPeak() {
+        return peak;
+    }
+
+    /**
+     * Gets the gain that brings this loudness to the reference, lowered if needed
+     * so the peak does not clip.
+     *
+     * @return The gain in dB, 0 for silence.
+     */
+    public double getGainDb() {
+        if (Double.isInfinite(integrated))
+            return 0;
+        double gain = REFERENCE - integrated;
+        if (peak > 0)
+            gain = Math.min(gain, -20 * Math.log10(peak));
+        return gain;
+    }
+}
@@ -0,0 +1,221 @@
+package com.example.mp3player;
+
+import java.util.Arrays;
+
+/**
+ * Integrated loudness and sample peak of 16-bit PCM, measured as in
+ * ITU-R BS.1770 and EBU R128.
+ * <p>
+ * Samples are K-weighted, squared and summed into 100ms steps. Every step
+ * closes a 400ms block overlapping the last by 75%. Block loudness goes into a
+ * fixed histogram of 0.1 LU bins, so a meter uses the same memory for a
+ * jingle and a ten hour mix. The integrated loudness gates the blocks at
+ * -70 LUFS, then 10 LU below the mean of what is left. Meters can be merged to
+ * measure an album from its tracks. Nothing is allocated once a meter is
+ * configured.
+ */
+public final class LoudnessMeter {
+
+    // Blocks quieter than this are left out entirely
+    private static final double ABSOLUTE_GATE = -70;
+
+    // Blocks quieter than the ungated loudness by more than this are left out
+    private static final double RELATIVE_GATE = 10;
+
+    // Loudest block kept, above the loudness of a full scale square wave
+    private static final double HISTOGRAM_TOP = 5;
+    private static final int BINS_PER_LU = 10;
+    private static final int BINS = (int) ((HISTOGRAM_TOP - ABSOLUTE_GATE) * BINS_PER_LU);
+
+    // Steps per 400ms block
+    private static final int STEPS_PER_BLOCK = 4;
+
+    // Block count and summed mean square energy per histogram bin
+    private final long[] blockCounts = new long[BINS];
+    private final double[] blockEnergies = new double[BINS];
+
+    private int channels;
+    private int stepLength;
+
+    // Coefficients of the high shelf and high pass stages of the K-weighting filter
+    private double shelfB0, shelfB1, shelfB2, shelfA1, shelfA2;
+    private double passB0, passB1, passB2, passA1, passA2;
+
+    // Transposed direct form II state of each stage, two values per channel
+    private double[] shelfState = new double[0];
+    private double[] passState = new double[0];
+
+    // Energy of the step being filled and of the last few steps
+    private double stepEnergy;
+    private int stepSamples;
+    private final double[] steps = new double[STEPS_PER_BLOCK];
+    private int stepCount;
+
+    private int peak;
+
+    /**
+     * Sets the format of the samples to measure and clears the meter.
+     *
+     * @param sampleRate The sample rate in Hz.
+     * @param channels   The channel count. Every channel is weighted equally.
+     */
+    public void configure(int sampleRate, int channels) {
+        this.channels = channels;
+        this.stepLength = sampleRate / 10;
+        if (shelfState.length < channels * 2) {
+            shelfState = new double[channels * 2];
+            passState = new double[channels * 2];
+        }
+
+        // BS.1770 defines the filter at 48kHz, so rebuild it from its analogue prototype
+        double frequency = 1681.974450955533;
+        double gain = 3.999843853973347;
+        double q = 0.7071752369554196;
+        double k = Math.tan(Math.PI * frequency / sampleRate);
+        double vh = Math.pow(10, gain / 20);
+        double vb = Math.pow(vh, 0.4996667741545416);
+        double a0 = 1 + k / q + k * k;
+        shelfB0 = (vh + vb * k / q + k * k) / a0;
+        shelfB1 = 2 * (k * k - vh) / a0;
+        shelfB2 = (vh - vb * k / q + k * k) / a0;
+        shelfA1 = 2 * (k * k - 1) / a0;
+        shelfA2 = (1 - k / q + k * k) / a0;
+
+        frequency = 38.13547087602444;
+        q = 0.5003270373238773;
+        k = Math.tan(Math.PI * frequency / sampleRate);
+        a0 = 1 + k / q + k * k;
+        passB0 = 1;
+        passB1 = -2;
+        passB2 = 1;
+        passA1 = 2 * (k * k - 1) / a0;
+        passA2 = (1 - k / q + k * k) / a0;
+
+        reset();
+    }
+
+    /**
+     * Clears the measurement, keeping the format.
+     */
+    public void reset() {
+        Arrays.fill(blockCounts, 0);
+        Arrays.fill(blockEnergies, 0);
+        Arrays.fill(shelfState, 0);
+        Arrays.fill(passState, 0);
+        stepEnergy = 0;
+        stepSamples = 0;
+        stepCount = 0;
+        peak = 0;
+    }
+
+    /**
+     * Measures interleaved samples in the configured format.
+     *
+     * @param samples The interleaved 16-bit samples.
+     * @param offset  The offset of the first sample.
+     * @param length  The number of interleaved samples, a whole number of frames.
+     */
+    public void process(short[] samples, int offset, int length) {
+        int end = offset + length;
+        for (int i = offset; i < end; i += channels) {
+            double energy = 0;
+            for (int channel = 0; channel < channels; channel++) {
+                int sample = samples[i + channel];
+                int magnitude = sample < 0 ? -sample : sample;
+                if (magnitude > peak)
+                    peak = magnitude;
+
+                int s = channel * 2;
+                double x = sample / 32768.0;
+                double y = shelfB0 * x + shelfState[s];
+                shelfState[s] = shelfB1 * x - shelfA1 * y + shelfState[s + 1];
+                shelfState[s + 1] = shelfB2 * x - shelfA2 * y;
+
+                double z = passB0 * y + passState[s];
+                passState[s] = passB1 * y - passA1 * z + passState[s + 1];
+                passState[s + 1] = passB2 * y - passA2 * z;
+                energy += z * z;
+            }
+            stepEnergy += energy;
+            if (++stepSamples == stepLength)
+                endStep();
+        }
+    }
+
+    /**
+     * Closes a 100ms step, and the 400ms block ending with it once there are enough steps.
+     */
+    private void endStep() {
+        steps[stepCount % STEPS_PER_BLOCK] = stepEnergy;
+        stepCount++;
+        stepEnergy = 0;
+        stepSamples = 0;
+        if (stepCount < STEPS_PER_BLOCK)
+            return;
+
+        double sum = 0;
+        for (double step : steps)
+            sum += step;
+        double energy = sum / (STEPS_PER_BLOCK * stepLength);
+        double loudness = loudness(energy);
+        if (loudness < ABSOLUTE_GATE)
+            return;
+
+        int bin = Math.min(BINS - 1, (int) ((loudness - ABSOLUTE_GATE) * BINS_PER_LU));
+        blockCounts[bin]++;
+        blockEnergies[bin] += energy;
+    }
+
+    /**
+     * Adds the blocks and peak measured by another meter, for the loudness of an album.
+     *
+     * @param other The meter to add.
+     */
+    public void add(LoudnessMeter other) {
+        for (int bin = 0; bin < BINS; bin++) {
+            blockCounts[bin] += other.blockCounts[bin];
+            blockEnergies[bin] += other.blockEnergies[bin];
+        }
+        peak = Math.max(peak, other.peak);
+    }
+
+    /**
+     * Gets the gated loudness of everything measured so far.
+     *
+     * @return The integrated loudness in LUFS, or negative infinity if every block was gated.
+     */
+    public double getIntegratedLoudness() {
+        long count = 0;
+        double energy = 0;
+        for (int bin = 0; bin < BINS; bin++) {
+            count += blockCounts[bin];
+            energy += blockEnergies[bin];
+        }
+        if (count == 0)
+            return Double.NEGATIVE_INFINITY;
+
+        // Bins are 0.1 LU wide, so gating whole bins is well within the meter's accuracy
+        double gate = loudness(energy / count) - RELATIVE_GATE;
+        int first = Math.max(0, (int) Math.ceil((gate - ABSOLUTE_GATE) * BINS_PER_LU));
+        count = 0;
+        energy = 0;
+        for (int bin = first; bin < BINS; bin++) {
+            count += blockCounts[bin];
+            energy += blockEnergies[bin];
+        }
+        return count > 0 ? loudness(energy / count) : Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * Gets the largest sample magnitude measured so far.
+     *
+     * @return The peak, from 0 to 1 for full scale.
+     */
+    public double getPeak() {
+        return peak / 32768.0;
+    }
+
+    private static double loudness(double energy) {
+        return -0.691 + 10 * Math.log10(energy);
+    }
+}
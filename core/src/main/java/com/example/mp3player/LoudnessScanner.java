@@ -0,0 +1,187 @@
+package com.example.mp3player;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures the loudness of albums on a fixed set of low priority worker threads.
+ * An album is measured by one worker, track after track, so its loudness can be
+ * gated over every block of every track. Each worker reuses its own meters and
+ * the decoder reuses its buffers, so a scan allocates the same per track
+ * however long it runs. Scanning can be paused between frames, for example
+ * while the battery is low, and resumed where it stopped.
+ */
+public class LoudnessScanner {
+
+    /**
+     * Receives measurements on the worker threads.
+     */
+    public interface Sink {
+        /**
+         * Called once every track of an album has been measured.
+         *
+         * @param album    The key the album was submitted with.
+         * @param files    The tracks of the album, as submitted.
+         * @param tracks   The loudness of each track, null where a file could not be decoded.
+         * @param loudness The loudness of the tracks together, or null if none could be decoded.
+         */
+        void onAlbumMeasured(String album, List<File> files, Loudness[] tracks, Loudness loudness);
+    }
+
+    private final Sink sink;
+    private final BlockingQueue<Album> queue = new LinkedBlockingQueue<>();
+    private final Thread[] workers;
+
+    // Albums submitted and not yet measured
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private final Object pauseLock = new Object();
+    private volatile boolean paused;
+    private volatile boolean stopped;
+
+    /**
+     * Creates a scanner and starts its workers.
+     *
+     * @param threads The number of worker threads.
+     * @param sink    Receives each measured album.
+     */
+    public LoudnessScanner(int threads, Sink sink) {
+        this.sink = sink;
+        this.workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(this::work, "LoudnessScanner-" + (i + 1));
+            // Scanning is background work and must not compete with playback
+            workers[i].setPriority(Thread.MIN_PRIORITY);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * Queues an album to measure. Singles are albums of one track.
+     *
+     * @param album Identifies the album to the sink.
+     * @param files The tracks of the album.
+     */
+    public void submit(String album, List<File> files) {
+        pending.incrementAndGet();
+        queue.add(new Album(album, files));
+    }
+
+    /**
+     * Gets the number of albums queued or being measured.
+     *
+     * @return The number of albums.
+     */
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    /**
+     * Holds every worker at its next frame until resumed.
+     */
+    public void pause() {
+        paused = true;
+    }
+
+    /**
+     * Lets paused workers carry on where they stopped.
+     */
+    public void resume() {
+        synchronized (pauseLock) {
+            paused = false;
+            pauseLock.notifyAll();
+        }
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * Stops the workers, abandoning queued albums and any album being measured.
+     */
+    public void shutdown() {
+        stopped = true;
+        queue.clear();
+        for (Thread worker : workers)
+            worker.interrupt();
+    }
+
+    /**
+     * Takes albums from the queue until interrupted.
+     */
+    private void work() {
+        LoudnessMeter trackMeter = new LoudnessMeter();
+        LoudnessMeter albumMeter = new LoudnessMeter();
+        try {
+            while (true) {
+                measureAlbum(queue.take(), trackMeter, albumMeter);
+            }
+        } catch (InterruptedException e) {
+            // Shut down
+        }
+    }
+
+    private void measureAlbum(Album album, LoudnessMeter trackMeter, LoudnessMeter albumMeter)
+            throws InterruptedException {
+        List<File> files = album.files;
+        Loudness[] tracks = new Loudness[files.size()];
+        boolean measured = false;
+        albumMeter.reset();
+        for (int i = 0; i < tracks.length; i++) {
+            try {
+                tracks[i] = measureTrack(files.get(i), trackMeter);
+            } catch (IOException | RuntimeException e) {
+                // Tracks that cannot be decoded are left out of the album
+                continue;
+            }
+            albumMeter.add(trackMeter);
+            measured = true;
+        }
+
+        Loudness loudness = measured ? new Loudness(albumMeter.getIntegratedLoudness(), albumMeter.getPeak()) : null;
+        // Counted down first, so the sink sees whether this was the last album
+        pending.decrementAndGet();
+        sink.onAlbumMeasured(album.key, files, tracks, loudness);
+    }
+
+    private Loudness measureTrack(File file, LoudnessMeter meter) throws IOException, InterruptedException {
+        try (Mp3PcmDecoder decoder = Mp3PcmDecoder.open(file)) {
+            meter.configure(decoder.getSampleRate(), decoder.getChannels());
+            int length;
+            while ((length = decoder.decodeFrame()) >= 0) {
+                if (paused || stopped)
+                    awaitResume();
+                meter.process(decoder.getBuffer(), decoder.getOffset(), length);
+            }
+        }
+        return new Loudness(meter.getIntegratedLoudness(), meter.getPeak());
+    }
+
+    private void awaitResume() throws InterruptedException {
+        synchronized (pauseLock) {
+            while (paused && !stopped)
+                pauseLock.wait();
+        }
+        if (stopped)
+            throw new InterruptedException();
+    }
+
+    /**
+     * An album waiting in the queue.
+     */
+    private static final class Album {
+        final String key;
+        final List<File> files;
+
+        Album(String key, List<File> files) {
+            this.key = key;
+            this.files = files;
+        }
+    }
+}
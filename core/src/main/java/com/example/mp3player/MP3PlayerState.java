@@ -0,0 +1,50 @@
+package com.example.mp3player;
+
+/**
+ * States of an MP3Player, and the transitions allowed between them:
+ * <pre>
+ * STOPPED   -&gt; PREPARING, ERROR
+ * PREPARING -&gt; PREPARED, ERROR, STOPPED
+ * PREPARED  -&gt; PLAYING, ERROR, STOPPED
+ * PLAYING   -&gt; PAUSED, ERROR, STOPPED
+ * PAUSED    -&gt; PLAYING, ERROR, STOPPED
+ * ERROR     -&gt; STOPPED
+ * </pre>
+ * A failed player must be stopped, which releases its engine, before it can load again.
+ */
+public enum MP3PlayerState {
+    ERROR,
+    PREPARING,
+    PREPARED,
+    PLAYING,
+    PAUSED,
+    STOPPED;
+
+    // States each state may move to, as bit sets indexed by ordinal
+    private static final int[] TRANSITIONS = new int[values().length];
+
+    static {
+        allow(STOPPED, PREPARING, ERROR);
+        allow(PREPARING, PREPARED, ERROR, STOPPED);
+        allow(PREPARED, PLAYING, ERROR, STOPPED);
+        allow(PLAYING, PAUSED, ERROR, STOPPED);
+        allow(PAUSED, PLAYING, ERROR, STOPPED);
+        allow(ERROR, STOPPED);
+    }
+
+    private static void allow(MP3PlayerState from, MP3PlayerState... to) {
+        for (MP3PlayerState state : to) {
+            TRANSITIONS[from.ordinal()] |= 1 << state.ordinal();
+        }
+    }
+
+    /**
+     * Checks whether a player in this state may move to another.
+     *
+     * @param next The state to move to.
+     * @return Whether the transition is in the table.
+     */
+    public boolean canMoveTo(MP3PlayerState next) {
+        return (TRANSITIONS[ordinal()] & (1 << next.ordinal())) != 0;
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.mp3player;
+
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Singleton Class: Process-wide playback counters and latency histograms.
+ * Counters and histograms are created on first use and never removed, so
+ * callers may keep references to them. Latencies are recorded in microseconds.
+ */
+public final class Metrics {
+
+    // Metric names
+    public static final String LOAD = "load";
+    public static final String LOAD_ERROR = "load.error";
+    public static final String PREPARE = "prepare";
+    public static final String PREPARE_BLOCKING = "prepare.blocking";
+    public static final String START = "start";
+    public static final String REQUEST_TO_START = "request_to_start";
+    public static final String SEEK = "seek";
+    public static final String SEEK_COALESCED = "seek.coalesced";
+    public static final String SPEED_CHANGE = "speed_change";
+    public static final String BIND = "bind";
+    public static final String UNBIND = "unbind";
+    public static final String UNDERRUN = "codec.underrun";
+    public static final String COMMAND_COALESCED = "command.coalesced";
+    public static final String ILLEGAL_TRANSITION = "player.illegal_transition";
+    public static final String STARTUP_PHASE = "startup.phase.";
+    public static final String STARTUP_FIRST_FRAME = "startup.first_frame";
+    public static final String STARTUP_INTERACTIVE = "startup.interactive";
+
+    private static final Metrics instance = new Metrics();
+
+    private final ConcurrentHashMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    /**
+     * Returns the instance of Metrics.
+     *
+     * @return The instance of Metrics.
+     */
+    public static Metrics getInstance() {
+        return instance;
+    }
+
+    /**
+     * Gets a counter, creating it on first use.
+     *
+     * @param name The name of the counter.
+     * @return The counter.
+     */
+    public LongAdder counter(String name) {
+        LongAdder counter = counters.get(name);
+        return counter != null ? counter : counters.computeIfAbsent(name, key -> new LongAdder());
+    }
+
+    /**
+     * Gets a histogram, creating it on first use.
+     *
+     * @param name The name of the histogram.
+     * @return The histogram.
+     */
+    public LatencyHistogram histogram(String name) {
+        LatencyHistogram histogram = histograms.get(name);
+        return histogram != null ? histogram : histograms.computeIfAbsent(name, key -> new LatencyHistogram());
+    }
+
+    /**
+     * Increments a counter.
+     *
+     * @param name The name of the counter.
+     */
+    public void increment(String name) {
+        counter(name).increment();
+    }
+
+    /**
+     * Records a latency.
+     *
+     * @param name         The name of the histogram.
+     * @param microseconds The latency in microseconds.
+     */
+    public void record(String name, long microseconds) {
+        histogram(name).record(microseconds);
+    }
+
+    /**
+     * Writes every counter, and the count, mean, percentiles and maximum of
+     * every histogram in milliseconds, sorted by name.
+     *
+     * @param writer The writer to dump to.
+     */
+    public void dump(PrintWriter writer) {
+        writer.println("Counters:");
+        for (Map.Entry<String, LongAdder> entry : new TreeMap<>(counters).entrySet()) {
+            writer.println("  " + entry.getKey() + " = " + entry.getValue().sum());
+        }
+
+        writer.println("Latencies (ms):");
+        for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(histograms).entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            writer.println("  " + entry.getKey()
+                    + " count=" + histogram.getCount()
+                    + " mean=" + millis(Math.round(histogram.getMean()))
+                    + " p50=" + millis(histogram.getValueAtPercentile(50))
+                    + " p90=" + millis(histogram.getValueAtPercentile(90))
+                    + " p99=" + millis(histogram.getValueAtPercentile(99))
+                    + " max=" + millis(histogram.getMax()));
+        }
+        writer.flush();
+    }
+
+    private static String millis(long microseconds) {
+        return microseconds / 1000 + "." + (microseconds % 1000) / 100;
+    }
+
+    /**
+     * Clears all counters and histograms.
+     */
+    public void reset() {
+        for (LongAdder counter : counters.values()) {
+            counter.reset();
+        }
+        for (LatencyHistogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+    }
+}
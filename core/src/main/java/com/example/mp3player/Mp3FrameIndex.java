@@ -0,0 +1,609 @@
+package com.example.mp3player;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Index of the MPEG audio frames in an MP3 file, built without decoding.
+ * Gives the exact duration of VBR files and the byte offset of the frame
+ * containing any playback time.
+ * <p>
+ * build() scans every frame header and stores the frame offsets in an int array.
+ * probe() only reads the first frame and uses its Xing/Info or VBRI table of
+ * contents, or the bitrate of a CBR file, for an instant estimate.
+ */
+public final class Mp3FrameIndex {
+
+    // MPEG version bits of the frame header
+    private static final int MPEG_25 = 0;
+    private static final int MPEG_2 = 2;
+    private static final int MPEG_1 = 3;
+
+    // Layer bits of the frame header
+    private static final int LAYER_3 = 1;
+    private static final int LAYER_2 = 2;
+    private static final int LAYER_1 = 3;
+
+    // Bits that must match between frames of the same stream: sync, version, layer and sample rate
+    private static final int STREAM_MASK = 0xFFFE0C00;
+
+    // Bitrates in kbps by [MPEG 1, 2/2.5][layer 1, 2, 3][bitrate index]
+    private static final int[][][] BITRATES = {
+            {
+                    {0, 32, 64, 96, 128, 160, 192, 224, 256, 288, 320, 352, 384, 416, 448},
+                    {0, 32, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 384},
+                    {0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320}
+            },
+            {
+                    {0, 32, 48, 56, 64, 80, 96, 112, 128, 144, 160, 176, 192, 224, 256},
+                    {0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160},
+                    {0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160}
+            }
+    };
+
+    // Sample rates in Hz by sample rate index, for MPEG 1
+    private static final int[] SAMPLE_RATES = {44100, 48000, 32000};
+
+    // Size of the chunks read from the file while scanning
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final int sampleRate;
+    private final int samplesPerFrame;
+    private final int encoderDelay;
+    private final int encoderPadding;
+    private final int frameCount;
+    private final long firstFrameOffset;
+    private final long audioEnd;
+
+    // Offset of every audio frame, or null for an estimated index
+    private final int[] frameOffsets;
+
+    // Xing table of contents: 100 entries of file position / 256, or null
+    private final byte[] xingToc;
+    private final long xingBytes;
+
+    // VBRI table of contents as cumulative byte offsets per entry, or null
+    private final int[] vbriOffsets;
+    private final int vbriFramesPerEntry;
+
+    private Mp3FrameIndex(Scan scan, int[] frameOffsets, int frameCount) {
+        this.sampleRate = sampleRate(scan.firstHeader);
+        this.samplesPerFrame = samplesPerFrame(scan.firstHeader);
+        this.encoderDelay = scan.encoderDelay;
+        this.encoderPadding = scan.encoderPadding;
+        this.firstFrameOffset = scan.firstAudioOffset;
+        this.audioEnd = scan.audioEnd;
+        this.frameOffsets = frameOffsets;
+        this.frameCount = frameCount;
+        this.xingToc = scan.xingToc;
+        this.xingBytes = scan.xingBytes;
+        this.vbriOffsets = scan.vbriOffsets;
+        this.vbriFramesPerEntry = scan.vbriFramesPerEntry;
+    }
+
+    /**
+     * Creates an exact index from stored values, used by Mp3FrameIndexCache.
+     */
+    Mp3FrameIndex(int sampleRate, int samplesPerFrame, int encoderDelay, int encoderPadding,
+                  long audioEnd, int[] frameOffsets) {
+        this.sampleRate = sampleRate;
+        this.samplesPerFrame = samplesPerFrame;
+        this.encoderDelay = encoderDelay;
+        this.encoderPadding = encoderPadding;
+        this.audioEnd = audioEnd;
+        this.frameOffsets = frameOffsets;
+        this.frameCount = frameOffsets.length;
+        this.firstFrameOffset = frameCount > 0 ? frameOffsets[0] : 0;
+        this.xingToc = null;
+        this.xingBytes = 0;
+        this.vbriOffsets = null;
+        this.vbriFramesPerEntry = 0;
+    }
+
+    /**
+     * Scans every frame header in a file to build an exact index.
+     *
+     * @param file The MP3 file.
+     * @return The frame index.
+     * @throws IOException If the file cannot be read, is too large or has no MPEG audio frames.
+     */
+    public static Mp3FrameIndex build(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            Scan scan = new Scan(channel);
+            scan.findFirstFrame();
+            if (scan.audioEnd > Integer.MAX_VALUE) {
+                throw new IOException("File too large to index: " + file);
+            }
+
+            // Size the offsets from the Xing/VBRI frame count when there is one
+            int[] offsets = new int[scan.declaredFrames > 0 ? scan.declaredFrames : 1024];
+            int count = 0;
+            long position = scan.firstAudioOffset;
+            while (position + 4 <= scan.audioEnd) {
+                int header = scan.readInt(position);
+                if (isValidHeader(header) && (header & STREAM_MASK) == (scan.firstHeader & STREAM_MASK)) {
+                    int length = frameLength(header);
+                    if (position + length > scan.audioEnd) {
+                        // Truncated final frame
+                        break;
+                    }
+                    if (count == offsets.length) {
+                        offsets = Arrays.copyOf(offsets, count * 2);
+                    }
+                    offsets[count++] = (int) position;
+                    position += length;
+                } else {
+                    // Lost sync, e.g. junk between frames: search for the next header
+                    position++;
+                }
+            }
+            if (count < offsets.length) {
+                offsets = Arrays.copyOf(offsets, count);
+            }
+            return new Mp3FrameIndex(scan, offsets, count);
+        }
+    }
+
+    /**
+     * Reads only the first frame of a file to estimate its index from the
+     * Xing/Info or VBRI header, or from the bitrate of a CBR file.
+     *
+     * @param file The MP3 file.
+     * @return The estimated frame index.
+     * @throws IOException If the file cannot be read or has no MPEG audio frames.
+     */
+    public static Mp3FrameIndex probe(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            Scan scan = new Scan(channel);
+            scan.findFirstFrame();
+
+            int frames = scan.declaredFrames;
+            if (frames <= 0) {
+                // Constant bitrate: every frame has the same average size
+                double averageFrameLength = (double) samplesPerFrame(scan.firstHeader) / 8
+                        * bitrate(scan.firstHeader) * 1000 / sampleRate(scan.firstHeader);
+                frames = (int) ((scan.audioEnd - scan.firstAudioOffset) / averageFrameLength);
+            }
+            return new Mp3FrameIndex(scan, null, frames);
+        }
+    }
+
+    /**
+     * Gets whether the index holds the offset of every frame, rather than an estimate.
+     *
+     * @return Whether the index is exact.
+     */
+    public boolean isExact() {
+        return frameOffsets != null;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getSamplesPerFrame() {
+        return samplesPerFrame;
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Gets the number of silent samples the encoder added at the start, from the LAME header.
+     *
+     * @return The encoder delay in samples, 0 if unknown.
+     */
+    public int getEncoderDelay() {
+        return encoderDelay;
+    }
+
+    /**
+     * Gets the number of silent samples the encoder added at the end, from the LAME header.
+     *
+     * @return The encoder padding in samples, 0 if unknown.
+     */
+    public int getEncoderPadding() {
+        return encoderPadding;
+    }
+
+    /**
+     * Gets the position after the last audio frame, before any ID3v1 tag.
+     *
+     * @return The end of the audio data in bytes.
+     */
+    public long getAudioEnd() {
+        return audioEnd;
+    }
+
+    /**
+     * Gets the number of audible samples, excluding the encoder delay and padding.
+     *
+     * @return The number of samples per channel.
+     */
+    public long getSampleCount() {
+        return Math.max(0, (long) frameCount * samplesPerFrame - encoderDelay - encoderPadding);
+    }
+
+    /**
+     * Gets the duration of the audio, excluding the encoder delay and padding.
+     *
+     * @return The duration in milliseconds.
+     */
+    public int getDurationMs() {
+        return (int) (getSampleCount() * 1000 / sampleRate);
+    }
+
+    /**
+     * Gets the byte offset of a frame.
+     *
+     * @param frame The frame number.
+     * @return The offset of the frame in the file.
+     */
+    public long getFrameOffset(int frame) {
+        frame = Math.max(0, Math.min(frame, frameCount - 1));
+        if (frameOffsets != null) {
+            return frameOffsets.length == 0 ? firstFrameOffset : frameOffsets[frame];
+        }
+
+        if (xingToc != null && xingBytes > 0) {
+            // Interpolate between the percentage points of the table of contents
+            double percent = frame * 100.0 / frameCount;
+            int point = Math.min((int) percent, 99);
+            double lower = xingToc[point] & 0xFF;
+            double upper = point < 99 ? xingToc[point + 1] & 0xFF : 256;
+            double fraction = lower + (upper - lower) * (percent - point);
+            return firstFrameOffset + (long) (fraction / 256 * xingBytes);
+        }
+
+        if (vbriOffsets != null && vbriFramesPerEntry > 0) {
+            int entry = Math.min(frame / vbriFramesPerEntry, vbriOffsets.length - 1);
+            return firstFrameOffset + vbriOffsets[entry];
+        }
+
+        return firstFrameOffset + (audioEnd - firstFrameOffset) * frame / Math.max(frameCount, 1);
+    }
+
+    /**
+     * Gets the frame containing a playback time.
+     *
+     * @param timeMs The playback time in milliseconds, measured from the first audible sample.
+     * @return The frame number.
+     */
+    public int getFrameForTime(long timeMs) {
+        long sample = timeMs * sampleRate / 1000 + encoderDelay;
+        long frame = sample / samplesPerFrame;
+        return (int) Math.max(0, Math.min(frame, frameCount - 1));
+    }
+
+    /**
+     * Gets the playback time at the start of a frame.
+     *
+     * @param frame The frame number.
+     * @return The playback time in milliseconds, measured from the first audible sample.
+     */
+    public long getTimeForFrame(int frame) {
+        long sample = (long) frame * samplesPerFrame - encoderDelay;
+        return Math.max(0, sample * 1000 / sampleRate);
+    }
+
+    /**
+     * Gets the byte offset of the frame containing a playback time.
+     *
+     * @param timeMs The playback time in milliseconds.
+     * @return The offset of the frame in the file.
+     */
+    public long getSeekOffset(long timeMs) {
+        return getFrameOffset(getFrameForTime(timeMs));
+    }
+
+    /**
+     * Gets the frame offsets of an exact index, for Mp3FrameIndexCache.
+     *
+     * @return The frame offsets, or null for an estimated index.
+     */
+    int[] getFrameOffsets() {
+        return frameOffsets;
+    }
+
+    /**
+     * Checks whether a 32-bit value is a usable MPEG audio frame header.
+     *
+     * @param header The header, big-endian.
+     * @return Whether the header is valid.
+     */
+    public static boolean isValidHeader(int header) {
+        return (header & 0xFFE00000) == 0xFFE00000
+                && version(header) != 1
+                && layer(header) != 0
+                && bitrateIndex(header) != 0 // free format is not supported
+                && bitrateIndex(header) != 15
+                && sampleRateIndex(header) != 3
+                && (header & 3) != 2; // reserved emphasis
+    }
+
+    /**
+     * Gets the length of a frame in bytes, including its header.
+     *
+     * @param header A valid frame header.
+     * @return The frame length.
+     */
+    public static int frameLength(int header) {
+        int padding = (header >>> 9) & 1;
+        if (layer(header) == LAYER_1) {
+            return (12 * bitrate(header) * 1000 / sampleRate(header) + padding) * 4;
+        }
+        return samplesPerFrame(header) / 8 * bitrate(header) * 1000 / sampleRate(header) + padding;
+    }
+
+    /**
+     * Gets the number of samples per channel in a frame.
+     *
+     * @param header A valid frame header.
+     * @return The number of samples.
+     */
+    public static int samplesPerFrame(int header) {
+        switch (layer(header)) {
+            case LAYER_1:
+                return 384;
+            case LAYER_2:
+                return 1152;
+            default:
+                return version(header) == MPEG_1 ? 1152 : 576;
+        }
+    }
+
+    /**
+     * Gets the sample rate of a frame.
+     *
+     * @param header A valid frame header.
+     * @return The sample rate in Hz.
+     */
+    public static int sampleRate(int header) {
+        int rate = SAMPLE_RATES[sampleRateIndex(header)];
+        switch (version(header)) {
+            case MPEG_2:
+                return rate / 2;
+            case MPEG_25:
+                return rate / 4;
+            default:
+                return rate;
+        }
+    }
+
+    /**
+     * Gets the bitrate of a frame.
+     *
+     * @param header A valid frame header.
+     * @return The bitrate in kbps.
+     */
+    public static int bitrate(int header) {
+        int versionRow = version(header) == MPEG_1 ? 0 : 1;
+        int layerRow = 3 - layer(header);
+        return BITRATES[versionRow][layerRow][bitrateIndex(header)];
+    }
+
+    /**
+     * Gets the number of channels of a frame.
+     *
+     * @param header A valid frame header.
+     * @return 1 for mono, else 2.
+     */
+    public static int channels(int header) {
+        return ((header >>> 6) & 3) == 3 ? 1 : 2;
+    }
+
+    private static int version(int header) {
+        return (header >>> 19) & 3;
+    }
+
+    private static int layer(int header) {
+        return (header >>> 17) & 3;
+    }
+
+    private static int bitrateIndex(int header) {
+        return (header >>> 12) & 15;
+    }
+
+    private static int sampleRateIndex(int header) {
+        return (header >>> 10) & 3;
+    }
+
+    /**
+     * Gets the size of the Layer III side information that precedes a Xing header.
+     */
+    private static int sideInfoLength(int header) {
+        boolean mono = channels(header) == 1;
+        if (version(header) == MPEG_1) {
+            return mono ? 17 : 32;
+        }
+        return mono ? 9 : 17;
+    }
+
+    /**
+     * Buffered reader over the file that finds the first frame and parses its VBR headers.
+     */
+    private static final class Scan {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private long bufferStart = -1;
+
+        long audioEnd;
+        long firstAudioOffset;
+        int firstHeader;
+        int declaredFrames;
+        int encoderDelay;
+        int encoderPadding;
+        byte[] xingToc;
+        long xingBytes;
+        int[] vbriOffsets;
+        int vbriFramesPerEntry;
+
+        Scan(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.audioEnd = channel.size();
+        }
+
+        /**
+         * Skips any ID3v2 tag, finds the first frame confirmed by the frame after it,
+         * and reads its Xing/Info, LAME or VBRI header.
+         */
+        void findFirstFrame() throws IOException {
+            // An ID3v1 tag takes the last 128 bytes
+            if (audioEnd >= 128 && readInt(audioEnd - 128) >>> 8 == 0x544147) { // "TAG"
+                audioEnd -= 128;
+            }
+
+            long position = 0;
+            if (audioEnd >= 10 && readInt(0) >>> 8 == 0x494433) { // "ID3"
+                int flags = readByte(5);
+                int size = (readByte(6) << 21) | (readByte(7) << 14) | (readByte(8) << 7) | readByte(9);
+                position = 10 + size + ((flags & 0x10) != 0 ? 10 : 0);
+            }
+
+            for (; position + 4 <= audioEnd; position++) {
+                int header = readInt(position);
+                if (!isValidHeader(header)) {
+                    continue;
+                }
+                long next = position + frameLength(header);
+                if (next + 4 <= audioEnd) {
+                    int nextHeader = readInt(next);
+                    if (!isValidHeader(nextHeader) || (nextHeader & STREAM_MASK) != (header & STREAM_MASK)) {
+                        continue;
+                    }
+                }
+
+                firstHeader = header;
+                firstAudioOffset = position;
+                if (readVbrHeaders(position, header)) {
+                    // The Xing/VBRI frame holds no audio
+                    firstAudioOffset = next;
+                }
+                return;
+            }
+            throw new IOException("No MPEG audio frames found");
+        }
+
+        /**
+         * Parses a Xing/Info header with an optional LAME extension, or a VBRI header.
+         *
+         * @return Whether the frame is a VBR header frame.
+         */
+        private boolean readVbrHeaders(long frameOffset, int header) throws IOException {
+            // Xing follows the side information, which may be preceded by a CRC
+            long xing = frameOffset + 4 + sideInfoLength(header);
+            int tag = readInt(xing);
+            if (tag != 0x58696E67 && tag != 0x496E666F && ((header >>> 16) & 1) == 0) { // "Xing", "Info"
+                xing += 2;
+                tag = readInt(xing);
+            }
+            if (tag == 0x58696E67 || tag == 0x496E666F) {
+                int flags = readInt(xing + 4);
+                long position = xing + 8;
+                if ((flags & 1) != 0) {
+                    declaredFrames = readInt(position);
+                    position += 4;
+                }
+                if ((flags & 2) != 0) {
+                    xingBytes = readInt(position) & 0xFFFFFFFFL;
+                    position += 4;
+                }
+                if ((flags & 4) != 0) {
+                    xingToc = new byte[100];
+                    for (int i = 0; i < 100; i++) {
+                        xingToc[i] = (byte) readByte(position + i);
+                    }
+                    position += 100;
+                }
+                if ((flags & 8) != 0) {
+                    position += 4;
+                }
+                readLameHeader(position);
+                return true;
+            }
+
+            // VBRI is always 32 bytes after the header
+            long vbri = frameOffset + 4 + 32;
+            if (readInt(vbri) == 0x56425249) { // "VBRI"
+                declaredFrames = readInt(vbri + 14);
+                int entries = readShort(vbri + 18);
+                int scale = readShort(vbri + 20);
+                int entrySize = readShort(vbri + 22);
+                vbriFramesPerEntry = readShort(vbri + 24);
+
+                // Turn the per-entry sizes into cumulative offsets for constant time lookups
+                vbriOffsets = new int[entries + 1];
+                long position = vbri + 26;
+                for (int i = 0; i < entries; i++) {
+                    int size = 0;
+                    for (int b = 0; b < entrySize; b++) {
+                        size = (size << 8) | readByte(position++);
+                    }
+                    vbriOffsets[i + 1] = vbriOffsets[i] + size * scale;
+                }
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Reads the encoder delay and padding from a LAME (or compatible) tag.
+         */
+        private void readLameHeader(long position) throws IOException {
+            int encoder = readInt(position);
+            if (encoder != 0x4C414D45 && encoder != 0x4C617666 && encoder != 0x4C617663) { // "LAME", "Lavf", "Lavc"
+                return;
+            }
+            int b0 = readByte(position + 21);
+            int b1 = readByte(position + 22);
+            int b2 = readByte(position + 23);
+            encoderDelay = (b0 << 4) | (b1 >>> 4);
+            encoderPadding = ((b1 & 0x0F) << 8) | b2;
+        }
+
+        int readByte(long position) throws IOException {
+            fill(position, 1);
+            return buffer.get((int) (position - bufferStart)) & 0xFF;
+        }
+
+        int readShort(long position) throws IOException {
+            fill(position, 2);
+            return buffer.getShort((int) (position - bufferStart)) & 0xFFFF;
+        }
+
+        int readInt(long position) throws IOException {
+            fill(position, 4);
+            return buffer.getInt((int) (position - bufferStart));
+        }
+
+        /**
+         * Makes sure the buffer holds the given range, reading a new chunk if not.
+         * Reads past the end of the file are filled with zeros.
+         */
+        private void fill(long position, int length) throws IOException {
+            if (bufferStart >= 0 && position >= bufferStart && position + length <= bufferStart + buffer.limit()) {
+                return;
+            }
+            buffer.clear();
+            bufferStart = position;
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer, bufferStart + buffer.position());
+                if (read < 0) {
+                    break;
+                }
+            }
+            // Zero the rest so short reads near the end of the file parse as invalid
+            while (buffer.position() < length) {
+                buffer.put((byte) 0);
+            }
+            buffer.flip();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.mp3player;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Disk cache of exact Mp3FrameIndex instances, so each file is only scanned once.
+ * Entries are keyed by file path, size and modification time. Frame offsets are
+ * stored as variable-length deltas, about two bytes per frame.
+ */
+public class Mp3FrameIndexCache {
+
+    private static final int MAGIC = 0x4D504958; // "MPIX"
+    private static final int FORMAT_VERSION = 1;
+
+    private final File directory;
+
+    /**
+     * Creates a cache that stores its entries in a directory.
+     *
+     * @param directory The directory for cache entries, created if missing.
+     */
+    public Mp3FrameIndexCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Gets the index of a file from the cache, building and storing it if missing or stale.
+     *
+     * @param file The MP3 file.
+     * @return The exact frame index.
+     * @throws IOException If the file cannot be indexed.
+     */
+    public Mp3FrameIndex get(File file) throws IOException {
+        File entry = entryFile(file);
+        Mp3FrameIndex index = read(entry, file);
+        if (index == null) {
+            index = Mp3FrameIndex.build(file);
+            write(entry, file, index);
+        }
+        return index;
+    }
+
+    private File entryFile(File file) {
+        return new File(directory, Integer.toHexString(file.getAbsolutePath().hashCode()) + ".idx");
+    }
+
+    /**
+     * Reads a cache entry.
+     *
+     * @return The index, or null if there is no valid entry for the file as it is now.
+     */
+    private Mp3FrameIndex read(File entry, File file) {
+        if (!entry.isFile()) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(entry)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION
+                    || !in.readUTF().equals(file.getAbsolutePath())
+                    || in.readLong() != file.length()
+                    || in.readLong() != file.lastModified()) {
+                return null;
+            }
+
+            int sampleRate = in.readInt();
+            int samplesPerFrame = in.readInt();
+            int encoderDelay = in.readInt();
+            int encoderPadding = in.readInt();
+            long audioEnd = in.readLong();
+            int[] offsets = new int[in.readInt()];
+            int offset = 0;
+            for (int i = 0; i < offsets.length; i++) {
+                offset += readVarInt(in);
+                offsets[i] = offset;
+            }
+            return new Mp3FrameIndex(sampleRate, samplesPerFrame, encoderDelay, encoderPadding, audioEnd, offsets);
+        } catch (IOException | RuntimeException e) {
+            // A damaged entry is rebuilt
+            return null;
+        }
+    }
+
+    /**
+     * Writes a cache entry to a temporary file and renames it into place.
+     */
+    private void write(File entry, File file, Mp3FrameIndex index) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create cache directory " + directory);
+        }
+
+        File temp = new File(directory, entry.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(file.getAbsolutePath());
+            out.writeLong(file.length());
+            out.writeLong(file.lastModified());
+            out.writeInt(index.getSampleRate());
+            out.writeInt(index.getSamplesPerFrame());
+            out.writeInt(index.getEncoderDelay());
+            out.writeInt(index.getEncoderPadding());
+            out.writeLong(index.getAudioEnd());
+
+            int[] offsets = index.getFrameOffsets();
+            out.writeInt(offsets.length);
+            int previous = 0;
+            for (int offset : offsets) {
+                writeVarInt(out, offset - previous);
+                previous = offset;
+            }
+        }
+        if (!temp.renameTo(entry)) {
+            temp.delete();
+            throw new IOException("Cannot write cache entry " + entry);
+        }
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed cache entry");
+    }
+}
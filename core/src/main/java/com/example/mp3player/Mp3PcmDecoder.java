@@ -0,0 +1,302 @@
+package com.example.mp3player;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import javazoom.jl.decoder.Bitstream;
+import javazoom.jl.decoder.BitstreamException;
+import javazoom.jl.decoder.Decoder;
+import javazoom.jl.decoder.DecoderException;
+import javazoom.jl.decoder.Header;
+import javazoom.jl.decoder.SampleBuffer;
+
+/**
+ * Streaming pure-Java MP3 decoder, turning a file into 16-bit interleaved PCM
+ * one frame at a time without the platform codecs, so decoding can be tested
+ * and benchmarked on a plain JVM.
+ * <p>
+ * Frames are located with an Mp3FrameIndex and decoded by JLayer into a buffer
+ * that is reused for every frame. When the file has a LAME header, the encoder
+ * delay, the decoder delay and the encoder padding are trimmed, so consecutive
+ * tracks join without a gap and positions match Mp3FrameIndex. Seeking reopens
+ * the stream a few frames early to refill the bit reservoir before the target.
+ */
+public final class Mp3PcmDecoder implements Closeable {
+
+    /**
+     * Delay in samples of the Layer III synthesis filterbank, added to the encoder delay.
+     */
+    public static final int DECODER_DELAY = 529;
+
+    // Furthest back in bytes of main data that a frame's bit reservoir can reach
+    private static final int MAX_RESERVOIR = 511;
+
+    // Most bytes of a frame that are not main data: header, CRC and side information
+    private static final int MAX_FRAME_OVERHEAD = 4 + 2 + 32;
+
+    private final Mp3FrameIndex index;
+    private final RandomAccessFile file;
+    private final RangeInputStream input;
+    private final int channels;
+
+    // Samples per channel before the first audible sample, and audible samples in the file
+    private final int skip;
+    private final long audibleSamples;
+
+    private Bitstream bitstream;
+    private Decoder decoder;
+
+    // Frame number of the next frame read from the bitstream
+    private int nextFrame;
+
+    // Samples per channel still to drop before the current position
+    private long discard;
+
+    // Position of the next sample returned, per channel, from the first audible sample
+    private long position;
+
+    // Interleaved samples of the last frame and where the returned part starts
+    private short[] buffer = new short[0];
+    private int offset;
+
+    /**
+     * Opens a file, scanning it for an exact frame index.
+     *
+     * @param file The MP3 file.
+     * @return The decoder, positioned at the first audible sample.
+     * @throws IOException If the file cannot be read or has no MPEG audio frames.
+     */
+    public static Mp3PcmDecoder open(File file) throws IOException {
+        return new Mp3PcmDecoder(file, Mp3FrameIndex.build(file));
+    }
+
+    /**
+     * Opens a file with an existing frame index.
+     *
+     * @param file  The MP3 file.
+     * @param index The frame index of the file.
+     * @throws IOException If the file cannot be read.
+     */
+    public Mp3PcmDecoder(File file, Mp3FrameIndex index) throws IOException {
+        this.index = index;
+        this.file = new RandomAccessFile(file, "r");
+        this.input = new RangeInputStream(this.file);
+
+        // The frame index has no channel count, read it from the first header
+        this.file.seek(index.getFrameOffset(0));
+        this.channels = Mp3FrameIndex.channels(this.file.readInt());
+
+        boolean gapless = index.getEncoderDelay() > 0 || index.getEncoderPadding() > 0;
+        this.skip = gapless ? index.getEncoderDelay() + DECODER_DELAY : 0;
+        this.audibleSamples = index.getSampleCount();
+        seekToSample(0);
+    }
+
+    public int getSampleRate() {
+        return index.getSampleRate();
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    /**
+     * Gets the number of audible samples per channel.
+     *
+     * @return The sample count, excluding the encoder delay and padding.
+     */
+    public long getSampleCount() {
+        return audibleSamples;
+    }
+
+    /**
+     * Gets the position of the next sample decodeFrame() will return.
+     *
+     * @return The position in samples per channel, from the first audible sample.
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * Gets the buffer holding the samples of the last decoded frame, which is
+     * overwritten by the next call to decodeFrame().
+     *
+     * @return The interleaved samples, starting at getOffset().
+     */
+    public short[] getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Gets where the samples of the last decoded frame start in getBuffer().
+     *
+     * @return The offset in the buffer.
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Decodes the next frame.
+     *
+     * @return The number of interleaved samples at getOffset() in getBuffer(), 0 if the
+     * whole frame was trimmed, or -1 at the end of the audio.
+     * @throws IOException If the file cannot be read or the frame cannot be decoded.
+     */
+    public int decodeFrame() throws IOException {
+        if (position >= audibleSamples)
+            return -1;
+
+        int length = readFrame();
+        if (length < 0)
+            return -1;
+
+        int samples = length / channels;
+        int dropped = (int) Math.min(discard, samples);
+        discard -= dropped;
+        samples -= dropped;
+        samples = (int) Math.min(samples, audibleSamples - position);
+
+        offset = dropped * channels;
+        position += samples;
+        return samples * channels;
+    }
+
+    /**
+     * Moves to a sample, so the next decodeFrame() starts exactly there.
+     *
+     * @param sample The position in samples per channel, from the first audible sample.
+     * @throws IOException If the file cannot be read.
+     */
+    public void seekToSample(long sample) throws IOException {
+        sample = Math.max(0, Math.min(sample, audibleSamples));
+        long raw = sample + skip;
+        int frame = (int) Math.min(raw / index.getSamplesPerFrame(), Math.max(0, index.getFrameCount() - 1));
+
+        // Decode the frame before the target for the filterbank overlap, and before
+        // that enough frames to hold its whole bit reservoir
+        int first = Math.max(0, frame - 1);
+        int reservoir = 0;
+        while (first > 0 && reservoir < MAX_RESERVOIR) {
+            first--;
+            reservoir += (int) (index.getFrameOffset(first + 1) - index.getFrameOffset(first)) - MAX_FRAME_OVERHEAD;
+        }
+
+        // JLayer binds its decoder to the bitstream, so both start over from the new frame
+        closeBitstream();
+        long start = index.getFrameOffset(first);
+        input.reset(start, index.getAudioEnd());
+        bitstream = new Bitstream(input);
+        decoder = new Decoder();
+        nextFrame = first;
+
+        discard = raw - (long) first * index.getSamplesPerFrame();
+        position = sample;
+    }
+
+    /**
+     * Moves to a playback time.
+     *
+     * @param timeMs The playback time in milliseconds.
+     * @throws IOException If the file cannot be read.
+     */
+    public void seekToTime(long timeMs) throws IOException {
+        seekToSample(timeMs * getSampleRate() / 1000);
+    }
+
+    /**
+     * Reads and decodes one frame into the buffer.
+     *
+     * @return The number of interleaved samples, or -1 at the end of the stream.
+     */
+    private int readFrame() throws IOException {
+        try {
+            Header header = bitstream.readFrame();
+            if (header == null)
+                return -1;
+            SampleBuffer output = (SampleBuffer) decoder.decodeFrame(header, bitstream);
+            bitstream.closeFrame();
+            nextFrame++;
+            buffer = output.getBuffer();
+            int length = output.getBufferLength();
+            if (length == 0) {
+                // JLayer outputs nothing for a frame whose bit reservoir is in frames
+                // before the stream started, as after a seek. Count it as silence so
+                // the samples after it keep their positions.
+                length = index.getSamplesPerFrame() * channels;
+                Arrays.fill(buffer, 0, length, (short) 0);
+            }
+            return length;
+        } catch (BitstreamException | DecoderException e) {
+            throw new IOException("Cannot decode frame " + nextFrame, e);
+        }
+    }
+
+    private void closeBitstream() throws IOException {
+        if (bitstream == null)
+            return;
+        try {
+            bitstream.close();
+        } catch (BitstreamException e) {
+            throw new IOException(e);
+        }
+        bitstream = null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        bitstream = null;
+        decoder = null;
+        file.close();
+    }
+
+    /**
+     * Stream over a range of the file, reused across seeks. Bitstream buffers it.
+     * Stops before any ID3v1 tag so it is not mistaken for a frame.
+     */
+    private static final class RangeInputStream extends InputStream {
+
+        private final RandomAccessFile file;
+        private long position;
+        private long end;
+
+        RangeInputStream(RandomAccessFile file) {
+            this.file = file;
+        }
+
+        void reset(long start, long end) throws IOException {
+            this.position = start;
+            this.end = end;
+            file.seek(start);
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (position >= end)
+                return -1;
+            position++;
+            return file.read();
+        }
+
+        @Override
+        public int read(byte[] target, int offset, int length) throws IOException {
+            length = (int) Math.min(length, end - position);
+            if (length <= 0)
+                return length == 0 && position < end ? 0 : -1;
+            int count = file.read(target, offset, length);
+            if (count > 0)
+                position += count;
+            return count;
+        }
+
+        @Override
+        public void close() {
+            // The file is closed by the decoder
+        }
+    }
+}
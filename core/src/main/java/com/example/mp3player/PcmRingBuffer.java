@@ -0,0 +1,153 @@
+package com.example.mp3player;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Preallocated lock-free ring buffer of PCM bytes between one producer thread,
+ * the decoder, and one consumer thread, the audio output.
+ * Positions only ever increase and are published with ordered writes, so
+ * neither side blocks or allocates. The consumer reads straight out of the
+ * backing array to avoid a copy.
+ */
+public final class PcmRingBuffer {
+
+    private final byte[] buffer;
+    private final int mask;
+
+    // Total bytes written and read, each only updated by its own thread
+    private final AtomicLong writePosition = new AtomicLong();
+    private final AtomicLong readPosition = new AtomicLong();
+
+    /**
+     * Creates a ring buffer.
+     *
+     * @param minCapacity The minimum capacity in bytes, rounded up to a power of two.
+     */
+    public PcmRingBuffer(int minCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(2, minCapacity - 1)) << 1;
+        buffer = new byte[capacity];
+        mask = capacity - 1;
+    }
+
+    public int capacity() {
+        return buffer.length;
+    }
+
+    /**
+     * Gets the number of bytes the consumer can read.
+     *
+     * @return The readable byte count.
+     */
+    public int availableToRead() {
+        return (int) (writePosition.get() - readPosition.get());
+    }
+
+    /**
+     * Gets the number of bytes the producer can write.
+     *
+     * @return The writable byte count.
+     */
+    public int availableToWrite() {
+        return buffer.length - availableToRead();
+    }
+
+    /**
+     * Writes as many bytes as fit from a buffer, advancing its position.
+     * Producer thread only.
+     *
+     * @param source The bytes to write.
+     * @return The number of bytes written.
+     */
+    public int write(ByteBuffer source) {
+        long write = writePosition.get();
+        int length = Math.min(source.remaining(), buffer.length - (int) (write - readPosition.get()));
+        int offset = (int) write & mask;
+
+        int first = Math.min(length, buffer.length - offset);
+        source.get(buffer, offset, first);
+        source.get(buffer, 0, length - first);
+
+        writePosition.lazySet(write + length);
+        return length;
+    }
+
+    /**
+     * Writes as many bytes as fit from an array. Producer thread only.
+     *
+     * @param source The array holding the bytes.
+     * @param offset The offset of the first byte.
+     * @param length The number of bytes.
+     * @return The number of bytes written.
+     */
+    public int write(byte[] source, int offset, int length) {
+        return write(ByteBuffer.wrap(source, offset, length));
+    }
+
+    /**
+     * Gets the backing array, for reading in place with readOffset and readableChunk.
+     *
+     * @return The backing array.
+     */
+    public byte[] array() {
+        return buffer;
+    }
+
+    /**
+     * Gets the offset in the backing array of the next byte to read. Consumer thread only.
+     *
+     * @return The offset.
+     */
+    public int readOffset() {
+        return (int) readPosition.get() & mask;
+    }
+
+    /**
+     * Gets the number of bytes that can be read in one piece from readOffset,
+     * before the end of the backing array. Consumer thread only.
+     *
+     * @return The contiguous readable byte count.
+     */
+    public int readableChunk() {
+        return Math.min(availableToRead(), buffer.length - readOffset());
+    }
+
+    /**
+     * Marks bytes as read after they have been used in place. Consumer thread only.
+     *
+     * @param length The number of bytes read.
+     */
+    public void advanceRead(int length) {
+        readPosition.lazySet(readPosition.get() + length);
+    }
+
+    /**
+     * Copies bytes out of the buffer. Consumer thread only.
+     *
+     * @param target The array to copy into.
+     * @param offset The offset to copy to.
+     * @param length The maximum number of bytes.
+     * @return The number of bytes read.
+     */
+    public int read(byte[] target, int offset, int length) {
+        int read = 0;
+        while (read < length) {
+            int chunk = Math.min(readableChunk(), length - read);
+            if (chunk == 0) {
+                break;
+            }
+            System.arraycopy(buffer, readOffset(), target, offset + read, chunk);
+            advanceRead(chunk);
+            read += chunk;
+        }
+        return read;
+    }
+
+    /**
+     * Discards everything written so far. Consumer thread only, and only while
+     * the producer is not writing, such as during a seek.
+     */
+    public void clear() {
+        readPosition.lazySet(writePosition.get());
+    }
+}
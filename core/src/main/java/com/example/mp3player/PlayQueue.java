@@ -0,0 +1,432 @@
+package com.example.mp3player;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Play queue of song IDs that stays compact and fast at tens of thousands of
+ * entries.
+ * <p>
+ * Entries live in slots of primitive arrays, linked into a doubly linked list
+ * by slot number, so appending, removing and moving an entry are O(1) and a
+ * queue of 10k songs is a few hundred KB with no object per entry. Slot
+ * numbers identify entries until they are removed. Shuffling links the slots a
+ * second time in a Fisher-Yates order, keeping the original links, so
+ * unshuffling returns to the original order in O(1).
+ * <p>
+ * Every change is reported to an optional Journal, which can replay it later.
+ * Slots are allocated deterministically and shuffles are seeded, so replaying
+ * the same changes rebuilds the same slots.
+ * Not thread safe, use it from one thread.
+ */
+public final class PlayQueue {
+
+    /**
+     * Slot number meaning no entry.
+     */
+    public static final int NONE = -1;
+
+    /**
+     * Receives every change, for example to write it to disk.
+     */
+    public interface Journal {
+        void onAdd(long id);
+
+        void onRemove(int slot);
+
+        void onMove(int slot, int after);
+
+        void onShuffle(long seed);
+
+        void onUnshuffle();
+
+        void onSetCurrent(int slot);
+
+        /**
+         * Called after the whole queue was replaced, or another change too large to log.
+         */
+        void onReplace();
+    }
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    // Song ID of each slot
+    private long[] ids = new long[INITIAL_CAPACITY];
+
+    // Original order
+    private int[] next = new int[INITIAL_CAPACITY];
+    private int[] previous = new int[INITIAL_CAPACITY];
+    private int head = NONE;
+    private int tail = NONE;
+
+    // Shuffled order, only kept up to date while shuffled
+    private int[] shuffleNext = new int[INITIAL_CAPACITY];
+    private int[] shufflePrevious = new int[INITIAL_CAPACITY];
+    private int shuffleHead = NONE;
+    private int shuffleTail = NONE;
+    private boolean shuffled;
+
+    // Removed slots, reused last removed first
+    private int[] free = new int[INITIAL_CAPACITY];
+    private int freeCount;
+
+    // Slots ever used, the rest of the arrays is spare capacity
+    private int slotCount;
+    private int size;
+    private int current = NONE;
+
+    private Journal journal;
+
+    public void setJournal(Journal journal) {
+        this.journal = journal;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isShuffled() {
+        return shuffled;
+    }
+
+    /**
+     * Gets the song ID of an entry.
+     *
+     * @param slot The slot of the entry.
+     * @return The song ID.
+     */
+    public long getId(int slot) {
+        return ids[slot];
+    }
+
+    /**
+     * Gets the entry being played.
+     *
+     * @return The slot, or NONE.
+     */
+    public int getCurrent() {
+        return current;
+    }
+
+    /**
+     * Sets the entry being played.
+     *
+     * @param slot The slot, or NONE.
+     */
+    public void setCurrent(int slot) {
+        if (slot == current)
+            return;
+        current = slot;
+        if (journal != null)
+            journal.onSetCurrent(slot);
+    }
+
+    /**
+     * Gets the first entry in play order.
+     *
+     * @return The slot, or NONE if the queue is empty.
+     */
+    public int first() {
+        return shuffled ? shuffleHead : head;
+    }
+
+    /**
+     * Gets the entry after another in play order.
+     *
+     * @param slot The slot of the entry.
+     * @return The slot of the following entry, or NONE at the end.
+     */
+    public int next(int slot) {
+        return shuffled ? shuffleNext[slot] : next[slot];
+    }
+
+    /**
+     * Gets the entry before another in play order.
+     *
+     * @param slot The slot of the entry.
+     * @return The slot of the preceding entry, or NONE at the start.
+     */
+    public int previous(int slot) {
+        return shuffled ? shufflePrevious[slot] : previous[slot];
+    }
+
+    /**
+     * Appends a song to the end of the queue, and of the shuffled order when shuffled.
+     *
+     * @param id The song ID.
+     * @return The slot of the new entry.
+     */
+    public int add(long id) {
+        int slot = allocate();
+        ids[slot] = id;
+        previous[slot] = tail;
+        next[slot] = NONE;
+        if (tail != NONE)
+            next[tail] = slot;
+        else
+            head = slot;
+        tail = slot;
+
+        if (shuffled)
+            appendShuffled(slot);
+        size++;
+        if (journal != null)
+            journal.onAdd(id);
+        return slot;
+    }
+
+    /**
+     * Removes an entry. Removing the current entry leaves no entry current.
+     *
+     * @param slot The slot of the entry.
+     */
+    public void remove(int slot) {
+        unlink(slot, next, previous, false);
+        if (shuffled)
+            unlink(slot, shuffleNext, shufflePrevious, true);
+        if (free.length == freeCount)
+            free = Arrays.copyOf(free, freeCount * 2);
+        free[freeCount++] = slot;
+        size--;
+        if (current == slot)
+            current = NONE;
+        if (journal != null)
+            journal.onRemove(slot);
+    }
+
+    /**
+     * Moves an entry within the play order.
+     *
+     * @param slot  The slot of the entry to move.
+     * @param after The slot to move it after, or NONE to move it to the start.
+     */
+    public void move(int slot, int after) {
+        if (slot == after)
+            return;
+        if (shuffled) {
+            unlink(slot, shuffleNext, shufflePrevious, true);
+            link(slot, after, shuffleNext, shufflePrevious, true);
+        } else {
+            unlink(slot, next, previous, false);
+            link(slot, after, next, previous, false);
+        }
+        if (journal != null)
+            journal.onMove(slot, after);
+    }
+
+    /**
+     * Shuffles the play order with a Fisher-Yates shuffle. The current entry
+     * moves to the start, so playback carries on through the shuffled rest.
+     *
+     * @param seed The random seed, kept so the same shuffle can be replayed.
+     */
+    public void shuffle(long seed) {
+        int[] order = new int[size];
+        int count = 0;
+        for (int slot = head; slot != NONE; slot = next[slot]) {
+            if (slot != current)
+                order[count++] = slot;
+        }
+        Random random = new Random(seed);
+        for (int i = count - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = order[i];
+            order[i] = order[j];
+            order[j] = swap;
+        }
+
+        shuffleHead = NONE;
+        shuffleTail = NONE;
+        if (current != NONE)
+            appendShuffled(current);
+        for (int i = 0; i < count; i++)
+            appendShuffled(order[i]);
+        shuffled = true;
+        if (journal != null)
+            journal.onShuffle(seed);
+    }
+
+    private void appendShuffled(int slot) {
+        shufflePrevious[slot] = shuffleTail;
+        shuffleNext[slot] = NONE;
+        if (shuffleTail != NONE)
+            shuffleNext[shuffleTail] = slot;
+        else
+            shuffleHead = slot;
+        shuffleTail = slot;
+    }
+
+    /**
+     * Returns to the original order, with entries added while shuffled at the end.
+     */
+    public void unshuffle() {
+        if (!shuffled)
+            return;
+        shuffled = false;
+        if (journal != null)
+            journal.onUnshuffle();
+    }
+
+    /**
+     * Replaces every entry, unshuffled.
+     *
+     * @param songIds      The song IDs in play order.
+     * @param currentIndex The index in songIds of the entry being played, or -1.
+     */
+    public void replace(long[] songIds, int currentIndex) {
+        Journal journal = this.journal;
+        this.journal = null;
+        clear();
+        ensureCapacity(songIds.length);
+        for (long id : songIds)
+            add(id);
+        // Slots are handed out in order on an empty queue, so the index is the slot
+        current = currentIndex >= 0 && currentIndex < songIds.length ? currentIndex : NONE;
+        this.journal = journal;
+        if (journal != null)
+            journal.onReplace();
+    }
+
+    /**
+     * Gets the song IDs in play order.
+     *
+     * @return A new array of song IDs.
+     */
+    public long[] toArray() {
+        long[] result = new long[size];
+        int i = 0;
+        for (int slot = first(); slot != NONE; slot = next(slot))
+            result[i++] = ids[slot];
+        return result;
+    }
+
+    private void clear() {
+        head = tail = shuffleHead = shuffleTail = NONE;
+        shuffled = false;
+        freeCount = 0;
+        slotCount = 0;
+        size = 0;
+        current = NONE;
+    }
+
+    private int allocate() {
+        if (freeCount > 0)
+            return free[--freeCount];
+        ensureCapacity(slotCount + 1);
+        return slotCount++;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= ids.length)
+            return;
+        capacity = Math.max(capacity, ids.length * 2);
+        ids = Arrays.copyOf(ids, capacity);
+        next = Arrays.copyOf(next, capacity);
+        previous = Arrays.copyOf(previous, capacity);
+        shuffleNext = Arrays.copyOf(shuffleNext, capacity);
+        shufflePrevious = Arrays.copyOf(shufflePrevious, capacity);
+    }
+
+    private void unlink(int slot, int[] next, int[] previous, boolean shuffleOrder) {
+        int before = previous[slot];
+        int after = next[slot];
+        if (before != NONE)
+            next[before] = after;
+        else if (shuffleOrder)
+            shuffleHead = after;
+        else
+            head = after;
+        if (after != NONE)
+            previous[after] = before;
+        else if (shuffleOrder)
+            shuffleTail = before;
+        else
+            tail = before;
+    }
+
+    private void link(int slot, int after, int[] next, int[] previous, boolean shuffleOrder) {
+        int before = after;
+        int following = after != NONE ? next[after] : (shuffleOrder ? shuffleHead : head);
+        previous[slot] = before;
+        next[slot] = following;
+        if (before != NONE)
+            next[before] = slot;
+        else if (shuffleOrder)
+            shuffleHead = slot;
+        else
+            head = slot;
+        if (following != NONE)
+            previous[following] = slot;
+        else if (shuffleOrder)
+            shuffleTail = slot;
+        else
+            tail = slot;
+    }
+
+    /**
+     * Writes the slots exactly as they are, so a queue read back gives every
+     * entry the same slot and logged changes can be replayed onto it.
+     *
+     * @param out The output to write to.
+     * @throws IOException If the output cannot be written.
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(slotCount);
+        out.writeInt(size);
+        out.writeInt(current);
+        out.writeBoolean(shuffled);
+        for (int slot = head; slot != NONE; slot = next[slot]) {
+            out.writeInt(slot);
+            out.writeLong(ids[slot]);
+        }
+        if (shuffled) {
+            for (int slot = shuffleHead; slot != NONE; slot = shuffleNext[slot])
+                out.writeInt(slot);
+        }
+        out.writeInt(freeCount);
+        for (int i = 0; i < freeCount; i++)
+            out.writeInt(free[i]);
+    }
+
+    /**
+     * Replaces the queue with one written by writeTo(). The journal is not told.
+     *
+     * @param in The input to read from.
+     * @throws IOException If the input cannot be read.
+     */
+    public void readFrom(DataInput in) throws IOException {
+        clear();
+        int slots = in.readInt();
+        int entries = in.readInt();
+        int currentSlot = in.readInt();
+        boolean shuffledOrder = in.readBoolean();
+        ensureCapacity(slots);
+        slotCount = slots;
+        for (int i = 0; i < entries; i++) {
+            int slot = in.readInt();
+            ids[slot] = in.readLong();
+            previous[slot] = tail;
+            next[slot] = NONE;
+            if (tail != NONE)
+                next[tail] = slot;
+            else
+                head = slot;
+            tail = slot;
+        }
+        if (shuffledOrder) {
+            for (int i = 0; i < entries; i++)
+                appendShuffled(in.readInt());
+        }
+        freeCount = in.readInt();
+        if (free.length < freeCount)
+            free = new int[freeCount];
+        for (int i = 0; i < freeCount; i++)
+            free[i] = in.readInt();
+        size = entries;
+        shuffled = shuffledOrder;
+        current = currentSlot;
+    }
+}
@@ -0,0 +1,281 @@
+package com.example.mp3player;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+
+/**
+ * Keeps a PlayQueue on disk as an append-only log, so restoring even a huge
+ * queue is one sequential read.
+ * <p>
+ * The file starts with a snapshot of the queue's slots, followed by one small
+ * record per change since. Once the records outnumber the entries, or the
+ * queue is replaced, a new snapshot is written to a temporary file, synced and
+ * renamed over the log, so the cost of compacting is spread over the changes
+ * that caused it. Records are written whole, so a process killed mid-write
+ * leaves at most a torn last record, which is dropped on restore.
+ * All file access runs on the given executor, in order.
+ */
+public class PlayQueueJournal implements PlayQueue.Journal {
+
+    private static final int MAGIC = 0x4D50514C; // "MPQL"
+    private static final int FORMAT_VERSION = 1;
+
+    private static final byte OP_ADD = 1;
+    private static final byte OP_REMOVE = 2;
+    private static final byte OP_MOVE = 3;
+    private static final byte OP_SHUFFLE = 4;
+    private static final byte OP_UNSHUFFLE = 5;
+    private static final byte OP_SET_CURRENT = 6;
+
+    // Records always allowed before compacting, so small queues are not rewritten on every change
+    private static final int MIN_RECORDS = 1024;
+
+    private final File file;
+    private final Executor io;
+
+    private PlayQueue queue;
+
+    // Queue the file was last read into, which it matches unless stale
+    private PlayQueue restored;
+
+    // Records after the snapshot in the file
+    private int recordCount;
+
+    // Whether the file no longer matches the queue, so the next change rewrites it
+    private volatile boolean stale;
+
+    // Only used on the io executor
+    private FileOutputStream out;
+
+    /**
+     * Creates a journal for a log file.
+     *
+     * @param file The log file.
+     * @param io   Runs the file writes, in order.
+     */
+    public PlayQueueJournal(File file, Executor io) {
+        this.file = file;
+        this.io = io;
+    }
+
+    /**
+     * Reads the queue back from the log. Blocks, so call it off the main thread
+     * and before attach().
+     *
+     * @return The restored queue, empty if there is no readable log.
+     */
+    public PlayQueue restore() {
+        PlayQueue restored = new PlayQueue();
+        this.restored = restored;
+        recordCount = 0;
+        stale = false;
+        if (!file.isFile()) {
+            stale = true;
+            return restored;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                stale = true;
+                return restored;
+            }
+            restored.readFrom(in);
+            while (replay(in, restored)) {
+                recordCount++;
+            }
+        } catch (IOException | RuntimeException e) {
+            // A record torn by process death or damaged, so keep everything before
+            // it and rewrite the log
+            stale = true;
+        }
+        return restored;
+    }
+
+    /**
+     * Applies the next record to the queue.
+     *
+     * @return Whether there was a record.
+     */
+    private static boolean replay(DataInputStream in, PlayQueue queue) throws IOException {
+        int op = in.read();
+        switch (op) {
+            case -1:
+                return false;
+            case OP_ADD:
+                queue.add(in.readLong());
+                return true;
+            case OP_REMOVE:
+                queue.remove(in.readInt());
+                return true;
+            case OP_MOVE:
+                queue.move(in.readInt(), in.readInt());
+                return true;
+            case OP_SHUFFLE:
+                queue.shuffle(in.readLong());
+                return true;
+            case OP_UNSHUFFLE:
+                queue.unshuffle();
+                return true;
+            case OP_SET_CURRENT:
+                queue.setCurrent(in.readInt());
+                return true;
+            default:
+                throw new IOException("Unknown record " + op);
+        }
+    }
+
+    /**
+     * Starts logging the changes of a queue, rewriting the log first if it does
+     * not match the queue, as when it is not the one returned by restore().
+     *
+     * @param queue The queue, normally the one returned by restore().
+     */
+    public void attach(PlayQueue queue) {
+        this.queue = queue;
+        queue.setJournal(this);
+        if (stale || queue != restored)
+            compact();
+        restored = null;
+    }
+
+    @Override
+    public void onAdd(long id) {
+        append(new Record(OP_ADD, 8).putLong(id));
+    }
+
+    @Override
+    public void onRemove(int slot) {
+        append(new Record(OP_REMOVE, 4).putInt(slot));
+    }
+
+    @Override
+    public void onMove(int slot, int after) {
+        append(new Record(OP_MOVE, 8).putInt(slot).putInt(after));
+    }
+
+    @Override
+    public void onShuffle(long seed) {
+        append(new Record(OP_SHUFFLE, 8).putLong(seed));
+    }
+
+    @Override
+    public void onUnshuffle() {
+        append(new Record(OP_UNSHUFFLE, 0));
+    }
+
+    @Override
+    public void onSetCurrent(int slot) {
+        append(new Record(OP_SET_CURRENT, 4).putInt(slot));
+    }
+
+    @Override
+    public void onReplace() {
+        compact();
+    }
+
+    /**
+     * Queues a record to be appended, or rewrites the log instead when it is due.
+     */
+    private void append(Record record) {
+        if (stale || ++recordCount > Math.max(MIN_RECORDS, queue.size())) {
+            compact();
+            return;
+        }
+        byte[] bytes = record.bytes;
+        io.execute(() -> {
+            try {
+                if (out == null)
+                    out = new FileOutputStream(file, true);
+                out.write(bytes);
+            } catch (IOException e) {
+                // The log may now be missing a record, so rewrite it on the next change
+                stale = true;
+                closeOutput();
+            }
+        });
+    }
+
+    /**
+     * Replaces the log with a snapshot of the queue as it is now.
+     */
+    private void compact() {
+        ByteArrayOutputStream snapshot = new ByteArrayOutputStream(64 + queue.size() * 12);
+        try (DataOutputStream data = new DataOutputStream(snapshot)) {
+            data.writeInt(MAGIC);
+            data.writeInt(FORMAT_VERSION);
+            queue.writeTo(data);
+        } catch (IOException e) {
+            // Cannot happen writing to memory
+            throw new IllegalStateException(e);
+        }
+        byte[] bytes = snapshot.toByteArray();
+        recordCount = 0;
+        stale = false;
+
+        io.execute(() -> {
+            closeOutput();
+            File temp = new File(file.getPath() + ".tmp");
+            try {
+                try (FileOutputStream tempOut = new FileOutputStream(temp)) {
+                    tempOut.write(bytes);
+                    tempOut.getFD().sync();
+                }
+                if (!temp.renameTo(file))
+                    throw new IOException("Cannot replace " + file);
+            } catch (IOException e) {
+                temp.delete();
+                stale = true;
+            }
+        });
+    }
+
+    /**
+     * Closes the log file once queued writes have finished.
+     */
+    public void close() {
+        io.execute(this::closeOutput);
+    }
+
+    private void closeOutput() {
+        if (out == null)
+            return;
+        try {
+            out.close();
+        } catch (IOException e) {
+            // Nothing left to write
+        }
+        out = null;
+    }
+
+    /**
+     * One record, encoded big-endian like DataOutputStream.
+     */
+    private static final class Record {
+        final byte[] bytes;
+        private int position;
+
+        Record(byte op, int length) {
+            bytes = new byte[1 + length];
+            bytes[position++] = op;
+        }
+
+        Record putInt(int value) {
+            for (int shift = 24; shift >= 0; shift -= 8)
+                bytes[position++] = (byte) (value >>> shift);
+            return this;
+        }
+
+        Record putLong(long value) {
+            for (int shift = 56; shift >= 0; shift -= 8)
+                bytes[position++] = (byte) (value >>> shift);
+            return this;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.mp3player;
+
+/**
+ * Immutable anchor for the playback position.
+ * Observers extrapolate the current position from the anchor and the playback
+ * speed instead of polling the player. The anchor names the track it belongs to,
+ * so observers notice when the player moves on to the next track by itself.
+ */
+public final class PlaybackPosition {
+
+    /**
+     * Position used when nothing is loaded.
+     */
+    public static final PlaybackPosition STOPPED = new PlaybackPosition(0, 0, 0, 1, false);
+
+    private final int anchorPosition;
+    private final long anchorTime;
+    private final int duration;
+    private final float speed;
+    private final boolean playing;
+    private final String filePath;
+
+    /**
+     * Creates a position anchor not tied to a track.
+     *
+     * @param anchorPosition The playback position in milliseconds at anchorTime.
+     * @param anchorTime     When the position was read, in milliseconds of a monotonic clock.
+     * @param duration       The duration of the track in milliseconds, 0 if unknown.
+     * @param speed          The playback speed.
+     * @param playing        Whether the position is advancing.
+     */
+    public PlaybackPosition(int anchorPosition, long anchorTime, int duration, float speed, boolean playing) {
+        this(anchorPosition, anchorTime, duration, speed, playing, null);
+    }
+
+    /**
+     * Creates a position anchor.
+     *
+     * @param anchorPosition The playback position in milliseconds at anchorTime.
+     * @param anchorTime     When the position was read, in milliseconds of a monotonic clock.
+     * @param duration       The duration of the track in milliseconds, 0 if unknown.
+     * @param speed          The playback speed.
+     * @param playing        Whether the position is advancing.
+     * @param filePath       The file path of the track, or null if none is loaded.
+     */
+    public PlaybackPosition(int anchorPosition, long anchorTime, int duration, float speed, boolean playing,
+                            String filePath) {
+        this.anchorPosition = anchorPosition;
+        this.anchorTime = anchorTime;
+        this.duration = duration;
+        this.speed = speed;
+        this.playing = playing;
+        this.filePath = filePath;
+    }
+
+    /**
+     * Extrapolates the playback position at a given time.
+     *
+     * @param now The time in milliseconds of the same clock as the anchor time.
+     * @return The position in milliseconds, never past the end of the track.
+     */
+    public int positionAt(long now) {
+        if (!playing || now <= anchorTime) {
+            return anchorPosition;
+        }
+        long position = anchorPosition + (long) ((now - anchorTime) * speed);
+        if (duration > 0 && position > duration) {
+            return duration;
+        }
+        return (int) position;
+    }
+
+    /**
+     * Gets how long until the extrapolated position reaches the next whole second.
+     *
+     * @param now The time in milliseconds of the same clock as the anchor time.
+     * @return The delay in milliseconds, or -1 if the position is not advancing.
+     */
+    public long delayToNextSecond(long now) {
+        if (!playing || speed <= 0) {
+            return -1;
+        }
+        int position = positionAt(now);
+        if (duration > 0 && position >= duration) {
+            return -1;
+        }
+        int untilNextSecond = 1000 - position % 1000;
+        return (long) Math.ceil(untilNextSecond / speed);
+    }
+
+    public int getAnchorPosition() {
+        return anchorPosition;
+    }
+
+    public long getAnchorTime() {
+        return anchorTime;
+    }
+
+    public int getDuration() {
+        return duration;
+    }
+
+    public float getSpeed() {
+        return speed;
+    }
+
+    public boolean isPlaying() {
+        return playing;
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+}
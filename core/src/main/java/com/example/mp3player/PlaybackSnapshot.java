@@ -0,0 +1,146 @@
+package com.example.mp3player;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * Immutable record of what was playing and where, saved so playback can carry
+ * on after the process dies.
+ * <p>
+ * It is stored as a fixed size record of RECORD_SIZE bytes, ending in a CRC32
+ * of the rest, so a record that was cut short or damaged is recognised and
+ * ignored rather than restoring a wrong position.
+ */
+public final class PlaybackSnapshot {
+
+    private static final int MAGIC = 0x4D505353; // "MPSS"
+    private static final short FORMAT_VERSION = 1;
+
+    // Longest file path stored, in UTF-8 bytes
+    private static final int MAX_PATH_BYTES = 1024;
+
+    /**
+     * Size of a stored record in bytes.
+     */
+    public static final int RECORD_SIZE = 4 + 2 + 2 + 4 + 4 + 4 + 8 + MAX_PATH_BYTES + 4;
+
+    private final String filePath;
+    private final int position;
+    private final int duration;
+    private final float speed;
+    private final long savedAt;
+
+    /**
+     * Creates a snapshot.
+     *
+     * @param filePath The file path of the track.
+     * @param position The playback position in milliseconds.
+     * @param duration The duration of the track in milliseconds.
+     * @param speed    The playback speed.
+     * @param savedAt  When the snapshot was taken, from System.currentTimeMillis().
+     */
+    public PlaybackSnapshot(String filePath, int position, int duration, float speed, long savedAt) {
+        this.filePath = filePath;
+        this.position = position;
+        this.duration = duration;
+        this.speed = speed;
+        this.savedAt = savedAt;
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    public int getPosition() {
+        return position;
+    }
+
+    public int getDuration() {
+        return duration;
+    }
+
+    public float getSpeed() {
+        return speed;
+    }
+
+    public long getSavedAt() {
+        return savedAt;
+    }
+
+    /**
+     * Checks whether the snapshot can be stored, which needs a file path of at
+     * most 1024 bytes.
+     *
+     * @return Whether writeTo() will accept the snapshot.
+     */
+    public boolean isStorable() {
+        return filePath != null && filePath.getBytes(StandardCharsets.UTF_8).length <= MAX_PATH_BYTES;
+    }
+
+    /**
+     * Writes the snapshot as a record of RECORD_SIZE bytes.
+     *
+     * @param buffer The buffer to write to, at its position, with a backing array.
+     * @throws IllegalStateException If the snapshot is not storable.
+     */
+    public void writeTo(ByteBuffer buffer) {
+        if (!isStorable())
+            throw new IllegalStateException("Path too long to store: " + filePath);
+        byte[] path = filePath.getBytes(StandardCharsets.UTF_8);
+        int start = buffer.position();
+        buffer.putInt(MAGIC);
+        buffer.putShort(FORMAT_VERSION);
+        buffer.putShort((short) path.length);
+        buffer.putInt(position);
+        buffer.putInt(duration);
+        buffer.putFloat(speed);
+        buffer.putLong(savedAt);
+        buffer.put(path);
+        // Pad the path so every record is the same size
+        buffer.put(new byte[MAX_PATH_BYTES - path.length]);
+        buffer.putInt(checksum(buffer, start));
+    }
+
+    /**
+     * Reads a record written by writeTo().
+     *
+     * @param buffer The buffer to read from, at its position, with a backing array.
+     *               The position moves past the record even if it is rejected.
+     * @return The snapshot, or null if the record is damaged or from another format.
+     */
+    public static PlaybackSnapshot readFrom(ByteBuffer buffer) {
+        int start = buffer.position();
+        if (buffer.remaining() < RECORD_SIZE) {
+            buffer.position(buffer.limit());
+            return null;
+        }
+        buffer.position(start + RECORD_SIZE - 4);
+        int expected = checksum(buffer, start);
+        int stored = buffer.getInt();
+        buffer.position(start);
+        if (stored != expected || buffer.getInt() != MAGIC || buffer.getShort() != FORMAT_VERSION) {
+            buffer.position(start + RECORD_SIZE);
+            return null;
+        }
+
+        int pathLength = buffer.getShort();
+        int position = buffer.getInt();
+        int duration = buffer.getInt();
+        float speed = buffer.getFloat();
+        long savedAt = buffer.getLong();
+        String filePath = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), pathLength,
+                StandardCharsets.UTF_8);
+        buffer.position(start + RECORD_SIZE);
+        return new PlaybackSnapshot(filePath, position, duration, speed, savedAt);
+    }
+
+    /**
+     * Checksums the record from its start up to the buffer's position.
+     */
+    private static int checksum(ByteBuffer buffer, int start) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), buffer.arrayOffset() + start, buffer.position() - start);
+        return (int) crc.getValue();
+    }
+}
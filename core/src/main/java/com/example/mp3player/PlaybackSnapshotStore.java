@@ -0,0 +1,211 @@
+package com.example.mp3player;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps the last PlaybackSnapshot on disk, along with a resume bookmark for
+ * each long track, such as an audiobook or podcast, played recently.
+ * <p>
+ * The snapshot file holds one record and the bookmark file one record per
+ * bookmark, most recent first. Each is replaced whole by writing a temporary
+ * file, syncing it and renaming it over the old one, so a process killed
+ * mid-write leaves the previous version in place. Saves only encode the
+ * records on the calling thread. Writing runs on the given executor, and saves
+ * made while a write is waiting are folded into it.
+ */
+public class PlaybackSnapshotStore {
+
+    /**
+     * Shortest track given a bookmark, in milliseconds.
+     */
+    public static final int BOOKMARK_MIN_DURATION_MS = 20 * 60 * 1000;
+
+    // Bookmarks this close to the end are dropped, as the track has been finished
+    private static final int BOOKMARK_END_MARGIN_MS = 60 * 1000;
+
+    // Bookmarks kept, the least recently played are dropped first
+    private static final int MAX_BOOKMARKS = 64;
+
+    private final File snapshotFile;
+    private final File bookmarkFile;
+    private final Executor io;
+
+    // Bookmarks by file path, least recently saved first, guarded by this
+    private final LinkedHashMap<String, PlaybackSnapshot> bookmarks = new LinkedHashMap<>();
+
+    // Encoded records waiting to be written, null when up to date, guarded by this
+    private byte[] pendingSnapshot;
+    private byte[] pendingBookmarks;
+
+    // Whether a write is queued on the executor
+    private final AtomicBoolean writeQueued = new AtomicBoolean();
+
+    /**
+     * Creates a store for a snapshot file and a bookmark file.
+     *
+     * @param snapshotFile The file holding the last snapshot.
+     * @param bookmarkFile The file holding the bookmarks.
+     * @param io           Runs the file writes, in order.
+     */
+    public PlaybackSnapshotStore(File snapshotFile, File bookmarkFile, Executor io) {
+        this.snapshotFile = snapshotFile;
+        this.bookmarkFile = bookmarkFile;
+        this.io = io;
+    }
+
+    /**
+     * Reads the bookmarks and the last snapshot back. Blocks, so call it off the
+     * main thread.
+     *
+     * @return The last snapshot, or null if there is no readable one.
+     */
+    public PlaybackSnapshot restore() {
+        List<PlaybackSnapshot> saved = readRecords(bookmarkFile);
+        synchronized (this) {
+            // Stored most recent first, kept least recent first
+            for (int i = saved.size() - 1; i >= 0; i--) {
+                PlaybackSnapshot bookmark = saved.get(i);
+                if (!bookmarks.containsKey(bookmark.getFilePath()))
+                    bookmarks.put(bookmark.getFilePath(), bookmark);
+            }
+        }
+        List<PlaybackSnapshot> last = readRecords(snapshotFile);
+        return last.isEmpty() ? null : last.get(0);
+    }
+
+    /**
+     * Saves a snapshot as the last one, and as the bookmark of its file if the
+     * track is long. A bookmark within a minute of the end is removed instead.
+     *
+     * @param snapshot The snapshot.
+     */
+    public void save(PlaybackSnapshot snapshot) {
+        if (!snapshot.isStorable())
+            return;
+        ByteBuffer record = ByteBuffer.allocate(PlaybackSnapshot.RECORD_SIZE);
+        snapshot.writeTo(record);
+        synchronized (this) {
+            pendingSnapshot = record.array();
+            if (snapshot.getDuration() >= BOOKMARK_MIN_DURATION_MS) {
+                bookmarks.remove(snapshot.getFilePath());
+                if (snapshot.getPosition() < snapshot.getDuration() - BOOKMARK_END_MARGIN_MS)
+                    bookmarks.put(snapshot.getFilePath(), snapshot);
+                Iterator<String> eldest = bookmarks.keySet().iterator();
+                while (bookmarks.size() > MAX_BOOKMARKS) {
+                    eldest.next();
+                    eldest.remove();
+                }
+                pendingBookmarks = encodeBookmarks();
+            }
+        }
+        queueWrite();
+    }
+
+    /**
+     * Gets the bookmarked position of a file.
+     *
+     * @param filePath The file path.
+     * @return The position in milliseconds, or -1 if the file has no bookmark.
+     */
+    public synchronized int getBookmark(String filePath) {
+        PlaybackSnapshot bookmark = bookmarks.get(filePath);
+        return bookmark != null ? bookmark.getPosition() : -1;
+    }
+
+    /**
+     * Removes the bookmark of a file, for example once it has been played to the end.
+     *
+     * @param filePath The file path.
+     */
+    public void clearBookmark(String filePath) {
+        synchronized (this) {
+            if (bookmarks.remove(filePath) == null)
+                return;
+            pendingBookmarks = encodeBookmarks();
+        }
+        queueWrite();
+    }
+
+    private byte[] encodeBookmarks() {
+        ByteBuffer records = ByteBuffer.allocate(bookmarks.size() * PlaybackSnapshot.RECORD_SIZE);
+        List<PlaybackSnapshot> recentFirst = new ArrayList<>(bookmarks.values());
+        for (int i = recentFirst.size() - 1; i >= 0; i--)
+            recentFirst.get(i).writeTo(records);
+        return records.array();
+    }
+
+    private void queueWrite() {
+        if (!writeQueued.compareAndSet(false, true))
+            return;
+        io.execute(() -> {
+            // Clear the flag first, so a save made during the write queues another
+            writeQueued.set(false);
+            byte[] snapshot;
+            byte[] bookmarkRecords;
+            synchronized (this) {
+                snapshot = pendingSnapshot;
+                bookmarkRecords = pendingBookmarks;
+                pendingSnapshot = null;
+                pendingBookmarks = null;
+            }
+            if (snapshot != null)
+                replace(snapshotFile, snapshot);
+            if (bookmarkRecords != null)
+                replace(bookmarkFile, bookmarkRecords);
+        });
+    }
+
+    /**
+     * Replaces a file with new contents in one step.
+     */
+    private static void replace(File file, byte[] bytes) {
+        File temp = new File(file.getPath() + ".tmp");
+        try {
+            try (FileOutputStream out = new FileOutputStream(temp)) {
+                out.write(bytes);
+                out.getFD().sync();
+            }
+            if (!temp.renameTo(file))
+                throw new IOException("Cannot replace " + file);
+        } catch (IOException e) {
+            // The previous version stays in place until a later save replaces it
+            temp.delete();
+        }
+    }
+
+    /**
+     * Reads every intact record in a file.
+     */
+    private static List<PlaybackSnapshot> readRecords(File file) {
+        List<PlaybackSnapshot> records = new ArrayList<>();
+        if (!file.isFile())
+            return records;
+        byte[] bytes = new byte[(int) Math.min(file.length(), MAX_BOOKMARKS * PlaybackSnapshot.RECORD_SIZE)];
+        int length = 0;
+        try (InputStream in = new FileInputStream(file)) {
+            for (int read; length < bytes.length && (read = in.read(bytes, length, bytes.length - length)) > 0; )
+                length += read;
+        } catch (IOException e) {
+            return records;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, length);
+        while (buffer.remaining() >= PlaybackSnapshot.RECORD_SIZE) {
+            PlaybackSnapshot record = PlaybackSnapshot.readFrom(buffer);
+            if (record != null)
+                records.add(record);
+        }
+        return records;
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.mp3player;
+
+import java.util.Locale;
+
+/**
+ * The playback speeds offered to the user, from 0.5x to 3x in 0.05 steps.
+ * Speeds are worked out from whole hundredths so repeated steps do not drift.
+ */
+public final class PlaybackSpeeds {
+
+    // Range and step of the speeds, in hundredths
+    private static final int MIN_HUNDREDTHS = 50;
+    private static final int MAX_HUNDREDTHS = 300;
+    private static final int STEP_HUNDREDTHS = 5;
+
+    public static final float MIN = MIN_HUNDREDTHS / 100f;
+    public static final float MAX = MAX_HUNDREDTHS / 100f;
+
+    private PlaybackSpeeds() {
+    }
+
+    /**
+     * Gets the number of speeds offered.
+     *
+     * @return The number of speeds.
+     */
+    public static int count() {
+        return (MAX_HUNDREDTHS - MIN_HUNDREDTHS) / STEP_HUNDREDTHS + 1;
+    }
+
+    /**
+     * Gets the speed at a position in the list of speeds.
+     *
+     * @param index The position, from 0 to count() - 1.
+     * @return The speed.
+     */
+    public static float speedAt(int index) {
+        return (MIN_HUNDREDTHS + index * STEP_HUNDREDTHS) / 100f;
+    }
+
+    /**
+     * Gets the position of the offered speed nearest to a speed.
+     *
+     * @param speed The speed.
+     * @return The position, from 0 to count() - 1.
+     */
+    public static int indexOf(float speed) {
+        int index = Math.round((speed * 100 - MIN_HUNDREDTHS) / STEP_HUNDREDTHS);
+        return Math.max(0, Math.min(index, count() - 1));
+    }
+
+    /**
+     * Snaps a speed to the nearest offered speed, within the supported range.
+     *
+     * @param speed The speed.
+     * @return The nearest offered speed.
+     */
+    public static float snap(float speed) {
+        return speedAt(indexOf(speed));
+    }
+
+    /**
+     * Formats a speed for display, such as "1.25x".
+     *
+     * @param speed The speed.
+     * @return The formatted speed.
+     */
+    public static String format(float speed) {
+        return String.format(Locale.US, "%.2fx", speed);
+    }
+
+    /**
+     * Gets the labels of every offered speed, in order.
+     *
+     * @return The labels.
+     */
+    public static String[] labels() {
+        String[] labels = new String[count()];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = format(speedAt(i));
+        }
+        return labels;
+    }
+
+    /**
+     * Gets an intermediate speed of a ramp between two speeds, so a change is
+     * heard as a glide rather than a jump.
+     *
+     * @param from  The speed at the start of the ramp.
+     * @param to    The speed at the end of the ramp.
+     * @param step  The step of the ramp, from 1 to steps.
+     * @param steps The number of steps in the ramp.
+     * @return The speed at the step, exactly to at the last step.
+     */
+    public static float ramp(float from, float to, int step, int steps) {
+        if (step >= steps) {
+            return to;
+        }
+        return from + (to - from) * step / steps;
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.mp3player;
+
+import java.io.IOException;
+
+/**
+ * Decodes and plays a single audio file for an MP3Player.
+ * Follows the MediaPlayer lifecycle: setDataSource, prepareAsync, then
+ * start, pause and seekTo until release. Methods are called on the thread
+ * that drives the player, and listener callbacks are delivered on that thread.
+ */
+public interface PlayerEngine {
+
+    /**
+     * Receives engine events on the thread that drives the player.
+     */
+    interface Listener {
+        /**
+         * Called when asynchronous preparation has completed.
+         *
+         * @param engine The prepared engine.
+         */
+        void onPrepared(PlayerEngine engine);
+
+        /**
+         * Called when playback reaches the end of the file.
+         *
+         * @param engine The completed engine.
+         */
+        void onCompletion(PlayerEngine engine);
+
+        /**
+         * Called when a seek has completed.
+         *
+         * @param engine The engine that seeked.
+         */
+        void onSeekComplete(PlayerEngine engine);
+
+        /**
+         * Called when the engine fails. The engine can only be released afterwards.
+         *
+         * @param engine The failed engine.
+         * @param what   The type of error.
+         * @param extra  An engine-specific error code.
+         */
+        void onError(PlayerEngine engine, int what, int extra);
+    }
+
+    /**
+     * Creates engines, so the engine used for new loads can be swapped.
+     */
+    interface Factory {
+        /**
+         * Creates an engine.
+         *
+         * @return A new engine, ready for setDataSource.
+         */
+        PlayerEngine create();
+    }
+
+    void setListener(Listener listener);
+
+    /**
+     * Sets the file to play.
+     *
+     * @param path The file path.
+     * @throws IOException If the file cannot be opened.
+     */
+    void setDataSource(String path) throws IOException;
+
+    /**
+     * Prepares the file in the background, then calls Listener.onPrepared.
+     */
+    void prepareAsync();
+
+    /**
+     * Starts or resumes playback. Starting after completion plays from the beginning.
+     */
+    void start();
+
+    void pause();
+
+    /**
+     * Seeks to a position, then calls Listener.onSeekComplete.
+     *
+     * @param position The position in milliseconds.
+     * @param exact    Whether to seek exactly rather than to the nearest sync point.
+     */
+    void seekTo(int position, boolean exact);
+
+    /**
+     * Sets the playback speed, keeping the pitch unchanged. Before preparation
+     * the speed is kept for when playback starts.
+     *
+     * @param speed The playback speed.
+     */
+    void setSpeed(float speed);
+
+    /**
+     * Sets the output volume, for example to apply loudness normalisation.
+     *
+     * @param volume The volume, from 0 to 1.
+     */
+    void setVolume(float volume);
+
+    /**
+     * Chains a prepared engine to start without a gap when this one completes.
+     *
+     * @param next The next engine, or null to remove the chained engine.
+     * @return Whether the engine supports chaining to next.
+     */
+    boolean setNextEngine(PlayerEngine next);
+
+    boolean isPlaying();
+
+    /**
+     * Gets the playback position.
+     *
+     * @return The position in milliseconds.
+     */
+    int getCurrentPosition();
+
+    /**
+     * Gets the duration of the prepared file.
+     *
+     * @return The duration in milliseconds.
+     */
+    int getDuration();
+
+    /**
+     * Stops playback and frees the engine's resources. The engine cannot be used afterwards.
+     */
+    void release();
+}
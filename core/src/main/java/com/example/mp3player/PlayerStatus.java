@@ -0,0 +1,49 @@
+package com.example.mp3player;
+
+/**
+ * Immutable record of what a player is doing: its state, its track and an
+ * anchor for its playback position, which carries the speed. A player replaces
+ * its status whole on every change, so any thread can read a consistent one
+ * without locking.
+ */
+public final class PlayerStatus {
+
+    /**
+     * Status of a player with nothing loaded.
+     */
+    public static final PlayerStatus STOPPED = new PlayerStatus(MP3PlayerState.STOPPED, null,
+            PlaybackPosition.STOPPED);
+
+    private final MP3PlayerState state;
+    private final String filePath;
+    private final PlaybackPosition position;
+
+    /**
+     * Creates a status.
+     *
+     * @param state    The state of the player.
+     * @param filePath The file path of the track, or null if none has been loaded.
+     * @param position The playback position anchor.
+     */
+    public PlayerStatus(MP3PlayerState state, String filePath, PlaybackPosition position) {
+        this.state = state;
+        this.filePath = filePath;
+        this.position = position;
+    }
+
+    public MP3PlayerState getState() {
+        return state;
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    public PlaybackPosition getPosition() {
+        return position;
+    }
+
+    public float getSpeed() {
+        return position.getSpeed();
+    }
+}
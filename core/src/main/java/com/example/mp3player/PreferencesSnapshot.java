@@ -0,0 +1,82 @@
+package com.example.mp3player;
+
+/**
+ * Immutable snapshot of every user preference.
+ * AppPreferences swaps in a new snapshot on each change, so reads need no locking.
+ */
+public final class PreferencesSnapshot {
+
+    /**
+     * Preferences used before the user has changed anything.
+     */
+    public static final PreferencesSnapshot DEFAULTS = new PreferencesSnapshot(0, 1, 0);
+
+    private final int backgroundColour;
+    private final float playbackSpeed;
+    private final int codecBufferMs;
+
+    /**
+     * Creates a snapshot.
+     *
+     * @param backgroundColour The background colour.
+     * @param playbackSpeed    The playback speed.
+     * @param codecBufferMs    The decode buffer of the MediaCodec engine in milliseconds,
+     *                         or 0 to play through MediaPlayer.
+     */
+    public PreferencesSnapshot(int backgroundColour, float playbackSpeed, int codecBufferMs) {
+        this.backgroundColour = backgroundColour;
+        this.playbackSpeed = playbackSpeed;
+        this.codecBufferMs = codecBufferMs;
+    }
+
+    public int getBackgroundColour() {
+        return backgroundColour;
+    }
+
+    public float getPlaybackSpeed() {
+        return playbackSpeed;
+    }
+
+    public int getCodecBufferMs() {
+        return codecBufferMs;
+    }
+
+    /**
+     * Copies the snapshot with a different background colour.
+     *
+     * @param colour The new background colour.
+     * @return This snapshot if the colour is unchanged, else a new snapshot.
+     */
+    public PreferencesSnapshot withBackgroundColour(int colour) {
+        if (colour == backgroundColour) {
+            return this;
+        }
+        return new PreferencesSnapshot(colour, playbackSpeed, codecBufferMs);
+    }
+
+    /**
+     * Copies the snapshot with a different playback speed.
+     *
+     * @param speed The new playback speed.
+     * @return This snapshot if the speed is unchanged, else a new snapshot.
+     */
+    public PreferencesSnapshot withPlaybackSpeed(float speed) {
+        if (Float.compare(speed, playbackSpeed) == 0) {
+            return this;
+        }
+        return new PreferencesSnapshot(backgroundColour, speed, codecBufferMs);
+    }
+
+    /**
+     * Copies the snapshot with a different audio engine.
+     *
+     * @param bufferMs The decode buffer of the MediaCodec engine in milliseconds, or 0 for MediaPlayer.
+     * @return This snapshot if the engine is unchanged, else a new snapshot.
+     */
+    public PreferencesSnapshot withCodecBufferMs(int bufferMs) {
+        if (bufferMs == codecBufferMs) {
+            return this;
+        }
+        return new PreferencesSnapshot(backgroundColour, playbackSpeed, bufferMs);
+    }
+}
@@ -0,0 +1,499 @@
+package com.example.mp3player;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+
+/**
+ * In-memory search index over the title, artist, album and file name of every
+ * song, fast enough to query on every keystroke.
+ * <p>
+ * Text is folded to lower case without accents and split into words. Every
+ * trigram of every word, and the first one and two letters of every word, key
+ * a posting list of the songs containing them. Posting lists are int arrays
+ * holding each song's number, in the order songs were added, and the score of
+ * its best match for the key, so no object is kept per song or per posting.
+ * <p>
+ * Words of three or more letters match anywhere in a word, shorter ones only
+ * at the start of a word, and every word must match. A query walks the
+ * posting lists of the first key of each of its words together, so the score
+ * of a song is read straight from them. Words longer than three letters are
+ * then checked against the folded text, which is kept in one char array, but
+ * only for songs whose scores could still place them among the results.
+ * <p>
+ * Adding a song that is already indexed replaces it. Replaced and removed songs
+ * are only marked, and the index is rebuilt from its own text once they
+ * outnumber the rest, so the cost of rebuilding is spread over the changes that
+ * caused it. Not thread safe, use it from one thread.
+ */
+public final class SearchIndex {
+
+    // Separates the fields of a song in the text
+    private static final char FIELD_SEPARATOR = '\u0001';
+
+    // Score of a match in the title, artist, album and file name
+    private static final int[] FIELD_WEIGHTS = {8, 4, 2, 1};
+
+    // Score multipliers for matching at the start of a field, a word, or inside a word
+    private static final int FIELD_START = 3;
+    private static final int WORD_START = 2;
+    private static final int INSIDE_WORD = 1;
+
+    // Bits of a posting holding the score, below the song number
+    private static final int SCORE_BITS = 5;
+    private static final int SCORE_MASK = (1 << SCORE_BITS) - 1;
+
+    // Removed songs always allowed before rebuilding, so small libraries are not rebuilt on every change
+    private static final int MIN_REMOVED = 1024;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    // Song ID of each song number
+    private long[] ids = new long[INITIAL_CAPACITY];
+
+    // Where each song's text starts in the text array, with one extra entry for the end
+    private int[] textStarts = new int[INITIAL_CAPACITY + 1];
+
+    private boolean[] removed = new boolean[INITIAL_CAPACITY];
+    private char[] text = new char[INITIAL_CAPACITY * 64];
+    private int songCount;
+    private int removedCount;
+
+    // Song number of each song ID
+    private LongIntMap songNumbers = new LongIntMap();
+
+    // Posting list of each key, key by key
+    private LongIntMap postingIndexes = new LongIntMap();
+    private int[][] postings = new int[INITIAL_CAPACITY][];
+    private int[] postingSizes = new int[INITIAL_CAPACITY];
+    private int postingCount;
+
+    /**
+     * Gets the number of songs in the index.
+     *
+     * @return The number of songs.
+     */
+    public int size() {
+        return songCount - removedCount;
+    }
+
+    /**
+     * Adds a song, replacing the song with the same ID if it is indexed.
+     *
+     * @param song The song.
+     */
+    public void put(Song song) {
+        remove(song.getId());
+        int number = songCount++;
+        ensureSongCapacity(songCount);
+        ids[number] = song.getId();
+        removed[number] = false;
+
+        int start = textStarts[number];
+        int end = appendText(start, song.getTitle());
+        end = appendText(appendSeparator(end), song.getArtist());
+        end = appendText(appendSeparator(end), song.getAlbum());
+        end = appendText(appendSeparator(end), fileName(song.getPath()));
+        textStarts[number + 1] = end;
+
+        songNumbers.put(song.getId(), number);
+        indexText(number);
+    }
+
+    /**
+     * Removes a song if it is indexed.
+     *
+     * @param id The song ID.
+     */
+    public void remove(long id) {
+        int number = songNumbers.get(id);
+        if (number < 0 || removed[number])
+            return;
+        removed[number] = true;
+        removedCount++;
+        if (removedCount > MIN_REMOVED && removedCount > size())
+            rebuild();
+    }
+
+    /**
+     * Finds the songs matching a query, best matches first. Title matches rank
+     * above artist, album and file name matches, and matches at the start of a
+     * word above matches inside one. Equal matches keep the order songs were
+     * added in.
+     *
+     * @param query   The words to find, in any case and with or without accents.
+     * @param results Receives the song IDs, up to its length.
+     * @return The number of results.
+     */
+    public int search(String query, long[] results) {
+        String folded = fold(query);
+        if (folded.isEmpty() || results.length == 0)
+            return 0;
+        char[][] words = splitWords(folded);
+
+        // The posting list of each word's first key, and how far it has been walked
+        int[] lists = new int[words.length];
+        int[] cursors = new int[words.length];
+        boolean verify = false;
+        int shortest = 0;
+        for (int w = 0; w < words.length; w++) {
+            lists[w] = postingIndexes.get(key(words[w], 0, Math.min(3, words[w].length)));
+            if (lists[w] < 0)
+                return 0;
+            if (postingSizes[lists[w]] < postingSizes[lists[shortest]])
+                shortest = w;
+            verify |= words[w].length > 3;
+        }
+
+        int[] candidates = postings[lists[shortest]];
+        int candidateCount = postingSizes[lists[shortest]];
+        int[] bestScores = new int[results.length];
+        int resultCount = 0;
+        candidates:
+        for (int i = 0; i < candidateCount; i++) {
+            int number = candidates[i] >>> SCORE_BITS;
+            if (removed[number])
+                continue;
+
+            // The best score the song can have, exact unless a word is longer than its key
+            int score = 0;
+            for (int w = 0; w < words.length; w++) {
+                int[] list = postings[lists[w]];
+                int size = postingSizes[lists[w]];
+                int cursor = cursors[w];
+                while (cursor < size && list[cursor] >>> SCORE_BITS < number)
+                    cursor++;
+                cursors[w] = cursor;
+                if (cursor == size)
+                    break candidates;
+                if (list[cursor] >>> SCORE_BITS != number)
+                    continue candidates;
+                score += list[cursor] & SCORE_MASK;
+            }
+            // Ties keep the order songs were added in, so a tie cannot get in either
+            if (resultCount == results.length && score <= bestScores[resultCount - 1])
+                continue;
+            if (verify) {
+                score = score(number, words);
+                if (score == 0 || resultCount == results.length && score <= bestScores[resultCount - 1])
+                    continue;
+            }
+
+            // Insert after every result scoring at least as well
+            int position = Math.min(resultCount, results.length - 1);
+            while (position > 0 && bestScores[position - 1] < score) {
+                bestScores[position] = bestScores[position - 1];
+                results[position] = results[position - 1];
+                position--;
+            }
+            bestScores[position] = score;
+            results[position] = ids[number];
+            if (resultCount < results.length)
+                resultCount++;
+        }
+        return resultCount;
+    }
+
+    /**
+     * Scores a song against every word of a query.
+     *
+     * @return The total of each word's best match, or 0 if a word does not match.
+     */
+    private int score(int number, char[][] words) {
+        int start = textStarts[number];
+        int end = textStarts[number + 1];
+        int total = 0;
+        for (char[] word : words) {
+            int best = 0;
+            int field = 0;
+            int fieldStart = start;
+            for (int p = start; p + word.length <= end; p++) {
+                char c = text[p];
+                if (c == FIELD_SEPARATOR) {
+                    field++;
+                    fieldStart = p + 1;
+                    continue;
+                }
+                if (c != word[0] || !matchesAt(p, word))
+                    continue;
+                int kind = kind(p, fieldStart);
+                // Short words only match at the start of a word
+                if (kind == INSIDE_WORD && word.length < 3)
+                    continue;
+                best = Math.max(best, FIELD_WEIGHTS[field] * kind);
+            }
+            if (best == 0)
+                return 0;
+            total += best;
+        }
+        return total;
+    }
+
+    private int kind(int position, int fieldStart) {
+        if (position == fieldStart)
+            return FIELD_START;
+        return text[position - 1] == ' ' ? WORD_START : INSIDE_WORD;
+    }
+
+    private boolean matchesAt(int position, char[] word) {
+        for (int i = 1; i < word.length; i++) {
+            if (text[position + i] != word[i])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Adds a song to the posting lists of every key in its text.
+     */
+    private void indexText(int number) {
+        int end = textStarts[number + 1];
+        int wordStart = textStarts[number];
+        int field = 0;
+        int fieldStart = wordStart;
+        for (int p = wordStart; p <= end; p++) {
+            if (p < end && text[p] != ' ' && text[p] != FIELD_SEPARATOR)
+                continue;
+            int length = p - wordStart;
+            if (length > 0) {
+                int score = FIELD_WEIGHTS[field] * kind(wordStart, fieldStart);
+                addPosting(key(text, wordStart, 1), number, score);
+                if (length > 1)
+                    addPosting(key(text, wordStart, 2), number, score);
+                for (int i = wordStart; i + 3 <= p; i++)
+                    addPosting(key(text, i, 3), number, FIELD_WEIGHTS[field] * kind(i, fieldStart));
+            }
+            if (p < end && text[p] == FIELD_SEPARATOR) {
+                field++;
+                fieldStart = p + 1;
+            }
+            wordStart = p + 1;
+        }
+    }
+
+    private void addPosting(long key, int number, int score) {
+        int posting = postingIndexes.get(key);
+        if (posting < 0) {
+            posting = postingCount++;
+            if (posting == postings.length) {
+                postings = Arrays.copyOf(postings, posting * 2);
+                postingSizes = Arrays.copyOf(postingSizes, posting * 2);
+            }
+            postings[posting] = new int[4];
+            postingIndexes.put(key, posting);
+        }
+
+        // Songs are indexed one at a time, so a repeated key is always at the end
+        int size = postingSizes[posting];
+        int[] list = postings[posting];
+        if (size > 0 && list[size - 1] >>> SCORE_BITS == number) {
+            list[size - 1] = Math.max(list[size - 1], number << SCORE_BITS | score);
+            return;
+        }
+        if (size == list.length)
+            postings[posting] = list = Arrays.copyOf(list, size * 2);
+        list[size] = number << SCORE_BITS | score;
+        postingSizes[posting] = size + 1;
+    }
+
+    /**
+     * Packs one to three chars into a key, with the number of chars on top so
+     * a word's first letters never collide with a trigram.
+     */
+    private static long key(char[] chars, int start, int length) {
+        long key = length;
+        for (int i = 0; i < length; i++)
+            key = key << 16 | chars[start + i];
+        return key;
+    }
+
+    /**
+     * Renumbers the songs that are left and indexes them again from their text.
+     */
+    private void rebuild() {
+        char[] oldText = text;
+        int[] oldStarts = textStarts;
+        long[] oldIds = ids;
+        boolean[] oldRemoved = removed;
+        int oldCount = songCount;
+
+        int capacity = Math.max(INITIAL_CAPACITY, size());
+        ids = new long[capacity];
+        textStarts = new int[capacity + 1];
+        removed = new boolean[capacity];
+        text = new char[Math.max(INITIAL_CAPACITY, oldStarts[oldCount])];
+        songCount = 0;
+        removedCount = 0;
+        songNumbers = new LongIntMap();
+        postingIndexes = new LongIntMap();
+        postings = new int[INITIAL_CAPACITY][];
+        postingSizes = new int[INITIAL_CAPACITY];
+        postingCount = 0;
+
+        for (int old = 0; old < oldCount; old++) {
+            if (oldRemoved[old])
+                continue;
+            int number = songCount++;
+            int length = oldStarts[old + 1] - oldStarts[old];
+            int start = textStarts[number];
+            System.arraycopy(oldText, oldStarts[old], text, start, length);
+            textStarts[number + 1] = start + length;
+            ids[number] = oldIds[old];
+            songNumbers.put(oldIds[old], number);
+            indexText(number);
+        }
+    }
+
+    private void ensureSongCapacity(int count) {
+        if (count <= ids.length)
+            return;
+        int capacity = Math.max(count, ids.length * 2);
+        ids = Arrays.copyOf(ids, capacity);
+        textStarts = Arrays.copyOf(textStarts, capacity + 1);
+        removed = Arrays.copyOf(removed, capacity);
+    }
+
+    private int appendSeparator(int position) {
+        ensureTextCapacity(position + 1);
+        text[position] = FIELD_SEPARATOR;
+        return position + 1;
+    }
+
+    private int appendText(int position, String value) {
+        String folded = fold(value);
+        ensureTextCapacity(position + folded.length());
+        folded.getChars(0, folded.length(), text, position);
+        return position + folded.length();
+    }
+
+    private void ensureTextCapacity(int length) {
+        if (length > text.length)
+            text = Arrays.copyOf(text, Math.max(length, text.length * 2));
+    }
+
+    /**
+     * Gets the part of a path worth searching, the file name without its
+     * extension and the folder holding it, which is usually the album.
+     */
+    private static String fileName(String path) {
+        if (path == null)
+            return null;
+        int slash = path.lastIndexOf('/');
+        int folder = slash > 0 ? path.lastIndexOf('/', slash - 1) : -1;
+        int dot = path.lastIndexOf('.');
+        return path.substring(folder + 1, dot > slash ? dot : path.length());
+    }
+
+    /**
+     * Folds text for matching: accents are removed, letters are lower cased,
+     * and every run of other characters becomes a single space between words.
+     *
+     * @param value The text, or null.
+     * @return The folded text, empty for null.
+     */
+    static String fold(String value) {
+        if (value == null)
+            return "";
+        // Accents only need decomposing away if there are any
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) >= 0x80) {
+                value = Normalizer.normalize(value, Normalizer.Form.NFD);
+                break;
+            }
+        }
+
+        StringBuilder folded = new StringBuilder(value.length());
+        boolean space = true;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK)
+                continue;
+            if (Character.isLetterOrDigit(c)) {
+                folded.append(Character.toLowerCase(c));
+                space = false;
+            } else if (!space) {
+                folded.append(' ');
+                space = true;
+            }
+        }
+        if (space && folded.length() > 0)
+            folded.setLength(folded.length() - 1);
+        return folded.toString();
+    }
+
+    private static char[][] splitWords(String folded) {
+        String[] split = folded.split(" ");
+        char[][] words = new char[split.length][];
+        for (int i = 0; i < split.length; i++)
+            words[i] = split[i].toCharArray();
+        return words;
+    }
+
+    /**
+     * Open addressing hash map from long to int, without boxing.
+     */
+    private static final class LongIntMap {
+        private static final long EMPTY = Long.MIN_VALUE;
+
+        private long[] keys = newKeys(INITIAL_CAPACITY);
+        private int[] values = new int[INITIAL_CAPACITY];
+        private int size;
+
+        private static long[] newKeys(int capacity) {
+            long[] keys = new long[capacity];
+            Arrays.fill(keys, EMPTY);
+            return keys;
+        }
+
+        private static int slot(long key, int mask) {
+            long hash = key * 0x9E3779B97F4A7C15L;
+            return (int) (hash ^ hash >>> 32) & mask;
+        }
+
+        /**
+         * @return The value, or -1 if the key is absent.
+         */
+        int get(long key) {
+            int mask = keys.length - 1;
+            for (int i = slot(key, mask); ; i = i + 1 & mask) {
+                if (keys[i] == key)
+                    return values[i];
+                if (keys[i] == EMPTY)
+                    return -1;
+            }
+        }
+
+        void put(long key, int value) {
+            int mask = keys.length - 1;
+            int i = slot(key, mask);
+            while (keys[i] != EMPTY && keys[i] != key)
+                i = i + 1 & mask;
+            if (keys[i] == EMPTY) {
+                keys[i] = key;
+                // Keep at least half the slots empty so probes stay short
+                if (++size * 2 > keys.length) {
+                    values[i] = value;
+                    grow();
+                    return;
+                }
+            }
+            values[i] = value;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = newKeys(oldKeys.length * 2);
+            values = new int[oldKeys.length * 2];
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] == EMPTY)
+                    continue;
+                int j = slot(oldKeys[i], mask);
+                while (keys[j] != EMPTY)
+                    j = j + 1 & mask;
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+}
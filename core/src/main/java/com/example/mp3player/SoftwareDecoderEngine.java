@@ -0,0 +1,261 @@
+package com.example.mp3player;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+
+/**
+ * Headless PlayerEngine that decodes with Mp3PcmDecoder on its own thread and
+ * hands the PCM to a sink instead of an audio device.
+ * Lets MP3Player and the wrapper run on a plain JVM in tests: callbacks go
+ * through the given executor rather than the main thread, and playback either
+ * follows the wall clock at the current speed or runs as fast as the decoder can.
+ * In an instrumented test, install it with
+ * {@code MP3Player.setEngineFactory(() -> new SoftwareDecoderEngine(mainHandler::post, sink, true))}.
+ */
+public class SoftwareDecoderEngine implements PlayerEngine {
+
+    // What engine errors report, matching MediaPlayer's MEDIA_ERROR_UNKNOWN and MEDIA_ERROR_IO
+    public static final int ERROR_UNKNOWN = 1;
+    public static final int ERROR_IO = -1004;
+
+    /**
+     * Receives the decoded audio in place of an AudioTrack.
+     */
+    public interface PcmSink {
+        /**
+         * Called on the decode thread with the PCM of one frame.
+         *
+         * @param samples    Interleaved 16-bit samples, only valid during the call.
+         * @param offset     The offset of the first sample.
+         * @param length     The number of interleaved samples.
+         * @param channels   The channel count.
+         * @param sampleRate The sample rate in Hz.
+         */
+        void write(short[] samples, int offset, int length, int channels, int sampleRate);
+    }
+
+    private final Executor callbacks;
+    private final PcmSink sink;
+    private final boolean realTime;
+    private final Object lock = new Object();
+
+    private volatile Listener listener;
+    private File file;
+
+    // Guarded by lock
+    private boolean playing;
+    private boolean released;
+    private boolean completed;
+    private long seekRequest = -1;
+    private float speed = 1;
+    private float volume = 1;
+
+    // Written by the decode thread
+    private volatile long positionMs;
+    private volatile int durationMs;
+
+    /**
+     * Creates an engine.
+     *
+     * @param callbacks Runs listener callbacks, for example a direct executor in tests.
+     * @param sink      Receives the decoded audio, or null to discard it.
+     * @param realTime  Whether to pace decoding to the wall clock, rather than decode as fast as possible.
+     */
+    public SoftwareDecoderEngine(Executor callbacks, PcmSink sink, boolean realTime) {
+        this.callbacks = callbacks;
+        this.sink = sink;
+        this.realTime = realTime;
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void setDataSource(String path) throws IOException {
+        File file = new File(path);
+        if (!file.canRead())
+            throw new IOException("Cannot read " + path);
+        this.file = file;
+    }
+
+    @Override
+    public void prepareAsync() {
+        new Thread(this::run, "SoftwareDecoderEngine").start();
+    }
+
+    @Override
+    public void start() {
+        synchronized (lock) {
+            if (completed) {
+                // Play again from the beginning, like MediaPlayer
+                completed = false;
+                seekRequest = 0;
+            }
+            playing = true;
+            lock.notifyAll();
+        }
+    }
+
+    @Override
+    public void pause() {
+        synchronized (lock) {
+            playing = false;
+        }
+    }
+
+    /**
+     * Seeks to the exact sample, however exact is set.
+     */
+    @Override
+    public void seekTo(int position, boolean exact) {
+        synchronized (lock) {
+            completed = false;
+            seekRequest = position;
+            lock.notifyAll();
+        }
+    }
+
+    @Override
+    public void setSpeed(float speed) {
+        synchronized (lock) {
+            this.speed = speed;
+        }
+    }
+
+    @Override
+    public void setVolume(float volume) {
+        synchronized (lock) {
+            this.volume = volume;
+        }
+    }
+
+    @Override
+    public boolean setNextEngine(PlayerEngine next) {
+        return next == null;
+    }
+
+    @Override
+    public boolean isPlaying() {
+        synchronized (lock) {
+            return playing;
+        }
+    }
+
+    @Override
+    public int getCurrentPosition() {
+        return (int) positionMs;
+    }
+
+    @Override
+    public int getDuration() {
+        return durationMs;
+    }
+
+    @Override
+    public void release() {
+        synchronized (lock) {
+            released = true;
+            playing = false;
+            lock.notifyAll();
+        }
+        listener = null;
+    }
+
+    /**
+     * Opens the file, reports preparation, then decodes while playing until released.
+     */
+    private void run() {
+        try (Mp3PcmDecoder decoder = Mp3PcmDecoder.open(file)) {
+            int sampleRate = decoder.getSampleRate();
+            durationMs = (int) (decoder.getSampleCount() * 1000 / sampleRate);
+            post(listener -> listener.onPrepared(this));
+
+            // Wall clock time and position when pacing last restarted
+            long clockStart = 0;
+            long clockSample = -1;
+            float clockSpeed = 1;
+
+            while (true) {
+                long seek;
+                float speed;
+                float volume;
+                synchronized (lock) {
+                    while (!released && seekRequest < 0 && (!playing || completed)) {
+                        clockSample = -1;
+                        lock.wait();
+                    }
+                    if (released)
+                        return;
+                    seek = seekRequest;
+                    seekRequest = -1;
+                    speed = this.speed;
+                    volume = this.volume;
+                }
+
+                if (seek >= 0) {
+                    decoder.seekToTime(seek);
+                    positionMs = seek;
+                    clockSample = -1;
+                    post(listener -> listener.onSeekComplete(this));
+                    continue;
+                }
+
+                int length = decoder.decodeFrame();
+                if (length < 0) {
+                    synchronized (lock) {
+                        // A seek made as the file ended wins
+                        if (seekRequest >= 0)
+                            continue;
+                        playing = false;
+                        completed = true;
+                    }
+                    positionMs = durationMs;
+                    post(listener -> listener.onCompletion(this));
+                    continue;
+                }
+
+                short[] samples = decoder.getBuffer();
+                int offset = decoder.getOffset();
+                if (volume != 1) {
+                    for (int i = offset; i < offset + length; i++)
+                        samples[i] = (short) (samples[i] * volume);
+                }
+                if (sink != null)
+                    sink.write(samples, offset, length, decoder.getChannels(), sampleRate);
+                positionMs = decoder.getPosition() * 1000 / sampleRate;
+
+                if (realTime) {
+                    // Restart the clock after seeks, pauses and speed changes
+                    long now = System.nanoTime();
+                    if (clockSample < 0 || speed != clockSpeed) {
+                        clockStart = now;
+                        clockSample = decoder.getPosition();
+                        clockSpeed = speed;
+                    }
+                    long due = clockStart + (long) ((decoder.getPosition() - clockSample) * 1e9 / sampleRate / speed);
+                    if (due > now)
+                        Thread.sleep((due - now) / 1000000, (int) ((due - now) % 1000000));
+                }
+            }
+        } catch (IOException e) {
+            post(listener -> listener.onError(this, ERROR_UNKNOWN, ERROR_IO));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private interface Callback {
+        void run(Listener listener);
+    }
+
+    private void post(Callback callback) {
+        callbacks.execute(() -> {
+            Listener listener = this.listener;
+            if (listener != null)
+                callback.run(listener);
+        });
+    }
+}
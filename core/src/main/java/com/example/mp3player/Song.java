@@ -0,0 +1,57 @@
+package com.example.mp3player;
+
+/**
+ * A song in the library index.
+ */
+public class Song {
+
+    private final long id;
+    private final String path;
+    private final String title;
+    private final String artist;
+    private final String album;
+    private final int duration;
+
+    /**
+     * Creates a song.
+     *
+     * @param id       The MediaStore ID of the song.
+     * @param path     The file path of the song.
+     * @param title    The title of the song.
+     * @param artist   The artist of the song.
+     * @param album    The album of the song.
+     * @param duration The duration of the song in milliseconds.
+     */
+    public Song(long id, String path, String title, String artist, String album, int duration) {
+        this.id = id;
+        this.path = path;
+        this.title = title;
+        this.artist = artist;
+        this.album = album;
+        this.duration = duration;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getArtist() {
+        return artist;
+    }
+
+    public String getAlbum() {
+        return album;
+    }
+
+    public int getDuration() {
+        return duration;
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.mp3player;
+
+/**
+ * Formats playback times as minutes and seconds into a reusable buffer,
+ * so the progress text can be updated without allocating.
+ */
+public final class TimeFormatter {
+
+    /**
+     * Length of a buffer large enough for any "progress/duration" text.
+     */
+    public static final int PROGRESS_BUFFER_LENGTH = 32;
+
+    private TimeFormatter() {
+    }
+
+    /**
+     * Writes "mm:ss/mm:ss" for a progress and duration into a buffer.
+     *
+     * @param buffer   The buffer to write into, at least PROGRESS_BUFFER_LENGTH long.
+     * @param progress The progress in milliseconds.
+     * @param duration The duration in milliseconds.
+     * @return The number of characters written.
+     */
+    public static int formatProgress(char[] buffer, int progress, int duration) {
+        int length = formatTime(buffer, 0, progress);
+        buffer[length++] = '/';
+        return formatTime(buffer, length, duration);
+    }
+
+    /**
+     * Writes "mm:ss" for a time into a buffer. Minutes use more digits when needed.
+     *
+     * @param buffer       The buffer to write into.
+     * @param offset       The position to start writing at.
+     * @param milliseconds The time in milliseconds.
+     * @return The position after the last character written.
+     */
+    public static int formatTime(char[] buffer, int offset, int milliseconds) {
+        int seconds = Math.max(milliseconds, 0) / 1000;
+        int minutes = seconds / 60;
+        seconds = seconds % 60;
+
+        // Write at least two minute digits, more for long tracks
+        int digits = 2;
+        for (int m = minutes / 100; m > 0; m /= 10) {
+            digits++;
+        }
+        for (int i = offset + digits - 1; i >= offset; i--) {
+            buffer[i] = (char) ('0' + minutes % 10);
+            minutes /= 10;
+        }
+        offset += digits;
+
+        buffer[offset++] = ':';
+        buffer[offset++] = (char) ('0' + seconds / 10);
+        buffer[offset++] = (char) ('0' + seconds % 10);
+        return offset;
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.mp3player;
+
+/**
+ * Formats song titles for display, falling back to the file name when a song
+ * has no title tag.
+ */
+public final class TitleFormatter {
+
+    private TitleFormatter() {
+    }
+
+    /**
+     * Converts a file path to a title by extracting the file name.
+     *
+     * @param path The file path.
+     * @return The file name without its ".mp3" extension.
+     */
+    public static String fromPath(String path) {
+        return path.substring(path.lastIndexOf('/') + 1).replace(".mp3", "");
+    }
+
+    /**
+     * Gets the title of a song, falling back to its file name when it has none.
+     *
+     * @param song The song.
+     * @return The title.
+     */
+    public static String title(Song song) {
+        String title = song.getTitle();
+        if (title == null || title.isEmpty()) {
+            return fromPath(song.getPath());
+        }
+        return title;
+    }
+
+    /**
+     * Formats the text shown for a song in the list, preferring its tags over its file name.
+     *
+     * @param song The song to format.
+     * @return The title, followed by the artist when known.
+     */
+    public static String displayText(Song song) {
+        String title = title(song);
+        String artist = song.getArtist();
+        if (artist == null || artist.isEmpty() || "<unknown>".equals(artist)) {
+            return title;
+        }
+        return title + " - " + artist;
+    }
+}
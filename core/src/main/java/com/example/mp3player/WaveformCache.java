@@ -0,0 +1,102 @@
+package com.example.mp3player;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Disk cache of WaveformSummary instances, so each file is only decoded once.
+ * Entries are keyed by file path, size and modification time and hold the raw
+ * peak bytes, two bytes per bucket.
+ */
+public class WaveformCache {
+
+    private static final int MAGIC = 0x4D505746; // "MPWF"
+    private static final int FORMAT_VERSION = 1;
+
+    private final File directory;
+
+    /**
+     * Creates a cache that stores its entries in a directory.
+     *
+     * @param directory The directory for cache entries, created if missing.
+     */
+    public WaveformCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Reads the summary of a file.
+     *
+     * @param file The MP3 file.
+     * @return The summary, or null if there is no valid entry for the file as it is now.
+     */
+    public WaveformSummary get(File file) {
+        File entry = entryFile(file);
+        if (!entry.isFile()) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(entry)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION
+                    || !in.readUTF().equals(file.getAbsolutePath())
+                    || in.readLong() != file.length()
+                    || in.readLong() != file.lastModified()) {
+                return null;
+            }
+
+            int buckets = in.readInt();
+            byte[] minimums = new byte[buckets];
+            byte[] maximums = new byte[buckets];
+            in.readFully(minimums);
+            in.readFully(maximums);
+            return new WaveformSummary(minimums, maximums);
+        } catch (IOException | RuntimeException e) {
+            // A damaged entry is regenerated
+            return null;
+        }
+    }
+
+    /**
+     * Stores the summary of a file, writing to a temporary file and renaming it into place.
+     *
+     * @param file    The MP3 file.
+     * @param summary The summary of the file.
+     * @throws IOException If the entry cannot be written.
+     */
+    public void put(File file, WaveformSummary summary) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create cache directory " + directory);
+        }
+
+        File entry = entryFile(file);
+        // A unique name, so two writers of the same entry cannot interleave in one file
+        File temp = File.createTempFile(entry.getName(), ".tmp", directory);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(file.getAbsolutePath());
+            out.writeLong(file.length());
+            out.writeLong(file.lastModified());
+            out.writeInt(summary.getBucketCount());
+            out.write(summary.getMinimums());
+            out.write(summary.getMaximums());
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        }
+        if (!temp.renameTo(entry)) {
+            temp.delete();
+            throw new IOException("Cannot write cache entry " + entry);
+        }
+    }
+
+    private File entryFile(File file) {
+        return new File(directory, Integer.toHexString(file.getAbsolutePath().hashCode()) + ".wf");
+    }
+}
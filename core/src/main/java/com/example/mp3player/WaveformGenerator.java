@@ -0,0 +1,268 @@
+package com.example.mp3player;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Builds WaveformSummary instances by decoding tracks with Mp3PcmDecoder on a
+ * bounded ForkJoinPool.
+ * Each track is split into ranges of buckets that are decoded in parallel from
+ * sample-exact seeks, so one track uses every worker. A library is generated
+ * one track at a time, and waits between tracks while a get() is in progress,
+ * so a track wanted on screen is queued behind at most one library track.
+ * Results are stored in a WaveformCache so each file is decoded once.
+ */
+public class WaveformGenerator {
+
+    /**
+     * Buckets in a summary, enough for one column per pixel across a phone screen.
+     */
+    public static final int DEFAULT_BUCKETS = 1024;
+
+    // Fewest buckets decoded by one task, so seeking and opening stay a small share of the work
+    private static final int MIN_TASK_BUCKETS = 64;
+
+    private final ForkJoinPool pool;
+    private final WaveformCache cache;
+    private final int buckets;
+
+    // Number of get() calls generating a summary, guarded by onDemandLock.
+    // Library generation waits between tracks while it is non-zero.
+    private final Object onDemandLock = new Object();
+    private int onDemandLoads;
+
+    /**
+     * Creates a generator.
+     *
+     * @param parallelism The number of worker threads.
+     * @param cache       The cache for summaries, or null to always decode.
+     * @param buckets     The number of buckets in each summary.
+     */
+    public WaveformGenerator(int parallelism, WaveformCache cache, int buckets) {
+        this.cache = cache;
+        this.buckets = buckets;
+        AtomicInteger workers = new AtomicInteger();
+        this.pool = new ForkJoinPool(parallelism, forkJoinPool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+            thread.setName("WaveformGenerator-" + workers.incrementAndGet());
+            // Generation is background work and must not compete with playback
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }, null, false);
+    }
+
+    /**
+     * Gets the summary of a file from the cache, generating and storing it if missing.
+     * Blocks until the summary is ready.
+     *
+     * @param file The MP3 file.
+     * @return The summary.
+     * @throws IOException If the file cannot be decoded.
+     */
+    public WaveformSummary get(File file) throws IOException {
+        WaveformSummary summary = cache != null ? cache.get(file) : null;
+        if (summary != null) {
+            return summary;
+        }
+        synchronized (onDemandLock) {
+            onDemandLoads++;
+        }
+        try {
+            return pool.invoke(new GenerateTask(file));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            synchronized (onDemandLock) {
+                if (--onDemandLoads == 0) {
+                    onDemandLock.notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Generates the summaries of every file missing from the cache. Files that
+     * cannot be decoded are skipped. Blocks until all are done, or until the
+     * generator is shut down.
+     *
+     * @param files The MP3 files.
+     * @return The number of summaries generated.
+     */
+    public int generateAll(List<File> files) {
+        int generated = 0;
+        for (File file : files) {
+            if (!awaitOnDemandLoads() || pool.isShutdown()) {
+                break;
+            }
+            if (cache != null && cache.get(file) != null) {
+                continue;
+            }
+            try {
+                pool.invoke(new GenerateTask(file));
+                generated++;
+            } catch (RuntimeException e) {
+                // Unreadable files are left without a waveform
+            }
+        }
+        return generated;
+    }
+
+    /**
+     * Waits until no get() is generating a summary.
+     *
+     * @return False if the thread was interrupted while waiting.
+     */
+    private boolean awaitOnDemandLoads() {
+        synchronized (onDemandLock) {
+            while (onDemandLoads > 0) {
+                try {
+                    onDemandLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stops the worker threads once queued work has finished.
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Decodes one file on the calling worker with its buckets split across the pool.
+     */
+    private WaveformSummary generate(File file) throws IOException {
+        Mp3FrameIndex index = Mp3FrameIndex.build(file);
+        byte[] minimums = new byte[buckets];
+        byte[] maximums = new byte[buckets];
+        new RangeTask(file, index, minimums, maximums, 0, buckets).invoke();
+
+        WaveformSummary summary = new WaveformSummary(minimums, maximums);
+        if (cache != null) {
+            cache.put(file, summary);
+        }
+        return summary;
+    }
+
+    /**
+     * Gets the first sample of a bucket.
+     */
+    private static long bucketStart(int bucket, int buckets, long samples) {
+        return ((long) bucket * samples + buckets - 1) / buckets;
+    }
+
+    /**
+     * Generates the summary of one file inside the pool.
+     */
+    private class GenerateTask extends RecursiveTask<WaveformSummary> {
+        private static final long serialVersionUID = 1L;
+
+        private final File file;
+
+        GenerateTask(File file) {
+            this.file = file;
+        }
+
+        @Override
+        protected WaveformSummary compute() {
+            try {
+                return generate(file);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Fills in the peaks of a range of buckets of one file, splitting it while it is large.
+     */
+    private static class RangeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final File file;
+        private final Mp3FrameIndex index;
+        private final byte[] minimums;
+        private final byte[] maximums;
+        private final int from;
+        private final int to;
+
+        RangeTask(File file, Mp3FrameIndex index, byte[] minimums, byte[] maximums, int from, int to) {
+            this.file = file;
+            this.index = index;
+            this.minimums = minimums;
+            this.maximums = maximums;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > MIN_TASK_BUCKETS) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new RangeTask(file, index, minimums, maximums, from, middle),
+                        new RangeTask(file, index, minimums, maximums, middle, to));
+                return;
+            }
+            try {
+                decodeRange();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void decodeRange() throws IOException {
+            int buckets = minimums.length;
+            try (Mp3PcmDecoder decoder = new Mp3PcmDecoder(file, index)) {
+                long samples = decoder.getSampleCount();
+                int channels = decoder.getChannels();
+                long end = bucketStart(to, buckets, samples);
+                decoder.seekToSample(bucketStart(from, buckets, samples));
+
+                int bucket = from;
+                long boundary = bucketStart(bucket + 1, buckets, samples);
+                int min = 0;
+                int max = 0;
+                long position = decoder.getPosition();
+                int length;
+                while (position < end && (length = decoder.decodeFrame()) >= 0) {
+                    short[] pcm = decoder.getBuffer();
+                    int offset = decoder.getOffset();
+                    for (int i = 0; i < length && position < end; i += channels, position++) {
+                        while (position >= boundary) {
+                            minimums[bucket] = (byte) (min >> 8);
+                            maximums[bucket] = (byte) (max >> 8);
+                            bucket++;
+                            boundary = bucketStart(bucket + 1, buckets, samples);
+                            min = 0;
+                            max = 0;
+                        }
+                        for (int channel = 0; channel < channels; channel++) {
+                            int sample = pcm[offset + i + channel];
+                            if (sample < min) {
+                                min = sample;
+                            } else if (sample > max) {
+                                max = sample;
+                            }
+                        }
+                    }
+                }
+                if (bucket < to) {
+                    minimums[bucket] = (byte) (min >> 8);
+                    maximums[bucket] = (byte) (max >> 8);
+                }
+            }
+        }
+    }
+}
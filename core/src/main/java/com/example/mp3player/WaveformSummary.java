@@ -0,0 +1,58 @@
+package com.example.mp3player;
+
+/**
+ * Immutable min/max peak summary of a track, for drawing a waveform without decoding.
+ * The track is divided into equal buckets, each holding the lowest and highest
+ * sample across all channels, scaled to a signed byte.
+ */
+public final class WaveformSummary {
+
+    private final byte[] minimums;
+    private final byte[] maximums;
+
+    /**
+     * Creates a summary.
+     *
+     * @param minimums The lowest sample of each bucket, from -128 to 127.
+     * @param maximums The highest sample of each bucket, from -128 to 127.
+     */
+    public WaveformSummary(byte[] minimums, byte[] maximums) {
+        if (minimums.length != maximums.length) {
+            throw new IllegalArgumentException("Bucket counts differ");
+        }
+        this.minimums = minimums;
+        this.maximums = maximums;
+    }
+
+    public int getBucketCount() {
+        return minimums.length;
+    }
+
+    /**
+     * Gets the lowest sample in a bucket.
+     *
+     * @param bucket The bucket number.
+     * @return The sample, from -128 to 127.
+     */
+    public int getMin(int bucket) {
+        return minimums[bucket];
+    }
+
+    /**
+     * Gets the highest sample in a bucket.
+     *
+     * @param bucket The bucket number.
+     * @return The sample, from -128 to 127.
+     */
+    public int getMax(int bucket) {
+        return maximums[bucket];
+    }
+
+    byte[] getMinimums() {
+        return minimums;
+    }
+
+    byte[] getMaximums() {
+        return maximums;
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.mp3player;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests CommandQueue ordering and folding of redundant commands.
+ */
+public class CommandQueueTest {
+
+    private final ArrayDeque<Runnable> executor = new ArrayDeque<>();
+    private final CommandQueue queue = new CommandQueue(executor::add);
+    private final List<String> ran = new ArrayList<>();
+
+    private void runAll() {
+        Runnable command;
+        while ((command = executor.poll()) != null) {
+            command.run();
+        }
+    }
+
+    private Runnable record(String name) {
+        return () -> ran.add(name);
+    }
+
+    @Test
+    public void executeLatest_runsOnlyTheLatestOfAKind() {
+        queue.executeLatest("transport", record("play"));
+        queue.executeLatest("seek", record("seek 1"));
+        queue.executeLatest("transport", record("pause"));
+        queue.executeLatest("seek", record("seek 2"));
+        queue.executeLatest("transport", record("play again"));
+        runAll();
+
+        assertEquals(Arrays.asList("play again", "seek 2"), ran);
+    }
+
+    @Test
+    public void execute_isNeverFoldedPast() {
+        queue.executeLatest("transport", record("play"));
+        queue.execute(record("load"));
+        queue.executeLatest("transport", record("pause"));
+        queue.executeLatest("transport", record("play"));
+        runAll();
+
+        assertEquals(Arrays.asList("play", "load", "play"), ran);
+    }
+
+    @Test
+    public void executeLatest_queuesAgainOnceTheCommandHasStarted() {
+        queue.executeLatest("speed", record("1.5"));
+        executor.poll().run();
+        queue.executeLatest("speed", record("2.0"));
+        queue.executeLatest("speed", record("1.0"));
+        runAll();
+
+        assertEquals(Arrays.asList("1.5", "1.0"), ran);
+    }
+}
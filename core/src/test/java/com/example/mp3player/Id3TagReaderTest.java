@@ -0,0 +1,175 @@
+package com.example.mp3player;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests Id3TagReader against synthetic tags.
+ */
+public class Id3TagReaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void read_id3v23WithImageAndUtf16Title() throws IOException {
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        writeFrame(frames, 3, "APIC", new byte[200000]);
+        writeFrame(frames, 3, "TIT2", text(1, "Fl\u00fcgel"));
+        writeFrame(frames, 3, "TPE1", text(0, "Artist"));
+        writeFrame(frames, 3, "TALB", text(0, "Album"));
+        writeFrame(frames, 3, "TRCK", text(0, "3/12"));
+        writeFrame(frames, 3, "TLEN", text(0, "215000"));
+
+        Id3Tags tags = new Id3TagReader().read(write(tag(3, frames, 64)));
+
+        assertEquals("Fl\u00fcgel", tags.getTitle());
+        assertEquals("Artist", tags.getArtist());
+        assertEquals("Album", tags.getAlbum());
+        assertEquals(3, tags.getTrackNumber());
+        assertEquals(215000, tags.getDurationMs());
+    }
+
+    @Test
+    public void read_id3v24Utf8WithId3v1Fallback() throws IOException {
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        writeFrame(frames, 4, "TIT2", text(3, "T\u00eftle"));
+        writeFrame(frames, 4, "TXXX", new byte[300]);
+
+        ByteArrayOutputStream out = tag(4, frames, 0);
+        out.write(new byte[1000]);
+        writeId3v1(out, "V1 Title", "V1 Artist", "V1 Album", 7);
+
+        Id3Tags tags = new Id3TagReader().read(write(out));
+
+        assertEquals("T\u00eftle", tags.getTitle());
+        assertEquals("V1 Artist", tags.getArtist());
+        assertEquals("V1 Album", tags.getAlbum());
+        assertEquals(7, tags.getTrackNumber());
+    }
+
+    @Test
+    public void readPicture_prefersFrontCover() throws IOException {
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        writeFrame(frames, 3, "TIT2", text(0, "Title"));
+        writeFrame(frames, 3, "APIC", picture(4, new byte[]{1, 2, 3}));
+        writeFrame(frames, 3, "APIC", picture(3, new byte[]{4, 5, 6, 7}));
+
+        byte[] image = new Id3TagReader().readPicture(write(tag(3, frames, 16)));
+
+        assertArrayEquals(new byte[]{4, 5, 6, 7}, image);
+    }
+
+    @Test
+    public void read_untaggedFile() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(new byte[4096]);
+        File file = write(out);
+
+        assertSame(Id3Tags.EMPTY, new Id3TagReader().read(file));
+        assertNull(new Id3TagReader().readPicture(file));
+    }
+
+    private static byte[] text(int encoding, String value) {
+        byte[] bytes;
+        switch (encoding) {
+            case 1:
+                bytes = value.getBytes(StandardCharsets.UTF_16);
+                break;
+            case 3:
+                bytes = value.getBytes(StandardCharsets.UTF_8);
+                break;
+            default:
+                bytes = value.getBytes(StandardCharsets.ISO_8859_1);
+                break;
+        }
+        byte[] data = new byte[bytes.length + 1];
+        data[0] = (byte) encoding;
+        System.arraycopy(bytes, 0, data, 1, bytes.length);
+        return data;
+    }
+
+    private static byte[] picture(int type, byte[] image) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0);
+        out.write("image/jpeg\0".getBytes(StandardCharsets.ISO_8859_1), 0, 11);
+        out.write(type);
+        out.write("cover\0".getBytes(StandardCharsets.ISO_8859_1), 0, 6);
+        out.write(image, 0, image.length);
+        return out.toByteArray();
+    }
+
+    private static void writeFrame(ByteArrayOutputStream out, int version, String id, byte[] data) {
+        out.write(id.getBytes(StandardCharsets.ISO_8859_1), 0, 4);
+        if (version == 4) {
+            writeSyncsafe(out, data.length);
+        } else {
+            writeInt(out, data.length);
+        }
+        out.write(0);
+        out.write(0);
+        out.write(data, 0, data.length);
+    }
+
+    private static ByteArrayOutputStream tag(int version, ByteArrayOutputStream frames, int padding) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write('I');
+        out.write('D');
+        out.write('3');
+        out.write(version);
+        out.write(0);
+        out.write(0);
+        writeSyncsafe(out, frames.size() + padding);
+        out.write(frames.toByteArray(), 0, frames.size());
+        out.write(new byte[padding], 0, padding);
+        return out;
+    }
+
+    private static void writeId3v1(ByteArrayOutputStream out, String title, String artist, String album, int track) {
+        byte[] tag = new byte[128];
+        tag[0] = 'T';
+        tag[1] = 'A';
+        tag[2] = 'G';
+        copy(title, tag, 3);
+        copy(artist, tag, 33);
+        copy(album, tag, 63);
+        tag[126] = (byte) track;
+        out.write(tag, 0, tag.length);
+    }
+
+    private static void copy(String value, byte[] tag, int offset) {
+        byte[] bytes = value.getBytes(StandardCharsets.ISO_8859_1);
+        System.arraycopy(bytes, 0, tag, offset, bytes.length);
+    }
+
+    private static void writeSyncsafe(ByteArrayOutputStream out, int value) {
+        out.write((value >> 21) & 0x7F);
+        out.write((value >> 14) & 0x7F);
+        out.write((value >> 7) & 0x7F);
+        out.write(value & 0x7F);
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    private File write(ByteArrayOutputStream out) throws IOException {
+        File file = folder.newFile();
+        try (FileOutputStream stream = new FileOutputStream(file)) {
+            out.writeTo(stream);
+        }
+        return file;
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.mp3player;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests LatencyHistogram bucketing and percentiles.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketIndex_withinThreePercent() {
+        for (long value = 0; value < 10_000_000; value = value * 3 / 2 + 1) {
+            long highest = LatencyHistogram.highestValueInBucket(LatencyHistogram.bucketIndex(value));
+            assertTrue(value + " in bucket ending " + highest, highest >= value);
+            assertTrue(value + " in bucket ending " + highest, highest - value <= value / 32 + 1);
+        }
+        assertTrue(LatencyHistogram.highestValueInBucket(LatencyHistogram.bucketIndex(Long.MAX_VALUE)) >= 0);
+    }
+
+    @Test
+    public void percentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1_000_000, histogram.getMax());
+        assertEquals(500_500, histogram.getMean(), 0.001);
+        assertEquals(500_000, histogram.getValueAtPercentile(50), 500_000 / 32);
+        assertEquals(990_000, histogram.getValueAtPercentile(99), 990_000 / 32);
+        assertEquals(1_000_000, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void empty() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(0, histogram.getValueAtPercentile(99));
+        assertEquals(0, histogram.getMean(), 0);
+    }
+}
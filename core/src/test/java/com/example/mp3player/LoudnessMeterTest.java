@@ -0,0 +1,100 @@
+package com.example.mp3player;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests LoudnessMeter against the BS.1770 reference tone and its gating.
+ */
+public class LoudnessMeterTest {
+
+    private static final int SAMPLE_RATE = 48000;
+
+    /**
+     * Writes seconds of a 997Hz tone into both channels of interleaved stereo.
+     */
+    private static short[] tone(double seconds, double amplitude) {
+        int frames = (int) (seconds * SAMPLE_RATE);
+        short[] samples = new short[frames * 2];
+        for (int i = 0; i < frames; i++) {
+            short sample = (short) Math.round(amplitude * 32767 * Math.sin(2 * Math.PI * 997 * i / SAMPLE_RATE));
+            samples[i * 2] = sample;
+            samples[i * 2 + 1] = sample;
+        }
+        return samples;
+    }
+
+    private static LoudnessMeter meter() {
+        LoudnessMeter meter = new LoudnessMeter();
+        meter.configure(SAMPLE_RATE, 2);
+        return meter;
+    }
+
+    @Test
+    public void referenceTone_measuresItsLevel() {
+        // A 997Hz sine at -20dBFS in both channels measures -20 LUFS
+        LoudnessMeter meter = meter();
+        short[] samples = tone(5, 0.1);
+        meter.process(samples, 0, samples.length);
+
+        assertEquals(-20, meter.getIntegratedLoudness(), 0.1);
+        assertEquals(0.1, meter.getPeak(), 0.001);
+    }
+
+    @Test
+    public void silence_isGated() {
+        LoudnessMeter meter = meter();
+        short[] samples = tone(20, 0.1);
+        meter.process(samples, 0, samples.length);
+        short[] silence = new short[SAMPLE_RATE * 2 * 10];
+        meter.process(silence, 0, silence.length);
+
+        assertEquals(-20, meter.getIntegratedLoudness(), 0.1);
+
+        meter.reset();
+        meter.process(silence, 0, silence.length);
+        assertEquals(Double.NEGATIVE_INFINITY, meter.getIntegratedLoudness(), 0);
+    }
+
+    @Test
+    public void quietPassages_areGatedRelativeToTheLoudness() {
+        // A passage 30 LU down is below the relative gate, so it does not lower the result
+        LoudnessMeter meter = meter();
+        short[] loud = tone(20, 0.5);
+        short[] quiet = tone(10, 0.5 / 31.6);
+        meter.process(loud, 0, loud.length);
+        meter.process(quiet, 0, quiet.length);
+
+        assertEquals(-6.02, meter.getIntegratedLoudness(), 0.1);
+    }
+
+    @Test
+    public void add_measuresTracksTogether() {
+        short[] loud = tone(4, 0.2);
+        short[] quiet = tone(4, 0.1);
+        LoudnessMeter first = meter();
+        first.process(loud, 0, loud.length);
+        LoudnessMeter second = meter();
+        second.process(quiet, 0, quiet.length);
+
+        LoudnessMeter album = new LoudnessMeter();
+        album.add(first);
+        album.add(second);
+
+        LoudnessMeter together = meter();
+        together.process(loud, 0, loud.length);
+        together.process(quiet, 0, quiet.length);
+        // Only the blocks straddling the two tracks differ
+        assertEquals(together.getIntegratedLoudness(), album.getIntegratedLoudness(), 0.1);
+        assertEquals(0.2, album.getPeak(), 0.001);
+    }
+
+    @Test
+    public void gain_reachesReferenceWithoutClipping() {
+        assertEquals(-2, new Loudness(-16, 0.5).getGainDb(), 1e-9);
+        // +8dB would take a 0.5 peak past full scale, so the gain stops at +6.02dB
+        assertEquals(6.02, new Loudness(-26, 0.5).getGainDb(), 0.01);
+        assertEquals(0, new Loudness(Double.NEGATIVE_INFINITY, 0).getGainDb(), 0);
+    }
+}
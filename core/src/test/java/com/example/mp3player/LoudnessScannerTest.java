@@ -0,0 +1,97 @@
+package com.example.mp3player;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests LoudnessScanner on synthetic files.
+ */
+public class LoudnessScannerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final BlockingQueue<Object[]> measured = new ArrayBlockingQueue<>(10);
+    private LoudnessScanner scanner;
+
+    @After
+    public void tearDown() {
+        if (scanner != null) {
+            scanner.shutdown();
+        }
+    }
+
+    private void start(int threads) {
+        scanner = new LoudnessScanner(threads, (album, files, tracks, loudness) ->
+                measured.add(new Object[]{album, files, tracks, loudness}));
+    }
+
+    private Loudness measureAlone(File file) throws IOException {
+        LoudnessMeter meter = new LoudnessMeter();
+        try (Mp3PcmDecoder decoder = Mp3PcmDecoder.open(file)) {
+            meter.configure(decoder.getSampleRate(), decoder.getChannels());
+            int length;
+            while ((length = decoder.decodeFrame()) >= 0) {
+                meter.process(decoder.getBuffer(), decoder.getOffset(), length);
+            }
+        }
+        return new Loudness(meter.getIntegratedLoudness(), meter.getPeak());
+    }
+
+    @Test
+    public void album_measuresTracksAndSkipsBrokenFiles() throws Exception {
+        File first = folder.newFile();
+        SyntheticMp3.write(first, 60, 1, true, 576, 1000);
+        File second = folder.newFile();
+        SyntheticMp3.write(second, 40, 2, false, 0, 0);
+        File broken = folder.newFile();
+        try (FileOutputStream out = new FileOutputStream(broken)) {
+            out.write(new byte[1000]);
+        }
+        start(2);
+
+        List<File> files = Arrays.asList(first, broken, second);
+        scanner.submit("album", files);
+        Object[] result = measured.poll(30, TimeUnit.SECONDS);
+
+        assertNotNull(result);
+        assertEquals("album", result[0]);
+        assertSame(files, result[1]);
+        Loudness[] tracks = (Loudness[]) result[2];
+        Loudness album = (Loudness) result[3];
+        assertEquals(measureAlone(first).getIntegrated(), tracks[0].getIntegrated(), 1e-9);
+        assertNull(tracks[1]);
+        assertEquals(measureAlone(second).getIntegrated(), tracks[2].getIntegrated(), 1e-9);
+        assertTrue(album.getIntegrated() > Double.NEGATIVE_INFINITY);
+        assertEquals(Math.max(tracks[0].getPeak(), tracks[2].getPeak()), album.getPeak(), 0);
+        assertEquals(0, scanner.getPendingCount());
+    }
+
+    @Test
+    public void pause_holdsWorkersUntilResumed() throws Exception {
+        File file = folder.newFile();
+        SyntheticMp3.write(file, 20, 3, false, 0, 0);
+        start(1);
+
+        scanner.pause();
+        scanner.submit("single", Arrays.asList(file));
+        assertNull(measured.poll(300, TimeUnit.MILLISECONDS));
+        assertEquals(1, scanner.getPendingCount());
+
+        scanner.resume();
+        assertNotNull(measured.poll(30, TimeUnit.SECONDS));
+    }
+}
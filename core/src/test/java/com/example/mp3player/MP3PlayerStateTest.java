@@ -0,0 +1,41 @@
+package com.example.mp3player;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the MP3PlayerState transition table.
+ */
+public class MP3PlayerStateTest {
+
+    @Test
+    public void canMoveTo_followsTheLoadPlayPauseCycle() {
+        assertTrue(MP3PlayerState.STOPPED.canMoveTo(MP3PlayerState.PREPARING));
+        assertTrue(MP3PlayerState.PREPARING.canMoveTo(MP3PlayerState.PREPARED));
+        assertTrue(MP3PlayerState.PREPARED.canMoveTo(MP3PlayerState.PLAYING));
+        assertTrue(MP3PlayerState.PLAYING.canMoveTo(MP3PlayerState.PAUSED));
+        assertTrue(MP3PlayerState.PAUSED.canMoveTo(MP3PlayerState.PLAYING));
+    }
+
+    @Test
+    public void canMoveTo_allowsStopAndErrorFromEveryLoadedState() {
+        MP3PlayerState[] loaded = {MP3PlayerState.PREPARING, MP3PlayerState.PREPARED,
+                MP3PlayerState.PLAYING, MP3PlayerState.PAUSED};
+        for (MP3PlayerState state : loaded) {
+            assertTrue(state + " -> STOPPED", state.canMoveTo(MP3PlayerState.STOPPED));
+            assertTrue(state + " -> ERROR", state.canMoveTo(MP3PlayerState.ERROR));
+        }
+    }
+
+    @Test
+    public void canMoveTo_rejectsSkippedAndRepeatedStates() {
+        assertFalse(MP3PlayerState.STOPPED.canMoveTo(MP3PlayerState.PLAYING));
+        assertFalse(MP3PlayerState.PREPARING.canMoveTo(MP3PlayerState.PLAYING));
+        assertFalse(MP3PlayerState.PREPARED.canMoveTo(MP3PlayerState.PAUSED));
+        assertFalse(MP3PlayerState.ERROR.canMoveTo(MP3PlayerState.PREPARING));
+        for (MP3PlayerState state : MP3PlayerState.values()) {
+            assertFalse(state + " -> " + state, state.canMoveTo(state));
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.example.mp3player;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests Mp3FrameIndex against synthetic MP3 files built from frame headers.
+ */
+public class Mp3FrameIndexTest {
+
+    // MPEG 1 Layer III, no CRC, 44.1kHz, stereo
+    private static final int HEADER = 0xFFFB0000;
+
+    // Bitrate indexes for 128 and 320 kbps
+    private static final int KBPS_128 = 9;
+    private static final int KBPS_320 = 14;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void build_cbrFileWithTags() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeId3v2(out, 100);
+        int firstOffset = out.size();
+        for (int i = 0; i < 50; i++) {
+            writeFrame(out, KBPS_128, i % 3 == 0);
+        }
+        writeId3v1(out);
+        File file = write(out);
+
+        Mp3FrameIndex index = Mp3FrameIndex.build(file);
+
+        assertTrue(index.isExact());
+        assertEquals(50, index.getFrameCount());
+        assertEquals(44100, index.getSampleRate());
+        assertEquals(1152, index.getSamplesPerFrame());
+        assertEquals(firstOffset, index.getFrameOffset(0));
+        assertEquals(file.length() - 128, index.getAudioEnd());
+        assertEquals(50L * 1152 * 1000 / 44100, index.getDurationMs());
+    }
+
+    @Test
+    public void build_vbrFileWithXingAndLameHeaders() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeXingFrame(out, 40, 576, 1000);
+        int[] offsets = new int[40];
+        for (int i = 0; i < 40; i++) {
+            offsets[i] = out.size();
+            writeFrame(out, i % 2 == 0 ? KBPS_128 : KBPS_320, false);
+        }
+        File file = write(out);
+
+        Mp3FrameIndex index = Mp3FrameIndex.build(file);
+
+        assertEquals(40, index.getFrameCount());
+        assertEquals(576, index.getEncoderDelay());
+        assertEquals(1000, index.getEncoderPadding());
+        assertEquals(40L * 1152 - 576 - 1000, index.getSampleCount());
+        for (int i = 0; i < 40; i++) {
+            assertEquals(offsets[i], index.getFrameOffset(i));
+        }
+
+        // A time inside a frame seeks to the start of that frame
+        long time = index.getTimeForFrame(17) + 5;
+        assertEquals(17, index.getFrameForTime(time));
+        assertEquals(offsets[17], index.getSeekOffset(time));
+    }
+
+    @Test
+    public void probe_usesXingFrameCount() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeXingFrame(out, 40, 576, 1000);
+        for (int i = 0; i < 40; i++) {
+            writeFrame(out, KBPS_320, false);
+        }
+        File file = write(out);
+
+        Mp3FrameIndex probed = Mp3FrameIndex.probe(file);
+
+        assertFalse(probed.isExact());
+        assertEquals(40, probed.getFrameCount());
+        assertEquals(Mp3FrameIndex.build(file).getDurationMs(), probed.getDurationMs());
+    }
+
+    @Test
+    public void build_resyncsAfterJunk() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < 5; i++) {
+            writeFrame(out, KBPS_128, false);
+        }
+        out.write(new byte[]{1, 2, 3, (byte) 0xFF, 5, 6, 7});
+        for (int i = 0; i < 5; i++) {
+            writeFrame(out, KBPS_128, false);
+        }
+
+        assertEquals(10, Mp3FrameIndex.build(write(out)).getFrameCount());
+    }
+
+    @Test(expected = IOException.class)
+    public void build_rejectsFileWithoutFrames() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(new byte[4096]);
+        Mp3FrameIndex.build(write(out));
+    }
+
+    @Test
+    public void cache_storesAndReusesIndex() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeXingFrame(out, 20, 576, 300);
+        for (int i = 0; i < 20; i++) {
+            writeFrame(out, i % 2 == 0 ? KBPS_128 : KBPS_320, i % 5 == 0);
+        }
+        File file = write(out);
+        Mp3FrameIndexCache cache = new Mp3FrameIndexCache(folder.newFolder("cache"));
+
+        Mp3FrameIndex built = cache.get(file);
+        Mp3FrameIndex cached = cache.get(file);
+
+        assertNotSame(built, cached);
+        assertEquals(built.getFrameCount(), cached.getFrameCount());
+        assertEquals(built.getDurationMs(), cached.getDurationMs());
+        assertArrayEquals(built.getFrameOffsets(), cached.getFrameOffsets());
+    }
+
+    private File write(ByteArrayOutputStream out) throws IOException {
+        File file = folder.newFile();
+        try (FileOutputStream stream = new FileOutputStream(file)) {
+            out.writeTo(stream);
+        }
+        return file;
+    }
+
+    private static void writeFrame(ByteArrayOutputStream out, int bitrateIndex, boolean padding) {
+        int header = HEADER | (bitrateIndex << 12) | (padding ? 1 << 9 : 0);
+        byte[] frame = new byte[Mp3FrameIndex.frameLength(header)];
+        putInt(frame, 0, header);
+        out.write(frame, 0, frame.length);
+    }
+
+    private static void writeXingFrame(ByteArrayOutputStream out, int frames, int delay, int padding) {
+        int header = HEADER | (KBPS_128 << 12);
+        byte[] frame = new byte[Mp3FrameIndex.frameLength(header)];
+        putInt(frame, 0, header);
+
+        // Xing tag after 32 bytes of stereo side information, with frames, bytes, TOC and quality
+        int xing = 4 + 32;
+        putInt(frame, xing, 0x58696E67);
+        putInt(frame, xing + 4, 0x0F);
+        putInt(frame, xing + 8, frames);
+        putInt(frame, xing + 12, frames * 1044);
+        for (int i = 0; i < 100; i++) {
+            frame[xing + 16 + i] = (byte) (i * 256 / 100);
+        }
+
+        int lame = xing + 120;
+        putInt(frame, lame, 0x4C414D45);
+        frame[lame + 21] = (byte) (delay >>> 4);
+        frame[lame + 22] = (byte) (((delay & 0x0F) << 4) | (padding >>> 8));
+        frame[lame + 23] = (byte) padding;
+        out.write(frame, 0, frame.length);
+    }
+
+    private static void writeId3v2(ByteArrayOutputStream out, int size) {
+        byte[] tag = new byte[10 + size];
+        tag[0] = 'I';
+        tag[1] = 'D';
+        tag[2] = '3';
+        tag[3] = 3;
+        tag[9] = (byte) size;
+        out.write(tag, 0, tag.length);
+    }
+
+    private static void writeId3v1(ByteArrayOutputStream out) {
+        byte[] tag = new byte[128];
+        tag[0] = 'T';
+        tag[1] = 'A';
+        tag[2] = 'G';
+        out.write(tag, 0, tag.length);
+    }
+
+    private static void putInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+}
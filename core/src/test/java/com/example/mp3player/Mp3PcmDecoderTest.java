@@ -0,0 +1,212 @@
+package com.example.mp3player;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests Mp3PcmDecoder against synthetic MP3 files of non-silent noise, and against
+ * a real encoder's output decoded by an independent decoder.
+ * <p>
+ * lame_sweep.mp3 is 13230 samples of a stereo sweep and tone, encoded at 128 kbps
+ * by LAME 3.98, whose tag gives 13 frames, a delay of 576 and padding of 1170.
+ * lame_sweep.pcm is that file decoded by LAME's own mpglib decoder with the delay
+ * and padding removed, as 16-bit little-endian interleaved stereo.
+ */
+public class Mp3PcmDecoderTest {
+
+    private static final int FRAMES = 40;
+
+    // What the LAME tag of lame_sweep.mp3 says, and the length of the encoded audio
+    private static final int LAME_FRAMES = 13;
+    private static final int LAME_DELAY = 576;
+    private static final int LAME_PADDING = 1170;
+    private static final int LAME_SAMPLES = 13230;
+
+    // Largest difference allowed from the reference decoder, whose rounding differs.
+    // One sample of misalignment gives differences in the thousands.
+    private static final int TOLERANCE = 64;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void decode_returnsEverySample() throws IOException {
+        File file = write(false, 0, 0);
+
+        try (Mp3PcmDecoder decoder = Mp3PcmDecoder.open(file)) {
+            assertEquals(44100, decoder.getSampleRate());
+            assertEquals(2, decoder.getChannels());
+            assertEquals(FRAMES * 1152, decoder.getSampleCount());
+
+            short[] pcm = decodeAll(decoder);
+            assertEquals(FRAMES * 1152 * 2, pcm.length);
+            assertTrue(countNonZero(pcm) > pcm.length / 2);
+            assertEquals(-1, decoder.decodeFrame());
+        }
+    }
+
+    @Test
+    public void decode_trimsDelayAndPaddingFromLameHeader() throws IOException {
+        short[] raw;
+        try (Mp3PcmDecoder decoder = Mp3PcmDecoder.open(write(false, 0, 0))) {
+            raw = decodeAll(decoder);
+        }
+
+        try (Mp3PcmDecoder decoder = Mp3PcmDecoder.open(write(true, 576, 1000))) {
+            assertEquals(FRAMES * 1152 - 576 - 1000, decoder.getSampleCount());
+
+            short[] trimmed = decodeAll(decoder);
+            assertEquals(decoder.getSampleCount() * 2, trimmed.length);
+            int skip = (576 + Mp3PcmDecoder.DECODER_DELAY) * 2;
+            for (int i = 0; i < trimmed.length; i++) {
+                assertEquals(raw[skip + i], trimmed[i]);
+            }
+        }
+    }
+
+    @Test
+    public void seek_matchesContinuousDecode() throws IOException {
+        try (Mp3PcmDecoder decoder = Mp3PcmDecoder.open(write(true, 576, 1000))) {
+            short[] reference = decodeAll(decoder);
+
+            for (long sample : new long[]{0, 1, 1151, 1152, 20000, decoder.getSampleCount() - 10}) {
+                decoder.seekToSample(sample);
+                assertEquals(sample, decoder.getPosition());
+
+                short[] tail = decodeAll(decoder);
+                assertEquals(reference.length - sample * 2, tail.length);
+                for (int i = 0; i < tail.length; i++) {
+                    assertEquals("sample " + sample, reference[(int) sample * 2 + i], tail[i]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void decode_matchesReferenceDecoderWithLameTrimming() throws IOException {
+        short[] reference = readReference();
+
+        try (Mp3PcmDecoder decoder = Mp3PcmDecoder.open(copyResource("lame_sweep.mp3"))) {
+            assertEquals(44100, decoder.getSampleRate());
+            assertEquals(2, decoder.getChannels());
+            assertEquals(LAME_FRAMES * 1152 - LAME_DELAY - LAME_PADDING, decoder.getSampleCount());
+            assertEquals(LAME_SAMPLES, decoder.getSampleCount());
+
+            short[] pcm = decodeAll(decoder);
+            assertEquals(reference.length, pcm.length);
+            assertClose(reference, 0, pcm);
+        }
+    }
+
+    @Test
+    public void seek_matchesReferenceDecoder() throws IOException {
+        short[] reference = readReference();
+
+        try (Mp3PcmDecoder decoder = Mp3PcmDecoder.open(copyResource("lame_sweep.mp3"))) {
+            for (long sample : new long[]{0, 1, 575, 1152, 5000, 11519, LAME_SAMPLES - 10}) {
+                decoder.seekToSample(sample);
+                assertEquals(sample, decoder.getPosition());
+
+                short[] tail = decodeAll(decoder);
+                assertEquals(reference.length - sample * 2, tail.length);
+                assertClose(reference, (int) sample * 2, tail);
+            }
+        }
+    }
+
+    @Test
+    public void seek_pastEndReturnsNothing() throws IOException {
+        try (Mp3PcmDecoder decoder = Mp3PcmDecoder.open(write(false, 0, 0))) {
+            decoder.seekToTime(60000);
+            assertEquals(-1, decoder.decodeFrame());
+        }
+    }
+
+    private static short[] decodeAll(Mp3PcmDecoder decoder) throws IOException {
+        short[] pcm = new short[(int) (decoder.getSampleCount() - decoder.getPosition()) * decoder.getChannels()];
+        int length;
+        int position = 0;
+        while ((length = decoder.decodeFrame()) >= 0) {
+            System.arraycopy(decoder.getBuffer(), decoder.getOffset(), pcm, position, length);
+            position += length;
+        }
+        assertEquals(pcm.length, position);
+        return pcm;
+    }
+
+    private static void assertClose(short[] reference, int offset, short[] pcm) {
+        for (int i = 0; i < pcm.length; i++) {
+            int difference = Math.abs(reference[offset + i] - pcm[i]);
+            if (difference > TOLERANCE) {
+                fail("sample " + (offset + i) / 2 + " differs from the reference by " + difference);
+            }
+        }
+    }
+
+    /**
+     * Reads lame_sweep.pcm.
+     */
+    private static short[] readReference() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (InputStream in = Mp3PcmDecoderTest.class.getResourceAsStream("lame_sweep.pcm")) {
+            assertNotNull("lame_sweep.pcm", in);
+            byte[] buffer = new byte[8192];
+            int length;
+            while ((length = in.read(buffer)) >= 0) {
+                bytes.write(buffer, 0, length);
+            }
+        }
+        byte[] data = bytes.toByteArray();
+        short[] pcm = new short[data.length / 2];
+        for (int i = 0; i < pcm.length; i++) {
+            pcm[i] = (short) ((data[2 * i] & 0xFF) | (data[2 * i + 1] << 8));
+        }
+        return pcm;
+    }
+
+    /**
+     * Copies a test resource to a file, as the decoder reads files.
+     */
+    private File copyResource(String name) throws IOException {
+        File file = folder.newFile(name);
+        try (InputStream in = Mp3PcmDecoderTest.class.getResourceAsStream(name);
+             OutputStream out = new FileOutputStream(file)) {
+            assertNotNull(name, in);
+            byte[] buffer = new byte[8192];
+            int length;
+            while ((length = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, length);
+            }
+        }
+        return file;
+    }
+
+    private static int countNonZero(short[] pcm) {
+        int count = 0;
+        for (short sample : pcm) {
+            if (sample != 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Writes FRAMES audio frames from a fixed seed, after an optional Xing frame with a LAME tag.
+     */
+    private File write(boolean lame, int delay, int padding) throws IOException {
+        File file = folder.newFile();
+        SyntheticMp3.write(file, FRAMES, 42, lame, delay, padding);
+        return file;
+    }
+}
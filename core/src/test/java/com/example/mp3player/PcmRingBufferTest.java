@@ -0,0 +1,97 @@
+package com.example.mp3player;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests PcmRingBuffer wrapping, clearing and concurrent use.
+ */
+public class PcmRingBufferTest {
+
+    @Test
+    public void capacity_roundedToPowerOfTwo() {
+        assertEquals(1024, new PcmRingBuffer(1000).capacity());
+        assertEquals(1024, new PcmRingBuffer(1024).capacity());
+    }
+
+    @Test
+    public void write_stopsWhenFullAndWraps() {
+        PcmRingBuffer ring = new PcmRingBuffer(8);
+        byte[] data = {1, 2, 3, 4, 5, 6};
+
+        assertEquals(6, ring.write(data, 0, 6));
+        assertEquals(2, ring.write(data, 0, 6));
+        assertEquals(0, ring.availableToWrite());
+
+        byte[] out = new byte[5];
+        assertEquals(5, ring.read(out, 0, 5));
+        assertArrayEquals(new byte[]{1, 2, 3, 4, 5}, out);
+
+        // The next write wraps around the end of the backing array
+        assertEquals(4, ring.write(data, 0, 4));
+        out = new byte[7];
+        assertEquals(7, ring.read(out, 0, 7));
+        assertArrayEquals(new byte[]{6, 1, 2, 1, 2, 3, 4}, out);
+        assertEquals(0, ring.availableToRead());
+    }
+
+    @Test
+    public void readInPlace() {
+        PcmRingBuffer ring = new PcmRingBuffer(8);
+        ring.write(new byte[]{1, 2, 3, 4, 5, 6}, 0, 6);
+        ring.advanceRead(6);
+        ring.write(new byte[]{7, 8, 9, 10}, 0, 4);
+
+        assertEquals(2, ring.readableChunk());
+        assertEquals(7, ring.array()[ring.readOffset()]);
+        ring.advanceRead(2);
+        assertEquals(2, ring.readableChunk());
+        assertEquals(9, ring.array()[ring.readOffset()]);
+    }
+
+    @Test
+    public void clear() {
+        PcmRingBuffer ring = new PcmRingBuffer(16);
+        ring.write(new byte[10], 0, 10);
+
+        ring.clear();
+
+        assertEquals(0, ring.availableToRead());
+        assertEquals(16, ring.availableToWrite());
+    }
+
+    @Test
+    public void concurrentProducerAndConsumer() throws InterruptedException {
+        PcmRingBuffer ring = new PcmRingBuffer(256);
+        int total = 1 << 20;
+
+        Thread producer = new Thread(() -> {
+            ByteBuffer chunk = ByteBuffer.allocate(100);
+            int next = 0;
+            while (next < total) {
+                chunk.clear();
+                while (chunk.hasRemaining() && next + chunk.position() < total) {
+                    chunk.put((byte) (next + chunk.position()));
+                }
+                chunk.flip();
+                while (chunk.hasRemaining()) {
+                    next += ring.write(chunk);
+                }
+            }
+        });
+        producer.start();
+
+        byte[] out = new byte[77];
+        int expected = 0;
+        while (expected < total) {
+            int read = ring.read(out, 0, out.length);
+            for (int i = 0; i < read; i++) {
+                assertEquals((byte) expected++, out[i]);
+            }
+        }
+        producer.join();
+    }
+}
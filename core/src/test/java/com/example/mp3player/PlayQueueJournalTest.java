@@ -0,0 +1,104 @@
+package com.example.mp3player;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests PlayQueueJournal restoring, compacting and surviving torn writes.
+ */
+public class PlayQueueJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private PlayQueueJournal journal(File file) {
+        return new PlayQueueJournal(file, Runnable::run);
+    }
+
+    private PlayQueue attached(PlayQueueJournal journal) {
+        PlayQueue queue = journal.restore();
+        journal.attach(queue);
+        return queue;
+    }
+
+    @Test
+    public void restore_replaysEveryChange() {
+        File file = new File(folder.getRoot(), "queue.log");
+        PlayQueueJournal journal = journal(file);
+        PlayQueue queue = attached(journal);
+        queue.replace(new long[]{1, 2, 3, 4, 5, 6}, 2);
+        queue.add(7);
+        queue.remove(0);
+        queue.shuffle(11);
+        queue.move(4, PlayQueue.NONE);
+        queue.setCurrent(5);
+        journal.close();
+
+        PlayQueue restored = journal(file).restore();
+        assertArrayEquals(queue.toArray(), restored.toArray());
+        assertEquals(5, restored.getCurrent());
+        restored.unshuffle();
+        queue.unshuffle();
+        assertArrayEquals(queue.toArray(), restored.toArray());
+    }
+
+    @Test
+    public void compaction_keepsTheLogSmall() {
+        File file = new File(folder.getRoot(), "queue.log");
+        PlayQueueJournal journal = journal(file);
+        PlayQueue queue = attached(journal);
+        for (int i = 0; i < 10_000; i++) {
+            queue.add(i);
+        }
+        for (int i = 0; i < 10_000; i++) {
+            queue.move(i, PlayQueue.NONE);
+            queue.setCurrent(i);
+        }
+        journal.close();
+
+        // A snapshot is 12 bytes an entry and records are at most 9 bytes, one per entry at most
+        assertTrue(file.length() < 10_000 * 21 + 100);
+        PlayQueue restored = journal(file).restore();
+        assertArrayEquals(queue.toArray(), restored.toArray());
+        assertEquals(queue.getCurrent(), restored.getCurrent());
+    }
+
+    @Test
+    public void tornRecord_isDroppedAndTheLogRewritten() throws IOException {
+        File file = new File(folder.getRoot(), "queue.log");
+        PlayQueueJournal journal = journal(file);
+        PlayQueue queue = attached(journal);
+        queue.replace(new long[]{1, 2, 3}, 0);
+        queue.add(4);
+        queue.add(5);
+        journal.close();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+
+        PlayQueueJournal reopened = journal(file);
+        PlayQueue restored = attached(reopened);
+        assertArrayEquals(new long[]{1, 2, 3, 4}, restored.toArray());
+        restored.add(6);
+        reopened.close();
+
+        assertArrayEquals(new long[]{1, 2, 3, 4, 6}, journal(file).restore().toArray());
+    }
+
+    @Test
+    public void damagedLog_restoresEmpty() throws IOException {
+        File file = new File(folder.getRoot(), "queue.log");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9});
+        }
+        assertEquals(0, journal(file).restore().size());
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.mp3player;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests PlayQueue ordering, shuffling and serialisation.
+ */
+public class PlayQueueTest {
+
+    private static PlayQueue queueOf(long... ids) {
+        PlayQueue queue = new PlayQueue();
+        for (long id : ids) {
+            queue.add(id);
+        }
+        return queue;
+    }
+
+    @Test
+    public void addRemoveAndMove_keepPlayOrder() {
+        PlayQueue queue = queueOf(10, 11, 12, 13);
+
+        queue.remove(1);
+        assertArrayEquals(new long[]{10, 12, 13}, queue.toArray());
+        queue.move(3, PlayQueue.NONE);
+        assertArrayEquals(new long[]{13, 10, 12}, queue.toArray());
+        queue.move(3, 2);
+        assertArrayEquals(new long[]{10, 12, 13}, queue.toArray());
+
+        // Removed slots are reused
+        assertEquals(1, queue.add(14));
+        assertArrayEquals(new long[]{10, 12, 13, 14}, queue.toArray());
+        assertEquals(4, queue.size());
+    }
+
+    @Test
+    public void shuffle_startsWithCurrentAndUnshufflesToOriginalOrder() {
+        long[] ids = new long[10_000];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = 1000 + i;
+        }
+        PlayQueue queue = new PlayQueue();
+        queue.replace(ids, 500);
+
+        queue.shuffle(42);
+        long[] shuffled = queue.toArray();
+        assertEquals(1500, shuffled[0]);
+        assertFalse(Arrays.equals(ids, shuffled));
+        long[] sorted = shuffled.clone();
+        Arrays.sort(sorted);
+        assertArrayEquals(ids, sorted);
+
+        // Following next() and previous() agree with the order
+        int slot = queue.first();
+        for (int i = 0; i < shuffled.length; i++) {
+            assertEquals(shuffled[i], queue.getId(slot));
+            int following = queue.next(slot);
+            if (following != PlayQueue.NONE) {
+                assertEquals(slot, queue.previous(following));
+            }
+            slot = following;
+        }
+
+        int added = queue.add(99);
+        assertEquals(added, lastSlot(queue));
+        queue.unshuffle();
+        long[] expected = Arrays.copyOf(ids, ids.length + 1);
+        expected[ids.length] = 99;
+        assertArrayEquals(expected, queue.toArray());
+    }
+
+    private static int lastSlot(PlayQueue queue) {
+        int last = PlayQueue.NONE;
+        for (int slot = queue.first(); slot != PlayQueue.NONE; slot = queue.next(slot)) {
+            last = slot;
+        }
+        return last;
+    }
+
+    @Test
+    public void shuffle_isRepeatableFromItsSeed() {
+        PlayQueue first = queueOf(1, 2, 3, 4, 5, 6, 7, 8);
+        PlayQueue second = queueOf(1, 2, 3, 4, 5, 6, 7, 8);
+        first.shuffle(7);
+        second.shuffle(7);
+        assertArrayEquals(first.toArray(), second.toArray());
+    }
+
+    @Test
+    public void writeTo_readsBackTheSameSlots() throws IOException {
+        PlayQueue queue = queueOf(1, 2, 3, 4, 5);
+        queue.remove(2);
+        queue.setCurrent(3);
+        queue.shuffle(3);
+        queue.move(0, PlayQueue.NONE);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        queue.writeTo(new DataOutputStream(bytes));
+        PlayQueue read = new PlayQueue();
+        read.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertArrayEquals(queue.toArray(), read.toArray());
+        assertTrue(read.isShuffled());
+        assertEquals(3, read.getCurrent());
+        // The freed slot comes back first in both
+        assertEquals(queue.add(6), read.add(6));
+        read.unshuffle();
+        assertArrayEquals(new long[]{1, 2, 4, 5, 6}, read.toArray());
+    }
+}
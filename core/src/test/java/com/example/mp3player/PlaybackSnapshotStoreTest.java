@@ -0,0 +1,103 @@
+package com.example.mp3player;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests PlaybackSnapshotStore saving, bookmarking and rejecting damaged records.
+ */
+public class PlaybackSnapshotStoreTest {
+
+    private static final int HOUR_MS = 60 * 60 * 1000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private PlaybackSnapshotStore store() {
+        return new PlaybackSnapshotStore(new File(folder.getRoot(), "snapshot"),
+                new File(folder.getRoot(), "bookmarks"), Runnable::run);
+    }
+
+    @Test
+    public void restore_returnsTheLastSnapshot() {
+        assertNull(store().restore());
+
+        PlaybackSnapshotStore store = store();
+        store.save(new PlaybackSnapshot("/music/a.mp3", 1000, 200_000, 1, 5));
+        store.save(new PlaybackSnapshot("/music/caf\u00e9.mp3", 61_500, 180_000, 1.5f, 6));
+
+        PlaybackSnapshot restored = store().restore();
+        assertEquals("/music/caf\u00e9.mp3", restored.getFilePath());
+        assertEquals(61_500, restored.getPosition());
+        assertEquals(180_000, restored.getDuration());
+        assertEquals(1.5f, restored.getSpeed(), 0);
+        assertEquals(6, restored.getSavedAt());
+        assertEquals(PlaybackSnapshot.RECORD_SIZE, new File(folder.getRoot(), "snapshot").length());
+    }
+
+    @Test
+    public void bookmarks_areOnlyKeptForLongTracks() {
+        PlaybackSnapshotStore store = store();
+        store.save(new PlaybackSnapshot("/books/one.mp3", 600_000, 10 * HOUR_MS, 1, 1));
+        store.save(new PlaybackSnapshot("/music/song.mp3", 60_000, 200_000, 1, 2));
+        store.save(new PlaybackSnapshot("/books/two.mp3", 30_000, HOUR_MS, 1, 3));
+        store.save(new PlaybackSnapshot("/books/three.mp3", 60_000, HOUR_MS, 1, 3));
+        store.save(new PlaybackSnapshot("/books/three.mp3", HOUR_MS - 30_000, HOUR_MS, 1, 3));
+        store.save(new PlaybackSnapshot("/books/one.mp3", 900_000, 10 * HOUR_MS, 1, 4));
+        store.clearBookmark("/books/two.mp3");
+
+        PlaybackSnapshotStore restored = store();
+        assertEquals("/books/one.mp3", restored.restore().getFilePath());
+        assertEquals(900_000, restored.getBookmark("/books/one.mp3"));
+        assertEquals(-1, restored.getBookmark("/books/two.mp3"));
+        // Nearly finished
+        assertEquals(-1, restored.getBookmark("/books/three.mp3"));
+        assertEquals(-1, restored.getBookmark("/music/song.mp3"));
+    }
+
+    @Test
+    public void bookmarks_dropTheLeastRecentlyPlayed() {
+        PlaybackSnapshotStore store = store();
+        for (int i = 0; i < 100; i++) {
+            store.save(new PlaybackSnapshot("/books/" + i + ".mp3", i, HOUR_MS, 1, i));
+        }
+
+        PlaybackSnapshotStore restored = store();
+        restored.restore();
+        List<Integer> kept = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            if (restored.getBookmark("/books/" + i + ".mp3") >= 0) {
+                kept.add(i);
+            }
+        }
+        assertEquals(64, kept.size());
+        assertEquals(36, (int) kept.get(0));
+    }
+
+    @Test
+    public void restore_ignoresDamagedAndTornRecords() throws IOException {
+        File file = new File(folder.getRoot(), "snapshot");
+        store().save(new PlaybackSnapshot("/music/a.mp3", 1000, 200_000, 1, 5));
+
+        try (RandomAccessFile damaged = new RandomAccessFile(file, "rw")) {
+            damaged.seek(12);
+            damaged.write(0x7F);
+        }
+        assertNull(store().restore());
+
+        store().save(new PlaybackSnapshot("/music/a.mp3", 1000, 200_000, 1, 5));
+        try (RandomAccessFile torn = new RandomAccessFile(file, "rw")) {
+            torn.setLength(PlaybackSnapshot.RECORD_SIZE / 2);
+        }
+        assertNull(store().restore());
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.mp3player;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the range, snapping and ramping of PlaybackSpeeds.
+ */
+public class PlaybackSpeedsTest {
+
+    @Test
+    public void range() {
+        assertEquals(51, PlaybackSpeeds.count());
+        assertEquals(0.5f, PlaybackSpeeds.speedAt(0), 0);
+        assertEquals(3f, PlaybackSpeeds.speedAt(PlaybackSpeeds.count() - 1), 0);
+        assertEquals(1.05f, PlaybackSpeeds.speedAt(11), 0);
+    }
+
+    @Test
+    public void indexOf_roundTrips() {
+        for (int i = 0; i < PlaybackSpeeds.count(); i++) {
+            assertEquals(i, PlaybackSpeeds.indexOf(PlaybackSpeeds.speedAt(i)));
+        }
+    }
+
+    @Test
+    public void snap() {
+        assertEquals(1.25f, PlaybackSpeeds.snap(1.24f), 0);
+        assertEquals(1.75f, PlaybackSpeeds.snap(1.75f), 0);
+        assertEquals(0.5f, PlaybackSpeeds.snap(0.1f), 0);
+        assertEquals(3f, PlaybackSpeeds.snap(8f), 0);
+    }
+
+    @Test
+    public void labels() {
+        String[] labels = PlaybackSpeeds.labels();
+
+        assertEquals("0.50x", labels[0]);
+        assertEquals("1.00x", labels[10]);
+        assertEquals("3.00x", labels[50]);
+    }
+
+    @Test
+    public void ramp() {
+        assertEquals(1.25f, PlaybackSpeeds.ramp(1f, 2f, 1, 4), 0.0001);
+        assertEquals(1.5f, PlaybackSpeeds.ramp(1f, 2f, 2, 4), 0.0001);
+        assertEquals(2f, PlaybackSpeeds.ramp(1f, 2f, 4, 4), 0);
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.mp3player;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests SearchIndex matching, ranking and incremental updates.
+ */
+public class SearchIndexTest {
+
+    private static long[] search(SearchIndex index, String query) {
+        long[] results = new long[10];
+        return Arrays.copyOf(results, index.search(query, results));
+    }
+
+    private static Song song(long id, String title, String artist, String album) {
+        return new Song(id, "/music/" + album + "/" + title + ".mp3", title, artist, album, 0);
+    }
+
+    private static boolean contains(long[] ids, long id) {
+        for (long each : ids) {
+            if (each == id) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void search_foldsCaseAndAccents() {
+        SearchIndex index = new SearchIndex();
+        index.put(song(1, "Caf\u00e9 del Mar", "\u00c9nergie", "Ibiza"));
+        index.put(song(2, "Sunset", "Beyonc\u00e9", "Lemonade"));
+
+        assertArrayEquals(new long[]{1}, search(index, "CAFE"));
+        assertArrayEquals(new long[]{1}, search(index, "\u00e9nerg"));
+        assertArrayEquals(new long[]{2}, search(index, "beyonce"));
+        assertArrayEquals(new long[0], search(index, "   "));
+    }
+
+    @Test
+    public void search_matchesSubstringsAndShortPrefixes() {
+        SearchIndex index = new SearchIndex();
+        index.put(song(1, "Paranoid Android", "Radiohead", "OK Computer"));
+        index.put(song(2, "Android Dreams", "Someone", "Electric"));
+
+        assertArrayEquals(new long[]{1, 2}, search(index, "droid"));
+        assertArrayEquals(new long[]{1}, search(index, "radio droid"));
+        // Short words only match at the start of a word
+        assertArrayEquals(new long[]{1}, search(index, "ok"));
+        assertArrayEquals(new long[0], search(index, "id"));
+        assertArrayEquals(new long[0], search(index, "droid zzz"));
+    }
+
+    @Test
+    public void search_ranksTitleAndWordStartFirst() {
+        SearchIndex index = new SearchIndex();
+        index.put(song(1, "Blue Moon", "Someone", "Night"));
+        index.put(song(2, "Night", "Moonlight Band", "Other"));
+        index.put(song(3, "Honeymoon", "Someone", "Other"));
+        index.put(song(4, "Moon River", "Someone", "Other"));
+
+        // A word starting the artist outranks the title matching inside a word
+        assertArrayEquals(new long[]{4, 1, 2, 3}, search(index, "moon"));
+
+        long[] top = new long[2];
+        assertEquals(2, index.search("moon", top));
+        assertArrayEquals(new long[]{4, 1}, top);
+    }
+
+    @Test
+    public void putAndRemove_updateInPlaceAndSurviveRebuild() {
+        SearchIndex index = new SearchIndex();
+        for (int i = 0; i < 5000; i++) {
+            index.put(song(i, "Track " + i, "Artist " + (i % 50), "Album " + (i % 500)));
+        }
+        index.put(song(7, "Renamed", "Artist 7", "Album 7"));
+        assertArrayEquals(new long[]{7}, search(index, "renamed"));
+        assertFalse(contains(search(index, "track 7"), 7));
+
+        // Removing most songs rebuilds the index
+        for (int i = 0; i < 4000; i++) {
+            index.remove(i);
+        }
+        assertEquals(1000, index.size());
+        assertArrayEquals(new long[0], search(index, "renamed"));
+        assertArrayEquals(new long[]{4321}, search(index, "track 4321"));
+        index.put(song(4321, "Again", "Artist", "Album"));
+        assertArrayEquals(new long[]{4321}, search(index, "again"));
+        assertEquals(1000, index.size());
+    }
+}
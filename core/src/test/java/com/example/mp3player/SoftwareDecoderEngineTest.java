@@ -0,0 +1,112 @@
+package com.example.mp3player;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the headless engine through the PlayerEngine lifecycle, decoding as fast as possible.
+ */
+public class SoftwareDecoderEngineTest {
+
+    // 50 silent frames of MPEG 1 Layer III, 128 kbps, 44.1kHz, stereo
+    private static final int FRAMES = 50;
+    private static final int FRAME_LENGTH = 417;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final CountDownLatch prepared = new CountDownLatch(1);
+    private final CountDownLatch seeked = new CountDownLatch(1);
+    private final CountDownLatch completed = new CountDownLatch(1);
+    private final AtomicLong samplesWritten = new AtomicLong();
+
+    @Test
+    public void playsToCompletion() throws Exception {
+        PlayerEngine engine = prepare();
+
+        assertEquals(FRAMES * 1152 * 1000 / 44100, engine.getDuration());
+        engine.start();
+
+        assertTrue(completed.await(10, TimeUnit.SECONDS));
+        assertEquals(FRAMES * 1152 * 2, samplesWritten.get());
+        assertFalse(engine.isPlaying());
+        assertEquals(engine.getDuration(), engine.getCurrentPosition());
+        engine.release();
+    }
+
+    @Test
+    public void seekThenPlay() throws Exception {
+        PlayerEngine engine = prepare();
+
+        engine.seekTo(1000, true);
+        assertTrue(seeked.await(10, TimeUnit.SECONDS));
+        assertEquals(1000, engine.getCurrentPosition());
+        engine.start();
+
+        assertTrue(completed.await(10, TimeUnit.SECONDS));
+        assertEquals((FRAMES * 1152 - 44100) * 2, samplesWritten.get());
+        engine.release();
+    }
+
+    @Test
+    public void missingFileFails() {
+        SoftwareDecoderEngine engine = new SoftwareDecoderEngine(Runnable::run, null, false);
+        try {
+            engine.setDataSource(new File(folder.getRoot(), "missing.mp3").getPath());
+            fail();
+        } catch (IOException expected) {
+            // Reported before preparing, like MediaPlayer
+        }
+    }
+
+    private PlayerEngine prepare() throws Exception {
+        File file = folder.newFile();
+        byte[] frame = new byte[FRAME_LENGTH];
+        frame[0] = (byte) 0xFF;
+        frame[1] = (byte) 0xFB;
+        frame[2] = (byte) 0x90;
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            for (int i = 0; i < FRAMES; i++) {
+                out.write(frame);
+            }
+        }
+
+        PlayerEngine engine = new SoftwareDecoderEngine(Runnable::run,
+                (samples, offset, length, channels, sampleRate) -> samplesWritten.addAndGet(length), false);
+        engine.setListener(new PlayerEngine.Listener() {
+            @Override
+            public void onPrepared(PlayerEngine engine) {
+                prepared.countDown();
+            }
+
+            @Override
+            public void onCompletion(PlayerEngine engine) {
+                completed.countDown();
+            }
+
+            @Override
+            public void onSeekComplete(PlayerEngine engine) {
+                seeked.countDown();
+            }
+
+            @Override
+            public void onError(PlayerEngine engine, int what, int extra) {
+                fail("Error " + what + ", " + extra);
+            }
+        });
+        engine.setDataSource(file.getPath());
+        engine.prepareAsync();
+        assertTrue(prepared.await(10, TimeUnit.SECONDS));
+        return engine;
+    }
+}
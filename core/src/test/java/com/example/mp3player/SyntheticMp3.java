@@ -0,0 +1,110 @@
+package com.example.mp3player;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Writes MP3 files whose frames hold random Huffman data, so every frame
+ * decodes to different non-silent PCM without needing an encoder.
+ */
+final class SyntheticMp3 {
+
+    // MPEG 1 Layer III, no CRC, 128 kbps, 44.1kHz, stereo
+    private static final int HEADER = 0xFFFB9000;
+    private static final int FRAME_LENGTH = 417;
+
+    private SyntheticMp3() {
+    }
+
+    /**
+     * Writes a file of noise frames, after an optional Xing frame with a LAME tag.
+     *
+     * @param file    The file to write.
+     * @param frames  The number of audio frames.
+     * @param seed    The random seed, so the same audio is written every time.
+     * @param lame    Whether to write a Xing frame with a LAME tag.
+     * @param delay   The encoder delay in the LAME tag.
+     * @param padding The encoder padding in the LAME tag.
+     */
+    static void write(File file, int frames, long seed, boolean lame, int delay, int padding) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (lame) {
+            writeXingFrame(out, frames, delay, padding);
+        }
+        Random random = new Random(seed);
+        for (int i = 0; i < frames; i++) {
+            writeNoiseFrame(out, random);
+        }
+
+        try (FileOutputStream stream = new FileOutputStream(file)) {
+            out.writeTo(stream);
+        }
+    }
+
+    private static void writeNoiseFrame(ByteArrayOutputStream out, Random random) {
+        byte[] frame = new byte[FRAME_LENGTH];
+        putInt(frame, 0, HEADER);
+
+        // Side information: no bit reservoir, then per granule and channel 700 bits
+        // of long-block Huffman data with no scale factors
+        int bit = 32;
+        bit = putBits(frame, bit, 0, 9 + 3 + 8);
+        for (int i = 0; i < 4; i++) {
+            bit = putBits(frame, bit, 700, 12);   // part2_3_length
+            bit = putBits(frame, bit, 100, 9);    // big_values
+            bit = putBits(frame, bit, 170, 8);    // global_gain
+            bit = putBits(frame, bit, 0, 4 + 1);  // scalefac_compress, window_switching_flag
+            bit = putBits(frame, bit, 7, 5);      // table_select
+            bit = putBits(frame, bit, 7, 5);
+            bit = putBits(frame, bit, 7, 5);
+            bit = putBits(frame, bit, 5, 4);      // region0_count
+            bit = putBits(frame, bit, 3, 3);      // region1_count
+            bit = putBits(frame, bit, 0, 3);      // preflag, scalefac_scale, count1table_select
+        }
+
+        for (int i = 4 + 32; i < FRAME_LENGTH; i++) {
+            frame[i] = (byte) random.nextInt();
+        }
+        out.write(frame, 0, frame.length);
+    }
+
+    private static void writeXingFrame(ByteArrayOutputStream out, int frames, int delay, int padding) {
+        byte[] frame = new byte[FRAME_LENGTH];
+        putInt(frame, 0, HEADER);
+
+        int xing = 4 + 32;
+        putInt(frame, xing, 0x496E666F); // "Info"
+        putInt(frame, xing + 4, 0x0F);
+        putInt(frame, xing + 8, frames);
+        putInt(frame, xing + 12, frames * FRAME_LENGTH);
+        for (int i = 0; i < 100; i++) {
+            frame[xing + 16 + i] = (byte) (i * 256 / 100);
+        }
+
+        int lame = xing + 120;
+        putInt(frame, lame, 0x4C414D45);
+        frame[lame + 21] = (byte) (delay >>> 4);
+        frame[lame + 22] = (byte) (((delay & 0x0F) << 4) | (padding >>> 8));
+        frame[lame + 23] = (byte) padding;
+        out.write(frame, 0, frame.length);
+    }
+
+    private static int putBits(byte[] bytes, int bit, int value, int count) {
+        for (int i = count - 1; i >= 0; i--, bit++) {
+            if (((value >>> i) & 1) != 0) {
+                bytes[bit >> 3] |= (byte) (0x80 >>> (bit & 7));
+            }
+        }
+        return bit;
+    }
+
+    private static void putInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.mp3player;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests WaveformGenerator against a sequential decode, and its cache.
+ */
+public class WaveformGeneratorTest {
+
+    private static final int BUCKETS = 300;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private WaveformGenerator generator;
+
+    @After
+    public void tearDown() {
+        if (generator != null) {
+            generator.shutdown();
+        }
+    }
+
+    @Test
+    public void parallelSummaryMatchesSequentialDecode() throws IOException {
+        File file = folder.newFile();
+        SyntheticMp3.write(file, 120, 7, true, 576, 1000);
+        generator = new WaveformGenerator(4, null, BUCKETS);
+
+        WaveformSummary summary = generator.get(file);
+
+        WaveformSummary expected = sequentialSummary(file);
+        assertEquals(BUCKETS, summary.getBucketCount());
+        for (int i = 0; i < BUCKETS; i++) {
+            assertEquals("min " + i, expected.getMin(i), summary.getMin(i));
+            assertEquals("max " + i, expected.getMax(i), summary.getMax(i));
+        }
+        assertTrue(summary.getMax(BUCKETS / 2) > 0);
+        assertTrue(summary.getMin(BUCKETS / 2) < 0);
+    }
+
+    @Test
+    public void cache_storesAndReusesSummary() throws IOException {
+        File file = folder.newFile();
+        SyntheticMp3.write(file, 20, 3, false, 0, 0);
+        WaveformCache cache = new WaveformCache(new File(folder.getRoot(), "waveform"));
+        generator = new WaveformGenerator(2, cache, BUCKETS);
+
+        assertNull(cache.get(file));
+        WaveformSummary generated = generator.get(file);
+        WaveformSummary cached = cache.get(file);
+
+        assertNotNull(cached);
+        assertArrayEquals(generated.getMinimums(), cached.getMinimums());
+        assertArrayEquals(generated.getMaximums(), cached.getMaximums());
+
+        // A changed file is generated again
+        assertTrue(file.setLastModified(file.lastModified() - 10000));
+        assertNull(cache.get(file));
+    }
+
+    @Test
+    public void generateAll_skipsCachedAndUnreadableFiles() throws IOException {
+        File first = folder.newFile();
+        File second = folder.newFile();
+        File broken = folder.newFile();
+        SyntheticMp3.write(first, 10, 1, false, 0, 0);
+        SyntheticMp3.write(second, 10, 2, false, 0, 0);
+        try (FileOutputStream out = new FileOutputStream(broken)) {
+            out.write(new byte[1000]);
+        }
+        WaveformCache cache = new WaveformCache(new File(folder.getRoot(), "waveform"));
+        generator = new WaveformGenerator(2, cache, BUCKETS);
+        generator.get(first);
+
+        assertEquals(1, generator.generateAll(Arrays.asList(first, second, broken)));
+        assertNotNull(cache.get(second));
+        assertNull(cache.get(broken));
+    }
+
+    @Test
+    public void get_returnsWhileLibraryIsBeingGenerated() throws Exception {
+        List<File> library = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            File file = folder.newFile();
+            SyntheticMp3.write(file, 200, i, false, 0, 0);
+            library.add(file);
+        }
+        File wanted = folder.newFile();
+        SyntheticMp3.write(wanted, 200, 100, false, 0, 0);
+        WaveformCache cache = new WaveformCache(new File(folder.getRoot(), "waveform"));
+        generator = new WaveformGenerator(2, cache, BUCKETS);
+
+        Thread precompute = new Thread(() -> generator.generateAll(library));
+        precompute.start();
+        try {
+            // Wait until the library is underway
+            while (cache.get(library.get(0)) == null) {
+                assertTrue("library generation ended early", precompute.isAlive());
+                Thread.sleep(1);
+            }
+
+            assertNotNull(generator.get(wanted));
+            assertTrue("get() waited for the whole library", precompute.isAlive());
+        } finally {
+            precompute.join();
+        }
+        assertNotNull(cache.get(library.get(library.size() - 1)));
+    }
+
+    /**
+     * Builds the summary with one decoder from start to end.
+     */
+    private static WaveformSummary sequentialSummary(File file) throws IOException {
+        byte[] minimums = new byte[BUCKETS];
+        byte[] maximums = new byte[BUCKETS];
+        try (Mp3PcmDecoder decoder = Mp3PcmDecoder.open(file)) {
+            int[] min = new int[BUCKETS];
+            int[] max = new int[BUCKETS];
+            long samples = decoder.getSampleCount();
+            int length;
+            while (true) {
+                long position = decoder.getPosition();
+                if ((length = decoder.decodeFrame()) < 0) {
+                    break;
+                }
+                for (int i = 0; i < length; i++) {
+                    int bucket = (int) ((position + i / 2) * BUCKETS / samples);
+                    short sample = decoder.getBuffer()[decoder.getOffset() + i];
+                    min[bucket] = Math.min(min[bucket], sample);
+                    max[bucket] = Math.max(max[bucket], sample);
+                }
+            }
+            for (int i = 0; i < BUCKETS; i++) {
+                minimums[i] = (byte) (min[i] >> 8);
+                maximums[i] = (byte) (max[i] >> 8);
+            }
+        }
+        return new WaveformSummary(minimums, maximums);
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.mp3player.macrobenchmark;
+
+import androidx.benchmark.macro.CompilationMode;
+import androidx.benchmark.macro.StartupMode;
+import androidx.benchmark.macro.StartupTimingMetric;
+import androidx.benchmark.macro.junit4.MacrobenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.uiautomator.By;
+import androidx.test.uiautomator.Until;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Collections;
+
+import kotlin.Unit;
+
+/**
+ * Measures cold and warm starts of the library screen on a device, reporting
+ * timeToInitialDisplayMs (time to first frame) and timeToFullDisplayMs (time to
+ * interactive, when the app calls reportFullyDrawn() with the list shown):
+ * <pre>
+ * ./gradlew :macrobenchmark:connectedBenchmarkAndroidTest
+ * </pre>
+ * Results are printed and written as JSON under macrobenchmark/build/outputs.
+ */
+@RunWith(AndroidJUnit4.class)
+public class StartupBenchmark {
+
+    private static final String PACKAGE_NAME = "com.example.mp3player";
+
+    private static final int ITERATIONS = 10;
+
+    // Longest wait for the first song row to show
+    private static final long LIST_TIMEOUT_MS = 5000;
+
+    @Rule
+    public MacrobenchmarkRule benchmarkRule = new MacrobenchmarkRule();
+
+    @Test
+    public void coldStart() {
+        measureStartup(StartupMode.COLD);
+    }
+
+    @Test
+    public void warmStart() {
+        measureStartup(StartupMode.WARM);
+    }
+
+    private void measureStartup(StartupMode mode) {
+        benchmarkRule.measureRepeated(
+                PACKAGE_NAME,
+                Collections.singletonList(new StartupTimingMetric()),
+                CompilationMode.DEFAULT,
+                mode,
+                ITERATIONS,
+                scope -> {
+                    scope.pressHome();
+                    return Unit.INSTANCE;
+                },
+                scope -> {
+                    scope.startActivityAndWait();
+                    // Keep tracing until a song is shown, so reportFullyDrawn() is captured
+                    scope.getDevice().wait(Until.hasObject(By.res("android", "text1")), LIST_TIMEOUT_MS);
+                    return Unit.INSTANCE;
+                });
+    }
+}
@@ -15,4 +15,6 @@ dependencyResolutionManagement {
 
 rootProject.name = "MP3Player"
 include(":app")
+include(":core")
+include(":macrobenchmark")
  
\ No newline at end of file